@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bdv.benchmark.SyntheticSources.PixelType;
+import bdv.benchmark.SyntheticSources.SyntheticSource;
+import bdv.cache.SharedQueue;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.viewer.Interpolation;
+import bdv.viewer.render.AccumulateProjectorARGB;
+import bdv.viewer.render.VolatileHierarchyProjector;
+import bdv.viewer.render.VolatileProjector;
+
+/**
+ * Render and accumulate a full frame of several synthetic volatile sources,
+ * with {@link AccumulateProjectorARGB} (which renders and accumulates tile by
+ * tile) or with the generic {@code AccumulateProjector} (which renders all
+ * sources before accumulating).
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class AccumulateProjectorARGBBenchmark
+{
+	@Param( { "2", "4" } )
+	public int numSources;
+
+	@Param( { "UINT8", "UINT16" } )
+	public PixelType pixelType;
+
+	@Param( { "800x600", "1920x1080" } )
+	public String screenSize;
+
+	@Param( { "ARGB", "Generic" } )
+	public String accumulator;
+
+	@Param( { "1", "4" } )
+	public int numThreads;
+
+	private SharedQueue queue;
+
+	private ExecutorService executorService;
+
+	private final List< SyntheticSource< ? > > syntheticSources = new ArrayList<>();
+
+	private final List< RandomAccessible< ? > > sources = new ArrayList<>();
+
+	private final List< ArrayImg< ARGBType, ? > > sourceImages = new ArrayList<>();
+
+	private final List< byte[] > masks = new ArrayList<>();
+
+	private ArrayImg< ARGBType, ? > target;
+
+	@Setup
+	public void setup()
+	{
+		final int[] size = SyntheticSources.screenSize( screenSize );
+		final long[] dimensions = { 512, 512, 128 };
+		queue = new SharedQueue( 1 );
+		final VolatileGlobalCellCache cache = new VolatileGlobalCellCache( queue );
+		for ( int i = 0; i < numSources; ++i )
+		{
+			final SyntheticSource< ? > s = SyntheticSources.create( cache, i, pixelType, dimensions, new int[] { 32, 32, 32 } );
+			final AffineTransform3D sourceToScreen = SyntheticSources.sourceToScreen( "inplane", dimensions, size[ 0 ], size[ 1 ] );
+			sourceToScreen.translate( 10 * i, 5 * i, 0 );
+			syntheticSources.add( s );
+			sources.add( s.transformed( sourceToScreen, Interpolation.NEARESTNEIGHBOR ) );
+			sourceImages.add( ArrayImgs.argbs( size[ 0 ], size[ 1 ] ) );
+			masks.add( new byte[ size[ 0 ] * size[ 1 ] ] );
+		}
+		target = ArrayImgs.argbs( size[ 0 ], size[ 1 ] );
+		executorService = numThreads > 1 ? Executors.newFixedThreadPool( numThreads ) : null;
+	}
+
+	@TearDown
+	public void teardown()
+	{
+		if ( executorService != null )
+			executorService.shutdown();
+		queue.shutdown();
+	}
+
+	@Benchmark
+	public boolean map()
+	{
+		final List< VolatileProjector > sourceProjectors = new ArrayList<>();
+		for ( int i = 0; i < numSources; ++i )
+			sourceProjectors.add( createSourceProjector( syntheticSources.get( i ), sources.get( i ), sourceImages.get( i ), masks.get( i ) ) );
+		final VolatileProjector projector = accumulator.equals( "ARGB" )
+				? new AccumulateProjectorARGB( sourceProjectors, sourceImages, target, numThreads, executorService )
+				: new AccumulateProjectorARGB.AccumulateProjectorARGBGeneric( sourceProjectors, sourceImages, target, numThreads, executorService );
+		return projector.map();
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private < V extends Volatile< ? > > VolatileProjector createSourceProjector(
+			final SyntheticSource< ? > s,
+			final RandomAccessible< ? > transformed,
+			final ArrayImg< ARGBType, ? > sourceImage,
+			final byte[] mask )
+	{
+		final RandomAccessible< V > src = ( RandomAccessible< V > ) transformed;
+		final Converter< V, ARGBType > converter = ( Converter< V, ARGBType > ) s.converter();
+		return new VolatileHierarchyProjector<>( Collections.singletonList( src ), converter, sourceImage, mask, numThreads, executorService );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options opt = new OptionsBuilder()
+				.include( AccumulateProjectorARGBBenchmark.class.getSimpleName() )
+				.build();
+		new Runner( opt ).run();
+	}
+}
@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bdv.benchmark.SyntheticSources.PixelType;
+import bdv.export.CopyBlock;
+import bdv.export.DownsampleBlock;
+
+/**
+ * Copy and downsample blocks as done by {@code ExportScalePyramid} when
+ * writing the full resolution level and lower resolution levels.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Fork( 1 )
+public class BlockBenchmark
+{
+	@Param( { "UINT8", "UINT16", "FLOAT32" } )
+	public PixelType pixelType;
+
+	@Param( { "32", "64" } )
+	public int blockSize;
+
+	@Param( { "2", "4" } )
+	public int downsamplingFactor;
+
+	private Blocks< ? > blocks;
+
+	@Setup
+	public void setup()
+	{
+		switch ( pixelType )
+		{
+		case UINT8:
+			blocks = new Blocks<>( ArrayImgs.unsignedBytes( dimensions() ), ArrayImgs.unsignedBytes( blockDimensions() ) );
+			break;
+		case UINT16:
+			blocks = new Blocks<>( ArrayImgs.unsignedShorts( dimensions() ), ArrayImgs.unsignedShorts( blockDimensions() ) );
+			break;
+		case FLOAT32:
+			blocks = new Blocks<>( ArrayImgs.floats( dimensions() ), ArrayImgs.floats( blockDimensions() ) );
+			break;
+		}
+	}
+
+	private long[] dimensions()
+	{
+		final long s = blockSize * downsamplingFactor + 2;
+		return new long[] { s, s, s };
+	}
+
+	private long[] blockDimensions()
+	{
+		return new long[] { blockSize, blockSize, blockSize };
+	}
+
+	@Benchmark
+	public void copyBlock()
+	{
+		blocks.copy();
+	}
+
+	@Benchmark
+	public void downsampleBlock()
+	{
+		blocks.downsample();
+	}
+
+	private class Blocks< T extends RealType< T > & NativeType< T > >
+	{
+		private final RandomAccess< T > in;
+
+		private final ArrayImg< T, ? > out;
+
+		private final int[] blockDimensions = { blockSize, blockSize, blockSize };
+
+		private final CopyBlock< T > copyBlock;
+
+		private final DownsampleBlock< T > downsampleBlock;
+
+		Blocks( final ArrayImg< T, ? > img, final ArrayImg< T, ? > out )
+		{
+			final Random random = new Random( 1 );
+			for ( final T t : img )
+				t.setReal( random.nextInt( 255 ) );
+
+			final RandomAccessibleInterval< T > extended = Views.interval( Views.extendBorder( img ), img );
+			in = extended.randomAccess();
+			this.out = out;
+
+			final int[] factors = { downsamplingFactor, downsamplingFactor, downsamplingFactor };
+			final T type = img.firstElement();
+			copyBlock = CopyBlock.create( 3, type.getClass(), in.getClass() );
+			downsampleBlock = DownsampleBlock.create( blockDimensions, factors, type.getClass(), in.getClass() );
+		}
+
+		void copy()
+		{
+			final RandomAccess< T > o = out.randomAccess();
+			in.setPosition( new long[] { 1, 1, 1 } );
+			o.setPosition( new long[] { 0, 0, 0 } );
+			copyBlock.copyBlock( in, o, blockDimensions );
+		}
+
+		void downsample()
+		{
+			in.setPosition( new long[] { 1, 1, 1 } );
+			downsampleBlock.downsampleBlock( in, out.cursor(), blockDimensions );
+		}
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options opt = new OptionsBuilder()
+				.include( BlockBenchmark.class.getSimpleName() )
+				.build();
+		new Runner( opt ).run();
+	}
+}
@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bdv.benchmark.SyntheticSources.PixelType;
+import bdv.benchmark.SyntheticSources.SyntheticSource;
+import bdv.cache.SharedQueue;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.viewer.Interpolation;
+import bdv.viewer.render.HierarchyLineMapper;
+import bdv.viewer.render.VolatileHierarchyProjector;
+import bdv.viewer.render.VolatileProjector;
+
+/**
+ * Render full frames of a mix of synthetic volatile sources (UINT8, UINT16,
+ * FLOAT32) with {@link VolatileHierarchyProjector}. Compares one shared
+ * {@link HierarchyLineMapper} class for all sources ({@code shared}) with
+ * {@link HierarchyLineMapper#create specialized} copies per (type, converter,
+ * access) combination ({@code specialized}).
+ * <p>
+ * Each fork renders all sources with the same kind of line mapper, so the
+ * call sites of the shared line mapper see all source types.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class MixedTypeProjectorBenchmark
+{
+	@Param( { "shared", "specialized" } )
+	public String lineMapper;
+
+	@Param( { "NEARESTNEIGHBOR", "NLINEAR" } )
+	public Interpolation interpolation;
+
+	private SharedQueue queue;
+
+	private final List< SyntheticSource< ? > > syntheticSources = new ArrayList<>();
+
+	private final List< RandomAccessible< ? > > sources = new ArrayList<>();
+
+	private final List< HierarchyLineMapper< ?, ? > > lineMappers = new ArrayList<>();
+
+	private ArrayImg< ARGBType, ? > target;
+
+	private byte[] mask;
+
+	@Setup
+	public void setup()
+	{
+		final int[] size = SyntheticSources.screenSize( "800x600" );
+		final long[] dimensions = { 512, 512, 128 };
+		queue = new SharedQueue( 1 );
+		final VolatileGlobalCellCache cache = new VolatileGlobalCellCache( queue );
+		final AffineTransform3D sourceToScreen = SyntheticSources.sourceToScreen( "oblique", dimensions, size[ 0 ], size[ 1 ] );
+		final HierarchyLineMapper< ?, ? > shared = HierarchyLineMapper.create( null, null, null );
+		int setupId = 0;
+		for ( final PixelType pixelType : PixelType.values() )
+		{
+			final SyntheticSource< ? > s = SyntheticSources.create( cache, setupId++, pixelType, dimensions, new int[] { 32, 32, 32 } );
+			final RandomAccessible< ? > transformed = s.transformed( sourceToScreen, interpolation );
+			syntheticSources.add( s );
+			sources.add( transformed );
+			lineMappers.add( lineMapper.equals( "shared" )
+					? shared
+					: HierarchyLineMapper.create( s.type().getClass(), s.converter().getClass(), transformed.randomAccess().getClass() ) );
+		}
+		target = ArrayImgs.argbs( size[ 0 ], size[ 1 ] );
+		mask = new byte[ size[ 0 ] * size[ 1 ] ];
+	}
+
+	@TearDown
+	public void teardown()
+	{
+		queue.shutdown();
+	}
+
+	@Benchmark
+	public boolean map()
+	{
+		boolean valid = true;
+		for ( int i = 0; i < sources.size(); ++i )
+			valid &= createProjector( syntheticSources.get( i ), sources.get( i ), lineMappers.get( i ) ).map();
+		return valid;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private < V extends Volatile< ? > > VolatileProjector createProjector( final SyntheticSource< ? > s, final RandomAccessible< ? > transformed, final HierarchyLineMapper< ?, ? > mapper )
+	{
+		final RandomAccessible< V > src = ( RandomAccessible< V > ) transformed;
+		final Converter< V, ARGBType > converter = ( Converter< V, ARGBType > ) s.converter();
+		return new VolatileHierarchyProjector<>( Collections.singletonList( src ), converter, ( HierarchyLineMapper< V, ARGBType > ) mapper, target, mask, 1, null );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options opt = new OptionsBuilder()
+				.include( MixedTypeProjectorBenchmark.class.getSimpleName() )
+				.build();
+		new Runner( opt ).run();
+	}
+}
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.FinalDimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bdv.benchmark.SyntheticSources.PixelType;
+import bdv.benchmark.SyntheticSources.SyntheticSource;
+import bdv.cache.SharedQueue;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.viewer.Interpolation;
+import bdv.viewer.render.Prefetcher;
+
+/**
+ * Determine and access the cells of a synthetic volatile source that are
+ * needed to render a frame, with {@link Prefetcher#fetchCells}. All cells are
+ * in the cache after warm-up, so this measures the scan and cache lookups.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Fork( 1 )
+public class PrefetcherBenchmark
+{
+	@Param( { "800x600", "1920x1080" } )
+	public String screenSize;
+
+	@Param( { "axis", "inplane", "oblique" } )
+	public String transform;
+
+	@Param( { "16", "32", "64" } )
+	public int cellSize;
+
+	@Param( { "NEARESTNEIGHBOR", "NLINEAR" } )
+	public Interpolation interpolation;
+
+	private static final long[] dimensions = { 1024, 1024, 256 };
+
+	private SharedQueue queue;
+
+	private SyntheticSource< ? > source;
+
+	private AffineTransform3D sourceToScreen;
+
+	private FinalDimensions screenInterval;
+
+	private int[] cellDimensions;
+
+	@Setup
+	public void setup()
+	{
+		final int[] size = SyntheticSources.screenSize( screenSize );
+		cellDimensions = new int[] { cellSize, cellSize, cellSize };
+		queue = new SharedQueue( 1 );
+		source = SyntheticSources.create( new VolatileGlobalCellCache( queue ), 0, PixelType.UINT8, dimensions, cellDimensions );
+		sourceToScreen = SyntheticSources.sourceToScreen( transform, dimensions, size[ 0 ], size[ 1 ] );
+		screenInterval = new FinalDimensions( size[ 0 ], size[ 1 ] );
+	}
+
+	@TearDown
+	public void teardown()
+	{
+		queue.shutdown();
+	}
+
+	@Benchmark
+	public void fetchCells()
+	{
+		final RandomAccess< ? > cellsRandomAccess = source.img().getCells().randomAccess();
+		Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options opt = new OptionsBuilder()
+				.include( PrefetcherBenchmark.class.getSimpleName() )
+				.build();
+		new Runner( opt ).run();
+	}
+}
@@ -0,0 +1,258 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.AbstractVolatileNativeRealType;
+import net.imglib2.type.volatiles.VolatileFloatType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.view.Views;
+
+import bdv.img.cache.SimpleCacheArrayLoader;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.img.cache.VolatileGlobalCellCache;
+import bdv.viewer.Interpolation;
+
+/**
+ * Synthetic in-memory sources for benchmarks. Images are
+ * {@link VolatileCachedCellImg}s backed by a {@link VolatileGlobalCellCache},
+ * whose cells are generated on demand. Images are created with
+ * {@link LoadingStrategy#BLOCKING}, so after the first access (i.e., after
+ * warm-up) all data is cached and valid.
+ */
+public class SyntheticSources
+{
+	public enum PixelType
+	{
+		UINT8,
+		UINT16,
+		FLOAT32
+	}
+
+	/**
+	 * A synthetic image together with a matching converter to ARGB.
+	 */
+	public static class SyntheticSource< V extends AbstractVolatileNativeRealType< ?, V > >
+	{
+		private final VolatileCachedCellImg< V, ? > img;
+
+		private final V type;
+
+		private final double max;
+
+		SyntheticSource( final VolatileCachedCellImg< V, ? > img, final V type, final double max )
+		{
+			this.img = img;
+			this.type = type;
+			this.max = max;
+		}
+
+		public VolatileCachedCellImg< V, ? > img()
+		{
+			return img;
+		}
+
+		public V type()
+		{
+			return type;
+		}
+
+		public Converter< V, ARGBType > converter()
+		{
+			return RealARGBColorConverter.create( type, 0, max );
+		}
+
+		/**
+		 * Get the image, extended with valid zeros, interpolated, and
+		 * transformed to screen coordinates.
+		 */
+		public RandomAccessible< V > transformed( final AffineTransform3D sourceToScreen, final Interpolation interpolation )
+		{
+			final V zero = type.createVariable();
+			zero.setZero();
+			zero.setValid( true );
+			final RealRandomAccessible< V > interpolated = interpolation == Interpolation.NLINEAR
+					? Views.interpolate( Views.extendValue( img, zero ), new NLinearInterpolatorFactory<>() )
+					: Views.interpolate( Views.extendValue( img, zero ), new NearestNeighborInterpolatorFactory<>() );
+			return RealViews.affine( interpolated, sourceToScreen );
+		}
+	}
+
+	/**
+	 * Create a synthetic image of the given {@code pixelType}, with
+	 * pseudo-random noise on top of a smooth gradient.
+	 *
+	 * @param cache
+	 *     cache that holds the image data.
+	 * @param setup
+	 *     setup id, must be unique for each image in the {@code cache}.
+	 */
+	public static SyntheticSource< ? > create(
+			final VolatileGlobalCellCache cache,
+			final int setup,
+			final PixelType pixelType,
+			final long[] dimensions,
+			final int[] cellDimensions )
+	{
+		final CellGrid grid = new CellGrid( dimensions, cellDimensions );
+		final CacheHints hints = new CacheHints( LoadingStrategy.BLOCKING, 0, false );
+		switch ( pixelType )
+		{
+		case UINT8:
+		{
+			final SimpleCacheArrayLoader< VolatileByteArray > loader = ( pos, dims ) -> {
+				final double[] values = generate( pos, dims, cellDimensions, 255 );
+				final byte[] data = new byte[ values.length ];
+				for ( int i = 0; i < values.length; ++i )
+					data[ i ] = ( byte ) values[ i ];
+				return new VolatileByteArray( data, true );
+			};
+			final VolatileUnsignedByteType type = new VolatileUnsignedByteType();
+			return new SyntheticSource<>( cache.createImg( grid, 0, setup, 0, hints, loader, type ), type, 255 );
+		}
+		case UINT16:
+		{
+			final SimpleCacheArrayLoader< VolatileShortArray > loader = ( pos, dims ) -> {
+				final double[] values = generate( pos, dims, cellDimensions, 4095 );
+				final short[] data = new short[ values.length ];
+				for ( int i = 0; i < values.length; ++i )
+					data[ i ] = ( short ) values[ i ];
+				return new VolatileShortArray( data, true );
+			};
+			final VolatileUnsignedShortType type = new VolatileUnsignedShortType();
+			return new SyntheticSource<>( cache.createImg( grid, 0, setup, 0, hints, loader, type ), type, 4095 );
+		}
+		case FLOAT32:
+		default:
+		{
+			final SimpleCacheArrayLoader< VolatileFloatArray > loader = ( pos, dims ) -> {
+				final double[] values = generate( pos, dims, cellDimensions, 1 );
+				final float[] data = new float[ values.length ];
+				for ( int i = 0; i < values.length; ++i )
+					data[ i ] = ( float ) values[ i ];
+				return new VolatileFloatArray( data, true );
+			};
+			final VolatileFloatType type = new VolatileFloatType();
+			return new SyntheticSource<>( cache.createImg( grid, 0, setup, 0, hints, loader, type ), type, 1 );
+		}
+		}
+	}
+
+	/**
+	 * Generate values in {@code [0, max]} for the cell at grid position
+	 * {@code gridPosition} with the given (possibly truncated) dimensions.
+	 */
+	private static double[] generate( final long[] gridPosition, final int[] dimensions, final int[] cellDimensions, final double max )
+	{
+		final int n = dimensions.length;
+		final long[] min = new long[ n ];
+		Arrays.setAll( min, d -> gridPosition[ d ] * cellDimensions[ d ] );
+		final Random random = new Random( Arrays.hashCode( gridPosition ) );
+		int size = 1;
+		for ( int d = 0; d < n; ++d )
+			size *= dimensions[ d ];
+		final double[] values = new double[ size ];
+		final long[] pos = new long[ n ];
+		for ( int i = 0; i < size; ++i )
+		{
+			int r = i;
+			double gradient = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				pos[ d ] = min[ d ] + r % dimensions[ d ];
+				r /= dimensions[ d ];
+				gradient += 0.5 + 0.5 * Math.sin( pos[ d ] * 0.05 * ( d + 1 ) );
+			}
+			values[ i ] = max * Math.min( 1, 0.8 * gradient / n + 0.2 * random.nextDouble() );
+		}
+		return values;
+	}
+
+	/**
+	 * Create a transform that maps the center of a source of the given
+	 * {@code dimensions} to the center of a {@code width * height} screen.
+	 * The source is scaled to fit the screen, then rotated.
+	 *
+	 * @param transform
+	 *     one of {@code "axis"} (no rotation), {@code "inplane"} (rotated
+	 *     around the z axis), or {@code "oblique"} (rotated around an axis
+	 *     that is not aligned with the z axis, such that the screen plane
+	 *     cuts obliquely through the source).
+	 */
+	public static AffineTransform3D sourceToScreen( final String transform, final long[] dimensions, final int width, final int height )
+	{
+		final AffineTransform3D t = new AffineTransform3D();
+		t.translate( -0.5 * dimensions[ 0 ], -0.5 * dimensions[ 1 ], -0.5 * dimensions[ 2 ] );
+		switch ( transform )
+		{
+		case "axis":
+			break;
+		case "inplane":
+			t.rotate( 2, 0.3 );
+			break;
+		case "oblique":
+			t.rotate( 0, 0.5 );
+			t.rotate( 1, 0.3 );
+			t.rotate( 2, 0.2 );
+			break;
+		default:
+			throw new IllegalArgumentException( "unknown transform " + transform );
+		}
+		t.scale( Math.min( ( double ) width / dimensions[ 0 ], ( double ) height / dimensions[ 1 ] ) );
+		t.translate( 0.5 * width, 0.5 * height, 0 );
+		return t;
+	}
+
+	/**
+	 * Parse a screen size like {@code "800x600"}.
+	 */
+	public static int[] screenSize( final String size )
+	{
+		final String[] parts = size.split( "x" );
+		return new int[] { Integer.parseInt( parts[ 0 ] ), Integer.parseInt( parts[ 1 ] ) };
+	}
+}
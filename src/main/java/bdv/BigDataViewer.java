@@ -30,6 +30,8 @@ package bdv;
 
 import bdv.viewer.ConverterSetups;
 import bdv.viewer.ViewerState;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
@@ -44,6 +46,7 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.filechooser.FileFilter;
 
+import net.imglib2.FinalDimensions;
 import net.imglib2.Volatile;
 import net.imglib2.converter.Converter;
 import net.imglib2.display.ColorConverter;
@@ -74,6 +77,7 @@ import bdv.tools.InitializeViewerState;
 import bdv.tools.RecordMaxProjectionDialog;
 import bdv.tools.RecordMovieDialog;
 import bdv.tools.VisibilityAndGroupingDialog;
+import bdv.tools.bookmarks.BookmarkPrefetcher;
 import bdv.tools.bookmarks.Bookmarks;
 import bdv.tools.bookmarks.BookmarksEditor;
 import bdv.tools.brightness.BrightnessDialog;
@@ -126,6 +130,8 @@ public class BigDataViewer
 
 	protected final BookmarksEditor bookmarkEditor;
 
+	protected final BookmarkPrefetcher bookmarkPrefetcher;
+
 	protected final JFileChooser fileChooser;
 
 	protected File proposedSettingsFile;
@@ -344,6 +350,20 @@ public class BigDataViewer
 
 		bookmarks = new Bookmarks();
 		bookmarkEditor = new BookmarksEditor( viewer, viewerFrame.getKeybindings(), bookmarks );
+		bookmarkPrefetcher = new BookmarkPrefetcher( bookmarks, viewer.state(),
+				() -> new FinalDimensions( viewer.getDisplay().getWidth(), viewer.getDisplay().getHeight() ),
+				options.values.isUseVolatileIfAvailable() );
+		viewer.renderStatisticsListeners().add( bookmarkPrefetcher );
+		if ( options.values.isPrefetchBookmarks() )
+			bookmarkPrefetcher.start();
+		viewerFrame.addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosing( final WindowEvent e )
+			{
+				bookmarkPrefetcher.stop();
+			}
+		} );
 
 		final ConverterSetups setups = viewerFrame.getConverterSetups();
 		if ( converterSetups.size() != sources.size() )
@@ -553,6 +573,11 @@ public class BigDataViewer
 		return manualTransformationEditor;
 	}
 
+	public BookmarkPrefetcher getBookmarkPrefetcher()
+	{
+		return bookmarkPrefetcher;
+	}
+
 	public boolean tryLoadSettings( final String xmlFilename )
 	{
 		proposedSettingsFile = null;
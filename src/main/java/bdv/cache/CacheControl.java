@@ -28,6 +28,7 @@
  */
 package bdv.cache;
 
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import bdv.img.cache.VolatileGlobalCellCache;
@@ -55,6 +56,43 @@ public interface CacheControl
 	 */
 	void prepareNextFrame();
 
+	/**
+	 * Add a listener that is notified whenever a cell has been loaded.
+	 * <p>
+	 * The default implementation does nothing. Use
+	 * {@link #reportsCellLoads()} to check whether loaded cells are actually
+	 * reported.
+	 */
+	default void addCellLoadListener( final CellLoadListener listener )
+	{}
+
+	/**
+	 * Remove a listener that was added by
+	 * {@link #addCellLoadListener(CellLoadListener)}.
+	 */
+	default void removeCellLoadListener( final CellLoadListener listener )
+	{}
+
+	/**
+	 * Whether all cells loaded through this {@link CacheControl} are reported
+	 * to {@link CellLoadListener}s. If not, the renderer has to poll
+	 * repeatedly for newly loaded data.
+	 */
+	default boolean reportsCellLoads()
+	{
+		return false;
+	}
+
+	/**
+	 * Add the {@link SharedQueue}s that serve this {@link CacheControl} to
+	 * {@code queues}. This can be used to monitor their
+	 * {@link SharedQueue#getQueueDepth() queue depth}.
+	 * <p>
+	 * The default implementation adds nothing.
+	 */
+	default void collectSharedQueues( final Set< SharedQueue > queues )
+	{}
+
 	/**
 	 * {@link CacheControl} that does nothing.
 	 */
@@ -67,15 +105,19 @@ public interface CacheControl
 
 	/**
 	 * {@link CacheControl} backed by a set of {@link CacheControl}s.
-	 * {@link #prepareNextFrame()} forwards to all of them.
+	 * {@link #prepareNextFrame()} forwards to all of them. Added
+	 * {@link CellLoadListener}s are added to all of them.
 	 */
 	class CacheControls implements CacheControl
 	{
 		private final CopyOnWriteArrayList< CacheControl > cacheControls = new CopyOnWriteArrayList<>();
 
+		private final CopyOnWriteArrayList< CellLoadListener > cellLoadListeners = new CopyOnWriteArrayList<>();
+
 		public synchronized void addCacheControl( final CacheControl cacheControl, final int index )
 		{
-			cacheControls.remove( cacheControl );
+			if ( !cacheControls.remove( cacheControl ) )
+				cellLoadListeners.forEach( cacheControl::addCellLoadListener );
 			final int s = cacheControls.size();
 			cacheControls.add( index < 0 ? 0 : index > s ? s : index, cacheControl );
 		}
@@ -85,19 +127,55 @@ public interface CacheControl
 			if ( !cacheControls.contains( cacheControl ) )
 			{
 				cacheControls.add( cacheControl );
+				cellLoadListeners.forEach( cacheControl::addCellLoadListener );
 			}
 		}
 
 		public synchronized void removeCacheControl( final CacheControl cacheControl )
 		{
-			cacheControls.remove( cacheControl );
+			if ( cacheControls.remove( cacheControl ) )
+				cellLoadListeners.forEach( cacheControl::removeCellLoadListener );
 		}
 
 		public synchronized void clear()
 		{
+			for ( final CacheControl c : cacheControls )
+				cellLoadListeners.forEach( c::removeCellLoadListener );
 			cacheControls.clear();
 		}
 
+		@Override
+		public synchronized void addCellLoadListener( final CellLoadListener listener )
+		{
+			if ( cellLoadListeners.addIfAbsent( listener ) )
+				for ( final CacheControl c : cacheControls )
+					c.addCellLoadListener( listener );
+		}
+
+		@Override
+		public synchronized void removeCellLoadListener( final CellLoadListener listener )
+		{
+			if ( cellLoadListeners.remove( listener ) )
+				for ( final CacheControl c : cacheControls )
+					c.removeCellLoadListener( listener );
+		}
+
+		@Override
+		public boolean reportsCellLoads()
+		{
+			for ( final CacheControl c : cacheControls )
+				if ( !c.reportsCellLoads() )
+					return false;
+			return true;
+		}
+
+		@Override
+		public void collectSharedQueues( final Set< SharedQueue > queues )
+		{
+			for ( final CacheControl c : cacheControls )
+				c.collectSharedQueues( queues );
+		}
+
 		@Override
 		public void prepareNextFrame()
 		{
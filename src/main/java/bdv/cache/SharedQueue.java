@@ -28,12 +28,18 @@
  */
 package bdv.cache;
 
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import net.imglib2.cache.queue.BlockingFetchQueues;
 import net.imglib2.cache.queue.FetcherThreads;
 
 /**
  * Queue and threads for asynchronously loading data into a cache
+ * <p>
+ * The number of enqueued and dequeued requests is counted, to estimate the
+ * {@link #getQueueDepth() queue depth}.
  *
  * @author Tobias Pietzsch
  */
@@ -41,6 +47,21 @@ public class SharedQueue extends BlockingFetchQueues< Callable< ? > > implements
 {
 	private final FetcherThreads fetcherThreads;
 
+	private final AtomicLong numEnqueued = new AtomicLong();
+
+	private final AtomicLong numDequeued = new AtomicLong();
+
+	/**
+	 * Number of enqueued requests that were discarded instead of dequeued
+	 * (estimated, see {@link #getQueueDepth()}).
+	 */
+	private final AtomicLong numDiscarded = new AtomicLong();
+
+	/**
+	 * Number of threads currently waiting in {@link #take()}.
+	 */
+	private final AtomicInteger numWaiting = new AtomicInteger();
+
 	public SharedQueue( final int numFetcherThreads, final int numPriorities )
 	{
 		super( numPriorities, numFetcherThreads );
@@ -63,4 +84,80 @@ public class SharedQueue extends BlockingFetchQueues< Callable< ? > > implements
 	{
 		clearToPrefetch();
 	}
+
+	@Override
+	public void collectSharedQueues( final Set< SharedQueue > queues )
+	{
+		queues.add( this );
+	}
+
+	@Override
+	public void put( final Callable< ? > element, final int priority, final boolean enqueuToFront )
+	{
+		super.put( element, priority, enqueuToFront );
+		numEnqueued.incrementAndGet();
+	}
+
+	@Override
+	public Callable< ? > take() throws InterruptedException
+	{
+		numWaiting.incrementAndGet();
+		try
+		{
+			final Callable< ? > element = super.take();
+			numDequeued.incrementAndGet();
+			return element;
+		}
+		finally
+		{
+			numWaiting.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void clear()
+	{
+		final long enqueued = numEnqueued.get();
+		super.clear();
+		numDiscarded.set( enqueued - numDequeued.get() );
+	}
+
+	/**
+	 * Get the total number of requests that were enqueued.
+	 */
+	public long getNumEnqueued()
+	{
+		return numEnqueued.get();
+	}
+
+	/**
+	 * Get the total number of requests that were dequeued by fetcher threads.
+	 */
+	public long getNumDequeued()
+	{
+		return numDequeued.get();
+	}
+
+	/**
+	 * Estimate the number of requests that are currently queued (including
+	 * the prefetch queue), as the number of enqueued requests minus the number
+	 * of dequeued requests.
+	 * <p>
+	 * Requests that are discarded by {@link #clearToPrefetch()} (because the
+	 * prefetch queue is full) are not seen by the counters. To correct for
+	 * that, the estimate is reset to {@code 0} whenever a fetcher thread is
+	 * found waiting for requests.
+	 */
+	public int getQueueDepth()
+	{
+		final long dequeued = numDequeued.get();
+		final long enqueued = numEnqueued.get();
+		if ( numWaiting.get() > 0 )
+		{
+			// the queue is empty
+			numDiscarded.set( enqueued - dequeued );
+			return 0;
+		}
+		return ( int ) Math.max( 0, Math.min( Integer.MAX_VALUE, enqueued - dequeued - numDiscarded.get() ) );
+	}
 }
@@ -136,6 +136,17 @@ public class VolatileCachedCellImg< T extends NativeType< T >, A >
 		return cells.defaultCacheHints;
 	}
 
+	/**
+	 * Get the cells of this image, accessed with the given {@code cacheHints}
+	 * instead of the hints {@link #setCacheHints(CacheHints) set} on this
+	 * image. This can be used to enqueue cells for loading (from any thread)
+	 * without changing the hints that are used for rendering.
+	 */
+	public VolatileCachedCells< Cell< A > > getCells( final CacheHints cacheHints )
+	{
+		return new VolatileCachedCells<>( getCellGrid().getGridDimensions(), cache.unchecked()::get, cacheHints );
+	}
+
 	@Override
 	public ImgFactory< T > factory()
 	{
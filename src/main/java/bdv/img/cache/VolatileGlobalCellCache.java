@@ -28,10 +28,17 @@
  */
 package bdv.img.cache;
 
+import bdv.cache.CellLoadListener;
 import bdv.cache.SharedQueue;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import bdv.cache.CacheControl;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import net.imglib2.cache.Cache;
 import net.imglib2.cache.CacheLoader;
 import net.imglib2.cache.LoaderCache;
@@ -40,7 +47,9 @@ import net.imglib2.cache.ref.SoftRefLoaderCache;
 import net.imglib2.cache.ref.WeakRefVolatileCache;
 import net.imglib2.cache.util.KeyBimap;
 import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.cache.volatiles.VolatileCache;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileAccess;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.NativeType;
@@ -112,6 +121,34 @@ public class VolatileGlobalCellCache implements CacheControl
 
 	protected final LoaderCache< Key, Cell< ? > > backingCache;
 
+	private final CopyOnWriteArrayList< CellLoadListener > cellLoadListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Hints for looking up a cell in a {@link VolatileCache} without
+	 * triggering loading.
+	 */
+	private static final CacheHints DONTLOAD = new CacheHints( LoadingStrategy.DONTLOAD, 0, false );
+
+	/**
+	 * How often (once per millisecond) a loaded cell is checked for being
+	 * visible as valid through the volatile cache, before listeners are
+	 * notified anyway.
+	 */
+	private static final int MAX_PUBLICATION_CHECKS = 100;
+
+	/**
+	 * Thread that notifies {@link CellLoadListener}s. Lazily created, shared
+	 * by all caches.
+	 */
+	private static final class CellLoadNotifier
+	{
+		static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor( r -> {
+			final Thread t = new Thread( r, "bdv-cell-load-notifier" );
+			t.setDaemon( true );
+			return t;
+		} );
+	}
+
 	/**
 	 * Create a new global cache with a new fetch queue served by the specified
 	 * number of fetcher threads.
@@ -151,6 +188,35 @@ public class VolatileGlobalCellCache implements CacheControl
 		queue.clearToPrefetch();
 	}
 
+	@Override
+	public void addCellLoadListener( final CellLoadListener listener )
+	{
+		cellLoadListeners.addIfAbsent( listener );
+	}
+
+	@Override
+	public void removeCellLoadListener( final CellLoadListener listener )
+	{
+		cellLoadListeners.remove( listener );
+	}
+
+	@Override
+	public void collectSharedQueues( final Set< SharedQueue > queues )
+	{
+		if ( queue instanceof SharedQueue )
+			queues.add( ( SharedQueue ) queue );
+	}
+
+	/**
+	 * All cells are loaded through the loaders set up in {@code createImg()},
+	 * which report to {@link CellLoadListener}s.
+	 */
+	@Override
+	public boolean reportsCellLoads()
+	{
+		return true;
+	}
+
 	/**
 	 * Remove all references to loaded data.
 	 * <p>
@@ -247,19 +313,62 @@ public class VolatileGlobalCellCache implements CacheControl
 						? key.index
 						: null );
 
+		final AtomicReference< VolatileCache< Long, Cell< ? > > > vcacheRef = new AtomicReference<>();
+		final CacheLoader< Long, Cell< ? > > reportingLoader = key -> {
+			final Cell< ? > cell = loader.get( key );
+			if ( !cellLoadListeners.isEmpty() )
+				notifyWhenPublished( grid, cell, vcacheRef.get(), key, 0 );
+			return cell;
+		};
+
 		final Cache< Long, Cell< ? > > cache = backingCache
 				.mapKeys( bimap )
-				.withLoader( loader );
+				.withLoader( reportingLoader );
 
 		final CreateInvalidVolatileCell< ? > createInvalid = ( emptyArrayCreator == null )
 				? CreateInvalidVolatileCell.get( grid, type, false )
 				: new CreateInvalidVolatileCell<>( grid, type.getEntitiesPerPixel(), emptyArrayCreator );
 
 		final VolatileCache< Long, Cell< ? > > vcache = new WeakRefVolatileCache<>( cache, queue, createInvalid );
+		vcacheRef.set( vcache );
 
 		@SuppressWarnings( "unchecked" )
 		final VolatileCachedCellImg< T, A > img = new VolatileCachedCellImg<>( grid, type, cacheHints, ( VolatileCache ) vcache );
 
 		return img;
 	}
+
+	/**
+	 * Notify {@link CellLoadListener}s that {@code cell} has been loaded, as
+	 * soon as it is visible as valid through {@code vcache}. The loader
+	 * returns the cell before the volatile cache publishes it, so listeners
+	 * that react by re-reading the cell would otherwise see it as invalid.
+	 */
+	private void notifyWhenPublished(
+			final CellGrid grid,
+			final Cell< ? > cell,
+			final VolatileCache< Long, Cell< ? > > vcache,
+			final Long key,
+			final int numChecks )
+	{
+		final Runnable check = () -> {
+			if ( numChecks < MAX_PUBLICATION_CHECKS && !isPublished( vcache, key ) )
+				notifyWhenPublished( grid, cell, vcache, key, numChecks + 1 );
+			else
+				for ( final CellLoadListener l : cellLoadListeners )
+					l.cellLoaded( grid, cell );
+		};
+		if ( numChecks == 0 )
+			CellLoadNotifier.executor.execute( check );
+		else
+			CellLoadNotifier.executor.schedule( check, 1, TimeUnit.MILLISECONDS );
+	}
+
+	private static boolean isPublished( final VolatileCache< Long, Cell< ? > > vcache, final Long key )
+	{
+		if ( vcache == null )
+			return true;
+		final Object data = vcache.unchecked().get( key, DONTLOAD ).getData();
+		return !( data instanceof VolatileAccess ) || ( ( VolatileAccess ) data ).isValid();
+	}
 }
@@ -0,0 +1,241 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.tools;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import javax.imageio.ImageIO;
+
+/**
+ * Writes movie frames as PNG files on a pool of encoder threads, such that
+ * rendering the next frames can proceed while previous frames are encoded.
+ * <p>
+ * {@link #write} hands a rendered frame to the pool. Each frame is optionally
+ * decorated with an overlay (e.g., scale bar), then encoded and written. At
+ * most {@code maxPendingFrames} frames are queued or being encoded at any
+ * time; {@code write} blocks while that many are pending, so that rendering
+ * cannot run arbitrarily far ahead of encoding.
+ * <p>
+ * {@link #close()} waits until all frames are written. If writing a frame
+ * failed, the exception is thrown by the next {@code write} or by
+ * {@code close}.
+ */
+public class MovieFrameWriter
+{
+	public enum Compression
+	{
+		/**
+		 * PNG written by {@code ImageIO} with its default compression.
+		 */
+		DEFAULT( "default" ),
+
+		/**
+		 * PNG with the fastest deflate level. Files are somewhat larger than
+		 * {@link #DEFAULT}, but encoding is several times faster.
+		 */
+		FAST( "fast" ),
+
+		/**
+		 * Uncompressed (stored) PNG. Fastest to write, largest files.
+		 */
+		NONE( "none" );
+
+		private final String name;
+
+		Compression( final String name )
+		{
+			this.name = name;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+
+	private final Compression compression;
+
+	private final ExecutorService encoders;
+
+	private final Semaphore pending;
+
+	private final AtomicReference< IOException > error = new AtomicReference<>();
+
+	/**
+	 * Create a writer with one encoder thread per two available processors
+	 * (the other half is left for rendering).
+	 */
+	public MovieFrameWriter( final Compression compression )
+	{
+		this( compression, Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 ) );
+	}
+
+	/**
+	 * Create a writer with {@code numEncoderThreads} encoder threads, and at
+	 * most {@code numEncoderThreads + 2} pending frames.
+	 */
+	public MovieFrameWriter( final Compression compression, final int numEncoderThreads )
+	{
+		this( compression, numEncoderThreads, numEncoderThreads + 2 );
+	}
+
+	public MovieFrameWriter( final Compression compression, final int numEncoderThreads, final int maxPendingFrames )
+	{
+		this.compression = compression;
+		encoders = Executors.newFixedThreadPool( numEncoderThreads );
+		pending = new Semaphore( maxPendingFrames );
+	}
+
+	/**
+	 * Enqueue {@code image} to be written to {@code file}. Blocks while the
+	 * maximum number of frames is pending.
+	 *
+	 * @param image
+	 *     the rendered frame. It must not be modified after calling this
+	 *     method.
+	 * @param overlay
+	 *     draws overlays onto the frame before it is encoded. May be
+	 *     {@code null}. This is called on an encoder thread.
+	 * @param file
+	 *     the PNG file to write.
+	 *
+	 * @throws IOException
+	 *     if writing a previous frame failed, or if interrupted while waiting.
+	 */
+	public void write( final BufferedImage image, final Consumer< Graphics2D > overlay, final File file ) throws IOException
+	{
+		checkError();
+		try
+		{
+			pending.acquire();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		encoders.execute( () -> {
+			try
+			{
+				if ( error.get() == null )
+				{
+					if ( overlay != null )
+						drawOverlay( image, overlay );
+					writePng( image, file, compression );
+				}
+			}
+			catch ( final IOException e )
+			{
+				error.compareAndSet( null, e );
+			}
+			catch ( final RuntimeException e )
+			{
+				error.compareAndSet( null, new IOException( "writing " + file + " failed", e ) );
+			}
+			finally
+			{
+				pending.release();
+			}
+		} );
+	}
+
+	/**
+	 * Wait until all pending frames are written, and stop the encoder
+	 * threads.
+	 *
+	 * @throws IOException
+	 *     if writing any frame failed, or if interrupted while waiting.
+	 */
+	public void close() throws IOException
+	{
+		encoders.shutdown();
+		try
+		{
+			encoders.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+		}
+		catch ( final InterruptedException e )
+		{
+			encoders.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		checkError();
+	}
+
+	private void checkError() throws IOException
+	{
+		final IOException e = error.get();
+		if ( e != null )
+			throw e;
+	}
+
+	private static void drawOverlay( final BufferedImage image, final Consumer< Graphics2D > overlay )
+	{
+		final Graphics2D g2 = image.createGraphics();
+		g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+		g2.setClip( 0, 0, image.getWidth(), image.getHeight() );
+		overlay.accept( g2 );
+		g2.dispose();
+	}
+
+	/**
+	 * Write {@code image} to {@code file} as PNG with the given
+	 * {@code compression}.
+	 */
+	public static void writePng( final BufferedImage image, final File file, final Compression compression ) throws IOException
+	{
+		if ( compression == Compression.DEFAULT )
+		{
+			if ( !ImageIO.write( image, "png", file ) )
+				throw new IOException( "no PNG writer for image type " + image.getType() );
+			return;
+		}
+
+		final int deflateLevel = compression == Compression.FAST ? Deflater.BEST_SPEED : Deflater.NO_COMPRESSION;
+		try ( final OutputStream out = new BufferedOutputStream( new FileOutputStream( file ), 1 << 16 ) )
+		{
+			PngEncoder.write( image, deflateLevel, out );
+		}
+	}
+}
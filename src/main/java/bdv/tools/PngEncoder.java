@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Minimal PNG encoder with a configurable deflate level. (The PNG writer of
+ * {@code ImageIO} does not allow to choose the compression level on all Java
+ * versions.)
+ * <p>
+ * Images are written as 8-bit RGBA if they have an alpha channel, and as 8-bit
+ * RGB otherwise. Scanlines are not filtered, which is fastest and suits the
+ * fast and uncompressed modes this is used for.
+ */
+final class PngEncoder
+{
+	private static final byte[] SIGNATURE = { ( byte ) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	private static final byte COLOR_TYPE_RGB = 2;
+
+	private static final byte COLOR_TYPE_RGBA = 6;
+
+	private PngEncoder()
+	{}
+
+	/**
+	 * Write {@code image} as PNG to {@code out}.
+	 *
+	 * @param deflateLevel
+	 *     compression level, from {@link Deflater#NO_COMPRESSION} to
+	 *     {@link Deflater#BEST_COMPRESSION}.
+	 */
+	static void write( final BufferedImage image, final int deflateLevel, final OutputStream out ) throws IOException
+	{
+		final int w = image.getWidth();
+		final int h = image.getHeight();
+		final boolean alpha = image.getColorModel().hasAlpha();
+		final int bytesPerPixel = alpha ? 4 : 3;
+
+		final DataOutputStream dos = new DataOutputStream( out );
+		dos.write( SIGNATURE );
+
+		final ByteArrayOutputStream header = new ByteArrayOutputStream( 13 );
+		final DataOutputStream hos = new DataOutputStream( header );
+		hos.writeInt( w );
+		hos.writeInt( h );
+		hos.writeByte( 8 ); // bit depth
+		hos.writeByte( alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB );
+		hos.writeByte( 0 ); // compression method
+		hos.writeByte( 0 ); // filter method
+		hos.writeByte( 0 ); // interlace method
+		writeChunk( dos, "IHDR", header.toByteArray() );
+
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		final Deflater deflater = new Deflater( deflateLevel );
+		try ( final DeflaterOutputStream dfos = new DeflaterOutputStream( data, deflater, 1 << 16 ) )
+		{
+			final int[] argb = new int[ w ];
+			final byte[] line = new byte[ 1 + w * bytesPerPixel ];
+			line[ 0 ] = 0; // filter type None
+			for ( int y = 0; y < h; ++y )
+			{
+				image.getRGB( 0, y, w, 1, argb, 0, w );
+				int i = 1;
+				for ( int x = 0; x < w; ++x )
+				{
+					final int v = argb[ x ];
+					line[ i++ ] = ( byte ) ( v >> 16 );
+					line[ i++ ] = ( byte ) ( v >> 8 );
+					line[ i++ ] = ( byte ) v;
+					if ( alpha )
+						line[ i++ ] = ( byte ) ( v >> 24 );
+				}
+				dfos.write( line );
+			}
+		}
+		finally
+		{
+			deflater.end();
+		}
+		writeChunk( dos, "IDAT", data.toByteArray() );
+		writeChunk( dos, "IEND", new byte[ 0 ] );
+		dos.flush();
+	}
+
+	private static void writeChunk( final DataOutputStream out, final String type, final byte[] data ) throws IOException
+	{
+		final byte[] typeBytes = type.getBytes( StandardCharsets.US_ASCII );
+		final CRC32 crc = new CRC32();
+		crc.update( typeBytes );
+		crc.update( data );
+		out.writeInt( data.length );
+		out.write( typeBytes );
+		out.write( data );
+		out.writeInt( ( int ) crc.getValue() );
+	}
+}
@@ -28,35 +28,35 @@
  */
 package bdv.tools;
 
-import bdv.cache.CacheControl;
 import bdv.export.ProgressWriter;
 import bdv.util.DelayedPackDialog;
 import bdv.util.Prefs;
 import bdv.viewer.BasicViewerState;
+import bdv.viewer.ViewerOptions;
 import bdv.viewer.ViewerPanel;
 import bdv.viewer.ViewerState;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
-import bdv.viewer.render.awt.BufferedImageRenderResult;
-import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.OffscreenRenderer;
 import java.awt.BorderLayout;
 import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.ActionMap;
 import javax.swing.BoxLayout;
 import javax.swing.InputMap;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
@@ -67,14 +67,10 @@ import javax.swing.KeyStroke;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
-import net.imglib2.Cursor;
 import net.imglib2.display.screenimage.awt.ARGBScreenImage;
-import net.imglib2.img.Img;
-import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 import bdv.viewer.OverlayRenderer;
-import bdv.viewer.render.RenderTarget;
 import net.imglib2.util.LinAlgHelpers;
 
 public class RecordMaxProjectionDialog extends DelayedPackDialog implements OverlayRenderer
@@ -97,6 +93,8 @@ public class RecordMaxProjectionDialog extends DelayedPackDialog implements Over
 
 	private final JSpinner spinnerHeight;
 
+	private final JComboBox< MovieFrameWriter.Compression > compressionComboBox;
+
 	private final JSpinner spinnerStepSize;
 
 	private final JSpinner spinnerNumSteps;
@@ -154,6 +152,12 @@ public class RecordMaxProjectionDialog extends DelayedPackDialog implements Over
 		spinnerHeight.setModel( new SpinnerNumberModel( 600, 10, 5000, 1 ) );
 		heightPanel.add( spinnerHeight );
 
+		final JPanel compressionPanel = new JPanel();
+		boxes.add( compressionPanel );
+		compressionPanel.add( new JLabel( "PNG compression" ) );
+		compressionComboBox = new JComboBox<>( MovieFrameWriter.Compression.values() );
+		compressionPanel.add( compressionComboBox );
+
 		final JPanel stepSizePanel = new JPanel();
 		boxes.add( stepSizePanel );
 		stepSizePanel.add( new JLabel( "slice step size" ) );
@@ -236,6 +240,7 @@ public class RecordMaxProjectionDialog extends DelayedPackDialog implements Over
 				final int maxTimepointIndex = ( Integer ) spinnerMaxTimepoint.getValue();
 				final int width = ( Integer ) spinnerWidth.getValue();
 				final int height = ( Integer ) spinnerHeight.getValue();
+				final MovieFrameWriter.Compression compression = ( MovieFrameWriter.Compression ) compressionComboBox.getSelectedItem();
 				final double stepSize = ( Double ) spinnerStepSize.getValue();
 				final int numSteps = ( Integer ) spinnerNumSteps.getValue();
 				new Thread()
@@ -246,7 +251,7 @@ public class RecordMaxProjectionDialog extends DelayedPackDialog implements Over
 						try
 						{
 							recordButton.setEnabled( false );
-							recordMovie( width, height, minTimepointIndex, maxTimepointIndex, stepSize, numSteps, dir );
+							recordMovie( width, height, minTimepointIndex, maxTimepointIndex, stepSize, numSteps, dir, compression );
 							recordButton.setEnabled( true );
 						}
 						catch ( final Exception ex )
@@ -281,6 +286,20 @@ public class RecordMaxProjectionDialog extends DelayedPackDialog implements Over
 	 * @param stepSize in multiples of width of a source voxel.
 	 */
 	public void recordMovie( final int width, final int height, final int minTimepointIndex, final int maxTimepointIndex, final double stepSize, final int numSteps, final File dir ) throws IOException
+	{
+		recordMovie( width, height, minTimepointIndex, maxTimepointIndex, stepSize, numSteps, dir, MovieFrameWriter.Compression.DEFAULT );
+	}
+
+	/**
+	 * Render maximum projections over {@code numSteps} slices for timepoints
+	 * {@code minTimepointIndex} to {@code maxTimepointIndex} and write them as
+	 * PNG files to {@code dir}. Slices are rendered with an
+	 * {@link OffscreenRenderer}, while previous frames are decorated and
+	 * encoded by a {@link MovieFrameWriter}.
+	 *
+	 * @param stepSize in multiples of width of a source voxel.
+	 */
+	public void recordMovie( final int width, final int height, final int minTimepointIndex, final int maxTimepointIndex, final double stepSize, final int numSteps, final File dir, final MovieFrameWriter.Compression compression ) throws IOException
 	{
 		final ViewerState renderState = new BasicViewerState( viewer.state().snapshot() );
 		final int canvasW = viewer.getDisplay().getWidth();
@@ -294,8 +313,6 @@ public class RecordMaxProjectionDialog extends DelayedPackDialog implements Over
 		tGV.set( tGV.get( 0, 3 ) + width / 2, 0, 3 );
 		tGV.set( tGV.get( 1, 3 ) + height / 2, 1, 3 );
 
-		final AffineTransform3D affine = new AffineTransform3D();
-
 		// get voxel width transformed to current viewer coordinates
 		final AffineTransform3D tSV = new AffineTransform3D();
 		renderState.getSources().get( 0 ).getSpimSource().getSourceTransform( 0, 0, tSV );
@@ -309,97 +326,70 @@ public class RecordMaxProjectionDialog extends DelayedPackDialog implements Over
 		LinAlgHelpers.subtract( vO, vX, vO );
 		final double dd = LinAlgHelpers.length( vO );
 
-		final ScaleBarOverlayRenderer scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
-
-		class MyTarget implements RenderTarget< BufferedImageRenderResult >
+		final boolean showScaleBar = Prefs.showScaleBarInMovie();
+		final ViewerOptions.Values options = viewer.getOptionValues();
+		final OffscreenRenderer renderer = new OffscreenRenderer( width, height, options.getNumRenderingThreads(), null, options.getAccumulateProjectorFactory() );
+		final MovieFrameWriter writer = new MovieFrameWriter( compression );
+		progressWriter.setProgress( 0 );
+		try
 		{
-			final ARGBScreenImage accumulated = new ARGBScreenImage( width, height );
-
-			final BufferedImageRenderResult renderResult = new BufferedImageRenderResult();
-
-			public void clear()
-			{
-				for ( final ARGBType acc : accumulated )
-					acc.setZero();
-			}
-
-			@Override
-			public BufferedImageRenderResult getReusableRenderResult()
+			for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
 			{
-				return renderResult;
-			}
+				renderState.setCurrentTimepoint( timepoint );
+				renderState.setViewerTransform( tGV );
+				final ViewerState frame = renderState.snapshot();
 
-			@Override
-			public BufferedImageRenderResult createRenderResult()
-			{
-				return new BufferedImageRenderResult();
-			}
-
-			@Override
-			public void setRenderResult( final BufferedImageRenderResult renderResult )
-			{
-				final BufferedImage bufferedImage = renderResult.getBufferedImage();
-				final Img< ARGBType > argbs = ArrayImgs.argbs( ( ( DataBufferInt ) bufferedImage.getData().getDataBuffer() ).getData(), width, height );
-				final Cursor< ARGBType > c = argbs.cursor();
-				for ( final ARGBType acc : accumulated )
+				final List< ViewerState > slices = new ArrayList<>();
+				for ( int step = 0; step < numSteps; ++step )
 				{
-					final int current = acc.get();
-					final int in = c.next().get();
-					acc.set( ARGBType.rgba(
-							Math.max( ARGBType.red( in ), ARGBType.red( current ) ),
-							Math.max( ARGBType.green( in ), ARGBType.green( current ) ),
-							Math.max( ARGBType.blue( in ), ARGBType.blue( current ) ),
-							Math.max( ARGBType.alpha( in ), ARGBType.alpha( current ) )	) );
+					final AffineTransform3D affine = new AffineTransform3D();
+					affine.set(
+							1, 0, 0, 0,
+							0, 1, 0, 0,
+							0, 0, 1, -dd * stepSize * step );
+					affine.concatenate( tGV );
+					final ViewerState slice = new BasicViewerState( renderState );
+					slice.setViewerTransform( affine );
+					slices.add( slice );
 				}
-			}
 
-			@Override
-			public final int getWidth()
-			{
-				return width;
-			}
+				final int[] accumulated = new int[ width * height ];
+				renderer.renderAll( slices, ( step, argb ) -> accumulateMax( accumulated, argb ) );
 
-			@Override
-			public int getHeight()
-			{
-				return height;
+				final BufferedImage bi = new ARGBScreenImage( width, height, accumulated ).image();
+				final Consumer< Graphics2D > overlay = showScaleBar
+						? g2 -> {
+							final ScaleBarOverlayRenderer scalebar = new ScaleBarOverlayRenderer();
+							scalebar.setViewerState( frame );
+							scalebar.paint( g2 );
+						}
+						: null;
+				writer.write( bi, overlay, new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
+				progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
 			}
 		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer(
-				target, () -> {}, new double[] { 1 }, 0, 1, null, false,
-				viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
-		progressWriter.setProgress( 0 );
-		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
+		finally
 		{
-			target.clear();
-			renderState.setCurrentTimepoint( timepoint );
-
-			for ( int step = 0; step < numSteps; ++step )
-			{
-				affine.set(
-						1, 0, 0, 0,
-						0, 1, 0, 0,
-						0, 0, 1, -dd * stepSize * step );
-				affine.concatenate( tGV );
-				renderState.setViewerTransform( affine );
-				renderer.requestRepaint();
-				renderer.paint( renderState );
-			}
-
-			final BufferedImage bi = target.accumulated.image();
-
-			if ( Prefs.showScaleBarInMovie() )
-			{
-				final Graphics2D g2 = bi.createGraphics();
-				g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
-				g2.setClip( 0, 0, width, height );
-				scalebar.setViewerState( renderState );
-				scalebar.paint( g2 );
-			}
+			renderer.shutdown();
+			writer.close();
+		}
+	}
 
-			ImageIO.write( bi, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
-			progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
+	/**
+	 * Set each channel of {@code accumulated} to the maximum of
+	 * {@code accumulated} and {@code argb}.
+	 */
+	private static void accumulateMax( final int[] accumulated, final int[] argb )
+	{
+		for ( int i = 0; i < accumulated.length; ++i )
+		{
+			final int current = accumulated[ i ];
+			final int in = argb[ i ];
+			accumulated[ i ] = ARGBType.rgba(
+					Math.max( ARGBType.red( in ), ARGBType.red( current ) ),
+					Math.max( ARGBType.green( in ), ARGBType.green( current ) ),
+					Math.max( ARGBType.blue( in ), ARGBType.blue( current ) ),
+					Math.max( ARGBType.alpha( in ), ARGBType.alpha( current ) ) );
 		}
 	}
 
@@ -28,34 +28,35 @@
  */
 package bdv.tools;
 
-import bdv.cache.CacheControl;
 import bdv.export.ProgressWriter;
 import bdv.util.DelayedPackDialog;
 import bdv.util.Prefs;
 import bdv.viewer.BasicViewerState;
+import bdv.viewer.ViewerOptions;
 import bdv.viewer.ViewerPanel;
 import bdv.viewer.ViewerState;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
-import bdv.viewer.render.awt.BufferedImageRenderResult;
-import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.OffscreenRenderer;
 import java.awt.BorderLayout;
 import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.ActionMap;
 import javax.swing.BoxLayout;
 import javax.swing.InputMap;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
@@ -66,9 +67,9 @@ import javax.swing.KeyStroke;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import net.imglib2.display.screenimage.awt.ARGBScreenImage;
 import net.imglib2.realtransform.AffineTransform3D;
 import bdv.viewer.OverlayRenderer;
-import bdv.viewer.render.RenderTarget;
 
 public class RecordMovieDialog extends DelayedPackDialog implements OverlayRenderer
 {
@@ -90,6 +91,8 @@ public class RecordMovieDialog extends DelayedPackDialog implements OverlayRende
 
 	private final JSpinner spinnerHeight;
 
+	private final JComboBox< MovieFrameWriter.Compression > compressionComboBox;
+
 	public RecordMovieDialog( final Frame owner, final ViewerPanel viewer, final ProgressWriter progressWriter )
 	{
 		super( owner, "record movie", false );
@@ -143,6 +146,12 @@ public class RecordMovieDialog extends DelayedPackDialog implements OverlayRende
 		spinnerHeight.setModel( new SpinnerNumberModel( 600, 10, 5000, 1 ) );
 		heightPanel.add( spinnerHeight );
 
+		final JPanel compressionPanel = new JPanel();
+		boxes.add( compressionPanel );
+		compressionPanel.add( new JLabel( "PNG compression" ) );
+		compressionComboBox = new JComboBox<>( MovieFrameWriter.Compression.values() );
+		compressionPanel.add( compressionComboBox );
+
 		final JPanel buttonsPanel = new JPanel();
 		boxes.add( buttonsPanel );
 		buttonsPanel.setLayout(new BorderLayout(0, 0));
@@ -211,6 +220,7 @@ public class RecordMovieDialog extends DelayedPackDialog implements OverlayRende
 				final int maxTimepointIndex = ( Integer ) spinnerMaxTimepoint.getValue();
 				final int width = ( Integer ) spinnerWidth.getValue();
 				final int height = ( Integer ) spinnerHeight.getValue();
+				final MovieFrameWriter.Compression compression = ( MovieFrameWriter.Compression ) compressionComboBox.getSelectedItem();
 				new Thread()
 				{
 					@Override
@@ -219,7 +229,7 @@ public class RecordMovieDialog extends DelayedPackDialog implements OverlayRende
 						try
 						{
 							recordButton.setEnabled( false );
-							recordMovie( width, height, minTimepointIndex, maxTimepointIndex, dir );
+							recordMovie( width, height, minTimepointIndex, maxTimepointIndex, dir, compression );
 							recordButton.setEnabled( true );
 						}
 						catch ( final Exception ex )
@@ -251,6 +261,17 @@ public class RecordMovieDialog extends DelayedPackDialog implements OverlayRende
 	}
 
 	public void recordMovie( final int width, final int height, final int minTimepointIndex, final int maxTimepointIndex, final File dir ) throws IOException
+	{
+		recordMovie( width, height, minTimepointIndex, maxTimepointIndex, dir, MovieFrameWriter.Compression.DEFAULT );
+	}
+
+	/**
+	 * Render timepoints {@code minTimepointIndex} to {@code maxTimepointIndex}
+	 * and write them as PNG files to {@code dir}. Frames are rendered with an
+	 * {@link OffscreenRenderer}, while previous frames are decorated and
+	 * encoded by a {@link MovieFrameWriter}.
+	 */
+	public void recordMovie( final int width, final int height, final int minTimepointIndex, final int maxTimepointIndex, final File dir, final MovieFrameWriter.Compression compression ) throws IOException
 	{
 		final ViewerState renderState = new BasicViewerState( viewer.state().snapshot() );
 		final int canvasW = viewer.getDisplay().getWidth();
@@ -265,63 +286,39 @@ public class RecordMovieDialog extends DelayedPackDialog implements OverlayRende
 		affine.set( affine.get( 1, 3 ) + height / 2, 1, 3 );
 		renderState.setViewerTransform( affine );
 
-		final ScaleBarOverlayRenderer scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
-
-		class MyTarget implements RenderTarget< BufferedImageRenderResult >
+		final List< ViewerState > frames = new ArrayList<>();
+		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
 		{
-			final BufferedImageRenderResult renderResult = new BufferedImageRenderResult();
-
-			@Override
-			public BufferedImageRenderResult getReusableRenderResult()
-			{
-				return renderResult;
-			}
-
-			@Override
-			public BufferedImageRenderResult createRenderResult()
-			{
-				return new BufferedImageRenderResult();
-			}
-
-			@Override
-			public void setRenderResult( final BufferedImageRenderResult renderResult )
-			{}
-
-			@Override
-			public int getWidth()
-			{
-				return width;
-			}
-
-			@Override
-			public int getHeight()
-			{
-				return height;
-			}
+			final ViewerState frame = new BasicViewerState( renderState );
+			frame.setCurrentTimepoint( timepoint );
+			frames.add( frame );
 		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer(
-				target, () -> {}, new double[] { 1 }, 0, 1, null, false,
-				viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
+
+		final boolean showScaleBar = Prefs.showScaleBarInMovie();
+		final ViewerOptions.Values options = viewer.getOptionValues();
+		final OffscreenRenderer renderer = new OffscreenRenderer( width, height, options.getNumRenderingThreads(), null, options.getAccumulateProjectorFactory() );
+		final MovieFrameWriter writer = new MovieFrameWriter( compression );
 		progressWriter.setProgress( 0 );
-		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
+		try
 		{
-			renderState.setCurrentTimepoint( timepoint );
-			renderer.requestRepaint();
-			renderer.paint( renderState );
-
-			final BufferedImage bi = target.renderResult.getBufferedImage();
-			if ( Prefs.showScaleBarInMovie() )
-			{
-				final Graphics2D g2 = bi.createGraphics();
-				g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
-				g2.setClip( 0, 0, width, height );
-				scalebar.setViewerState( renderState );
-				scalebar.paint( g2 );
-			}
-
-			ImageIO.write( bi, "png", new File( String.format( "%s/img-%03d.png", dir, timepoint ) ) );
-			progressWriter.setProgress( ( double ) (timepoint - minTimepointIndex + 1) / (maxTimepointIndex - minTimepointIndex + 1) );
+			renderer.renderAll( frames, ( i, argb ) -> {
+				final ViewerState frame = frames.get( i );
+				final BufferedImage bi = new ARGBScreenImage( width, height, argb ).image();
+				final Consumer< Graphics2D > overlay = showScaleBar
+						? g2 -> {
+							final ScaleBarOverlayRenderer scalebar = new ScaleBarOverlayRenderer();
+							scalebar.setViewerState( frame );
+							scalebar.paint( g2 );
+						}
+						: null;
+				writer.write( bi, overlay, new File( String.format( "%s/img-%03d.png", dir, frame.getCurrentTimepoint() ) ) );
+				progressWriter.setProgress( ( double ) ( i + 1 ) / frames.size() );
+			} );
+		}
+		finally
+		{
+			renderer.shutdown();
+			writer.close();
 		}
 	}
 
@@ -0,0 +1,268 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.tools.bookmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import net.imglib2.Dimensions;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import bdv.util.MipmapTransforms;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+import bdv.viewer.render.Prefetcher;
+import bdv.viewer.render.RenderStatistics;
+import bdv.viewer.render.RenderStatisticsListener;
+
+/**
+ * Warms the cache with the data needed to show {@link Bookmarks}, while the
+ * viewer is idle.
+ * <p>
+ * Add this to the render statistics listeners of the viewer. When a frame
+ * has been rendered completely and no other frame is rendered for
+ * {@link #setIdleDelay(long) a while}, the cells needed to render each
+ * bookmark at the current timepoint and canvas size are enqueued for
+ * loading. Coarse mipmap levels of all bookmarks are enqueued first, then
+ * finer levels, down to the best level for each bookmark, as long as the
+ * estimated size of the enqueued cells stays within the
+ * {@link #setMemoryBudget(long) memory budget}. Cells are enqueued at the
+ * lowest priority that is used for the respective source when rendering,
+ * so they are only loaded when nothing else is waiting.
+ * <p>
+ * The bookmarks are only warmed again after they, the timepoint, the
+ * visible sources, the interpolation, or the canvas size change.
+ */
+public class BookmarkPrefetcher implements RenderStatisticsListener
+{
+	private final Bookmarks bookmarks;
+
+	private final ViewerState state;
+
+	private final Supplier< ? extends Dimensions > screenSize;
+
+	private final boolean useVolatileIfAvailable;
+
+	private long idleDelayMillis = 1000;
+
+	private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+
+	private ScheduledExecutorService executor;
+
+	private ScheduledFuture< ? > pending;
+
+	/**
+	 * Identifies the bookmarks and viewer state that were warmed last, or
+	 * {@code null}.
+	 */
+	private List< Object > warmed;
+
+	/**
+	 * @param bookmarks
+	 *     the bookmarks to prefetch.
+	 * @param state
+	 *     the state of the viewer showing the bookmarks.
+	 * @param screenSize
+	 *     provides the current size of the canvas.
+	 * @param useVolatileIfAvailable
+	 *     whether volatile versions of sources are rendered if available.
+	 */
+	public BookmarkPrefetcher( final Bookmarks bookmarks, final ViewerState state, final Supplier< ? extends Dimensions > screenSize, final boolean useVolatileIfAvailable )
+	{
+		this.bookmarks = bookmarks;
+		this.state = state;
+		this.screenSize = screenSize;
+		this.useVolatileIfAvailable = useVolatileIfAvailable;
+	}
+
+	/**
+	 * Set how long (in milliseconds) the viewer must not render a new frame,
+	 * before bookmarks are prefetched.
+	 */
+	public synchronized void setIdleDelay( final long millis )
+	{
+		idleDelayMillis = Math.max( 0, millis );
+	}
+
+	/**
+	 * Set the maximum estimated size (in bytes) of the cells that are
+	 * enqueued for all bookmarks together.
+	 */
+	public synchronized void setMemoryBudget( final long bytes )
+	{
+		memoryBudget = Math.max( 0, bytes );
+	}
+
+	/**
+	 * Start prefetching bookmarks when the viewer is idle.
+	 */
+	public synchronized void start()
+	{
+		if ( executor != null )
+			return;
+
+		executor = Executors.newSingleThreadScheduledExecutor( r -> {
+			final Thread t = new Thread( r, "bdv-bookmark-prefetch" );
+			t.setDaemon( true );
+			return t;
+		} );
+		warmed = null;
+	}
+
+	/**
+	 * Stop prefetching bookmarks.
+	 */
+	public synchronized void stop()
+	{
+		if ( executor != null )
+		{
+			executor.shutdownNow();
+			executor = null;
+			pending = null;
+		}
+	}
+
+	public synchronized boolean isRunning()
+	{
+		return executor != null;
+	}
+
+	@Override
+	public synchronized void frameRendered( final RenderStatistics statistics )
+	{
+		if ( executor == null || statistics.isInterval() )
+			return;
+
+		if ( pending != null )
+			pending.cancel( true );
+		pending = statistics.isComplete()
+				? executor.schedule( this::prefetch, idleDelayMillis, TimeUnit.MILLISECONDS )
+				: null;
+	}
+
+	private void prefetch()
+	{
+		final ViewerState snapshot = state.snapshot();
+		final Dimensions screen = screenSize.get();
+		final int width = ( int ) screen.dimension( 0 );
+		final int height = ( int ) screen.dimension( 1 );
+		if ( width <= 0 || height <= 0 )
+			return;
+
+		final int timepoint = snapshot.getCurrentTimepoint();
+		final Interpolation interpolation = snapshot.getInterpolation();
+		final List< Source< ? > > sources = new ArrayList<>();
+		for ( final SourceAndConverter< ? > source : snapshot.getVisibleAndPresentSources() )
+			sources.add( getRenderedSource( source ) );
+
+		final long budget;
+		synchronized ( this )
+		{
+			budget = memoryBudget;
+		}
+
+		final List< Object > key = new ArrayList<>( Arrays.asList( timepoint, interpolation, width, height, budget ) );
+		key.addAll( sources );
+		final List< AffineTransform3D > screenTransforms = new ArrayList<>();
+		for ( final String name : bookmarks.getKeys() )
+		{
+			final AffineTransform3D bookmark = bookmarks.get( name );
+			if ( bookmark == null )
+				continue;
+			// bookmarks are stored relative to the canvas center
+			final AffineTransform3D t = bookmark.copy();
+			t.set( t.get( 0, 3 ) + width / 2.0, 0, 3 );
+			t.set( t.get( 1, 3 ) + height / 2.0, 1, 3 );
+			screenTransforms.add( t );
+			key.add( Arrays.toString( t.getRowPackedCopy() ) );
+		}
+
+		synchronized ( this )
+		{
+			if ( key.equals( warmed ) )
+				return;
+		}
+
+		long bytes = 0;
+		for ( int d = 0;; ++d )
+		{
+			boolean finerLevels = false;
+			for ( final AffineTransform3D screenTransform : screenTransforms )
+			{
+				for ( final Source< ? > source : sources )
+				{
+					if ( Thread.currentThread().isInterrupted() )
+						return;
+
+					final int coarsest = source.getNumMipmapLevels() - 1;
+					final int level = coarsest - d;
+					if ( level < MipmapTransforms.getBestMipMapLevel( screenTransform, source, timepoint ) )
+						continue;
+					finerLevels = true;
+
+					final long cellBytes = Prefetcher.estimateCellBytes( timepoint, interpolation, source, screenTransform, level, screen );
+					if ( cellBytes < 0 )
+						continue;
+					if ( bytes + cellBytes > budget )
+					{
+						setWarmed( key );
+						return;
+					}
+					bytes += cellBytes;
+					Prefetcher.fetchCells( timepoint, interpolation, source, screenTransform, level, new CacheHints( LoadingStrategy.VOLATILE, coarsest, false ), screen );
+				}
+			}
+			if ( !finerLevels )
+				break;
+		}
+		setWarmed( key );
+	}
+
+	private synchronized void setWarmed( final List< Object > key )
+	{
+		warmed = key;
+	}
+
+	private Source< ? > getRenderedSource( final SourceAndConverter< ? > source )
+	{
+		if ( useVolatileIfAvailable && source.asVolatile() != null )
+			return source.asVolatile().getSpimSource();
+		return source.getSpimSource();
+	}
+}
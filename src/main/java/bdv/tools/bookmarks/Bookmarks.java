@@ -28,7 +28,9 @@
  */
 package bdv.tools.bookmarks;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map.Entry;
 
 import mpicbg.spim.data.XmlHelpers;
@@ -45,7 +47,7 @@ public class Bookmarks
 		bookmarks = new HashMap<>();
 	}
 
-	public Element toXml()
+	public synchronized Element toXml()
 	{
 		final Element elem = new Element( "Bookmarks" );
 		for ( final Entry< String, AffineTransform3D > entry : bookmarks.entrySet() )
@@ -61,7 +63,7 @@ public class Bookmarks
 		return elem;
 	}
 
-	public void restoreFromXml( final Element parent )
+	public synchronized void restoreFromXml( final Element parent )
 	{
 		bookmarks.clear();
 
@@ -77,14 +79,23 @@ public class Bookmarks
 		}
 	}
 
-	public void put( final String key, final AffineTransform3D transform )
+	public synchronized void put( final String key, final AffineTransform3D transform )
 	{
 		bookmarks.put( key, transform );
 	}
 
-	public AffineTransform3D get( final String key )
+	public synchronized AffineTransform3D get( final String key )
 	{
 		return bookmarks.get( key );
 	}
-}
 
+	/**
+	 * Get the keys of all bookmarks, sorted.
+	 */
+	public synchronized List< String > getKeys()
+	{
+		final List< String > keys = new ArrayList<>( bookmarks.keySet() );
+		keys.sort( null );
+		return keys;
+	}
+}
@@ -83,8 +83,12 @@ public class ManualTransformation
 		if ( sources.size() != transforms.size() )
 			System.err.println( "failed to load <" + io.getTagName() + "> source and transform count mismatch" );
 		else
+		{
 			for ( int i = 0; i < sources.size(); ++i )
 				sources.get( i ).setFixedTransform( transforms.get( i ) );
+			if ( viewer != null )
+				viewer.requestRepaintForSourceTransformChange( sources );
+		}
 	}
 
 	private ArrayList< TransformedSource< ? > > getTransformedSources()
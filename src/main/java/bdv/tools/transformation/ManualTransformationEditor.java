@@ -98,6 +98,7 @@ public class ManualTransformationEditor implements TransformListener< AffineTran
 			for ( final TransformedSource< ? > source : sourcesToModify )
 				source.setIncrementalTransform( identity );
 			viewer.state().setViewerTransform( frozenTransform );
+			viewer.requestRepaintForSourceTransformChange( sourcesToModify );
 			viewer.showMessage( "aborted manual transform" );
 			active = false;
 			manualTransformActiveListeners.list.forEach( l -> l.manualTransformActiveChanged( active ) );
@@ -119,6 +120,7 @@ public class ManualTransformationEditor implements TransformListener< AffineTran
 				source.setIncrementalTransform( identity );
 			}
 			viewer.state().setViewerTransform( frozenTransform );
+			requestRepaintForSourceTransformChange();
 			viewer.showMessage( "reset manual transform" );
 		}
 	}
@@ -182,6 +184,7 @@ public class ManualTransformationEditor implements TransformListener< AffineTran
 			for ( final TransformedSource< ? > source : sourcesToFix )
 				source.setIncrementalTransform( tmp );
 			viewer.state().setViewerTransform( frozenTransform );
+			requestRepaintForSourceTransformChange();
 			viewer.showMessage( "fixed manual transform" );
 		}
 		manualTransformActiveListeners.list.forEach( l -> l.manualTransformActiveChanged( active ) );
@@ -202,6 +205,18 @@ public class ManualTransformationEditor implements TransformListener< AffineTran
 
 		for ( final TransformedSource< ? > source : sourcesToFix )
 			source.setIncrementalTransform( liveTransform.inverse() );
+		viewer.requestRepaintForSourceTransformChange( sourcesToFix );
+	}
+
+	/**
+	 * Notify the viewer that the transforms of all modified and fixed
+	 * sources changed.
+	 */
+	private void requestRepaintForSourceTransformChange()
+	{
+		final List< TransformedSource< ? > > sources = new ArrayList<>( sourcesToModify );
+		sources.addAll( sourcesToFix );
+		viewer.requestRepaintForSourceTransformChange( sources );
 	}
 
 	public Listeners< ManualTransformActiveListener > manualTransformActiveListeners()
@@ -32,14 +32,18 @@ import bdv.util.WrappedList;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.SourceGroup;
 import bdv.viewer.ViewerState;
+import bdv.viewer.ViewerStateChange;
+import bdv.viewer.ViewerStateChangeListener;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import javax.swing.SwingUtilities;
 import javax.swing.event.EventListenerList;
 import javax.swing.event.TreeModelEvent;
@@ -69,21 +73,40 @@ public class SourceGroupTreeModel implements TreeModel
 	{
 		model = new StateModel( state );
 		this.state = state;
-		state.changeListeners().add( e ->
+		state.changeListeners().add( new ViewerStateChangeListener()
 		{
-			switch ( e )
+			@Override
+			public void viewerStateChanged( final ViewerStateChange change )
+			{
+				if ( MODEL_CHANGES.contains( change ) )
+					updateModel();
+			}
+
+			@Override
+			public void viewerStateChanged( final Set< ViewerStateChange > changes )
 			{
-			case CURRENT_GROUP_CHANGED:
-			case GROUP_ACTIVITY_CHANGED:
-			case SOURCE_TO_GROUP_ASSIGNMENT_CHANGED:
-			case GROUP_NAME_CHANGED:
-			case NUM_GROUPS_CHANGED:
-				final StateModel model = new StateModel( state );
-				SwingUtilities.invokeLater( () -> analyzeChanges( model ) );
+				if ( !Collections.disjoint( changes, MODEL_CHANGES ) )
+					updateModel();
 			}
 		} );
 	}
 
+	/**
+	 * {@code ViewerStateChange}s that require updating the {@code StateModel}.
+	 */
+	private static final Set< ViewerStateChange > MODEL_CHANGES = EnumSet.of(
+			ViewerStateChange.CURRENT_GROUP_CHANGED,
+			ViewerStateChange.GROUP_ACTIVITY_CHANGED,
+			ViewerStateChange.SOURCE_TO_GROUP_ASSIGNMENT_CHANGED,
+			ViewerStateChange.GROUP_NAME_CHANGED,
+			ViewerStateChange.NUM_GROUPS_CHANGED );
+
+	private void updateModel()
+	{
+		final StateModel model = new StateModel( state );
+		SwingUtilities.invokeLater( () -> analyzeChanges( model ) );
+	}
+
 	@Override
 	public Object getRoot()
 	{
@@ -34,12 +34,16 @@ import bdv.viewer.ConverterSetups;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.SourceToConverterSetupBimap;
 import bdv.viewer.ViewerState;
+import bdv.viewer.ViewerStateChange;
+import bdv.viewer.ViewerStateChangeListener;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 import net.imglib2.type.numeric.ARGBType;
@@ -83,19 +87,38 @@ public class SourceTableModel extends AbstractTableModel
 			}
 		} );
 
-		state.changeListeners().add( e ->
+		state.changeListeners().add( new ViewerStateChangeListener()
 		{
-			switch ( e )
+			@Override
+			public void viewerStateChanged( final ViewerStateChange change )
+			{
+				if ( MODEL_CHANGES.contains( change ) )
+					updateModel();
+			}
+
+			@Override
+			public void viewerStateChanged( final Set< ViewerStateChange > changes )
 			{
-			case CURRENT_SOURCE_CHANGED:
-			case SOURCE_ACTIVITY_CHANGED:
-			case NUM_SOURCES_CHANGED:
-				final StateModel model = new StateModel( state );
-				SwingUtilities.invokeLater( () -> analyzeChanges( model ) );
+				if ( !Collections.disjoint( changes, MODEL_CHANGES ) )
+					updateModel();
 			}
 		} );
 	}
 
+	/**
+	 * {@code ViewerStateChange}s that require updating the {@code StateModel}.
+	 */
+	private static final Set< ViewerStateChange > MODEL_CHANGES = EnumSet.of(
+			ViewerStateChange.CURRENT_SOURCE_CHANGED,
+			ViewerStateChange.SOURCE_ACTIVITY_CHANGED,
+			ViewerStateChange.NUM_SOURCES_CHANGED );
+
+	private void updateModel()
+	{
+		final StateModel model = new StateModel( state );
+		SwingUtilities.invokeLater( () -> analyzeChanges( model ) );
+	}
+
 	@Override
 	public int getRowCount()
 	{
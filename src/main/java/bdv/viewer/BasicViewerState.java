@@ -29,19 +29,23 @@
 package bdv.viewer;
 
 import bdv.util.Affine3DHelpers;
-import bdv.util.WrappedList;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import java.util.AbstractList;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 import net.imglib2.realtransform.AffineTransform3D;
 import org.scijava.listeners.Listeners;
 
@@ -68,6 +72,12 @@ import static gnu.trove.impl.Constants.DEFAULT_LOAD_FACTOR;
  * be registered and will be notified about various {@link ViewerStateChange
  * state changes}.
  * <p>
+ * {@link #snapshot() Snapshots} share the collections of sources and groups
+ * with this state. A shared collection is copied before it is modified for the
+ * first time after a snapshot (copy-on-write), such that taking a snapshot is
+ * cheap, and modifying only the viewer transform, timepoint, etc. after a
+ * snapshot doesn't copy any collections.
+ * <p>
  * <em>This class is not thread-safe.</em>
  * </p>
  *
@@ -77,6 +87,22 @@ public class BasicViewerState implements ViewerState
 {
 	private final Listeners.List< ViewerStateChangeListener > listeners;
 
+	/**
+	 * Nesting depth of {@link #beginBatch()} calls.
+	 */
+	private int batchDepth;
+
+	/**
+	 * Changes that occurred in the current batch, in the order in which they
+	 * first occurred.
+	 */
+	private final Set< ViewerStateChange > batchChanges = new LinkedHashSet<>();
+
+	/**
+	 * Whether visibility needs to be checked at the end of the current batch.
+	 */
+	private boolean batchCheckVisibility;
+
 	/**
 	 * The current number of available timepoints.
 	 */
@@ -104,35 +130,59 @@ public class BasicViewerState implements ViewerState
 
 	// -- sources --
 
-	private final List< SourceAndConverter< ? > > sources;
+	private List< SourceAndConverter< ? > > sources;
 
 	private final List< SourceAndConverter< ? > > unmodifiableSources;
 
-	private final Set< SourceAndConverter< ? > > activeSources;
+	private Set< SourceAndConverter< ? > > activeSources;
 
 	private final Set< SourceAndConverter< ? > > unmodifiableActiveSources;
 
 	private SourceAndConverter< ? > currentSource;
 
-	private final TObjectIntMap< SourceAndConverter< ? > > sourceIndices;
+	private TObjectIntMap< SourceAndConverter< ? > > sourceIndices;
 
-	private final Set< SourceAndConverter< ? > > previousVisibleSources;
+	private Set< SourceAndConverter< ? > > previousVisibleSources;
 
 	// -- groups --
 
-	private final List< SourceGroup > groups;
+	private List< SourceGroup > groups;
 
 	private final List< SourceGroup > unmodifiableGroups;
 
-	private final Map< SourceGroup, GroupData > groupData;
+	private Map< SourceGroup, GroupData > groupData;
 
-	private final Set< SourceGroup > activeGroups;
+	private Set< SourceGroup > activeGroups;
 
 	private final Set< SourceGroup > unmodifiableActiveGroups;
 
 	private SourceGroup currentGroup;
 
-	private final TObjectIntMap< SourceGroup > groupIndices;
+	private TObjectIntMap< SourceGroup > groupIndices;
+
+	// -- copy-on-write --
+
+	/**
+	 * Whether {@link #sources} and {@link #sourceIndices} are shared with a
+	 * snapshot, and must be copied before they are modified.
+	 */
+	private boolean sourcesShared;
+
+	/**
+	 * Whether {@link #activeSources} is shared with a snapshot.
+	 */
+	private boolean activeSourcesShared;
+
+	/**
+	 * Whether {@link #groups}, {@link #groupIndices}, and {@link #groupData}
+	 * are shared with a snapshot.
+	 */
+	private boolean groupsShared;
+
+	/**
+	 * Whether {@link #activeGroups} is shared with a snapshot.
+	 */
+	private boolean activeGroupsShared;
 
 	private static final int NO_ENTRY_VALUE = -1;
 
@@ -152,14 +202,14 @@ public class BasicViewerState implements ViewerState
 		sources = new ArrayList<>();
 		unmodifiableSources = new UnmodifiableSources();
 		activeSources = new HashSet<>();
-		unmodifiableActiveSources = Collections.unmodifiableSet( activeSources );
+		unmodifiableActiveSources = new UnmodifiableSet<>( () -> activeSources );
 		sourceIndices = new TObjectIntHashMap<>( DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, NO_ENTRY_VALUE );
 		previousVisibleSources = new HashSet<>();
 		groups = new ArrayList<>();
 		unmodifiableGroups = new UnmodifiableGroups();
 		groupData = new HashMap<>();
 		activeGroups = new HashSet<>();
-		unmodifiableActiveGroups = Collections.unmodifiableSet( activeGroups );
+		unmodifiableActiveGroups = new UnmodifiableSet<>( () -> activeGroups );
 		groupIndices = new TObjectIntHashMap<>( DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, NO_ENTRY_VALUE );
 	}
 
@@ -180,7 +230,7 @@ public class BasicViewerState implements ViewerState
 		sources = new ArrayList<>( other.getSources() );
 		unmodifiableSources = new UnmodifiableSources();
 		activeSources = new HashSet<>( other.getActiveSources() );
-		unmodifiableActiveSources = Collections.unmodifiableSet( activeSources );
+		unmodifiableActiveSources = new UnmodifiableSet<>( () -> activeSources );
 		currentSource = other.getCurrentSource();
 		sourceIndices = new TObjectIntHashMap<>( DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, NO_ENTRY_VALUE );
 		for ( int i = 0; i < sources.size(); ++i )
@@ -197,7 +247,7 @@ public class BasicViewerState implements ViewerState
 			groupData.put( group, data );
 		} );
 		activeGroups = new HashSet<>( other.getActiveGroups() );
-		unmodifiableActiveGroups = Collections.unmodifiableSet( activeGroups );
+		unmodifiableActiveGroups = new UnmodifiableSet<>( () -> activeGroups );
 		currentGroup = other.getCurrentGroup();
 		groupIndices = new TObjectIntHashMap<>( DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, NO_ENTRY_VALUE );
 		for ( int i = 0; i < groups.size(); ++i )
@@ -216,32 +266,33 @@ public class BasicViewerState implements ViewerState
 		interpolation = other.getInterpolation();
 		displayMode = other.getDisplayMode();
 
-		sources.clear();
-		sources.addAll( other.getSources() );
-		activeSources.clear();
-		activeSources.addAll( other.getActiveSources() );
+		// collections may be shared with snapshots, so replace them instead of clearing
+		sources = new ArrayList<>( other.getSources() );
+		activeSources = new HashSet<>( other.getActiveSources() );
 		currentSource = other.getCurrentSource();
-		sourceIndices.clear();
+		sourceIndices = new TObjectIntHashMap<>( DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, NO_ENTRY_VALUE );
 		for ( int i = 0; i < sources.size(); ++i )
 			sourceIndices.put( sources.get( i ), i );
-		previousVisibleSources.clear();
-		previousVisibleSources.addAll( other.getVisibleSources() );
+		previousVisibleSources = other.getVisibleSources();
 
-		groups.clear();
-		groups.addAll( other.getGroups() );
-		groupData.clear();
+		groups = new ArrayList<>( other.getGroups() );
+		groupData = new HashMap<>();
 		other.getGroups().forEach( group -> {
 			final GroupData data = new GroupData();
 			data.name = other.getGroupName( group );
 			data.sources.addAll( other.getSourcesInGroup( group ) );
 			groupData.put( group, data );
 		} );
-		activeGroups.clear();
-		activeGroups.addAll( other.getActiveGroups() );
+		activeGroups = new HashSet<>( other.getActiveGroups() );
 		currentGroup = other.getCurrentGroup();
-		groupIndices.clear();
+		groupIndices = new TObjectIntHashMap<>( DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, NO_ENTRY_VALUE );
 		for ( int i = 0; i < groups.size(); ++i )
 			groupIndices.put( groups.get( i ), i );
+
+		sourcesShared = false;
+		activeSourcesShared = false;
+		groupsShared = false;
+		activeGroupsShared = false;
 	}
 
 	/**
@@ -253,15 +304,94 @@ public class BasicViewerState implements ViewerState
 		return listeners;
 	}
 
+	/**
+	 * Start a batch of modifications. Until the matching {@link #endBatch()},
+	 * {@code ViewerStateChange} events are collected instead of emitted.
+	 * Batches can be nested.
+	 */
+	@Override
+	public void beginBatch()
+	{
+		++batchDepth;
+	}
+
+	/**
+	 * End a batch of modifications. When the outermost batch ends, listeners
+	 * are notified once with all changes that occurred in the batch.
+	 *
+	 * @throws IllegalStateException
+	 *     if there is no matching {@link #beginBatch()}
+	 */
+	@Override
+	public void endBatch()
+	{
+		if ( batchDepth <= 0 )
+			throw new IllegalStateException( "endBatch() without matching beginBatch()" );
+
+		if ( --batchDepth > 0 )
+			return;
+
+		if ( batchCheckVisibility )
+		{
+			batchCheckVisibility = false;
+			if ( updateVisibleSources() )
+				batchChanges.add( VISIBILITY_CHANGED );
+		}
+
+		if ( !batchChanges.isEmpty() )
+		{
+			final Set< ViewerStateChange > changes = Collections.unmodifiableSet( new LinkedHashSet<>( batchChanges ) );
+			batchChanges.clear();
+			listeners.list.forEach( l -> l.viewerStateChanged( changes ) );
+		}
+	}
+
 	/**
 	 * Get a snapshot of this ViewerState.
+	 * <p>
+	 * The snapshot shares collections with this state (until they are
+	 * modified), so this takes constant time, independent of the number of
+	 * sources and groups.
 	 *
 	 * @return unmodifiable copy of the current state
 	 */
 	@Override
 	public ViewerState snapshot()
 	{
-		return new UnmodifiableViewerState( new BasicViewerState( this ) );
+		final BasicViewerState snapshot = new BasicViewerState();
+		snapshot.share( this );
+		return new UnmodifiableViewerState( snapshot );
+	}
+
+	/**
+	 * Set this {@code ViewerState} to {@code other}, sharing all collections
+	 * with {@code other}. Both states will copy shared collections before
+	 * modifying them.
+	 */
+	private void share( final BasicViewerState other )
+	{
+		numTimepoints = other.numTimepoints;
+		currentTimepoint = other.currentTimepoint;
+		viewerTransform.set( other.viewerTransform );
+		interpolation = other.interpolation;
+		displayMode = other.displayMode;
+
+		sources = other.sources;
+		activeSources = other.activeSources;
+		currentSource = other.currentSource;
+		sourceIndices = other.sourceIndices;
+		previousVisibleSources = other.previousVisibleSources;
+
+		groups = other.groups;
+		groupData = other.groupData;
+		activeGroups = other.activeGroups;
+		currentGroup = other.currentGroup;
+		groupIndices = other.groupIndices;
+
+		sourcesShared = other.sourcesShared = true;
+		activeSourcesShared = other.activeSourcesShared = true;
+		groupsShared = other.groupsShared = true;
+		activeGroupsShared = other.activeGroupsShared = true;
 	}
 
 	@Override
@@ -477,6 +607,10 @@ public class BasicViewerState implements ViewerState
 	{
 		checkSourcePresent( source );
 
+		if ( activeSources.contains( source ) == active )
+			return false;
+
+		copyActiveSourcesIfShared();
 		final boolean modified = active ? activeSources.add( source ) : activeSources.remove( source );
 		if ( modified )
 		{
@@ -506,6 +640,7 @@ public class BasicViewerState implements ViewerState
 	{
 		checkSourcesPresent( collection );
 
+		copyActiveSourcesIfShared();
 		final boolean modified = active ? activeSources.addAll( collection ) : activeSources.removeAll( collection );
 		if ( modified )
 		{
@@ -696,6 +831,7 @@ public class BasicViewerState implements ViewerState
 		final boolean modified = !sourceIndices.containsKey( source );
 		if ( modified )
 		{
+			copySourcesIfShared();
 			final int nextIndex = sources.size();
 			sources.add( source );
 			sourceIndices.put( source, nextIndex );
@@ -737,6 +873,7 @@ public class BasicViewerState implements ViewerState
 			if ( sourceIndices.containsKey( source ) )
 				continue;
 
+			copySourcesIfShared();
 			modified = true;
 			final int nextIndex = sources.size();
 			sources.add( source );
@@ -778,10 +915,14 @@ public class BasicViewerState implements ViewerState
 		if ( source == null )
 			throw new NullPointerException();
 
-		final int removedIndex = sourceIndices.remove( source );
+		final int removedIndex = sourceIndices.get( source );
 		final boolean modified = ( removedIndex != NO_ENTRY_VALUE );
 		if ( modified )
 		{
+			copySourcesIfShared();
+			copyActiveSourcesIfShared();
+			copyGroupsIfShared();
+			sourceIndices.remove( source );
 			sources.remove( removedIndex );
 			for ( int i = removedIndex; i < sources.size(); ++i )
 				sourceIndices.put( sources.get( i ), i );
@@ -825,11 +966,14 @@ public class BasicViewerState implements ViewerState
 	{
 		checkAllNonNull( collection );
 
+		copySourcesIfShared();
 		final boolean modified = sources.removeAll( collection );
 		final boolean currentSourceChanged = collection.contains( currentSource );
 
 		if ( modified )
 		{
+			copyActiveSourcesIfShared();
+			copyGroupsIfShared();
 			sourceIndices.clear();
 			for ( int i = 0; i < sources.size(); ++i )
 				sourceIndices.put( sources.get( i ), i );
@@ -865,6 +1009,9 @@ public class BasicViewerState implements ViewerState
 		if ( sources.isEmpty() )
 			return;
 
+		copySourcesIfShared();
+		copyActiveSourcesIfShared();
+		copyGroupsIfShared();
 		sources.clear();
 		sourceIndices.clear();
 		activeSources.clear();
@@ -1017,6 +1164,10 @@ public class BasicViewerState implements ViewerState
 	{
 		checkGroupPresent( group );
 
+		if ( activeGroups.contains( group ) == active )
+			return false;
+
+		copyActiveGroupsIfShared();
 		final boolean modified = active ? activeGroups.add( group ) : activeGroups.remove( group );
 		if ( modified )
 		{
@@ -1046,6 +1197,7 @@ public class BasicViewerState implements ViewerState
 	{
 		checkGroupsPresent( collection );
 
+		copyActiveGroupsIfShared();
 		final boolean modified = active ? activeGroups.addAll( collection ) : activeGroups.removeAll( collection );
 		if ( modified )
 		{
@@ -1088,10 +1240,10 @@ public class BasicViewerState implements ViewerState
 	{
 		checkGroupPresent( group );
 
-		final GroupData data = groupData.get( group );
-		if ( !Objects.equals( data.name, name ) )
+		if ( !Objects.equals( groupData.get( group ).name, name ) )
 		{
-			data.name = name;
+			copyGroupsIfShared();
+			groupData.get( group ).name = name;
 			notifyListeners( GROUP_NAME_CHANGED );
 		}
 	}
@@ -1134,6 +1286,7 @@ public class BasicViewerState implements ViewerState
 		final boolean modified = !groupIndices.containsKey( group );
 		if ( modified )
 		{
+			copyGroupsIfShared();
 			final int nextIndex = groups.size();
 			groups.add( group );
 			groupData.put( group, new GroupData() );
@@ -1177,6 +1330,7 @@ public class BasicViewerState implements ViewerState
 			if ( groupIndices.containsKey( group ) )
 				continue;
 
+			copyGroupsIfShared();
 			modified = true;
 			final int nextIndex = groups.size();
 			groups.add( group );
@@ -1219,10 +1373,13 @@ public class BasicViewerState implements ViewerState
 		if ( group == null )
 			throw new NullPointerException();
 
-		final int removedIndex = groupIndices.remove( group );
+		final int removedIndex = groupIndices.get( group );
 		final boolean modified = ( removedIndex != NO_ENTRY_VALUE );
 		if ( modified )
 		{
+			copyGroupsIfShared();
+			copyActiveGroupsIfShared();
+			groupIndices.remove( group );
 			groups.remove( group );
 			for ( int i = removedIndex; i < groups.size(); ++i )
 				groupIndices.put( groups.get( i ), i );
@@ -1260,11 +1417,13 @@ public class BasicViewerState implements ViewerState
 	{
 		checkAllNonNull( collection );
 
+		copyGroupsIfShared();
 		final boolean modified = groups.removeAll( collection );
 		final boolean currentGroupChanged = collection.contains( currentGroup );
 
 		if ( modified )
 		{
+			copyActiveGroupsIfShared();
 			groupIndices.clear();
 			for ( int i = 0; i < groups.size(); ++i )
 				groupIndices.put( groups.get( i ), i );
@@ -1305,6 +1464,7 @@ public class BasicViewerState implements ViewerState
 		checkSourcePresent( source );
 		checkGroupPresent( group );
 
+		copyGroupsIfShared();
 		final boolean modified = groupData.get( group ).sources.add( source );
 		if ( modified )
 		{
@@ -1337,6 +1497,7 @@ public class BasicViewerState implements ViewerState
 		checkSourcesPresent( collection );
 		checkGroupPresent( group );
 
+		copyGroupsIfShared();
 		final boolean modified = groupData.get( group ).sources.addAll( collection );
 		if ( modified )
 		{
@@ -1368,6 +1529,7 @@ public class BasicViewerState implements ViewerState
 		checkSourcePresent( source );
 		checkGroupPresent( group );
 
+		copyGroupsIfShared();
 		final boolean modified = groupData.get( group ).sources.remove( source );
 		if ( modified )
 		{
@@ -1401,6 +1563,7 @@ public class BasicViewerState implements ViewerState
 		checkSourcesPresent( collection );
 		checkGroupPresent( group );
 
+		copyGroupsIfShared();
 		final boolean modified = groupData.get( group ).sources.removeAll( collection );
 		if ( modified )
 		{
@@ -1428,7 +1591,10 @@ public class BasicViewerState implements ViewerState
 	{
 		checkGroupPresent( group );
 
-		return groupData.get( group ).unmodifiableSources;
+		return new UnmodifiableSet<>( () -> {
+			final GroupData data = groupData.get( group );
+			return data == null ? Collections.emptySet() : data.sources;
+		} );
 	}
 
 	/**
@@ -1440,6 +1606,8 @@ public class BasicViewerState implements ViewerState
 		if ( groups.isEmpty() )
 			return;
 
+		copyGroupsIfShared();
+		copyActiveGroupsIfShared();
 		groups.clear();
 		groupIndices.clear();
 		activeGroups.clear();
@@ -1469,27 +1637,141 @@ public class BasicViewerState implements ViewerState
 	// --    helpers     --
 	// --------------------
 
-	private class GroupData
+	private static class GroupData
 	{
 		String name;
 
 		final Set< SourceAndConverter< ? > > sources;
 
-		final Set< SourceAndConverter< ? > > unmodifiableSources;
-
 		GroupData()
 		{
 			name = null;
 			sources = new HashSet<>();
-			unmodifiableSources = Collections.unmodifiableSet( sources );
+		}
+
+		GroupData( final GroupData other )
+		{
+			name = other.name;
+			sources = new HashSet<>( other.sources );
 		}
 	}
 
-	private class UnmodifiableSources extends WrappedList< SourceAndConverter< ? > >
+	/**
+	 * Copy {@link #sources} and {@link #sourceIndices} if they are shared with
+	 * a snapshot.
+	 */
+	private void copySourcesIfShared()
 	{
-		public UnmodifiableSources()
+		if ( sourcesShared )
 		{
-			super( Collections.unmodifiableList( sources ) );
+			sources = new ArrayList<>( sources );
+			final TObjectIntMap< SourceAndConverter< ? > > indices = new TObjectIntHashMap<>( DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, NO_ENTRY_VALUE );
+			indices.putAll( sourceIndices );
+			sourceIndices = indices;
+			sourcesShared = false;
+		}
+	}
+
+	/**
+	 * Copy {@link #activeSources} if it is shared with a snapshot.
+	 */
+	private void copyActiveSourcesIfShared()
+	{
+		if ( activeSourcesShared )
+		{
+			activeSources = new HashSet<>( activeSources );
+			activeSourcesShared = false;
+		}
+	}
+
+	/**
+	 * Copy {@link #groups}, {@link #groupIndices}, and {@link #groupData} if
+	 * they are shared with a snapshot.
+	 */
+	private void copyGroupsIfShared()
+	{
+		if ( groupsShared )
+		{
+			groups = new ArrayList<>( groups );
+			final TObjectIntMap< SourceGroup > indices = new TObjectIntHashMap<>( DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, NO_ENTRY_VALUE );
+			indices.putAll( groupIndices );
+			groupIndices = indices;
+			final Map< SourceGroup, GroupData > data = new HashMap<>();
+			groupData.forEach( ( group, d ) -> data.put( group, new GroupData( d ) ) );
+			groupData = data;
+			groupsShared = false;
+		}
+	}
+
+	/**
+	 * Copy {@link #activeGroups} if it is shared with a snapshot.
+	 */
+	private void copyActiveGroupsIfShared()
+	{
+		if ( activeGroupsShared )
+		{
+			activeGroups = new HashSet<>( activeGroups );
+			activeGroupsShared = false;
+		}
+	}
+
+	/**
+	 * Unmodifiable view of a set. The view reflects changes, also if the
+	 * underlying set is replaced by a copy (see {@link #copyActiveSourcesIfShared()}
+	 * etc.).
+	 */
+	private static class UnmodifiableSet< E > extends AbstractSet< E >
+	{
+		private final Supplier< Set< E > > set;
+
+		UnmodifiableSet( final Supplier< Set< E > > set )
+		{
+			this.set = set;
+		}
+
+		@Override
+		public Iterator< E > iterator()
+		{
+			return Collections.unmodifiableSet( set.get() ).iterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return set.get().size();
+		}
+
+		@Override
+		public boolean contains( final Object o )
+		{
+			return set.get().contains( o );
+		}
+
+		@Override
+		public boolean containsAll( final Collection< ? > c )
+		{
+			return set.get().containsAll( c );
+		}
+	}
+
+	private class UnmodifiableSources extends AbstractList< SourceAndConverter< ? > >
+	{
+		@Override
+		public SourceAndConverter< ? > get( final int index )
+		{
+			return sources.get( index );
+		}
+
+		@Override
+		public int size()
+		{
+			return sources.size();
+		}
+
+		@Override
+		public Iterator< SourceAndConverter< ? > > iterator()
+		{
+			return Collections.unmodifiableList( sources ).iterator();
 		}
 
 		@Override
@@ -1517,11 +1799,24 @@ public class BasicViewerState implements ViewerState
 		}
 	}
 
-	private class UnmodifiableGroups extends WrappedList< SourceGroup >
+	private class UnmodifiableGroups extends AbstractList< SourceGroup >
 	{
-		public UnmodifiableGroups()
+		@Override
+		public SourceGroup get( final int index )
 		{
-			super( Collections.unmodifiableList( groups ) );
+			return groups.get( index );
+		}
+
+		@Override
+		public int size()
+		{
+			return groups.size();
+		}
+
+		@Override
+		public Iterator< SourceGroup > iterator()
+		{
+			return Collections.unmodifiableList( groups ).iterator();
 		}
 
 		@Override
@@ -1647,17 +1942,32 @@ public class BasicViewerState implements ViewerState
 
 	private void notifyListeners( final ViewerStateChange change )
 	{
-		listeners.list.forEach( l -> l.viewerStateChanged( change ) );
+		if ( batchDepth > 0 )
+			batchChanges.add( change );
+		else
+			listeners.list.forEach( l -> l.viewerStateChanged( change ) );
 	}
 
 	private void checkVisibilityChanged()
 	{
-		final Set< SourceAndConverter< ? > > visible = getVisibleSources();
-		if ( !visible.equals( previousVisibleSources ) )
-		{
-			previousVisibleSources.clear();
-			previousVisibleSources.addAll( visible );
+		// computing the visible sources is expensive, only do it once per batch
+		if ( batchDepth > 0 )
+			batchCheckVisibility = true;
+		else if ( updateVisibleSources() )
 			notifyListeners( VISIBILITY_CHANGED );
-		}
+	}
+
+	/**
+	 * Update {@link #previousVisibleSources}.
+	 *
+	 * @return {@code true}, if the set of visible sources changed
+	 */
+	private boolean updateVisibleSources()
+	{
+		final Set< SourceAndConverter< ? > > visible = getVisibleSources();
+		if ( visible.equals( previousVisibleSources ) )
+			return false;
+		previousVisibleSources = visible;
+		return true;
 	}
 }
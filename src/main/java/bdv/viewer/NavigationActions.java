@@ -50,6 +50,8 @@ public class NavigationActions extends Actions
 	public static final String ALIGN_XZ_PLANE = "align XZ plane";
 	public static final String NEXT_TIMEPOINT = "next timepoint";
 	public static final String PREVIOUS_TIMEPOINT = "previous timepoint";
+	public static final String TOGGLE_PLAYBACK = "toggle playback";
+	public static final String TOGGLE_RENDER_STATISTICS = "toggle render statistics";
 
 	public static final String[] TOGGLE_INTERPOLATION_KEYS = new String[] { "I" };
 	public static final String[] TOGGLE_FUSED_MODE_KEYS = new String[] { "F" };
@@ -61,6 +63,8 @@ public class NavigationActions extends Actions
 	public static final String[] ALIGN_XZ_PLANE_KEYS = new String[] { "shift Y", "shift A" };
 	public static final String[] NEXT_TIMEPOINT_KEYS = new String[] { "CLOSE_BRACKET", "M" };
 	public static final String[] PREVIOUS_TIMEPOINT_KEYS = new String[] { "OPEN_BRACKET", "N" };
+	public static final String[] TOGGLE_PLAYBACK_KEYS = new String[] { "shift M" };
+	public static final String[] TOGGLE_RENDER_STATISTICS_KEYS = new String[] { "F7" };
 
 	/**
 	 * Create navigation actions and install them in the specified
@@ -76,6 +80,8 @@ public class NavigationActions extends Actions
 		installModeActions( actions, viewer.state() );
 		installSourceActions( actions, viewer.state() );
 		installTimeActions( actions, viewer.state() );
+		installPlaybackActions( actions, viewer );
+		installRenderStatisticsActions( actions, viewer );
 		installAlignPlaneActions( actions, viewer, is2D );
 	}
 
@@ -92,6 +98,16 @@ public class NavigationActions extends Actions
 		actions.runnableAction( () -> previousTimePoint( state ), PREVIOUS_TIMEPOINT, PREVIOUS_TIMEPOINT_KEYS );
 	}
 
+	public static void installPlaybackActions( final Actions actions, final ViewerPanel viewer )
+	{
+		actions.runnableAction( viewer::togglePlayback, TOGGLE_PLAYBACK, TOGGLE_PLAYBACK_KEYS );
+	}
+
+	public static void installRenderStatisticsActions( final Actions actions, final ViewerPanel viewer )
+	{
+		actions.runnableAction( viewer::toggleRenderStatisticsOverlay, TOGGLE_RENDER_STATISTICS, TOGGLE_RENDER_STATISTICS_KEYS );
+	}
+
 	public static void installSourceActions( final Actions actions, final ViewerState state )
 	{
 		final String[] numkeys = new String[] { "1", "2", "3", "4", "5", "6", "7", "8", "9", "0" };
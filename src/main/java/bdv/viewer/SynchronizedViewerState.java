@@ -33,6 +33,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.imglib2.realtransform.AffineTransform3D;
 
@@ -44,8 +45,13 @@ import org.scijava.listeners.Listeners;
  * be registered and will be notified about various {@link ViewerStateChange
  * state changes}.
  * <p>
- * All methods of this class are {@code synchronized}, so that every individual
- * change to the viewer state is atomic. {@code IllegalArgumentException}s
+ * All modifying methods of this class are {@code synchronized}, so that every
+ * individual change to the viewer state is atomic. Snapshots are cached until
+ * the next modification, and methods that return a value or a copy (for
+ * example {@link #getCurrentTimepoint()} or {@link #getVisibleSources()}) query
+ * the cached snapshot without locking. Since snapshots share unmodified data
+ * with the wrapped state (see {@link BasicViewerState#snapshot()}), re-creating
+ * a snapshot after a modification is cheap. {@code IllegalArgumentException}s
  * thrown by the wrapped {@code BasicViewerState} are silently swallowed, under
  * the assumption that they result from concurrent changes (for example another
  * thread might have removed the source that you are trying to make current).
@@ -71,6 +77,10 @@ import org.scijava.listeners.Listeners;
  * <p>
  * Alternatively, for read-only access, it is possible to (atomically) take an
  * unmodifiable {@link #snapshot()} of the current state.
+ * <p>
+ * Many modifications in a row (for example adding thousands of sources and
+ * assigning them to groups) should be wrapped in {@link #beginBatch()} and
+ * {@link #endBatch()}, so that listeners are notified only once.
  *
  * @author Tobias Pietzsch
  */
@@ -80,9 +90,58 @@ public class SynchronizedViewerState implements ViewerState
 
 	private final ViewerState state;
 
+	/**
+	 * Cached snapshot of {@link #state}, or {@code null} if {@link #state} has
+	 * been modified since the last snapshot was taken.
+	 */
+	private volatile ViewerState published;
+
+	/**
+	 * Incremented by every modification of {@link #state}, before
+	 * {@link #published} is cleared. A snapshot is only cached if this did not
+	 * change while it was taken.
+	 */
+	private final AtomicLong modCount = new AtomicLong();
+
+	/**
+	 * Nesting depth of {@link #beginBatch()} calls. While a batch is open,
+	 * snapshots are not cached.
+	 */
+	private int batchDepth;
+
 	public SynchronizedViewerState( final ViewerState state )
 	{
 		this.state = state;
+		// also catches modifications through getWrappedState()
+		state.changeListeners().add( change -> modified() );
+	}
+
+	/**
+	 * Invalidate the cached snapshot.
+	 */
+	private void modified()
+	{
+		modCount.incrementAndGet();
+		published = null;
+	}
+
+	/**
+	 * Returns the {@code ViewerState} that read-only methods should query.
+	 * <p>
+	 * That is the cached snapshot, if the state has not been modified since it
+	 * was taken. In that case, no locking is required. If the current thread
+	 * holds the lock (and might be in the middle of a sequence of
+	 * modifications), the wrapped state is queried directly. Otherwise, a new
+	 * snapshot is taken.
+	 */
+	private ViewerState readable()
+	{
+		final ViewerState s = published;
+		if ( s != null )
+			return s;
+		if ( Thread.holdsLock( this ) )
+			return state;
+		return snapshot();
 	}
 
 	@Override
@@ -97,56 +156,122 @@ public class SynchronizedViewerState implements ViewerState
 	 * @return unmodifiable copy of the current state
 	 */
 	@Override
-	public synchronized ViewerState snapshot()
+	public ViewerState snapshot()
+	{
+		final ViewerState s = published;
+		if ( s != null )
+			return s;
+		synchronized ( this )
+		{
+			if ( published != null )
+				return published;
+			final long count = modCount.get();
+			final ViewerState snapshot = state.snapshot();
+			// inside a batch, modifications through getWrappedState() are not notified
+			if ( batchDepth == 0 )
+			{
+				// The state may have been modified (without holding the lock)
+				// while the snapshot was taken. Only keep the snapshot cached
+				// if it is still current. Checking after publishing ensures
+				// that a concurrent modified() either sees the new snapshot
+				// (and clears it), or is seen here.
+				published = snapshot;
+				if ( modCount.get() != count )
+					published = null;
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Start a batch of modifications. Until the matching {@link #endBatch()},
+	 * {@code ViewerStateChange} events are collected instead of emitted.
+	 * <p>
+	 * Note that modifications by other threads are also batched. To make the
+	 * whole batch atomic, synchronize on this {@code SynchronizedViewerState}:
+	 * <pre>{@code
+	 * synchronized (state) {
+	 *     state.beginBatch();
+	 *     try {
+	 *         ... (modify state) ...
+	 *     } finally {
+	 *         state.endBatch();
+	 *     }
+	 * }}</pre>
+	 */
+	@Override
+	public synchronized void beginBatch()
+	{
+		modified();
+		++batchDepth;
+		state.beginBatch();
+	}
+
+	/**
+	 * End a batch of modifications started with {@link #beginBatch()}.
+	 *
+	 * @throws IllegalStateException
+	 *     if there is no matching {@link #beginBatch()}
+	 */
+	@Override
+	public synchronized void endBatch()
 	{
-		return state.snapshot();
+		if ( batchDepth <= 0 )
+			throw new IllegalStateException( "endBatch() without matching beginBatch()" );
+		modified();
+		--batchDepth;
+		state.endBatch();
 	}
 
 	@Override
-	public synchronized Interpolation getInterpolation()
+	public Interpolation getInterpolation()
 	{
-		return state.getInterpolation();
+		return readable().getInterpolation();
 	}
 
 	@Override
 	public synchronized void setInterpolation( final Interpolation interpolation )
 	{
+		modified();
 		state.setInterpolation( interpolation );
 	}
 
 	@Override
-	public synchronized DisplayMode getDisplayMode()
+	public DisplayMode getDisplayMode()
 	{
-		return state.getDisplayMode();
+		return readable().getDisplayMode();
 	}
 
 	@Override
 	public synchronized void setDisplayMode( final DisplayMode mode )
 	{
+		modified();
 		state.setDisplayMode( mode );
 	}
 
 	@Override
-	public synchronized int getNumTimepoints()
+	public int getNumTimepoints()
 	{
-		return state.getNumTimepoints();
+		return readable().getNumTimepoints();
 	}
 
 	@Override
 	public synchronized void setNumTimepoints( final int n )
 	{
+		modified();
 		state.setNumTimepoints( n );
 	}
 
 	@Override
-	public synchronized int getCurrentTimepoint()
+	public int getCurrentTimepoint()
 	{
-		return state.getCurrentTimepoint();
+		return readable().getCurrentTimepoint();
 	}
 
 	@Override
 	public synchronized void setCurrentTimepoint( final int t )
 	{
+		modified();
 		try
 		{
 			state.setCurrentTimepoint( t );
@@ -159,14 +284,15 @@ public class SynchronizedViewerState implements ViewerState
 	}
 
 	@Override
-	public synchronized void getViewerTransform( final AffineTransform3D transform )
+	public void getViewerTransform( final AffineTransform3D transform )
 	{
-		state.getViewerTransform( transform );
+		readable().getViewerTransform( transform );
 	}
 
 	@Override
 	public synchronized void setViewerTransform( final AffineTransform3D transform )
 	{
+		modified();
 		state.setViewerTransform( transform );
 	}
 
@@ -195,9 +321,9 @@ public class SynchronizedViewerState implements ViewerState
 	 * @return the current source
 	 */
 	@Override
-	public synchronized SourceAndConverter< ? > getCurrentSource()
+	public SourceAndConverter< ? > getCurrentSource()
 	{
-		return state.getCurrentSource();
+		return readable().getCurrentSource();
 	}
 
 	/**
@@ -210,9 +336,9 @@ public class SynchronizedViewerState implements ViewerState
 	 * @return {@code true} if {@code source} is the current source
 	 */
 	@Override
-	public synchronized boolean isCurrentSource( final SourceAndConverter< ? > source )
+	public boolean isCurrentSource( final SourceAndConverter< ? > source )
 	{
-		return state.isCurrentSource( source );
+		return readable().isCurrentSource( source );
 	}
 
 	/**
@@ -232,6 +358,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean setCurrentSource( final SourceAndConverter< ? > source )
 	{
+		modified();
 		try
 		{
 			return state.setCurrentSource( source );
@@ -269,11 +396,11 @@ public class SynchronizedViewerState implements ViewerState
 	 *     if {@code source == null}
 	 */
 	@Override
-	public synchronized boolean isSourceActive( final SourceAndConverter< ? > source )
+	public boolean isSourceActive( final SourceAndConverter< ? > source )
 	{
 		try
 		{
-			return state.isSourceActive( source );
+			return readable().isSourceActive( source );
 		}
 		catch ( final IllegalArgumentException e )
 		{
@@ -301,6 +428,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean setSourceActive( final SourceAndConverter< ? > source, final boolean active )
 	{
+		modified();
 		try
 		{
 			return state.setSourceActive( source, active );
@@ -333,6 +461,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean setSourcesActive( final Collection< ? extends SourceAndConverter< ? > > collection, final boolean active )
 	{
+		modified();
 		try
 		{
 			return state.setSourcesActive( collection, active );
@@ -369,11 +498,11 @@ public class SynchronizedViewerState implements ViewerState
 	 *     {@code null}).
 	 */
 	@Override
-	public synchronized boolean isSourceVisible( final SourceAndConverter< ? > source )
+	public boolean isSourceVisible( final SourceAndConverter< ? > source )
 	{
 		try
 		{
-			return state.isSourceVisible( source );
+			return readable().isSourceVisible( source );
 		}
 		catch ( final IllegalArgumentException e )
 		{
@@ -408,11 +537,11 @@ public class SynchronizedViewerState implements ViewerState
 	 *     if {@code source == null}
 	 */
 	@Override
-	public synchronized boolean isSourceVisibleAndPresent( final SourceAndConverter< ? > source )
+	public boolean isSourceVisibleAndPresent( final SourceAndConverter< ? > source )
 	{
 		try
 		{
-			return state.isSourceVisibleAndPresent( source );
+			return readable().isSourceVisibleAndPresent( source );
 		}
 		catch ( final IllegalArgumentException e )
 		{
@@ -440,9 +569,9 @@ public class SynchronizedViewerState implements ViewerState
 	 * @return the set of visible sources
 	 */
 	@Override
-	public synchronized Set< SourceAndConverter< ? > > getVisibleSources()
+	public Set< SourceAndConverter< ? > > getVisibleSources()
 	{
-		return state.getVisibleSources();
+		return readable().getVisibleSources();
 	}
 
 	/**
@@ -467,9 +596,9 @@ public class SynchronizedViewerState implements ViewerState
 	 * @return the set of sources that are both visible and present
 	 */
 	@Override
-	public synchronized Set< SourceAndConverter< ? > > getVisibleAndPresentSources()
+	public Set< SourceAndConverter< ? > > getVisibleAndPresentSources()
 	{
-		return state.getVisibleAndPresentSources();
+		return readable().getVisibleAndPresentSources();
 	}
 
 	/**
@@ -481,9 +610,9 @@ public class SynchronizedViewerState implements ViewerState
 	 *     if {@code source == null}
 	 */
 	@Override
-	public synchronized boolean containsSource( final SourceAndConverter< ? > source )
+	public boolean containsSource( final SourceAndConverter< ? > source )
 	{
-		return state.containsSource( source );
+		return readable().containsSource( source );
 	}
 
 	/**
@@ -501,6 +630,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean addSource( final SourceAndConverter< ? > source )
 	{
+		modified();
 		return state.addSource( source );
 	}
 
@@ -521,6 +651,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean addSources( final Collection< ? extends SourceAndConverter< ? > > collection )
 	{
+		modified();
 		return state.addSources( collection );
 	}
 
@@ -542,6 +673,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean removeSource( final SourceAndConverter< ? > source )
 	{
+		modified();
 		return state.removeSource( source );
 	}
 
@@ -563,6 +695,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean removeSources( final Collection< ? extends SourceAndConverter< ? > > collection )
 	{
+		modified();
 		return state.removeSources( collection );
 	}
 
@@ -575,6 +708,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized void clearSources()
 	{
+		modified();
 		state.clearSources();
 	}
 
@@ -614,9 +748,9 @@ public class SynchronizedViewerState implements ViewerState
 	 * @return the current group
 	 */
 	@Override
-	public synchronized SourceGroup getCurrentGroup()
+	public SourceGroup getCurrentGroup()
 	{
-		return state.getCurrentGroup();
+		return readable().getCurrentGroup();
 	}
 
 	/**
@@ -629,9 +763,9 @@ public class SynchronizedViewerState implements ViewerState
 	 * @return {@code true} if {@code group} is the current group
 	 */
 	@Override
-	public synchronized boolean isCurrentGroup( final SourceGroup group )
+	public boolean isCurrentGroup( final SourceGroup group )
 	{
-		return state.isCurrentGroup( group );
+		return readable().isCurrentGroup( group );
 	}
 
 	/**
@@ -651,6 +785,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean setCurrentGroup( final SourceGroup group )
 	{
+		modified();
 		try
 		{
 			return state.setCurrentGroup( group );
@@ -691,11 +826,11 @@ public class SynchronizedViewerState implements ViewerState
 	 *     {@code null}).
 	 */
 	@Override
-	public synchronized boolean isGroupActive( final SourceGroup group )
+	public boolean isGroupActive( final SourceGroup group )
 	{
 		try
 		{
-			return state.isGroupActive( group );
+			return readable().isGroupActive( group );
 		}
 		catch ( final IllegalArgumentException e )
 		{
@@ -723,6 +858,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean setGroupActive( final SourceGroup group, final boolean active )
 	{
+		modified();
 		try
 		{
 			return state.setGroupActive( group, active );
@@ -755,6 +891,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean setGroupsActive( final Collection< ? extends SourceGroup > collection, final boolean active )
 	{
+		modified();
 		try
 		{
 			return state.setGroupsActive( collection, active );
@@ -780,11 +917,11 @@ public class SynchronizedViewerState implements ViewerState
 	 *     if {@code group == null}
 	 */
 	@Override
-	public synchronized String getGroupName( final SourceGroup group )
+	public String getGroupName( final SourceGroup group )
 	{
 		try
 		{
-			return state.getGroupName( group );
+			return readable().getGroupName( group );
 		}
 		catch ( final IllegalArgumentException e )
 		{
@@ -807,6 +944,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized void setGroupName( final SourceGroup group, final String name )
 	{
+		modified();
 		try
 		{
 			state.setGroupName( group, name );
@@ -827,9 +965,9 @@ public class SynchronizedViewerState implements ViewerState
 	 *     if {@code group == null}
 	 */
 	@Override
-	public synchronized boolean containsGroup( final SourceGroup group )
+	public boolean containsGroup( final SourceGroup group )
 	{
-		return state.containsGroup( group );
+		return readable().containsGroup( group );
 	}
 
 	/**
@@ -847,6 +985,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean addGroup( final SourceGroup group )
 	{
+		modified();
 		return state.addGroup( group );
 	}
 
@@ -867,6 +1006,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean addGroups( final Collection< ? extends SourceGroup > collection )
 	{
+		modified();
 		return state.addGroups( collection );
 	}
 
@@ -887,6 +1027,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean removeGroup( final SourceGroup group )
 	{
+		modified();
 		return state.removeGroup( group );
 	}
 
@@ -907,6 +1048,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean removeGroups( final Collection< ? extends SourceGroup > collection )
 	{
+		modified();
 		return state.removeGroups( collection );
 	}
 
@@ -931,6 +1073,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean addSourceToGroup( final SourceAndConverter< ? > source, final SourceGroup group )
 	{
+		modified();
 		try
 		{
 			return state.addSourceToGroup( source, group );
@@ -964,6 +1107,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean addSourcesToGroup( final Collection< ? extends SourceAndConverter< ? > > collection, final SourceGroup group )
 	{
+		modified();
 		try
 		{
 			return state.addSourcesToGroup( collection, group );
@@ -996,6 +1140,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean removeSourceFromGroup( final SourceAndConverter< ? > source, final SourceGroup group )
 	{
+		modified();
 		try
 		{
 			return state.removeSourceFromGroup( source, group );
@@ -1029,6 +1174,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized boolean removeSourcesFromGroup( final Collection< ? extends SourceAndConverter< ? > > collection, final SourceGroup group )
 	{
+		modified();
 		try
 		{
 			return state.removeSourcesFromGroup( collection, group );
@@ -1074,6 +1220,7 @@ public class SynchronizedViewerState implements ViewerState
 	@Override
 	public synchronized void clearGroups()
 	{
+		modified();
 		state.clearGroups();
 	}
 
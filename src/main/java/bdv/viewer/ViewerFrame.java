@@ -101,7 +101,7 @@ public class ViewerFrame extends JFrame
 		super( "BigDataViewer", AWTUtils.getSuitableGraphicsConfiguration( AWTUtils.RGB_COLOR_MODEL ) );
 		viewer = new ViewerPanel( sources, numTimepoints, cacheControl, optional );
 		setups = new ConverterSetups( viewer.state() );
-		setups.listeners().add( s -> viewer.requestRepaint() );
+		setups.listeners().add( s -> viewer.requestRepaintForConverterChange() );
 
 		keybindings = new InputActionBindings();
 		triggerbindings = new TriggerBehaviourBindings();
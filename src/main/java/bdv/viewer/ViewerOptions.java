@@ -30,6 +30,7 @@ package bdv.viewer;
 
 import bdv.TransformEventHandler2D;
 import bdv.TransformEventHandler3D;
+import bdv.tools.bookmarks.BookmarkPrefetcher;
 import java.awt.event.KeyListener;
 
 import org.scijava.ui.behaviour.KeyPressedManager;
@@ -39,7 +40,9 @@ import bdv.viewer.animate.MessageOverlayAnimator;
 import bdv.viewer.render.AccumulateProjector;
 import bdv.viewer.render.AccumulateProjectorARGB;
 import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.MotionPrefetcher;
 import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.TimepointPlayback;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 import bdv.TransformEventHandlerFactory;
@@ -111,6 +114,158 @@ public class ViewerOptions
 		return this;
 	}
 
+	/**
+	 * Set target rendering time as a frame rate. This is equivalent to
+	 * {@code targetRenderNanos( 1000000000 / fps )}.
+	 *
+	 * @param fps
+	 *            Target frames per second. The rendering time for the
+	 *            coarsest rendered scale should be below {@code 1 / fps}.
+	 * @see #targetRenderNanos(long)
+	 */
+	public ViewerOptions targetFrameRate( final double fps )
+	{
+		values.targetRenderNanos = ( long ) ( 1e9 / fps );
+		return this;
+	}
+
+	/**
+	 * Set the maximum IO time budget for rendering.
+	 *
+	 * @param budget
+	 *            Element {@code i} is the time (in nanoseconds) that rendering
+	 *            may wait for data of priority {@code i} to be loaded (where 0
+	 *            is the highest priority, i.e., the coarsest mipmap level).
+	 *            The default is {@code {100ms, 10ms}}.
+	 * @see MultiResolutionRenderer#setIoTimeBudget(long[])
+	 */
+	public ViewerOptions ioTimeBudget( final long... budget )
+	{
+		values.ioTimeBudget = budget;
+		return this;
+	}
+
+	/**
+	 * Set whether the IO time budget and the number of rendered mipmap levels
+	 * should be adapted to meet the {@link #targetRenderNanos(long) target
+	 * rendering time}. If enabled, rendering waits for IO only as long as the
+	 * target rendering time allows, and fewer mipmap levels are rendered while
+	 * frames are slow because of IO.
+	 *
+	 * @param a
+	 *            whether to adapt IO budget and mipmap levels (default is
+	 *            {@code false}).
+	 * @see MultiResolutionRenderer#setAdaptiveFrameTime(boolean)
+	 */
+	public ViewerOptions adaptiveFrameTime( final boolean a )
+	{
+		values.adaptiveFrameTime = a;
+		return this;
+	}
+
+	/**
+	 * Set the maximum number of mipmap levels to render per source. If the
+	 * optimal mipmap level for a source is not loaded yet, coarser levels are
+	 * rendered instead. Limiting the number of levels skips intermediate
+	 * levels (the coarsest level is always rendered).
+	 *
+	 * @param n
+	 *            maximum number of mipmap levels. If {@code n <= 0} (default),
+	 *            the number is not limited.
+	 * @see MultiResolutionRenderer#setMaxNumHierarchyLevels(int)
+	 */
+	public ViewerOptions maxNumHierarchyLevels( final int n )
+	{
+		values.maxNumHierarchyLevels = n;
+		return this;
+	}
+
+	/**
+	 * Set whether visible sources may be rendered at different screen scales.
+	 * If enabled, the first rendering pass of a frame renders sources that
+	 * are expensive to render at a coarser screen scale than cheap sources.
+	 *
+	 * @param perSource
+	 *            whether to choose screen scales per source (default
+	 *            {@code false}).
+	 * @see MultiResolutionRenderer#setPerSourceScreenScales(boolean)
+	 */
+	public ViewerOptions perSourceScreenScales( final boolean perSource )
+	{
+		values.perSourceScreenScales = perSource;
+		return this;
+	}
+
+	/**
+	 * Set how far ahead the viewer transform is predicted while the user
+	 * navigates, to prefetch the cells needed for the predicted view.
+	 *
+	 * @param nanos
+	 *            look-ahead time in nanoseconds. If {@code nanos <= 0}
+	 *            (default), predictive prefetching is disabled.
+	 * @see MotionPrefetcher
+	 */
+	public ViewerOptions prefetchLookAheadNanos( final long nanos )
+	{
+		values.prefetchLookAheadNanos = nanos;
+		return this;
+	}
+
+	/**
+	 * Set the frame rate (timepoints per second) for playing back timepoints.
+	 *
+	 * @param framesPerSecond
+	 *            target frame rate (default 10).
+	 * @see ViewerPanel#togglePlayback()
+	 */
+	public ViewerOptions playbackFrameRate( final double framesPerSecond )
+	{
+		values.playbackFrameRate = framesPerSecond;
+		return this;
+	}
+
+	/**
+	 * Set how many upcoming timepoints are prefetched during playback.
+	 *
+	 * @param numTimepoints
+	 *            number of timepoints to prefetch (default 5).
+	 * @see TimepointPlayback#setPrefetchWindow(int)
+	 */
+	public ViewerOptions playbackPrefetchWindow( final int numTimepoints )
+	{
+		values.playbackPrefetchWindow = numTimepoints;
+		return this;
+	}
+
+	/**
+	 * Set whether the data needed to show bookmarks is prefetched in the
+	 * background while the viewer is idle.
+	 *
+	 * @param prefetch
+	 *            whether to prefetch bookmarks (default false).
+	 * @see BookmarkPrefetcher
+	 */
+	public ViewerOptions prefetchBookmarks( final boolean prefetch )
+	{
+		values.prefetchBookmarks = prefetch;
+		return this;
+	}
+
+	/**
+	 * Set whether cells within each mipmap level are prefetched starting
+	 * around the mouse position (while the mouse is inside the viewer)
+	 * instead of the center of the screen.
+	 *
+	 * @param focusOnMouse
+	 *            whether to prefetch around the mouse (default false).
+	 * @see MultiResolutionRenderer#setPrefetchFocus(double[])
+	 */
+	public ViewerOptions prefetchFocusOnMouse( final boolean focusOnMouse )
+	{
+		values.prefetchFocusOnMouse = focusOnMouse;
+		return this;
+	}
+
 	/**
 	 * Set how many threads to use for rendering.
 	 *
@@ -190,6 +345,63 @@ public class ViewerOptions
 		return this;
 	}
 
+	/**
+	 * Render volatile sources as the maximum intensity projection of a slab
+	 * around the screen plane, instead of a single slice. Mipmap levels are
+	 * chosen to match the spacing of samples through the slab.
+	 *
+	 * @param thickness
+	 *            thickness of the slab in global coordinates. Slab projection
+	 *            is disabled if {@code thickness <= 0} (default).
+	 * @param numSamples
+	 *            number of samples through the slab (along the viewing
+	 *            direction).
+	 * @see ViewerPanel#setMaxProjectionSlab(double, int)
+	 */
+	public ViewerOptions maxProjectionSlab( final double thickness, final int numSamples )
+	{
+		values.maxProjectionSlabThickness = thickness;
+		values.maxProjectionSlabSamples = numSamples;
+		return this;
+	}
+
+	/**
+	 * Set whether raw (unconverted) values of rendered frames should be
+	 * cached. If enabled, changing only the converters of sources (e.g.,
+	 * brightness and color) re-converts the cached values of the last
+	 * complete frame instead of re-rendering the sources. This requires one
+	 * additional {@code float} per screen pixel and visible source.
+	 *
+	 * @param c
+	 *            whether to cache raw values (default is {@code false}).
+	 * @see MultiResolutionRenderer#setCacheRawValues(boolean)
+	 */
+	public ViewerOptions cacheRawValues( final boolean c )
+	{
+		values.cacheRawValues = c;
+		return this;
+	}
+
+	/**
+	 * Set whether multiple visible sources should be composited as a mosaic.
+	 * This is intended for datasets consisting of many (up to thousands of)
+	 * adjacent tiles: every source is rendered only inside its screen
+	 * footprint, directly into the screen image, without allocating a
+	 * full-screen intermediate image per source. Where sources overlap, the
+	 * topmost source is shown instead of the sum of all sources, so this is
+	 * not suitable for overlapping channels.
+	 *
+	 * @param m
+	 *            whether to composite sources as a mosaic (default is
+	 *            {@code false}).
+	 * @see ViewerPanel#setMosaicCompositing(boolean)
+	 */
+	public ViewerOptions mosaicCompositing( final boolean m )
+	{
+		values.mosaicCompositing = m;
+		return this;
+	}
+
 	/**
 	 * Set the {@link InputTriggerConfig} from which keyboard and mouse action mapping is loaded.
 	 *
@@ -233,6 +445,24 @@ public class ViewerOptions
 
 		private long targetRenderNanos = 30 * 1000000l;
 
+		private long[] ioTimeBudget = new long[] { 100l * 1000000l, 10l * 1000000l };
+
+		private boolean adaptiveFrameTime = false;
+
+		private int maxNumHierarchyLevels = 0;
+
+		private boolean perSourceScreenScales = false;
+
+		private long prefetchLookAheadNanos = 0;
+
+		private double playbackFrameRate = 10;
+
+		private int playbackPrefetchWindow = 5;
+
+		private boolean prefetchBookmarks = false;
+
+		private boolean prefetchFocusOnMouse = false;
+
 		private int numRenderingThreads = 3;
 
 		private int numSourceGroups = 10;
@@ -247,6 +477,14 @@ public class ViewerOptions
 
 		private AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory = AccumulateProjectorARGB.factory;
 
+		private double maxProjectionSlabThickness = 0;
+
+		private int maxProjectionSlabSamples = 16;
+
+		private boolean cacheRawValues = false;
+
+		private boolean mosaicCompositing = false;
+
 		private InputTriggerConfig inputTriggerConfig = null;
 
 		private KeyPressedManager keyPressedManager = null;
@@ -258,6 +496,15 @@ public class ViewerOptions
 				height( height ).
 				screenScales( screenScales ).
 				targetRenderNanos( targetRenderNanos ).
+				ioTimeBudget( ioTimeBudget ).
+				adaptiveFrameTime( adaptiveFrameTime ).
+				maxNumHierarchyLevels( maxNumHierarchyLevels ).
+				perSourceScreenScales( perSourceScreenScales ).
+				prefetchLookAheadNanos( prefetchLookAheadNanos ).
+				playbackFrameRate( playbackFrameRate ).
+				playbackPrefetchWindow( playbackPrefetchWindow ).
+				prefetchBookmarks( prefetchBookmarks ).
+				prefetchFocusOnMouse( prefetchFocusOnMouse ).
 				numRenderingThreads( numRenderingThreads ).
 				numSourceGroups( numSourceGroups ).
 				useVolatileIfAvailable( useVolatileIfAvailable ).
@@ -265,6 +512,9 @@ public class ViewerOptions
 				is2D( is2D ).
 				transformEventHandlerFactory( transformEventHandlerFactory ).
 				accumulateProjectorFactory( accumulateProjectorFactory ).
+				maxProjectionSlab( maxProjectionSlabThickness, maxProjectionSlabSamples ).
+				cacheRawValues( cacheRawValues ).
+				mosaicCompositing( mosaicCompositing ).
 				inputTriggerConfig( inputTriggerConfig ).
 				shareKeyPressedEvents( keyPressedManager );
 		}
@@ -289,6 +539,51 @@ public class ViewerOptions
 			return targetRenderNanos;
 		}
 
+		public long[] getIoTimeBudget()
+		{
+			return ioTimeBudget;
+		}
+
+		public boolean isAdaptiveFrameTime()
+		{
+			return adaptiveFrameTime;
+		}
+
+		public int getMaxNumHierarchyLevels()
+		{
+			return maxNumHierarchyLevels;
+		}
+
+		public boolean isPerSourceScreenScales()
+		{
+			return perSourceScreenScales;
+		}
+
+		public long getPrefetchLookAheadNanos()
+		{
+			return prefetchLookAheadNanos;
+		}
+
+		public double getPlaybackFrameRate()
+		{
+			return playbackFrameRate;
+		}
+
+		public int getPlaybackPrefetchWindow()
+		{
+			return playbackPrefetchWindow;
+		}
+
+		public boolean isPrefetchBookmarks()
+		{
+			return prefetchBookmarks;
+		}
+
+		public boolean isPrefetchFocusOnMouse()
+		{
+			return prefetchFocusOnMouse;
+		}
+
 		public int getNumRenderingThreads()
 		{
 			return numRenderingThreads;
@@ -324,6 +619,26 @@ public class ViewerOptions
 			return accumulateProjectorFactory;
 		}
 
+		public double getMaxProjectionSlabThickness()
+		{
+			return maxProjectionSlabThickness;
+		}
+
+		public int getMaxProjectionSlabSamples()
+		{
+			return maxProjectionSlabSamples;
+		}
+
+		public boolean isCacheRawValues()
+		{
+			return cacheRawValues;
+		}
+
+		public boolean isMosaicCompositing()
+		{
+			return mosaicCompositing;
+		}
+
 		public InputTriggerConfig getInputTriggerConfig()
 		{
 			return inputTriggerConfig;
@@ -57,6 +57,7 @@ import javax.swing.JSlider;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 
+import net.imglib2.FinalDimensions;
 import net.imglib2.Interval;
 import bdv.viewer.render.awt.BufferedImageOverlayRenderer;
 import org.jdom2.Element;
@@ -71,9 +72,13 @@ import bdv.viewer.animate.RotationAnimator;
 import bdv.viewer.animate.TextOverlayAnimator;
 import bdv.viewer.animate.TextOverlayAnimator.TextPosition;
 import bdv.viewer.overlay.MultiBoxOverlayRenderer;
+import bdv.viewer.overlay.RenderStatisticsOverlayRenderer;
 import bdv.viewer.overlay.ScaleBarOverlayRenderer;
 import bdv.viewer.overlay.SourceInfoOverlayRenderer;
+import bdv.viewer.render.MotionPrefetcher;
 import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.RenderStatisticsListener;
+import bdv.viewer.render.TimepointPlayback;
 import bdv.viewer.state.SourceGroup;
 import bdv.viewer.state.ViewerState;
 import bdv.viewer.state.XmlIoViewerState;
@@ -133,6 +138,11 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 	 */
 	protected final ScaleBarOverlayRenderer scaleBarOverlayRenderer;
 
+	/**
+	 * Rendering performance charts, see {@link #toggleRenderStatisticsOverlay()}.
+	 */
+	protected final RenderStatisticsOverlayRenderer renderStatisticsOverlayRenderer;
+
 	private final TransformEventHandler transformEventHandler;
 
 	/**
@@ -147,8 +157,8 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 
 	/**
 	 * A {@link ThreadGroup} for (only) the threads used by this
-	 * {@link ViewerPanel}, that is, {@link #painterThread} and
-	 * {@link #renderingExecutorService}.
+	 * {@link ViewerPanel}, that is, {@link #painterThread},
+	 * {@link #renderingExecutorService}, and {@link #prefetchExecutorService}.
 	 */
 	protected ThreadGroup threadGroup;
 
@@ -162,6 +172,23 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 	 */
 	protected final ExecutorService renderingExecutorService;
 
+	/**
+	 * Prefetches the cells needed for the predicted viewer transform while
+	 * the user navigates.
+	 */
+	protected final MotionPrefetcher motionPrefetcher;
+
+	/**
+	 * The single-threaded {@link ExecutorService} used by the
+	 * {@link #motionPrefetcher}.
+	 */
+	protected final ExecutorService prefetchExecutorService;
+
+	/**
+	 * Plays back timepoints, see {@link #togglePlayback()}.
+	 */
+	protected final TimepointPlayback timepointPlayback;
+
 	/**
 	 * Keeps track of the current mouse coordinates, which are used to provide
 	 * the current global position (see {@link #getGlobalMouseCoordinates(RealPositionable)}).
@@ -246,6 +273,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		multiBoxOverlayRenderer = new MultiBoxOverlayRenderer();
 		sourceInfoOverlayRenderer = new SourceInfoOverlayRenderer();
 		scaleBarOverlayRenderer = Prefs.showScaleBar() ? new ScaleBarOverlayRenderer() : null;
+		renderStatisticsOverlayRenderer = new RenderStatisticsOverlayRenderer();
 
 		threadGroup = new ThreadGroup( this.toString() );
 		painterThread = new PainterThread( threadGroup, this );
@@ -270,6 +298,29 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 				options.isUseVolatileIfAvailable(),
 				options.getAccumulateProjectorFactory(),
 				cacheControl );
+		imageRenderer.setMaxProjectionSlab( options.getMaxProjectionSlabThickness(), options.getMaxProjectionSlabSamples() );
+		imageRenderer.setCacheRawValues( options.isCacheRawValues() );
+		imageRenderer.setMosaicCompositing( options.isMosaicCompositing() );
+		imageRenderer.setIoTimeBudget( options.getIoTimeBudget() );
+		imageRenderer.setAdaptiveFrameTime( options.isAdaptiveFrameTime() );
+		imageRenderer.setMaxNumHierarchyLevels( options.getMaxNumHierarchyLevels() );
+		imageRenderer.setPerSourceScreenScales( options.isPerSourceScreenScales() );
+
+		prefetchExecutorService = Executors.newSingleThreadExecutor( r -> {
+			final Thread t = new Thread( threadGroup, r, "bdv-motion-prefetch" );
+			t.setDaemon( true );
+			return t;
+		} );
+		motionPrefetcher = new MotionPrefetcher( prefetchExecutorService, options.isUseVolatileIfAvailable() );
+		motionPrefetcher.setLookAhead( options.getPrefetchLookAheadNanos() );
+
+		timepointPlayback = new TimepointPlayback( state(), () -> new FinalDimensions( display.getWidth(), display.getHeight() ), options.isUseVolatileIfAvailable() );
+		timepointPlayback.setPrefetchWindow( options.getPlaybackPrefetchWindow() );
+		timepointPlayback.ioLimitListeners().add( ioLimited -> {
+			if ( ioLimited )
+				showMessage( "playback limited by loading" );
+		} );
+		imageRenderer.renderStatisticsListeners().add( timepointPlayback );
 
 		mouseCoordinates = new MouseCoordinateListener();
 		display.addHandler( mouseCoordinates );
@@ -481,7 +532,10 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 				final AffineTransform3D transform = currentAnimator.getCurrent( System.currentTimeMillis() );
 				state().setViewerTransform( transform );
 				if ( currentAnimator.isComplete() )
+				{
 					currentAnimator = null;
+					imageRenderer.endAnimation();
+				}
 				else
 					requestRepaint();
 			}
@@ -502,6 +556,39 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		imageRenderer.requestRepaint( screenInterval );
 	}
 
+	/**
+	 * Repaint as soon as possible, after only the converters of sources have
+	 * changed. If raw values are {@link ViewerOptions#cacheRawValues cached},
+	 * the last complete frame is re-converted instead of re-rendered.
+	 */
+	public void requestRepaintForConverterChange()
+	{
+		imageRenderer.requestRepaintForConverterChange();
+	}
+
+	/**
+	 * Repaint as soon as possible, after the source transforms of
+	 * {@code sources} have changed.
+	 *
+	 * @param sources
+	 *            the sources (as returned by
+	 *            {@link SourceAndConverter#getSpimSource()}) whose transforms
+	 *            changed
+	 */
+	public void requestRepaintForSourceTransformChange( final Collection< ? extends Source< ? > > sources )
+	{
+		imageRenderer.requestRepaintForSourceTransformChange( sources );
+	}
+
+	/**
+	 * Repaint as soon as possible, after the source transforms of any sources
+	 * have changed.
+	 */
+	public void requestRepaintForSourceTransformChange()
+	{
+		imageRenderer.requestRepaintForSourceTransformChange();
+	}
+
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
@@ -576,10 +663,12 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 			// TODO multiBoxOverlayRenderer.highlight() all sources that became visible
 			break;
 		case VISIBILITY_CHANGED:
-			requestRepaint();
+			imageRenderer.requestRepaintForVisibilityChange();
+			break;
+		case NUM_SOURCES_CHANGED:
+			imageRenderer.requestRepaintForSourcesChange();
 			break;
 //		case SOURCE_TO_GROUP_ASSIGNMENT_CHANGED:
-//		case NUM_SOURCES_CHANGED:
 //		case NUM_GROUPS_CHANGED:
 		case INTERPOLATION_CHANGED:
 			final Interpolation interpolation = state().getInterpolation();
@@ -621,7 +710,9 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 			final AffineTransform3D transform = state().getViewerTransform();
 			for ( final TransformListener< AffineTransform3D > l : transformListeners )
 				l.transformChanged( transform );
-			requestRepaint();
+			imageRenderer.requestRepaintForTransformChange();
+			if ( currentAnimator == null )
+				motionPrefetcher.transformChanged( state().snapshot(), display.getWidth(), display.getHeight() );
 		}
 	}
 
@@ -701,15 +792,31 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 			centerY = getHeight() / 2.0;
 			centerX = getWidth() / 2.0;
 		}
-		currentAnimator = new RotationAnimator( transform, centerX, centerY, qTarget, 300 );
-		currentAnimator.setTime( System.currentTimeMillis() );
-		requestRepaint();
+		startTransformAnimation( new RotationAnimator( transform, centerX, centerY, qTarget, 300 ) );
 	}
 
 	public synchronized void setTransformAnimator( final AbstractTransformAnimator animator )
+	{
+		startTransformAnimation( animator );
+	}
+
+	/**
+	 * Number of transforms along the path of a transform animation that are
+	 * prefetched when the animation starts.
+	 */
+	private static final int NUM_ANIMATION_PATH_SAMPLES = 16;
+
+	/**
+	 * Start {@code animator}. The renderer stays at a fixed screen scale
+	 * during the animation, and the data along the path of the animation is
+	 * prefetched.
+	 */
+	private synchronized void startTransformAnimation( final AbstractTransformAnimator animator )
 	{
 		currentAnimator = animator;
 		currentAnimator.setTime( System.currentTimeMillis() );
+		final double screenScale = imageRenderer.startAnimation();
+		motionPrefetcher.prefetchPath( state().snapshot(), animator.getPath( NUM_ANIMATION_PATH_SAMPLES ), display.getWidth(), display.getHeight(), screenScale );
 		requestRepaint();
 	}
 
@@ -741,6 +848,27 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		state().setDisplayMode( displayMode );
 	}
 
+	/**
+	 * Render sources as the maximum intensity projection of a slab of the
+	 * given {@code thickness} (in global coordinates) around the current
+	 * slice, sampled at {@code numSamples} depths. Use {@code thickness = 0}
+	 * to render slices again.
+	 */
+	public void setMaxProjectionSlab( final double thickness, final int numSamples )
+	{
+		imageRenderer.setMaxProjectionSlab( thickness, numSamples );
+	}
+
+	/**
+	 * Composite multiple visible sources as a mosaic, that is, render every
+	 * source only inside its screen footprint and show the topmost source
+	 * where sources overlap. See {@link ViewerOptions#mosaicCompositing}.
+	 */
+	public void setMosaicCompositing( final boolean mosaic )
+	{
+		imageRenderer.setMosaicCompositing( mosaic );
+	}
+
 	/**
 	 * @deprecated Modify {@link #state()} directly ({@code state().setViewerTransform(t)})
 	 */
@@ -780,6 +908,44 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		NavigationActions.previousTimePoint( state() );
 	}
 
+	/**
+	 * Start playing back timepoints (forward, at the
+	 * {@link ViewerOptions#playbackFrameRate(double) playback frame rate}), or
+	 * stop playback if it is running.
+	 */
+	public void togglePlayback()
+	{
+		if ( timepointPlayback.isPlaying() )
+			timepointPlayback.stop();
+		else if ( state().getNumTimepoints() > 1 )
+			timepointPlayback.start( options.getPlaybackFrameRate(), true );
+	}
+
+	/**
+	 * Show the {@link RenderStatisticsOverlayRenderer rendering performance
+	 * charts}, or hide them if they are shown.
+	 */
+	public synchronized void toggleRenderStatisticsOverlay()
+	{
+		if ( display.overlays().remove( renderStatisticsOverlayRenderer ) )
+			imageRenderer.renderStatisticsListeners().remove( renderStatisticsOverlayRenderer );
+		else
+		{
+			imageRenderer.renderStatisticsListeners().add( renderStatisticsOverlayRenderer );
+			display.overlays().add( renderStatisticsOverlayRenderer );
+		}
+		display.repaint();
+	}
+
+	/**
+	 * Get the {@link TimepointPlayback} that plays back the timepoints of this
+	 * viewer.
+	 */
+	public TimepointPlayback getTimepointPlayback()
+	{
+		return timepointPlayback;
+	}
+
 	/**
 	 * Set the number of available timepoints. If {@code numTimepoints == 1}
 	 * this will hide the time slider, otherwise show it. If the currently
@@ -897,6 +1063,18 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		return renderTarget.transformListeners();
 	}
 
+	/**
+	 * Add/remove {@code RenderStatisticsListener}s to notify about completed
+	 * rendering passes. Listeners are notified on the painter thread with
+	 * per-frame timing, resolution and data completeness.
+	 *
+	 * @see #toggleRenderStatisticsOverlay()
+	 */
+	public Listeners< RenderStatisticsListener > renderStatisticsListeners()
+	{
+		return imageRenderer.renderStatisticsListeners();
+	}
+
 	/**
 	 * @deprecated Use {@code renderTransformListeners().add( listener )}.
 	 */
@@ -1029,6 +1207,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		{
 			x = e.getX();
 			y = e.getY();
+			updatePrefetchFocus();
 		}
 
 		@Override
@@ -1036,6 +1215,7 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		{
 			x = e.getX();
 			y = e.getY();
+			updatePrefetchFocus();
 			display.repaint(); // TODO: only when overlays are visible
 		}
 
@@ -1064,6 +1244,13 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 		public synchronized void mouseExited( final MouseEvent e )
 		{
 			isInside = false;
+			updatePrefetchFocus();
+		}
+
+		private void updatePrefetchFocus()
+		{
+			if ( options.isPrefetchFocusOnMouse() )
+				imageRenderer.setPrefetchFocus( isInside ? new double[] { x, y } : null );
 		}
 
 		@Override
@@ -1135,6 +1322,9 @@ public class ViewerPanel extends JPanel implements OverlayRenderer, PainterThrea
 			e.printStackTrace();
 		}
 		renderingExecutorService.shutdown();
+		motionPrefetcher.stop();
+		timepointPlayback.stop();
+		prefetchExecutorService.shutdownNow();
 		state.kill();
 		imageRenderer.kill();
 		renderTarget.kill();
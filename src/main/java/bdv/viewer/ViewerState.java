@@ -61,6 +61,35 @@ public interface ViewerState
 	 */
 	Listeners< ViewerStateChangeListener > changeListeners();
 
+	/**
+	 * Start a batch of modifications. Until the matching {@link #endBatch()},
+	 * {@code ViewerStateChange} events are not emitted, but collected. Batches
+	 * can be nested, only the outermost batch emits events.
+	 * <p>
+	 * Use like this:
+	 * <pre>{@code
+	 * state.beginBatch();
+	 * try {
+	 *     ... (modify state) ...
+	 * } finally {
+	 *     state.endBatch();
+	 * }}</pre>
+	 * The default implementation does nothing, i.e., events are emitted
+	 * immediately.
+	 */
+	default void beginBatch()
+	{}
+
+	/**
+	 * End a batch of modifications started with {@link #beginBatch()}. When the
+	 * outermost batch ends, every type of change that occurred in the batch is
+	 * emitted once, by calling
+	 * {@link ViewerStateChangeListener#viewerStateChanged(Set)} on each
+	 * listener.
+	 */
+	default void endBatch()
+	{}
+
 	/**
 	 * Get the interpolation method.
 	 *
@@ -28,6 +28,8 @@
  */
 package bdv.viewer;
 
+import java.util.Set;
+
 /**
  * {@link ViewerStateChangeListener}s are notified about BigDataViewer state
  * changes.
@@ -37,4 +39,22 @@ package bdv.viewer;
 public interface ViewerStateChangeListener
 {
 	void viewerStateChanged( ViewerStateChange change );
+
+	/**
+	 * Called at the end of a batch of modifications (see
+	 * {@link ViewerState#beginBatch()}), with every type of change that
+	 * occurred in the batch, in the order in which they first occurred.
+	 * <p>
+	 * The default implementation calls
+	 * {@link #viewerStateChanged(ViewerStateChange)} for each change.
+	 * Listeners that rebuild expensive models should override this to react
+	 * only once.
+	 *
+	 * @param changes
+	 *     the (unmodifiable) set of changes.
+	 */
+	default void viewerStateChanged( final Set< ViewerStateChange > changes )
+	{
+		changes.forEach( this::viewerStateChanged );
+	}
 }
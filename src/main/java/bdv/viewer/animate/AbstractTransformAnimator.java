@@ -28,6 +28,9 @@
  */
 package bdv.viewer.animate;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import net.imglib2.realtransform.AffineTransform3D;
 import bdv.viewer.ViewerFrame;
 
@@ -82,4 +85,22 @@ public abstract class AbstractTransformAnimator extends AbstractAnimator
 	 * @return the viewer transform for the specified completion factor.
 	 */
 	public abstract AffineTransform3D get( double t );
+
+	/**
+	 * Returns {@code numSamples} viewer transforms along the path of this
+	 * animation, for evenly spaced completion factors from 0 to 1. This can be
+	 * used to prepare for the animation before it is played, for example to
+	 * prefetch the data that will be shown.
+	 *
+	 * @param numSamples
+	 *            number of transforms.
+	 * @return viewer transforms from the start to the end of the animation.
+	 */
+	public List< AffineTransform3D > getPath( final int numSamples )
+	{
+		final List< AffineTransform3D > path = new ArrayList<>( numSamples );
+		for ( int i = 0; i < numSamples; ++i )
+			path.add( get( numSamples > 1 ? i / ( numSamples - 1.0 ) : 1.0 ).copy() );
+		return path;
+	}
 }
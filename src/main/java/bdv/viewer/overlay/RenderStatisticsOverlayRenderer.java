@@ -0,0 +1,181 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.overlay;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+
+import bdv.viewer.OverlayRenderer;
+import bdv.viewer.ViewerPanel;
+import bdv.viewer.render.RenderStatistics;
+import bdv.viewer.render.RenderStatisticsListener;
+
+/**
+ * Draws rolling charts of the rendering performance of a {@link ViewerPanel}:
+ * frames per second, and per-pass rendering and IO time. Passes that did not
+ * complete (because data was missing) are drawn in a different color.
+ * <p>
+ * It is shown and hidden by {@link ViewerPanel#toggleRenderStatisticsOverlay()}.
+ */
+public class RenderStatisticsOverlayRenderer implements OverlayRenderer, RenderStatisticsListener
+{
+	/**
+	 * How many rendering passes are shown in the charts.
+	 */
+	private static final int HISTORY_SIZE = 120;
+
+	/**
+	 * Rendering time (in ms) that corresponds to the full chart height.
+	 */
+	private static final double CHART_MAX_MILLIS = 50;
+
+	private static final int CHART_HEIGHT = 60;
+
+	private static final int BAR_WIDTH = 2;
+
+	private static final int MARGIN = 10;
+
+	private static final int TEXT_HEIGHT = 30;
+
+	private final Font font = new Font( "Monospaced", Font.PLAIN, 11 );
+
+	private final Color bgColor = new Color( 0, 0, 0, 160 );
+
+	private final Color renderColor = new Color( 80, 200, 80 );
+
+	private final Color incompleteColor = new Color( 230, 160, 40 );
+
+	private final Color ioColor = new Color( 220, 60, 60 );
+
+	private final Color textColor = Color.WHITE;
+
+	/**
+	 * Ring buffers of the last {@link #HISTORY_SIZE} rendering passes.
+	 */
+	private final long[] timestamps = new long[ HISTORY_SIZE ];
+
+	private final long[] renderNanos = new long[ HISTORY_SIZE ];
+
+	private final long[] ioNanos = new long[ HISTORY_SIZE ];
+
+	private final boolean[] complete = new boolean[ HISTORY_SIZE ];
+
+	private final boolean[] fullFrame = new boolean[ HISTORY_SIZE ];
+
+	/**
+	 * Index of the next slot to write in the ring buffers.
+	 */
+	private int next = 0;
+
+	/**
+	 * Number of valid slots in the ring buffers.
+	 */
+	private int size = 0;
+
+	private RenderStatistics last;
+
+	private int canvasWidth;
+
+	private int canvasHeight;
+
+	@Override
+	public synchronized void frameRendered( final RenderStatistics statistics )
+	{
+		timestamps[ next ] = statistics.getTimestamp();
+		renderNanos[ next ] = statistics.getRenderNanos();
+		ioNanos[ next ] = statistics.getIoNanos();
+		complete[ next ] = statistics.isComplete();
+		fullFrame[ next ] = !statistics.isInterval() && statistics.isNewProjector();
+		next = ( next + 1 ) % HISTORY_SIZE;
+		size = Math.min( size + 1, HISTORY_SIZE );
+		last = statistics;
+	}
+
+	@Override
+	public synchronized void drawOverlays( final Graphics g )
+	{
+		if ( last == null )
+			return;
+
+		final Graphics2D g2 = ( Graphics2D ) g;
+		final int w = HISTORY_SIZE * BAR_WIDTH;
+		final int h = CHART_HEIGHT + TEXT_HEIGHT;
+		final int x0 = canvasWidth - w - MARGIN;
+		final int y0 = canvasHeight - h - MARGIN;
+
+		g2.setColor( bgColor );
+		g2.fillRect( x0 - 4, y0 - 4, w + 8, h + 8 );
+
+		// bars, oldest first
+		final double pixelsPerNano = CHART_HEIGHT / ( CHART_MAX_MILLIS * 1e6 );
+		final int chartBottom = y0 + h;
+		for ( int i = 0; i < size; ++i )
+		{
+			final int slot = ( next - size + i + HISTORY_SIZE ) % HISTORY_SIZE;
+			final int x = x0 + ( HISTORY_SIZE - size + i ) * BAR_WIDTH;
+			final int rh = Math.min( CHART_HEIGHT, ( int ) Math.ceil( renderNanos[ slot ] * pixelsPerNano ) );
+			final int ih = Math.min( CHART_HEIGHT - rh, ( int ) Math.ceil( ioNanos[ slot ] * pixelsPerNano ) );
+			g2.setColor( complete[ slot ] ? renderColor : incompleteColor );
+			g2.fillRect( x, chartBottom - rh, BAR_WIDTH, rh );
+			if ( ih > 0 )
+			{
+				g2.setColor( ioColor );
+				g2.fillRect( x, chartBottom - rh - ih, BAR_WIDTH, ih );
+			}
+		}
+
+		// frames per second: new full frames in the last second
+		final long now = System.nanoTime();
+		int numFrames = 0;
+		for ( int i = 0; i < size; ++i )
+			if ( fullFrame[ i ] && now - timestamps[ i ] < 1_000_000_000L )
+				++numFrames;
+
+		g2.setFont( font );
+		g2.setColor( textColor );
+		g2.drawString( String.format( "%3d fps  %6.1f ms  io %6.1f ms",
+				numFrames,
+				last.getRenderNanos() / 1e6,
+				last.getIoNanos() / 1e6 ), x0, y0 + 10 );
+		g2.drawString( String.format( "scale %d  %d src  %s px invalid  queue %s",
+				last.getScreenScaleIndex(),
+				last.getNumSources(),
+				last.getNumInvalidPixels() < 0 ? "?" : Long.toString( last.getNumInvalidPixels() ),
+				last.getQueueDepth() < 0 ? "?" : Integer.toString( last.getQueueDepth() ) ), x0, y0 + 23 );
+	}
+
+	@Override
+	public synchronized void setCanvasSize( final int width, final int height )
+	{
+		canvasWidth = width;
+		canvasHeight = height;
+	}
+}
@@ -213,4 +213,23 @@ public abstract class AccumulateProjector< A, B > implements VolatileProjector
 	{
 		return valid;
 	}
+
+	/**
+	 * Sum of the {@link VolatileProjector#getNumInvalidPixels() invalid
+	 * pixels} of all source projectors. (Pixels that are invalid in more than
+	 * one source are counted multiple times.)
+	 */
+	@Override
+	public long getNumInvalidPixels()
+	{
+		long sum = 0;
+		for ( final VolatileProjector p : sourceProjectors )
+		{
+			final long n = p.getNumInvalidPixels();
+			if ( n < 0 )
+				return -1;
+			sum += n;
+		}
+		return sum;
+	}
 }
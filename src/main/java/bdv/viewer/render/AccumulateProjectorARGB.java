@@ -39,6 +39,8 @@ import net.imglib2.Cursor;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.iotiming.CacheIoTiming;
+import net.imglib2.cache.iotiming.IoStatistics;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.StopWatch;
@@ -127,6 +129,19 @@ public class AccumulateProjectorARGB implements VolatileProjector
 
 	private final int[] targetData;
 
+	/**
+	 * If all {@link #sourceProjectors} are {@link TiledProjector}s, rendering
+	 * and accumulating is fused: All sources are rendered for one tile of the
+	 * target image and then the tile is accumulated immediately, while it is
+	 * still in cache. The tiles of all sources are scheduled as one set of
+	 * tasks, instead of running each source projector to completion before
+	 * accumulating.
+	 * <p>
+	 * This is {@code null} if some source projector is not a
+	 * {@link TiledProjector}.
+	 */
+	private final List< TiledProjector > tiledSourceProjectors;
+
 	/**
      * Number of threads to use for rendering
      */
@@ -174,6 +189,20 @@ public class AccumulateProjectorARGB implements VolatileProjector
 			if ( sourceData[ i ] == null )
 				throw new IllegalArgumentException();
 		}
+
+		tiledSourceProjectors = getTiledProjectors( sourceProjectors );
+	}
+
+	private static List< TiledProjector > getTiledProjectors( final List< VolatileProjector > projectors )
+	{
+		final List< TiledProjector > tiledProjectors = new ArrayList<>( projectors.size() );
+		for ( final VolatileProjector p : projectors )
+		{
+			if ( !( p instanceof TiledProjector ) )
+				return null;
+			tiledProjectors.add( ( TiledProjector ) p );
+		}
+		return tiledProjectors;
 	}
 
 	@Override
@@ -182,6 +211,9 @@ public class AccumulateProjectorARGB implements VolatileProjector
 		if ( canceled.get() )
 			return false;
 
+		if ( tiledSourceProjectors != null )
+			return mapFused( clearUntouchedTargetPixels );
+
 		final StopWatch stopWatch = StopWatch.createAndStart();
 
 		valid = true;
@@ -223,6 +255,45 @@ public class AccumulateProjectorARGB implements VolatileProjector
 		return !canceled.get();
 	}
 
+	/**
+	 * Render and accumulate all sources tile by tile. For each tile, all
+	 * source projectors that are not yet {@link VolatileProjector#isValid()
+	 * valid} render the tile, then the tile is accumulated into the target.
+	 */
+	private boolean mapFused( final boolean clearUntouchedTargetPixels )
+	{
+		final StopWatch stopWatch = StopWatch.createAndStart();
+		final IoStatistics iostat = CacheIoTiming.getIoStatistics();
+		final long startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
+
+		final List< TiledProjector > invalidProjectors = new ArrayList<>();
+		for ( final TiledProjector p : tiledSourceProjectors )
+			if ( !p.isValid() )
+				invalidProjectors.add( p );
+		final TiledProjector[] projectors = invalidProjectors.toArray( new TiledProjector[ 0 ] );
+		for ( final TiledProjector p : projectors )
+			p.beginPass();
+
+		TileScheduler.forEachTile( ( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ), numThreads, executorService,
+				( startX, startY, endX, endY ) -> {
+					for ( final TiledProjector p : projectors )
+						p.mapTile( startX, startY, endX, endY, clearUntouchedTargetPixels );
+					map( startX, startY, endX, endY );
+				} );
+
+		for ( final TiledProjector p : projectors )
+			if ( !p.endPass() )
+				return false;
+
+		valid = true;
+		for ( final TiledProjector p : tiledSourceProjectors )
+			valid &= p.isValid();
+
+		lastFrameRenderNanoTime = stopWatch.nanoTime() - ( iostat.getCumulativeIoNanoTime() - startTimeIoCumulative ) / numThreads;
+
+		return !canceled.get();
+	}
+
 	@Override
 	public void cancel()
 	{
@@ -243,6 +314,25 @@ public class AccumulateProjectorARGB implements VolatileProjector
 		return valid;
 	}
 
+	/**
+	 * Sum of the {@link VolatileProjector#getNumInvalidPixels() invalid
+	 * pixels} of all source projectors. (Pixels that are invalid in more than
+	 * one source are counted multiple times.)
+	 */
+	@Override
+	public long getNumInvalidPixels()
+	{
+		long sum = 0;
+		for ( final VolatileProjector p : sourceProjectors )
+		{
+			final long n = p.getNumInvalidPixels();
+			if ( n < 0 )
+				return -1;
+			sum += n;
+		}
+		return sum;
+	}
+
 	/**
 	 * @return a {@code Callable} that runs {@code map(startOffset, endOffset)}
 	 */
@@ -276,6 +366,30 @@ public class AccumulateProjectorARGB implements VolatileProjector
 		}
 	}
 
+	/**
+	 * Accumulate the tile from {@code (startX, startY)} up to
+	 * {@code (endX, endY)} (exclusive) of all sources to target.
+	 */
+	private void map( final int startX, final int startY, final int endX, final int endY )
+	{
+		if ( canceled.get() )
+			return;
+
+		final int width = ( int ) target.dimension( 0 );
+		final int numSources = sources.size();
+		final int[] values = new int[ numSources ];
+		for ( int y = startY; y < endY; ++y )
+		{
+			final int o = y * width;
+			for ( int i = o + startX; i < o + endX; ++i )
+			{
+				for ( int s = 0; s < numSources; ++s )
+					values[ s ] = sourceData[ s ][ i ];
+				targetData[ i ] = accumulate( values );
+			}
+		}
+	}
+
 	protected int accumulate( final int[] values )
 	{
 		int aSum = 0, rSum = 0, gSum = 0, bSum = 0;
@@ -0,0 +1,528 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import bdv.AbstractSpimSource;
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.tools.transformation.TransformedSource;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * Fast path for sampling a 3D {@link VolatileCachedCellImg} of
+ * {@link VolatileUnsignedShortType} or {@link VolatileUnsignedByteType} into
+ * screen coordinates.
+ * <p>
+ * This is equivalent to
+ * {@code RealViews.affine(source.getInterpolatedSource(t, level, interpolation), sourceToScreen)}
+ * for the standard interpolated sources of {@link AbstractSpimSource} (nearest
+ * neighbor or n-linear interpolation of the image extended with a valid zero
+ * value). However, instead of transforming every position and looking up the
+ * cell for every pixel, its {@code RandomAccess} steps incrementally in source
+ * space when moving along X ({@code fwd(0)}), keeps the current cell as long as
+ * samples stay inside it, and reads the primitive {@code short[]} or
+ * {@code byte[]} cell storage directly.
+ *
+ * @param <T>
+ *     pixel type, {@link VolatileUnsignedShortType} or
+ *     {@link VolatileUnsignedByteType}
+ */
+class AffineVolatileCellSampler< T > implements RandomAccessible< T >
+{
+	private final VolatileCachedCellImg< ?, ? > img;
+
+	private final T type;
+
+	private final boolean nLinear;
+
+	/**
+	 * Transform from screen to source coordinates (inverse of
+	 * {@code sourceToScreen}).
+	 */
+	private final AffineTransform3D screenToSource;
+
+	/**
+	 * Create an {@link AffineVolatileCellSampler} for the specified source,
+	 * if the fast path is applicable. Otherwise returns {@code null}.
+	 *
+	 * @param source
+	 *     the source
+	 * @param img
+	 *     {@code source.getSource(t, level)}
+	 * @param interpolation
+	 *     interpolation method
+	 * @param sourceToScreen
+	 *     transforms source coordinates (of {@code img}) to screen coordinates
+	 */
+	static < T > RandomAccessible< T > create(
+			final Source< T > source,
+			final RandomAccessibleInterval< T > img,
+			final Interpolation interpolation,
+			final AffineTransform3D sourceToScreen )
+	{
+		if ( !hasStandardInterpolatedSource( source ) )
+			return null;
+		return create( img, source.getType(), interpolation, sourceToScreen );
+	}
+
+	/**
+	 * Create an {@link AffineVolatileCellSampler} for {@code img}, extended
+	 * by a valid zero value, if the fast path is applicable. Otherwise returns
+	 * {@code null}.
+	 *
+	 * @param img
+	 *     the image to sample
+	 * @param type
+	 *     pixel type of {@code img}
+	 * @param interpolation
+	 *     interpolation method
+	 * @param sourceToScreen
+	 *     transforms source coordinates (of {@code img}) to screen coordinates
+	 */
+	static < T > RandomAccessible< T > create(
+			final RandomAccessibleInterval< T > img,
+			final T type,
+			final Interpolation interpolation,
+			final AffineTransform3D sourceToScreen )
+	{
+		if ( !( img instanceof VolatileCachedCellImg ) || img.numDimensions() != 3 )
+			return null;
+		if ( !( type instanceof VolatileUnsignedShortType || type instanceof VolatileUnsignedByteType ) )
+			return null;
+		if ( interpolation != Interpolation.NEARESTNEIGHBOR && interpolation != Interpolation.NLINEAR )
+			return null;
+		return new AffineVolatileCellSampler<>( ( VolatileCachedCellImg< ?, ? > ) img, createVariable( type ), interpolation == Interpolation.NLINEAR, sourceToScreen );
+	}
+
+	/**
+	 * Whether {@code source.getInterpolatedSource()} is known to interpolate
+	 * {@code source.getSource()} extended by a valid zero value.
+	 */
+	private static boolean hasStandardInterpolatedSource( final Source< ? > source )
+	{
+		if ( source instanceof TransformedSource )
+			return hasStandardInterpolatedSource( ( ( TransformedSource< ? > ) source ).getWrappedSource() );
+		return source instanceof AbstractSpimSource;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static < T > T createVariable( final T type )
+	{
+		if ( type instanceof VolatileUnsignedShortType )
+			return ( T ) new VolatileUnsignedShortType();
+		else
+			return ( T ) new VolatileUnsignedByteType();
+	}
+
+	private AffineVolatileCellSampler(
+			final VolatileCachedCellImg< ?, ? > img,
+			final T type,
+			final boolean nLinear,
+			final AffineTransform3D sourceToScreen )
+	{
+		this.img = img;
+		this.type = type;
+		this.nLinear = nLinear;
+		this.screenToSource = sourceToScreen.inverse();
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return 3;
+	}
+
+	@Override
+	public RandomAccess< T > randomAccess()
+	{
+		return new Access();
+	}
+
+	@Override
+	public RandomAccess< T > randomAccess( final Interval interval )
+	{
+		return randomAccess();
+	}
+
+	private class Access extends Point implements RandomAccess< T >
+	{
+		private final T value;
+
+		private final VolatileUnsignedShortType shortValue;
+
+		private final VolatileUnsignedByteType byteValue;
+
+		private final RandomAccess< ? extends Cell< ? > > cellsRandomAccess;
+
+		private final RandomAccess< ? > fallbackRandomAccess;
+
+		private final long[] imgMax = new long[ 3 ];
+
+		private final int[] cellDims = new int[ 3 ];
+
+		private final long[] cellGridPosition = new long[ 3 ];
+
+		private final double[] screenPos = new double[ 3 ];
+
+		/**
+		 * Source position corresponding to the current screen position.
+		 */
+		private final double[] sourcePos = new double[ 3 ];
+
+		/**
+		 * Source step corresponding to moving one pixel in screen X.
+		 */
+		private final double[] xStep = new double[ 3 ];
+
+		/**
+		 * Whether {@link #sourcePos} needs to be re-computed from the current
+		 * screen position.
+		 */
+		private boolean dirty = true;
+
+		// current cell
+		private long cellMinX = 1, cellMinY = 1, cellMinZ = 1;
+
+		private long cellMaxX = 0, cellMaxY = 0, cellMaxZ = 0;
+
+		private int cellStepY, cellStepZ;
+
+		private short[] cellShorts;
+
+		private byte[] cellBytes;
+
+		private boolean cellValid;
+
+		/**
+		 * Whether the last {@link #sample} was valid.
+		 */
+		private boolean sampleValid;
+
+		Access()
+		{
+			super( 3 );
+			value = createVariable( type );
+			shortValue = value instanceof VolatileUnsignedShortType ? ( VolatileUnsignedShortType ) value : null;
+			byteValue = value instanceof VolatileUnsignedByteType ? ( VolatileUnsignedByteType ) value : null;
+			cellsRandomAccess = img.getCells().randomAccess();
+			fallbackRandomAccess = img.randomAccess();
+			img.max( imgMax );
+			img.getCellGrid().cellDimensions( cellDims );
+
+			final double[] o = new double[ 3 ];
+			final double[] e = new double[ 3 ];
+			screenToSource.apply( new double[] { 0, 0, 0 }, o );
+			screenToSource.apply( new double[] { 1, 0, 0 }, e );
+			for ( int d = 0; d < 3; ++d )
+				xStep[ d ] = e[ d ] - o[ d ];
+		}
+
+		private Access( final Access a )
+		{
+			this();
+			setPosition( a );
+		}
+
+		@Override
+		public T get()
+		{
+			if ( dirty )
+			{
+				for ( int d = 0; d < 3; ++d )
+					screenPos[ d ] = position[ d ];
+				screenToSource.apply( screenPos, sourcePos );
+				dirty = false;
+			}
+
+			final int v;
+			final boolean valid;
+			if ( nLinear )
+			{
+				final double fx = Math.floor( sourcePos[ 0 ] );
+				final double fy = Math.floor( sourcePos[ 1 ] );
+				final double fz = Math.floor( sourcePos[ 2 ] );
+				final double wx = sourcePos[ 0 ] - fx;
+				final double wy = sourcePos[ 1 ] - fy;
+				final double wz = sourcePos[ 2 ] - fz;
+				final long x0 = ( long ) fx;
+				final long y0 = ( long ) fy;
+				final long z0 = ( long ) fz;
+
+				boolean allValid = true;
+				final int v000 = sample( x0, y0, z0 );
+				allValid &= sampleValid;
+				final int v100 = sample( x0 + 1, y0, z0 );
+				allValid &= sampleValid;
+				final int v010 = sample( x0, y0 + 1, z0 );
+				allValid &= sampleValid;
+				final int v110 = sample( x0 + 1, y0 + 1, z0 );
+				allValid &= sampleValid;
+				final int v001 = sample( x0, y0, z0 + 1 );
+				allValid &= sampleValid;
+				final int v101 = sample( x0 + 1, y0, z0 + 1 );
+				allValid &= sampleValid;
+				final int v011 = sample( x0, y0 + 1, z0 + 1 );
+				allValid &= sampleValid;
+				final int v111 = sample( x0 + 1, y0 + 1, z0 + 1 );
+				allValid &= sampleValid;
+
+				final double v00 = v000 + wx * ( v100 - v000 );
+				final double v10 = v010 + wx * ( v110 - v010 );
+				final double v01 = v001 + wx * ( v101 - v001 );
+				final double v11 = v011 + wx * ( v111 - v011 );
+				final double v0 = v00 + wy * ( v10 - v00 );
+				final double v1 = v01 + wy * ( v11 - v01 );
+				v = ( int ) ( v0 + wz * ( v1 - v0 ) + 0.5 );
+				valid = allValid;
+			}
+			else
+			{
+				v = sample(
+						( long ) Math.floor( sourcePos[ 0 ] + 0.5 ),
+						( long ) Math.floor( sourcePos[ 1 ] + 0.5 ),
+						( long ) Math.floor( sourcePos[ 2 ] + 0.5 ) );
+				valid = sampleValid;
+			}
+
+			if ( shortValue != null )
+			{
+				shortValue.get().set( v );
+				shortValue.setValid( valid );
+			}
+			else
+			{
+				byteValue.get().set( v );
+				byteValue.setValid( valid );
+			}
+			return value;
+		}
+
+		/**
+		 * Get the value of source voxel {@code (x,y,z)} and set
+		 * {@link #sampleValid}. Voxels outside the image are valid zeros.
+		 */
+		private int sample( final long x, final long y, final long z )
+		{
+			if ( x < cellMinX || x > cellMaxX || y < cellMinY || y > cellMaxY || z < cellMinZ || z > cellMaxZ )
+			{
+				if ( x < 0 || y < 0 || z < 0 || x > imgMax[ 0 ] || y > imgMax[ 1 ] || z > imgMax[ 2 ] )
+				{
+					sampleValid = true;
+					return 0;
+				}
+				if ( !updateCell( x, y, z ) )
+					return sampleFallback( x, y, z );
+			}
+
+			final int i = ( int ) ( ( x - cellMinX ) + cellStepY * ( y - cellMinY ) + cellStepZ * ( z - cellMinZ ) );
+			sampleValid = cellValid;
+			return cellShorts != null
+					? cellShorts[ i ] & 0xffff
+					: cellBytes[ i ] & 0xff;
+		}
+
+		/**
+		 * Make the cell containing voxel {@code (x,y,z)} the current cell.
+		 *
+		 * @return {@code false}, if the cell data is not a primitive array of
+		 * the expected type. In this case, the current cell is empty.
+		 */
+		private boolean updateCell( final long x, final long y, final long z )
+		{
+			cellGridPosition[ 0 ] = x / cellDims[ 0 ];
+			cellGridPosition[ 1 ] = y / cellDims[ 1 ];
+			cellGridPosition[ 2 ] = z / cellDims[ 2 ];
+			cellsRandomAccess.setPosition( cellGridPosition );
+			final Cell< ? > cell = cellsRandomAccess.get();
+			final Object data = cell.getData();
+
+			cellShorts = null;
+			cellBytes = null;
+			if ( data instanceof VolatileArrayDataAccess )
+			{
+				final VolatileArrayDataAccess< ? > access = ( VolatileArrayDataAccess< ? > ) data;
+				final Object storage = access.getCurrentStorageArray();
+				if ( shortValue != null && storage instanceof short[] )
+					cellShorts = ( short[] ) storage;
+				else if ( byteValue != null && storage instanceof byte[] )
+					cellBytes = ( byte[] ) storage;
+				cellValid = access.isValid();
+			}
+
+			if ( cellShorts == null && cellBytes == null )
+			{
+				cellMinX = cellMinY = cellMinZ = 1;
+				cellMaxX = cellMaxY = cellMaxZ = 0;
+				return false;
+			}
+
+			cellMinX = cell.min( 0 );
+			cellMinY = cell.min( 1 );
+			cellMinZ = cell.min( 2 );
+			cellMaxX = cell.max( 0 );
+			cellMaxY = cell.max( 1 );
+			cellMaxZ = cell.max( 2 );
+			cellStepY = ( int ) cell.dimension( 0 );
+			cellStepZ = cellStepY * ( int ) cell.dimension( 1 );
+			return true;
+		}
+
+		/**
+		 * Get the value of source voxel {@code (x,y,z)} through a standard
+		 * {@code RandomAccess} on the image.
+		 */
+		private int sampleFallback( final long x, final long y, final long z )
+		{
+			fallbackRandomAccess.setPosition( x, 0 );
+			fallbackRandomAccess.setPosition( y, 1 );
+			fallbackRandomAccess.setPosition( z, 2 );
+			final Object t = fallbackRandomAccess.get();
+			if ( t instanceof VolatileUnsignedShortType )
+			{
+				final VolatileUnsignedShortType s = ( VolatileUnsignedShortType ) t;
+				sampleValid = s.isValid();
+				return s.get().get();
+			}
+			else
+			{
+				final VolatileUnsignedByteType b = ( VolatileUnsignedByteType ) t;
+				sampleValid = b.isValid();
+				return b.get().get();
+			}
+		}
+
+		@Override
+		public Access copy()
+		{
+			return new Access( this );
+		}
+
+		@Override
+		public void fwd( final int d )
+		{
+			super.fwd( d );
+			if ( d == 0 && !dirty )
+			{
+				sourcePos[ 0 ] += xStep[ 0 ];
+				sourcePos[ 1 ] += xStep[ 1 ];
+				sourcePos[ 2 ] += xStep[ 2 ];
+			}
+			else
+				dirty = true;
+		}
+
+		@Override
+		public void bck( final int d )
+		{
+			super.bck( d );
+			dirty = true;
+		}
+
+		@Override
+		public void move( final int distance, final int d )
+		{
+			super.move( distance, d );
+			dirty = true;
+		}
+
+		@Override
+		public void move( final long distance, final int d )
+		{
+			super.move( distance, d );
+			dirty = true;
+		}
+
+		@Override
+		public void move( final Localizable localizable )
+		{
+			super.move( localizable );
+			dirty = true;
+		}
+
+		@Override
+		public void move( final int[] distance )
+		{
+			super.move( distance );
+			dirty = true;
+		}
+
+		@Override
+		public void move( final long[] distance )
+		{
+			super.move( distance );
+			dirty = true;
+		}
+
+		@Override
+		public void setPosition( final Localizable localizable )
+		{
+			super.setPosition( localizable );
+			dirty = true;
+		}
+
+		@Override
+		public void setPosition( final int[] pos )
+		{
+			super.setPosition( pos );
+			dirty = true;
+		}
+
+		@Override
+		public void setPosition( final long[] pos )
+		{
+			super.setPosition( pos );
+			dirty = true;
+		}
+
+		@Override
+		public void setPosition( final int pos, final int d )
+		{
+			super.setPosition( pos, d );
+			dirty = true;
+		}
+
+		@Override
+		public void setPosition( final long pos, final int d )
+		{
+			super.setPosition( pos, d );
+			dirty = true;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import bdv.cache.CellLoadListener;
+import bdv.viewer.RequestRepaint;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Wakes up the painter thread when cells arrive that are rendered by the
+ * current projector. This replaces polling for new data while a frame is
+ * incomplete.
+ * <p>
+ * The current projector registers a {@link Footprint} for every rendered
+ * resolution level of every volatile source. A loaded cell is relevant if it
+ * belongs to one of the registered {@code CellGrid}s and its bounding box,
+ * transformed to the screen, overlaps the rendered screen image and the
+ * {@code z=0} plane. Cells that are loaded for other sources, for prefetched
+ * resolution levels, or for off-screen areas are ignored.
+ * <p>
+ * After an incomplete rendering pass, the renderer calls
+ * {@link #waitForCells()}. If relevant cells arrived in the meantime, it
+ * should repaint immediately. Otherwise, the next relevant cell arrival
+ * triggers a {@link RequestRepaint#requestRepaint() repaint} (at most one per
+ * wait, so that arrivals are coalesced).
+ * <p>
+ * Cells are reported once they are visible as valid through volatile images.
+ * A relevant arrival during a rendering pass (which may have read the cell
+ * before it arrived) is followed by one more pass. To ensure that a frame is
+ * never left incomplete because a wakeup was missed, a repaint is also
+ * requested if no relevant cell arrives within a poll interval while
+ * waiting.
+ */
+class CellArrivalMonitor implements CellLoadListener
+{
+	/**
+	 * A resolution level of a volatile source that is rendered by the current
+	 * projector.
+	 */
+	static final class Footprint
+	{
+		private final CellGrid grid;
+
+		private final AffineTransform3D sourceToScreen;
+
+		/**
+		 * @param grid
+		 *     {@code CellGrid} of the rendered image
+		 * @param sourceToScreen
+		 *     transforms image coordinates to screen image coordinates
+		 */
+		Footprint( final CellGrid grid, final AffineTransform3D sourceToScreen )
+		{
+			this.grid = grid;
+			this.sourceToScreen = sourceToScreen.copy();
+		}
+
+		/**
+		 * Whether the bounding box of {@code cell} (expanded by 1 voxel, to
+		 * account for interpolation), transformed to the screen, overlaps
+		 * the {@code width * height} screen image and the {@code z=0} plane.
+		 */
+		boolean overlaps( final Interval cell, final int width, final int height )
+		{
+			final int n = Math.min( 3, cell.numDimensions() );
+			final double[] corner = new double[ 3 ];
+			final double[] screen = new double[ 3 ];
+			final double[] min = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+			final double[] max = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+			for ( int i = 0; i < 8; ++i )
+			{
+				for ( int d = 0; d < n; ++d )
+					corner[ d ] = ( ( i >> d ) & 1 ) == 0 ? cell.min( d ) - 1 : cell.max( d ) + 1;
+				sourceToScreen.apply( corner, screen );
+				for ( int d = 0; d < 3; ++d )
+				{
+					min[ d ] = Math.min( min[ d ], screen[ d ] );
+					max[ d ] = Math.max( max[ d ], screen[ d ] );
+				}
+			}
+			return max[ 0 ] >= 0 && min[ 0 ] < width
+					&& max[ 1 ] >= 0 && min[ 1 ] < height
+					&& max[ 2 ] >= 0 && min[ 2 ] <= 0;
+		}
+	}
+
+	/**
+	 * Default interval (in milliseconds) after which a waiting renderer
+	 * repaints even if no relevant cell arrived.
+	 */
+	static final long DEFAULT_POLL_INTERVAL_MILLIS = 20;
+
+	/**
+	 * Timer thread for re-polling, shared by all monitors.
+	 */
+	private static final class PollTimer
+	{
+		static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor( r -> {
+			final Thread t = new Thread( r, "bdv-cell-arrival-poll" );
+			t.setDaemon( true );
+			return t;
+		} );
+	}
+
+	private final RequestRepaint painterThread;
+
+	private final long pollIntervalMillis;
+
+	/**
+	 * Footprints of the current projector, or {@code null} if some of the
+	 * rendered volatile data does not come from cells that are reported.
+	 */
+	private volatile List< Footprint > footprints;
+
+	private volatile int width;
+
+	private volatile int height;
+
+	/**
+	 * Whether the renderer is waiting for the next relevant cell arrival.
+	 */
+	private boolean waiting;
+
+	/**
+	 * How many more rendering passes should be done before the renderer
+	 * waits again.
+	 */
+	private int pendingPasses;
+
+	/**
+	 * Incremented whenever the renderer starts waiting, to identify
+	 * outdated re-poll timeouts.
+	 */
+	private long waitCount;
+
+	/**
+	 * Total number of reported cells, relevant or not.
+	 */
+	private final AtomicLong numLoadedCells = new AtomicLong();
+
+	CellArrivalMonitor( final RequestRepaint painterThread )
+	{
+		this( painterThread, DEFAULT_POLL_INTERVAL_MILLIS );
+	}
+
+	/**
+	 * @param painterThread
+	 *     repaints are requested here
+	 * @param pollIntervalMillis
+	 *     while waiting, a repaint is requested after this many milliseconds
+	 *     if no relevant cell arrives
+	 */
+	CellArrivalMonitor( final RequestRepaint painterThread, final long pollIntervalMillis )
+	{
+		this.painterThread = painterThread;
+		this.pollIntervalMillis = pollIntervalMillis;
+	}
+
+	/**
+	 * Set the footprints of a newly created projector.
+	 *
+	 * @param footprints
+	 *     footprints of all rendered levels of volatile sources, or
+	 *     {@code null} if some of them are unknown.
+	 * @param screenImage
+	 *     the target image of the projector
+	 */
+	synchronized void setFootprints( final List< Footprint > footprints, final Interval screenImage )
+	{
+		this.width = ( int ) screenImage.dimension( 0 );
+		this.height = ( int ) screenImage.dimension( 1 );
+		this.footprints = footprints;
+		waiting = false;
+		pendingPasses = 0;
+	}
+
+	/**
+	 * Whether all rendered volatile data of the current projector is covered
+	 * by footprints, that is, whether {@link #waitForCells()} can be used.
+	 */
+	boolean hasFootprints()
+	{
+		return footprints != null;
+	}
+
+	/**
+	 * Called after an incomplete rendering pass.
+	 *
+	 * @return {@code true} if the renderer should wait for the next relevant
+	 * cell arrival or the poll interval (either of which will trigger a
+	 * repaint). {@code false} if the renderer should repaint immediately.
+	 */
+	synchronized boolean waitForCells()
+	{
+		if ( pendingPasses > 0 )
+		{
+			--pendingPasses;
+			return false;
+		}
+		waiting = true;
+		final long w = ++waitCount;
+		PollTimer.executor.schedule( () -> pollTimeout( w ), pollIntervalMillis, TimeUnit.MILLISECONDS );
+		return true;
+	}
+
+	private synchronized void pollTimeout( final long w )
+	{
+		if ( waiting && waitCount == w )
+		{
+			waiting = false;
+			painterThread.requestRepaint();
+		}
+	}
+
+	/**
+	 * Get the total number of cells that have been reported as loaded since
+	 * this monitor was created.
+	 */
+	long getNumLoadedCells()
+	{
+		return numLoadedCells.get();
+	}
+
+	@Override
+	public void cellLoaded( final CellGrid grid, final Interval cell )
+	{
+		numLoadedCells.incrementAndGet();
+		final List< Footprint > fps = footprints;
+		if ( fps == null )
+			return;
+		for ( final Footprint footprint : fps )
+		{
+			if ( footprint.grid == grid && footprint.overlaps( cell, width, height ) )
+			{
+				cellArrived();
+				return;
+			}
+		}
+	}
+
+	private synchronized void cellArrived()
+	{
+		if ( waiting )
+		{
+			waiting = false;
+			painterThread.requestRepaint();
+		}
+		else
+			pendingPasses = 1;
+	}
+}
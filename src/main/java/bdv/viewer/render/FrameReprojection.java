@@ -0,0 +1,227 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.Arrays;
+import java.util.List;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.Intervals;
+
+/**
+ * Helpers to reproject a previously rendered {@link RenderResult} to a new
+ * viewer transform. This is used by {@link MultiResolutionRenderer} to show
+ * an immediate approximation of a new frame after the viewer transform
+ * changed.
+ */
+class FrameReprojection
+{
+	private static final double EPSILON = 1e-6;
+
+	/**
+	 * Get the transform from target image coordinates of a frame rendered with
+	 * {@code previousViewerTransform} to target image coordinates of a frame
+	 * rendered with {@code viewerTransform}. Both frames are rendered at the
+	 * same screen scale.
+	 *
+	 * @param scaleTransform
+	 *     transform from viewer coordinates to target image coordinates of the
+	 *     screen scale.
+	 */
+	static AffineTransform3D getDelta(
+			final AffineTransform3D previousViewerTransform,
+			final AffineTransform3D viewerTransform,
+			final AffineTransform3D scaleTransform )
+	{
+		final AffineTransform3D delta = scaleTransform.inverse();
+		delta.preConcatenate( previousViewerTransform.inverse() );
+		delta.preConcatenate( viewerTransform );
+		delta.preConcatenate( scaleTransform );
+		return delta;
+	}
+
+	/**
+	 * Whether {@code delta} maps the plane {@code z=0} to itself, i.e., the
+	 * previous frame shows the same plane (transformed in 2D).
+	 */
+	static boolean isInPlane( final AffineTransform3D delta )
+	{
+		return Math.abs( delta.get( 2, 0 ) ) < EPSILON
+				&& Math.abs( delta.get( 2, 1 ) ) < EPSILON
+				&& Math.abs( delta.get( 2, 3 ) ) < EPSILON;
+	}
+
+	/**
+	 * If {@code delta} is an in-plane translation by an integer number of
+	 * pixels, return the translation. Otherwise return {@code null}.
+	 */
+	static int[] getIntegerTranslation( final AffineTransform3D delta )
+	{
+		if ( !isInPlane( delta )
+				|| Math.abs( delta.get( 0, 0 ) - 1 ) > EPSILON
+				|| Math.abs( delta.get( 0, 1 ) ) > EPSILON
+				|| Math.abs( delta.get( 1, 0 ) ) > EPSILON
+				|| Math.abs( delta.get( 1, 1 ) - 1 ) > EPSILON )
+			return null;
+
+		final double tx = delta.get( 0, 3 );
+		final double ty = delta.get( 1, 3 );
+		final long dx = Math.round( tx );
+		final long dy = Math.round( ty );
+		if ( Math.abs( tx - dx ) > 1e-3 || Math.abs( ty - dy ) > 1e-3 )
+			return null;
+		return new int[] { ( int ) dx, ( int ) dy };
+	}
+
+	/**
+	 * Copy {@code source} to {@code target} (of the same size), shifted by
+	 * {@code (dx, dy)}. Pixels that are not covered by the shifted
+	 * {@code source} are cleared.
+	 *
+	 * @return {@code false}, if the target images are not backed by
+	 * {@code int[]} arrays. In that case, nothing is copied.
+	 */
+	static boolean shift( final RenderResult source, final RenderResult target, final int dx, final int dy )
+	{
+		final int[] src = ProjectorUtils.getARGBArrayImgData( source.getTargetImage() );
+		final int[] dst = ProjectorUtils.getARGBArrayImgData( target.getTargetImage() );
+		if ( src == null || dst == null )
+			return false;
+
+		final int width = ( int ) target.getTargetImage().dimension( 0 );
+		final int height = ( int ) target.getTargetImage().dimension( 1 );
+		final int x0 = Math.max( 0, dx );
+		final int x1 = Math.min( width, width + dx );
+		for ( int y = 0; y < height; ++y )
+		{
+			final int o = y * width;
+			final int sy = y - dy;
+			if ( sy < 0 || sy >= height || x0 >= x1 )
+			{
+				Arrays.fill( dst, o, o + width, 0 );
+				continue;
+			}
+			Arrays.fill( dst, o, o + x0, 0 );
+			System.arraycopy( src, sy * width + x0 - dx, dst, o + x0, x1 - x0 );
+			Arrays.fill( dst, o + x1, o + width, 0 );
+		}
+		return true;
+	}
+
+	/**
+	 * Resample {@code source} into {@code target} (of the same size) using
+	 * nearest-neighbor interpolation, such that the pixel at {@code p} in
+	 * {@code source} is moved to {@code delta(p)} in {@code target}. Only the
+	 * 2D part of {@code delta} is used, see {@link #isInPlane}. Pixels that
+	 * are not covered by the transformed {@code source} are cleared.
+	 *
+	 * @return {@code false}, if the target images are not backed by
+	 * {@code int[]} arrays. In that case, nothing is copied.
+	 */
+	static boolean warp( final RenderResult source, final RenderResult target, final AffineTransform3D delta )
+	{
+		final int[] src = ProjectorUtils.getARGBArrayImgData( source.getTargetImage() );
+		final int[] dst = ProjectorUtils.getARGBArrayImgData( target.getTargetImage() );
+		if ( src == null || dst == null )
+			return false;
+
+		final int width = ( int ) target.getTargetImage().dimension( 0 );
+		final int height = ( int ) target.getTargetImage().dimension( 1 );
+
+		/*
+		 * 2D inverse of delta, mapping target to source pixel coordinates.
+		 */
+		final double a = delta.get( 0, 0 );
+		final double b = delta.get( 0, 1 );
+		final double c = delta.get( 1, 0 );
+		final double d = delta.get( 1, 1 );
+		final double det = a * d - b * c;
+		if ( Math.abs( det ) < EPSILON )
+			return false;
+		final double ia = d / det;
+		final double ib = -b / det;
+		final double ic = -c / det;
+		final double id = a / det;
+		final double tx = delta.get( 0, 3 );
+		final double ty = delta.get( 1, 3 );
+
+		for ( int y = 0; y < height; ++y )
+		{
+			final int o = y * width;
+			// source position of target pixel (0, y)
+			double sx = ia * ( -tx ) + ib * ( y - ty );
+			double sy = ic * ( -tx ) + id * ( y - ty );
+			for ( int x = 0; x < width; ++x )
+			{
+				final int ix = ( int ) Math.floor( sx + 0.5 );
+				final int iy = ( int ) Math.floor( sy + 0.5 );
+				dst[ o + x ] = ( ix >= 0 && ix < width && iy >= 0 && iy < height )
+						? src[ iy * width + ix ]
+						: 0;
+				sx += ia;
+				sy += ic;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Add the strips of a {@code width * height} frame that are not covered
+	 * by the previous frame after shifting it by {@code (dx, dy)} to
+	 * {@code intervals}.
+	 */
+	static void addExposedStrips( final int width, final int height, final int dx, final int dy, final List< Interval > intervals )
+	{
+		if ( dx > 0 )
+			intervals.add( Intervals.createMinMax( 0, 0, dx - 1, height - 1 ) );
+		else if ( dx < 0 )
+			intervals.add( Intervals.createMinMax( width + dx, 0, width - 1, height - 1 ) );
+		if ( dy > 0 )
+			intervals.add( Intervals.createMinMax( 0, 0, width - 1, dy - 1 ) );
+		else if ( dy < 0 )
+			intervals.add( Intervals.createMinMax( 0, height + dy, width - 1, height - 1 ) );
+	}
+
+	/**
+	 * Scale {@code interval} (in target image coordinates of a screen scale
+	 * with the given {@code scale} factor) to screen coordinates, such that
+	 * it covers all affected screen pixels.
+	 */
+	static Interval targetToScreen( final Interval interval, final double scale )
+	{
+		return new FinalInterval(
+				new long[] {
+						( long ) Math.floor( interval.min( 0 ) / scale ),
+						( long ) Math.floor( interval.min( 1 ) / scale ) },
+				new long[] {
+						( long ) Math.ceil( ( interval.max( 0 ) + 1 ) / scale ) - 1,
+						( long ) Math.ceil( ( interval.max( 1 ) + 1 ) / scale ) - 1 } );
+	}
+}
@@ -0,0 +1,411 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bdv.util.MovingAverage;
+import bdv.viewer.Interpolation;
+import bdv.viewer.SourceAndConverter;
+
+/**
+ * Chooses the screen scale, the IO time budget, and the number of rendered
+ * mipmap levels, such that frames are rendered in (approximately) the target
+ * rendering time of {@link ScreenScales}.
+ * <p>
+ * The time to render one screen pixel is modelled as the sum of the costs of
+ * the visible sources. The cost of a source depends on its pixel type and on
+ * the interpolation method. Costs are learned from measured rendering times
+ * (by normalized least-mean-squares). The time that rendering waits for data
+ * to be loaded (IO stall) is measured and estimated separately, because it
+ * does not depend on the screen scale.
+ * <p>
+ * Optionally, {@link #suggestSourceScreenScales() screen scales are suggested
+ * per source}, such that expensive sources are rendered at a coarser scale
+ * than cheap sources.
+ * <p>
+ * If {@link #setAdaptive(boolean) adaptive}, the IO time budget is reduced to
+ * the time that is left after rendering, and the number of rendered mipmap
+ * levels is reduced while frames take too long because of IO (and increased
+ * again when frames are fast enough).
+ */
+class FrameTimeController
+{
+	/**
+	 * Cost (in nanoseconds per pixel) of sources with a pixel type that has
+	 * not been rendered before.
+	 */
+	private static final double INITIAL_NANOS_PER_PIXEL = 500;
+
+	private static final double MIN_NANOS_PER_PIXEL = 0.1;
+
+	private static final double LEARNING_RATE = 0.5;
+
+	/**
+	 * Rendering passes with fewer pixels are not used for learning costs,
+	 * because their time is dominated by overhead.
+	 */
+	private static final int MIN_NUM_PIXELS = 4096;
+
+	private static final int MIN_NUM_HIERARCHY_LEVELS = 2;
+
+	private final ScreenScales screenScales;
+
+	/**
+	 * Learned cost in nanoseconds per pixel of a source, for each pixel type.
+	 * The array is indexed by {@link Interpolation#ordinal()}.
+	 */
+	private final Map< Class< ? >, double[] > costs = new HashMap<>();
+
+	/**
+	 * Pixel type of each visible source in the current frame.
+	 */
+	private final List< Class< ? > > frameSourceTypes = new ArrayList<>();
+
+	/**
+	 * For each pixel type, the number of pixels rendered per screen pixel of
+	 * the current rendering pass, summed over the visible sources of that
+	 * type. This is the number of visible sources of that type, unless
+	 * sources are rendered at different screen scales.
+	 */
+	private final Map< Class< ? >, double[] > passSourceWeights = new HashMap<>();
+
+	/**
+	 * Interpolation method of the current frame.
+	 */
+	private Interpolation frameInterpolation = Interpolation.NEARESTNEIGHBOR;
+
+	/**
+	 * Estimate of the IO stall in nanoseconds per rendering pass.
+	 */
+	private final MovingAverage ioStallNanos;
+
+	/**
+	 * Maximum IO time budget (in nanoseconds) for each priority level.
+	 */
+	private long[] ioTimeBudget = new long[] { 100l * 1000000l, 10l * 1000000l };
+
+	private boolean adaptive = false;
+
+	/**
+	 * Maximum number of mipmap levels to render per source, as configured.
+	 * If {@code maxNumHierarchyLevels <= 0}, the number is not limited.
+	 */
+	private int maxNumHierarchyLevels = 0;
+
+	/**
+	 * Current (adapted) maximum number of mipmap levels to render per source.
+	 */
+	private int numHierarchyLevels = 0;
+
+	public FrameTimeController( final ScreenScales screenScales )
+	{
+		this.screenScales = screenScales;
+		ioStallNanos = new MovingAverage( 3 );
+		ioStallNanos.init( 0 );
+	}
+
+	/**
+	 * Set the maximum IO time budget (in nanoseconds) for each priority level.
+	 * See {@code IoTimeBudget}.
+	 */
+	public void setIoTimeBudget( final long[] budget )
+	{
+		ioTimeBudget = budget.clone();
+	}
+
+	/**
+	 * Set whether the IO time budget and the number of rendered mipmap levels
+	 * are adapted to meet the target rendering time.
+	 */
+	public void setAdaptive( final boolean adaptive )
+	{
+		this.adaptive = adaptive;
+		numHierarchyLevels = maxNumHierarchyLevels;
+	}
+
+	/**
+	 * Set the maximum number of mipmap levels to render per source. If
+	 * {@code n <= 0}, the number is not limited.
+	 */
+	public void setMaxNumHierarchyLevels( final int n )
+	{
+		maxNumHierarchyLevels = n;
+		numHierarchyLevels = n;
+	}
+
+	/**
+	 * Set the visible sources and interpolation method of a new frame.
+	 */
+	public void setFrame( final List< SourceAndConverter< ? > > sources, final Interpolation interpolation )
+	{
+		frameSourceTypes.clear();
+		for ( final SourceAndConverter< ? > source : sources )
+			frameSourceTypes.add( source.getSpimSource().getType().getClass() );
+		frameInterpolation = interpolation;
+		setPassScreenScales( 0, null );
+	}
+
+	/**
+	 * Set the screen scales of the next rendering pass of the current frame.
+	 *
+	 * @param screenScaleIndex
+	 *     screen scale index of the rendered image
+	 * @param sourceScreenScaleIndices
+	 *     screen scale index at which each visible source is rendered, or
+	 *     {@code null} if all sources are rendered at
+	 *     {@code screenScaleIndex}.
+	 */
+	public void setPassScreenScales( final int screenScaleIndex, final int[] sourceScreenScaleIndices )
+	{
+		passSourceWeights.clear();
+		final double pixels = numPixels( screenScaleIndex );
+		for ( int i = 0; i < frameSourceTypes.size(); ++i )
+		{
+			final double weight = sourceScreenScaleIndices == null
+					? 1
+					: numPixels( sourceScreenScaleIndices[ i ] ) / pixels;
+			passSourceWeights.computeIfAbsent( frameSourceTypes.get( i ), k -> new double[ 1 ] )[ 0 ] += weight;
+		}
+	}
+
+	private double numPixels( final int screenScaleIndex )
+	{
+		final ScreenScales.ScreenScale screenScale = screenScales.get( screenScaleIndex );
+		return Math.max( 1.0, ( double ) screenScale.width() * screenScale.height() );
+	}
+
+	/**
+	 * Estimate the time (in nanoseconds) to render one screen pixel of all
+	 * visible sources of the current frame.
+	 */
+	public double getRenderNanosPerPixel()
+	{
+		final int i = frameInterpolation.ordinal();
+		double nanos = 0;
+		for ( final Class< ? > type : frameSourceTypes )
+			nanos += getCosts( type )[ i ];
+		return nanos;
+	}
+
+	/**
+	 * Estimate the time (in nanoseconds) that rendering a frame waits for data
+	 * to be loaded.
+	 */
+	public double getIoStallNanos()
+	{
+		final double maxStall = ioTimeBudget.length > 0 ? ioTimeBudget[ 0 ] : 0;
+		return Math.min( ioStallNanos.getAverage(), maxStall );
+	}
+
+	/**
+	 * Suggest the screen scale index for the next full frame.
+	 */
+	public int suggestScreenScale()
+	{
+		return screenScales.suggestScreenScale( getRenderNanosPerPixel(), getIoStallNanos() );
+	}
+
+	/**
+	 * Suggest a screen scale index for each visible source of the current
+	 * frame, such that the frame can be rendered within the target rendering
+	 * time. Starting with all sources at full resolution, the source that
+	 * takes longest to render is moved to the next coarser screen scale,
+	 * until the estimated rendering time is within the target (or all
+	 * sources are at the coarsest screen scale). The frame should be rendered
+	 * at the finest of the suggested screen scales.
+	 */
+	public int[] suggestSourceScreenScales()
+	{
+		final int n = frameSourceTypes.size();
+		final int coarsest = screenScales.size() - 1;
+		final int i = frameInterpolation.ordinal();
+		final double[] nanosPerPixel = new double[ n ];
+		for ( int s = 0; s < n; ++s )
+			nanosPerPixel[ s ] = getCosts( frameSourceTypes.get( s ) )[ i ];
+
+		final int[] indices = new int[ n ];
+		final double target = screenScales.getTargetRenderNanos() - getIoStallNanos();
+		while ( true )
+		{
+			double total = 0;
+			int slowest = -1;
+			double slowestNanos = 0;
+			for ( int s = 0; s < n; ++s )
+			{
+				final double nanos = screenScales.get( indices[ s ] ).estimateRenderNanos( nanosPerPixel[ s ] );
+				total += nanos;
+				if ( indices[ s ] < coarsest && nanos > slowestNanos )
+				{
+					slowest = s;
+					slowestNanos = nanos;
+				}
+			}
+			if ( total <= target || slowest < 0 )
+				return indices;
+			++indices[ slowest ];
+		}
+	}
+
+	/**
+	 * Suggest the screen scale index for the next interval, which is not finer
+	 * than {@code minScreenScaleIndex}.
+	 */
+	public int suggestIntervalScreenScale( final int minScreenScaleIndex )
+	{
+		return screenScales.suggestIntervalScreenScale( getRenderNanosPerPixel(), minScreenScaleIndex );
+	}
+
+	/**
+	 * Get the IO time budget for rendering {@code numPixels} screen pixels.
+	 * If adaptive, the budget is limited to the target rendering time minus
+	 * the estimated rendering time.
+	 */
+	public long[] getIoTimeBudget( final long numPixels )
+	{
+		if ( !adaptive )
+			return ioTimeBudget;
+
+		final double remaining = screenScales.getTargetRenderNanos() - numPixels * getRenderNanosPerPixel();
+		final long slack = ( long ) Math.max( 0, remaining );
+		final long[] budget = new long[ ioTimeBudget.length ];
+		for ( int i = 0; i < budget.length; ++i )
+			budget[ i ] = Math.min( ioTimeBudget[ i ], slack );
+		return budget;
+	}
+
+	/**
+	 * Get the maximum number of mipmap levels to render per source. If
+	 * {@code <= 0}, the number is not limited.
+	 */
+	public int getMaxNumHierarchyLevels()
+	{
+		return numHierarchyLevels;
+	}
+
+	/**
+	 * Record the time of a rendering pass of the current frame.
+	 *
+	 * @param numPixels
+	 *     number of rendered screen pixels
+	 * @param renderNanos
+	 *     time of the rendering pass, in nanoseconds
+	 * @param ioNanos
+	 *     IO time measured during the rendering pass, in nanoseconds
+	 * @param numLevels
+	 *     maximum number of mipmap levels that were rendered per source
+	 */
+	public void recordRenderTime( final long numPixels, final long renderNanos, final long ioNanos, final int numLevels )
+	{
+		if ( numPixels < MIN_NUM_PIXELS || frameSourceTypes.isEmpty() )
+			return;
+
+		// IO time is summed over rendering threads, so it may be larger than renderNanos
+		final long stall = Math.max( 0, Math.min( ioNanos, renderNanos ) );
+		ioStallNanos.add( stall );
+		learnCosts( ( renderNanos - stall ) / ( double ) numPixels );
+
+		if ( adaptive )
+			adaptNumHierarchyLevels( renderNanos, stall, numLevels );
+	}
+
+	/**
+	 * Update the costs of the pixel types of the current frame, such that the
+	 * estimated rendering time per pixel approaches {@code nanosPerPixel}.
+	 */
+	private void learnCosts( final double nanosPerPixel )
+	{
+		final int i = frameInterpolation.ordinal();
+		double estimate = 0;
+		double norm = 0;
+		for ( final Map.Entry< Class< ? >, double[] > entry : passSourceWeights.entrySet() )
+		{
+			final double n = entry.getValue()[ 0 ];
+			estimate += n * getCosts( entry.getKey() )[ i ];
+			norm += n * n;
+		}
+
+		final double error = nanosPerPixel - estimate;
+		for ( final Map.Entry< Class< ? >, double[] > entry : passSourceWeights.entrySet() )
+		{
+			final double n = entry.getValue()[ 0 ];
+			final double[] c = getCosts( entry.getKey() );
+			c[ i ] = Math.max( MIN_NANOS_PER_PIXEL, c[ i ] + LEARNING_RATE * error * n / norm );
+		}
+	}
+
+	/**
+	 * Render fewer mipmap levels if a rendering pass took too long, mostly
+	 * waiting for IO. Render more levels again if a pass was fast.
+	 */
+	private void adaptNumHierarchyLevels( final long renderNanos, final long stall, final int numLevels )
+	{
+		final double target = screenScales.getTargetRenderNanos();
+		if ( renderNanos > target && 2 * stall > renderNanos )
+		{
+			final int n = numHierarchyLevels > 0 ? Math.min( numHierarchyLevels, numLevels ) : numLevels;
+			if ( n > MIN_NUM_HIERARCHY_LEVELS )
+				numHierarchyLevels = n - 1;
+		}
+		else if ( 2 * renderNanos < target && numHierarchyLevels > 0 )
+		{
+			if ( numLevels < numHierarchyLevels )
+				// the limit was not reached
+				numHierarchyLevels = maxNumHierarchyLevels;
+			else if ( maxNumHierarchyLevels <= 0 || numHierarchyLevels < maxNumHierarchyLevels )
+				++numHierarchyLevels;
+		}
+	}
+
+	/**
+	 * Get the costs for sources with pixel type {@code type}. Costs for a
+	 * type that has not been rendered before are initialized to the mean of
+	 * the costs of known types.
+	 */
+	private double[] getCosts( final Class< ? > type )
+	{
+		double[] c = costs.get( type );
+		if ( c == null )
+		{
+			c = new double[ Interpolation.values().length ];
+			for ( int i = 0; i < c.length; ++i )
+			{
+				double sum = 0;
+				for ( final double[] known : costs.values() )
+					sum += known[ i ];
+				c[ i ] = costs.isEmpty() ? INITIAL_NANOS_PER_PIXEL : sum / costs.size();
+			}
+			costs.put( type, c );
+		}
+		return c;
+	}
+}
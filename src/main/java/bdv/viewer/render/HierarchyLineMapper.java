@@ -0,0 +1,212 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.Arrays;
+import net.imglib2.RandomAccess;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.loops.ClassCopyProvider;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Inner loop of {@link VolatileHierarchyProjector}: Copy one line of pixels
+ * from a source resolution level to the target.
+ * <p>
+ * Instances are created by {@link #create}, which returns a copy of the
+ * implementing class for every combination of volatile type, converter class,
+ * and source {@code RandomAccess} class. This keeps the {@code get()},
+ * {@code isValid()}, and {@code convert()} call sites in the loop monomorphic
+ * when many sources of different types are rendered in the same JVM.
+ *
+ * @param <A>
+ *     source pixel type
+ * @param <B>
+ *     target pixel type
+ */
+public interface HierarchyLineMapper< A extends Volatile< ? >, B >
+{
+	/**
+	 * Copy {@code length} pixels, starting at the current positions of
+	 * {@code sourceRandomAccess} and {@code targetRandomAccess} and moving
+	 * along dimension {@code 0}.
+	 * <p>
+	 * Only valid source pixels with a current mask value
+	 * {@code mask>resolutionIndex} are copied to target, and their mask value
+	 * is set to {@code mask=resolutionIndex}.
+	 *
+	 * @param sourceRandomAccess
+	 *     positioned at the first source pixel of the line
+	 * @param targetRandomAccess
+	 *     positioned at the first target pixel of the line
+	 * @param converter
+	 *     converts source to target pixels
+	 * @param mask
+	 *     resolution level mask of the target
+	 * @param maskOffset
+	 *     index in {@code mask} of the first pixel of the line
+	 * @param length
+	 *     number of pixels in the line
+	 * @param resolutionIndex
+	 *     index of the source resolution level
+	 *
+	 * @return the number of invalid pixels in the line, i.e., pixels that
+	 * could not be filled from {@code resolutionIndex} or a previous pass.
+	 */
+	int mapLine(
+			RandomAccess< A > sourceRandomAccess,
+			RandomAccess< B > targetRandomAccess,
+			Converter< ? super A, B > converter,
+			byte[] mask,
+			int maskOffset,
+			int length,
+			byte resolutionIndex );
+
+	/**
+	 * Like {@link #mapLine}, but additionally record the value of every
+	 * copied pixel in {@code rawValues} (at the same index as in
+	 * {@code mask}). The value type of {@code A} must be a
+	 * {@link RealType}.
+	 *
+	 * @param rawValues
+	 *     raw (unconverted) values of the target
+	 *
+	 * @return the number of invalid pixels in the line, i.e., pixels that
+	 * could not be filled from {@code resolutionIndex} or a previous pass.
+	 */
+	int mapLine(
+			RandomAccess< A > sourceRandomAccess,
+			RandomAccess< B > targetRandomAccess,
+			Converter< ? super A, B > converter,
+			byte[] mask,
+			float[] rawValues,
+			int maskOffset,
+			int length,
+			byte resolutionIndex );
+
+	static < A extends Volatile< ? >, B > HierarchyLineMapper< A, B > create(
+			final Class< ? > volatileTypeClass,
+			final Class< ? > converterClass,
+			final Class< ? > sourceAccessClass )
+	{
+		return HierarchyLineMapperInstances.create( volatileTypeClass, converterClass, sourceAccessClass );
+	}
+}
+
+class HierarchyLineMapperInstances
+{
+	@SuppressWarnings( "rawtypes" )
+	private static ClassCopyProvider< HierarchyLineMapper > provider;
+
+	@SuppressWarnings( "unchecked" )
+	public static < A extends Volatile< ? >, B > HierarchyLineMapper< A, B > create(
+			final Class< ? > volatileTypeClass,
+			final Class< ? > converterClass,
+			final Class< ? > sourceAccessClass )
+	{
+		if ( provider == null )
+		{
+			synchronized ( HierarchyLineMapperInstances.class )
+			{
+				if ( provider == null )
+					provider = new ClassCopyProvider<>( Imp.class, HierarchyLineMapper.class );
+			}
+		}
+
+		final Object key = Arrays.asList( volatileTypeClass, converterClass, sourceAccessClass );
+		return provider.newInstanceForKey( key );
+	}
+
+	public static class Imp< A extends Volatile< ? >, B > implements HierarchyLineMapper< A, B >
+	{
+		@Override
+		public int mapLine(
+				final RandomAccess< A > sourceRandomAccess,
+				final RandomAccess< B > targetRandomAccess,
+				final Converter< ? super A, B > converter,
+				final byte[] mask,
+				final int maskOffset,
+				final int length,
+				final byte resolutionIndex )
+		{
+			int numInvalidPixels = 0;
+			final int end = maskOffset + length;
+			for ( int i = maskOffset; i < end; ++i )
+			{
+				if ( mask[ i ] > resolutionIndex )
+				{
+					final A a = sourceRandomAccess.get();
+					if ( a.isValid() )
+					{
+						converter.convert( a, targetRandomAccess.get() );
+						mask[ i ] = resolutionIndex;
+					}
+					else
+						++numInvalidPixels;
+				}
+				sourceRandomAccess.fwd( 0 );
+				targetRandomAccess.fwd( 0 );
+			}
+			return numInvalidPixels;
+		}
+
+		@Override
+		public int mapLine(
+				final RandomAccess< A > sourceRandomAccess,
+				final RandomAccess< B > targetRandomAccess,
+				final Converter< ? super A, B > converter,
+				final byte[] mask,
+				final float[] rawValues,
+				final int maskOffset,
+				final int length,
+				final byte resolutionIndex )
+		{
+			int numInvalidPixels = 0;
+			final int end = maskOffset + length;
+			for ( int i = maskOffset; i < end; ++i )
+			{
+				if ( mask[ i ] > resolutionIndex )
+				{
+					final A a = sourceRandomAccess.get();
+					if ( a.isValid() )
+					{
+						rawValues[ i ] = ( ( RealType< ? > ) a.get() ).getRealFloat();
+						converter.convert( a, targetRandomAccess.get() );
+						mask[ i ] = resolutionIndex;
+					}
+					else
+						++numInvalidPixels;
+				}
+				sourceRandomAccess.fwd( 0 );
+				targetRandomAccess.fwd( 0 );
+			}
+			return numInvalidPixels;
+		}
+	}
+}
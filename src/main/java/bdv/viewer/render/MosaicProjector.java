@@ -0,0 +1,642 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import net.imglib2.FinalInterval;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.util.StopWatch;
+
+import bdv.viewer.render.TileScheduler.GridCell;
+
+/**
+ * {@link VolatileProjector} that renders many non-overlapping (or slightly
+ * overlapping) sources, such as the tiles of a stitched acquisition, directly
+ * into the target image.
+ * <p>
+ * Instead of rendering every source to a full-size intermediate image and
+ * accumulating the intermediate images, the screen footprint of every source
+ * (the intersection of its bounding box with the {@code z=0} plane) is
+ * computed as one span of pixels per screen row. Every target pixel is owned
+ * by exactly one source: where footprints overlap, the source that comes last
+ * in the list of pieces wins. Pixels are rendered only from their owner, so
+ * overlapping sources are not blended, and pixels outside all footprints are
+ * cleared.
+ * <p>
+ * Like {@link VolatileHierarchyProjector}, resolution levels of each source
+ * are tried successively, starting from the optimal level {@code 0}, and the
+ * best level that provided a valid value is recorded in a mask. All sources
+ * share a single mask of the size of the target image.
+ */
+public class MosaicProjector implements TiledProjector
+{
+	/**
+	 * One source of the mosaic, with its resolution levels transformed to
+	 * the screen, and its bounding box.
+	 *
+	 * @param <A>
+	 *     volatile pixel type of the source
+	 */
+	public static final class Piece< A extends Volatile< ? > >
+	{
+		private final List< RandomAccessible< A > > levels;
+
+		private final Converter< ? super A, ARGBType > converter;
+
+		private final HierarchyLineMapper< A, ARGBType > lineMapper;
+
+		private final AffineTransform3D sourceToScreen;
+
+		private final RealInterval bounds;
+
+		/**
+		 * @param levels
+		 *     resolution levels of the source, transformed to screen
+		 *     coordinates, starting with the optimal resolution.
+		 * @param converter
+		 *     converts source values to ARGB.
+		 * @param lineMapper
+		 *     copies lines of pixels from a resolution level to the target.
+		 * @param sourceToScreen
+		 *     transforms {@code bounds} to screen coordinates.
+		 * @param bounds
+		 *     the region in source coordinates that contains data, or
+		 *     {@code null} if the source covers the whole screen.
+		 */
+		public Piece(
+				final List< ? extends RandomAccessible< A > > levels,
+				final Converter< ? super A, ARGBType > converter,
+				final HierarchyLineMapper< A, ARGBType > lineMapper,
+				final AffineTransform3D sourceToScreen,
+				final RealInterval bounds )
+		{
+			this.levels = new ArrayList<>( levels );
+			this.converter = converter;
+			this.lineMapper = lineMapper;
+			this.sourceToScreen = sourceToScreen.copy();
+			this.bounds = bounds;
+		}
+	}
+
+	/**
+	 * Mask value of pixels that were never written.
+	 */
+	private static final byte UNTOUCHED = Byte.MAX_VALUE;
+
+	private final List< Piece< ? > > pieces;
+
+	/**
+	 * The target interval.
+	 */
+	private final RandomAccessibleInterval< ARGBType > target;
+
+	/**
+	 * The underlying {@code int[]} array of {@link #target}, if it is a
+	 * standard {@code ArrayImg<ARGBType>}. Otherwise {@code null}.
+	 */
+	private final int[] targetData;
+
+	/**
+	 * For every target row, the segments of pixels with the same owner,
+	 * stored as consecutive triples of (start x, end x (exclusive), index of
+	 * owning piece). Pixels that are not covered by any segment are not
+	 * owned by any piece.
+	 */
+	private final int[][] rowSegments;
+
+	/**
+	 * Records, for every target pixel, the best (smallest index) resolution
+	 * level of its owner that has provided a valid value. {@link #UNTOUCHED}
+	 * for owned pixels that were never written, and {@code 0} for pixels that
+	 * are not owned by any piece.
+	 */
+	private final byte[] mask;
+
+	/**
+	 * Incremented by {@link #clearMask()}, to invalidate the {@link #mask} of
+	 * all tiles without touching the mask array.
+	 */
+	private int generation;
+
+	/**
+	 * Rendering state for every tile of the {@link TileScheduler} grid, in
+	 * row-major order.
+	 */
+	private final TileState[] tiles;
+
+	/**
+	 * Source interval which will be used for rendering. This is the 2D target
+	 * interval expanded to source dimensionality (usually 3D) with
+	 * {@code min=max=0} in the additional dimensions.
+	 */
+	private final FinalInterval sourceInterval;
+
+	private final int numThreads;
+
+	private final ExecutorService executorService;
+
+	/**
+	 * {@code true} iff all owned target pixels were rendered with valid data
+	 * from the optimal resolution level (level {@code 0}).
+	 */
+	private volatile boolean valid = false;
+
+	/**
+	 * Number of target pixels that were not filled from valid data at the
+	 * optimal resolution level in the last rendering pass.
+	 */
+	private volatile long numInvalidPixels;
+
+	/**
+	 * Collects the number of invalid pixels over all tiles rendered in the
+	 * current pass.
+	 */
+	private final AtomicLong nextNumInvalidPixels = new AtomicLong();
+
+	/**
+	 * Time needed for rendering the last frame, in nano-seconds.
+	 */
+	private long lastFrameRenderNanoTime;
+
+	private final AtomicBoolean canceled = new AtomicBoolean();
+
+	/**
+	 * @param pieces
+	 *     the sources of the mosaic. Where footprints overlap, later pieces
+	 *     are shown.
+	 * @param target
+	 *     the target image.
+	 * @param maskArray
+	 *     array to store the mask, with at least as many elements as
+	 *     {@code target}.
+	 * @param numThreads
+	 *     how many threads to use for rendering.
+	 * @param executorService
+	 *     used for rendering, may be {@code null}.
+	 */
+	public MosaicProjector(
+			final List< ? extends Piece< ? > > pieces,
+			final RandomAccessibleInterval< ARGBType > target,
+			final byte[] maskArray,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		this.pieces = new ArrayList<>( pieces );
+		this.target = target;
+		targetData = ProjectorUtils.getARGBArrayImgData( target );
+		mask = maskArray;
+
+		final int n = Math.max( 2, pieces.get( 0 ).levels.get( 0 ).numDimensions() );
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		min[ 0 ] = target.min( 0 );
+		max[ 0 ] = target.max( 0 );
+		min[ 1 ] = target.min( 1 );
+		max[ 1 ] = target.max( 1 );
+		sourceInterval = new FinalInterval( min, max );
+
+		this.numThreads = numThreads;
+		this.executorService = executorService;
+
+		rowSegments = computeRowSegments();
+
+		tiles = TileScheduler.createGridCells( ( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ), TileState[]::new, TileState::new );
+
+		lastFrameRenderNanoTime = -1;
+		numInvalidPixels = target.dimension( 0 ) * target.dimension( 1 );
+		clearMask();
+	}
+
+	/**
+	 * Compute the {@link #rowSegments}. For every piece and every row that
+	 * its bounding box covers on screen, the span of pixels with centers
+	 * inside the bounding box is painted into a row of owner indices, in the
+	 * order of the pieces. Then the rows are run-length encoded.
+	 */
+	private int[][] computeRowSegments()
+	{
+		final int width = ( int ) target.dimension( 0 );
+		final int height = ( int ) target.dimension( 1 );
+		final long minX = target.min( 0 );
+		final long minY = target.min( 1 );
+
+		final TIntArrayList[] rowSpans = new TIntArrayList[ height ];
+		final double[] span = new double[ 2 ];
+		for ( int p = 0; p < pieces.size(); ++p )
+		{
+			final Piece< ? > piece = pieces.get( p );
+			if ( piece.bounds == null )
+			{
+				for ( int y = 0; y < height; ++y )
+					addSpan( rowSpans, y, 0, width, p );
+				continue;
+			}
+
+			final FinalRealInterval screenBounds = piece.sourceToScreen.estimateBounds( piece.bounds );
+			final int y0 = ( int ) Math.max( 0, Math.ceil( screenBounds.realMin( 1 ) - minY ) );
+			final int y1 = ( int ) Math.min( height - 1, Math.floor( screenBounds.realMax( 1 ) - minY ) );
+			final AffineTransform3D screenToSource = piece.sourceToScreen.inverse();
+			for ( int y = y0; y <= y1; ++y )
+			{
+				if ( !rowSpan( screenToSource, piece.bounds, y + minY, span ) )
+					continue;
+				final int x0 = ( int ) Math.max( 0, Math.ceil( span[ 0 ] - minX ) );
+				final int x1 = ( int ) Math.min( width - 1, Math.floor( span[ 1 ] - minX ) ) + 1;
+				if ( x0 < x1 )
+					addSpan( rowSpans, y, x0, x1, p );
+			}
+		}
+
+		final int[][] segments = new int[ height ][];
+		final int[] owners = new int[ width ];
+		final TIntArrayList row = new TIntArrayList();
+		for ( int y = 0; y < height; ++y )
+		{
+			final TIntArrayList spans = rowSpans[ y ];
+			if ( spans == null )
+			{
+				segments[ y ] = new int[ 0 ];
+				continue;
+			}
+			Arrays.fill( owners, -1 );
+			for ( int i = 0; i < spans.size(); i += 3 )
+				Arrays.fill( owners, spans.get( i ), spans.get( i + 1 ), spans.get( i + 2 ) );
+			row.resetQuick();
+			int x = 0;
+			while ( x < width )
+			{
+				final int owner = owners[ x ];
+				final int start = x;
+				while ( x < width && owners[ x ] == owner )
+					++x;
+				if ( owner >= 0 )
+					row.add( new int[] { start, x, owner } );
+			}
+			segments[ y ] = row.toArray();
+		}
+		return segments;
+	}
+
+	private static void addSpan( final TIntArrayList[] rowSpans, final int y, final int x0, final int x1, final int piece )
+	{
+		if ( rowSpans[ y ] == null )
+			rowSpans[ y ] = new TIntArrayList();
+		rowSpans[ y ].add( new int[] { x0, x1, piece } );
+	}
+
+	/**
+	 * Compute the range of screen x coordinates in screen row {@code y} (at
+	 * {@code z=0}) that maps into {@code bounds}.
+	 *
+	 * @param span
+	 *     the range {@code [min, max]} is stored here.
+	 *
+	 * @return {@code false} if the range is empty.
+	 */
+	private static boolean rowSpan( final AffineTransform3D screenToSource, final RealInterval bounds, final double y, final double[] span )
+	{
+		double min = Double.NEGATIVE_INFINITY;
+		double max = Double.POSITIVE_INFINITY;
+		for ( int d = 0; d < 3; ++d )
+		{
+			// source coordinate d at screen (x, y, 0) is c + g * x
+			final double c = screenToSource.get( d, 1 ) * y + screenToSource.get( d, 3 );
+			final double g = screenToSource.get( d, 0 );
+			final double lo = bounds.realMin( d );
+			final double hi = bounds.realMax( d );
+			if ( g == 0 )
+			{
+				if ( c < lo || c > hi )
+					return false;
+			}
+			else
+			{
+				final double a = ( lo - c ) / g;
+				final double b = ( hi - c ) / g;
+				min = Math.max( min, Math.min( a, b ) );
+				max = Math.min( max, Math.max( a, b ) );
+			}
+		}
+		span[ 0 ] = min;
+		span[ 1 ] = max;
+		return min <= max;
+	}
+
+	@Override
+	public void cancel()
+	{
+		canceled.set( true );
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	@Override
+	public long getNumInvalidPixels()
+	{
+		return numInvalidPixels;
+	}
+
+	/**
+	 * Mark all pixels as not written yet. This only increments the
+	 * {@link #generation}. The mask of each tile is cleared when the tile is
+	 * rendered next.
+	 */
+	public void clearMask()
+	{
+		++generation;
+	}
+
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		if ( canceled.get() )
+			return false;
+
+		final StopWatch stopWatch = StopWatch.createAndStart();
+		beginPass();
+		TileScheduler.forEachTile( ( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ), numThreads, executorService,
+				( startX, startY, endX, endY ) -> mapTile( startX, startY, endX, endY, clearUntouchedTargetPixels ) );
+		if ( !endPass() )
+			return false;
+		lastFrameRenderNanoTime = stopWatch.nanoTime();
+
+		return !canceled.get();
+	}
+
+	@Override
+	public void beginPass()
+	{
+		valid = false;
+		nextNumInvalidPixels.set( 0 );
+	}
+
+	/**
+	 * Render the tile from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive). For every piece that owns pixels in the tile, resolution
+	 * levels are tried successively, starting from the optimal level
+	 * {@code 0}, until all pixels owned by the piece have been filled from
+	 * valid data.
+	 * <p>
+	 * The tile is split along the {@link TileScheduler} grid with
+	 * {@link TileScheduler#DEFAULT_TILE_SIZE}. The first pass after
+	 * {@link #clearMask()} that touches a grid cell clears the target pixels of
+	 * the cell that are not owned by any piece. Grid cells that were
+	 * completely filled in a previous pass are skipped.
+	 */
+	@Override
+	public void mapTile( final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels )
+	{
+		final RandomAccess< ARGBType > targetRandomAccess = target.randomAccess( target );
+		TileScheduler.forEachGridCell( startX, startY, endX, endY,
+				( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ),
+				tiles, generation,
+				( tile, part ) -> initTile( tile, part.cellX, part.cellY, part.cellEndX, part.cellEndY, targetRandomAccess ),
+				( tile, part ) -> {
+					if ( canceled.get() )
+						return false;
+					final boolean wholeCell = part.isWholeCell();
+					if ( wholeCell && tile.numInvalidPixels == 0 )
+						return true;
+					final int numInvalid = mapPart( tile, part.x0, part.y0, part.x1, part.y1, clearUntouchedTargetPixels, targetRandomAccess );
+					if ( numInvalid < 0 )
+						return false;
+					// the number of invalid pixels of the whole cell is only
+					// known if the whole cell was rendered
+					tile.numInvalidPixels = wholeCell ? numInvalid : -1;
+					return true;
+				} );
+	}
+
+	/**
+	 * Render the part from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive) of the grid cell of {@code tile}.
+	 *
+	 * @return the number of invalid pixels in the part, or {@code -1} if
+	 * rendering was canceled.
+	 */
+	private int mapPart( final TileState tile, final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels, final RandomAccess< ARGBType > targetRandomAccess )
+	{
+		for ( int i = 0; i < tile.owners.length; ++i )
+		{
+			final int owner = tile.owners[ i ];
+			final Piece< ? > piece = pieces.get( owner );
+			for ( int level = 0; level < piece.levels.size(); ++level )
+			{
+				final int numInvalid = map( piece, owner, ( byte ) level, startX, startY, endX, endY, targetRandomAccess );
+				if ( canceled.get() )
+					return -1;
+				if ( numInvalid == 0 )
+					break;
+			}
+		}
+
+		final int width = ( int ) target.dimension( 0 );
+		int numInvalid = 0;
+		for ( int y = startY; y < endY; ++y )
+		{
+			for ( int i = y * width + startX; i < y * width + endX; ++i )
+			{
+				if ( mask[ i ] != 0 )
+				{
+					++numInvalid;
+					if ( clearUntouchedTargetPixels && mask[ i ] == UNTOUCHED )
+						setTarget( i, 0, targetRandomAccess );
+				}
+			}
+		}
+		nextNumInvalidPixels.addAndGet( numInvalid );
+		return numInvalid;
+	}
+
+	/**
+	 * Set the mask of owned pixels of the tile to {@link #UNTOUCHED}, and the
+	 * mask of all other pixels to {@code 0}, clearing their target pixels.
+	 * Collect the owners of the tile.
+	 */
+	private void initTile( final TileState tile, final int startX, final int startY, final int endX, final int endY, final RandomAccess< ARGBType > targetRandomAccess )
+	{
+		final int width = ( int ) target.dimension( 0 );
+		final TIntArrayList owners = new TIntArrayList();
+		for ( int y = startY; y < endY; ++y )
+		{
+			final int offset = y * width;
+			int x = startX;
+			final int[] segments = rowSegments[ y ];
+			for ( int s = 0; s < segments.length; s += 3 )
+			{
+				final int x0 = Math.max( startX, segments[ s ] );
+				final int x1 = Math.min( endX, segments[ s + 1 ] );
+				if ( x0 >= x1 )
+					continue;
+				for ( ; x < x0; ++x )
+				{
+					mask[ offset + x ] = 0;
+					setTarget( offset + x, 0, targetRandomAccess );
+				}
+				Arrays.fill( mask, offset + x0, offset + x1, UNTOUCHED );
+				owners.add( segments[ s + 2 ] );
+				x = x1;
+			}
+			for ( ; x < endX; ++x )
+			{
+				mask[ offset + x ] = 0;
+				setTarget( offset + x, 0, targetRandomAccess );
+			}
+		}
+
+		owners.sort();
+		final TIntArrayList distinct = new TIntArrayList();
+		for ( int i = 0; i < owners.size(); ++i )
+			if ( i == 0 || owners.get( i ) != owners.get( i - 1 ) )
+				distinct.add( owners.get( i ) );
+		tile.owners = distinct.toArray();
+		tile.numInvalidPixels = -1;
+	}
+
+	@Override
+	public boolean endPass()
+	{
+		if ( canceled.get() )
+			return false;
+
+		numInvalidPixels = nextNumInvalidPixels.get();
+		valid = numInvalidPixels == 0;
+		return true;
+	}
+
+	/**
+	 * Copy the pixels of the tile from {@code (startX, startY)} up to
+	 * {@code (endX, endY)} (exclusive) that are owned by {@code piece} from
+	 * its resolution level {@code resolutionIndex} to target.
+	 *
+	 * @return the number of pixels owned by {@code piece} in the tile that
+	 * could not be filled from {@code resolutionIndex} or a previous pass.
+	 */
+	private < A extends Volatile< ? > > int map(
+			final Piece< A > piece,
+			final int pieceIndex,
+			final byte resolutionIndex,
+			final int startX,
+			final int startY,
+			final int endX,
+			final int endY,
+			final RandomAccess< ARGBType > targetRandomAccess )
+	{
+		final RandomAccess< A > sourceRandomAccess = piece.levels.get( resolutionIndex ).randomAccess( sourceInterval );
+		final int width = ( int ) target.dimension( 0 );
+		final long[] pos = new long[ sourceInterval.numDimensions() ];
+		int numInvalid = 0;
+
+		for ( int y = startY; y < endY; ++y )
+		{
+			if ( canceled.get() )
+				break;
+
+			final int[] segments = rowSegments[ y ];
+			for ( int s = 0; s < segments.length; s += 3 )
+			{
+				if ( segments[ s + 2 ] != pieceIndex )
+					continue;
+				final int x0 = Math.max( startX, segments[ s ] );
+				final int x1 = Math.min( endX, segments[ s + 1 ] );
+				if ( x0 >= x1 )
+					continue;
+				pos[ 0 ] = x0 + target.min( 0 );
+				pos[ 1 ] = y + target.min( 1 );
+				sourceRandomAccess.setPosition( pos );
+				targetRandomAccess.setPosition( pos[ 0 ], 0 );
+				targetRandomAccess.setPosition( pos[ 1 ], 1 );
+				numInvalid += piece.lineMapper.mapLine( sourceRandomAccess, targetRandomAccess, piece.converter, mask, y * width + x0, x1 - x0, resolutionIndex );
+			}
+		}
+
+		return numInvalid;
+	}
+
+	/**
+	 * Set the target pixel at mask index {@code i} to {@code value}.
+	 */
+	private void setTarget( final int i, final int value, final RandomAccess< ARGBType > targetRandomAccess )
+	{
+		if ( targetData != null )
+			targetData[ i ] = value;
+		else
+		{
+			final int width = ( int ) target.dimension( 0 );
+			final int y = i / width;
+			targetRandomAccess.setPosition( target.min( 0 ) + i - y * width, 0 );
+			targetRandomAccess.setPosition( target.min( 1 ) + y, 1 );
+			targetRandomAccess.get().set( value );
+		}
+	}
+
+	/**
+	 * Rendering state of one screen tile.
+	 */
+	private static final class TileState extends GridCell
+	{
+		/**
+		 * Indices of the pieces that own pixels in this tile, in ascending
+		 * order.
+		 */
+		int[] owners = new int[ 0 ];
+
+		/**
+		 * Number of owned pixels of the tile that were not filled from valid
+		 * data at the optimal resolution level in the last pass, or {@code -1}
+		 * if the tile was not rendered yet.
+		 */
+		int numInvalidPixels;
+	}
+}
@@ -0,0 +1,371 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.imglib2.FinalDimensions;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import bdv.util.MipmapTransforms;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+
+/**
+ * Prefetches the cells that will be needed to render the viewer transform
+ * that is expected in the near future, while the user navigates.
+ * <p>
+ * The velocity of the viewer transform is estimated from the transforms (and
+ * their timing) that the {@code TransformEventHandler} produces, as the
+ * smoothed difference of consecutive transforms per nanosecond. The current
+ * transform is extrapolated linearly at a few steps up to the
+ * {@link #setLookAhead(long) look-ahead time}, and the cells of the best
+ * mipmap level of each visible source are enqueued for loading for each of
+ * these predicted transforms. Linear extrapolation is exact for
+ * translations, in particular for scrolling through z, and approximate for
+ * rotations and zooming.
+ * <p>
+ * Prefetching runs on a background thread. Cells are enqueued at the back
+ * of the queue for the priority of the best mipmap level, that is, behind
+ * the cells that are needed for the current frame. A running prefetch is
+ * cancelled if the motion stops or changes its direction.
+ * <p>
+ * If the path of the viewer transform is known in advance (for example, for
+ * a transform animation), it can be {@link #prefetchPath prefetched}
+ * directly.
+ */
+public class MotionPrefetcher
+{
+	/**
+	 * If consecutive transforms are further apart than this, motion is
+	 * assumed to start anew.
+	 */
+	private static final long MAX_SAMPLE_INTERVAL_NANOS = 200 * 1000000l;
+
+	/**
+	 * Weight of the newest sample in the smoothed velocity.
+	 */
+	private static final double SMOOTHING = 0.5;
+
+	private final ExecutorService executorService;
+
+	private final boolean useVolatileIfAvailable;
+
+	/**
+	 * How far ahead to predict the viewer transform, in nanoseconds. If
+	 * {@code lookAheadNanos <= 0}, prefetching is disabled.
+	 */
+	private long lookAheadNanos = 0;
+
+	/**
+	 * Number of predicted transforms up to {@link #lookAheadNanos}.
+	 */
+	private int numSteps = 3;
+
+	/**
+	 * Latest viewer state.
+	 */
+	private ViewerState state;
+
+	private int screenWidth;
+
+	private int screenHeight;
+
+	/**
+	 * Row-packed latest viewer transform, or {@code null} before the first
+	 * transform.
+	 */
+	private double[] transform;
+
+	private long time;
+
+	/**
+	 * Smoothed velocity of the row-packed viewer transform, per nanosecond.
+	 * {@code null} if not moving.
+	 */
+	private double[] velocity;
+
+	/**
+	 * Incremented to cancel a running prefetch.
+	 */
+	private volatile long generation;
+
+	/**
+	 * Whether a prefetch task has been submitted and not started yet.
+	 */
+	private boolean taskPending;
+
+	/**
+	 * @param executorService
+	 *     used for prefetching. Should be single-threaded, because prefetch
+	 *     tasks supersede each other.
+	 * @param useVolatileIfAvailable
+	 *     whether volatile versions of sources are rendered if available.
+	 */
+	public MotionPrefetcher( final ExecutorService executorService, final boolean useVolatileIfAvailable )
+	{
+		this.executorService = executorService;
+		this.useVolatileIfAvailable = useVolatileIfAvailable;
+	}
+
+	/**
+	 * Set how far ahead the viewer transform is predicted, and at how many
+	 * steps up to that time cells are prefetched.
+	 *
+	 * @param nanos
+	 *     look-ahead time in nanoseconds. If {@code nanos <= 0}, prefetching
+	 *     is disabled.
+	 */
+	public synchronized void setLookAhead( final long nanos, final int numSteps )
+	{
+		lookAheadNanos = nanos;
+		this.numSteps = Math.max( 1, numSteps );
+		if ( nanos <= 0 )
+			stop();
+	}
+
+	/**
+	 * Set how far ahead the viewer transform is predicted, in nanoseconds.
+	 * If {@code nanos <= 0}, prefetching is disabled.
+	 */
+	public void setLookAhead( final long nanos )
+	{
+		setLookAhead( nanos, numSteps );
+	}
+
+	/**
+	 * Called when the viewer transform of {@code state} changed. Updates the
+	 * velocity estimate and schedules prefetching of the predicted view.
+	 *
+	 * @param state
+	 *     snapshot of the viewer state
+	 * @param screenWidth
+	 *     width of the screen in pixels
+	 * @param screenHeight
+	 *     height of the screen in pixels
+	 */
+	public synchronized void transformChanged( final ViewerState state, final int screenWidth, final int screenHeight )
+	{
+		if ( lookAheadNanos <= 0 || screenWidth <= 0 || screenHeight <= 0 )
+		{
+			stop();
+			return;
+		}
+
+		final long now = System.nanoTime();
+		final double[] t = state.getViewerTransform().getRowPackedCopy();
+		if ( transform != null && now - time <= MAX_SAMPLE_INTERVAL_NANOS && now > time )
+		{
+			final double dt = now - time;
+			final double[] v = new double[ t.length ];
+			for ( int i = 0; i < t.length; ++i )
+				v[ i ] = ( t[ i ] - transform[ i ] ) / dt;
+			if ( velocity == null )
+				velocity = v;
+			else if ( dot( v, velocity ) < 0 )
+			{
+				// direction changed
+				++generation;
+				velocity = v;
+			}
+			else
+				for ( int i = 0; i < v.length; ++i )
+					velocity[ i ] = SMOOTHING * v[ i ] + ( 1 - SMOOTHING ) * velocity[ i ];
+		}
+		else
+			stop();
+
+		transform = t;
+		time = now;
+		this.state = state;
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+
+		if ( velocity != null && !taskPending )
+		{
+			try
+			{
+				executorService.submit( this::prefetch );
+				taskPending = true;
+			}
+			catch ( final RejectedExecutionException e )
+			{
+				// executor was shut down
+			}
+		}
+	}
+
+	/**
+	 * Prefetch the cells needed to render the viewer transforms along
+	 * {@code path}. This cancels motion prediction. The last transform of the
+	 * path (where the animation stops) is prefetched first, at full
+	 * resolution. Then the other transforms are prefetched in order, at the
+	 * given {@code screenScale}. Prefetching the path is cancelled by the
+	 * next {@link #transformChanged} that starts a new motion.
+	 *
+	 * @param state
+	 *     snapshot of the viewer state
+	 * @param path
+	 *     viewer transforms along the path
+	 * @param screenWidth
+	 *     width of the screen in pixels
+	 * @param screenHeight
+	 *     height of the screen in pixels
+	 * @param screenScale
+	 *     scale factor of the images rendered along the path, relative to
+	 *     the screen.
+	 */
+	public synchronized void prefetchPath( final ViewerState state, final List< AffineTransform3D > path, final int screenWidth, final int screenHeight, final double screenScale )
+	{
+		stop();
+		transform = null;
+		if ( path.isEmpty() || screenWidth <= 0 || screenHeight <= 0 )
+			return;
+
+		final long generation = this.generation;
+		try
+		{
+			executorService.submit( () -> prefetchPath( state, path, screenWidth, screenHeight, screenScale, generation ) );
+		}
+		catch ( final RejectedExecutionException e )
+		{
+			// executor was shut down
+		}
+	}
+
+	/**
+	 * Cancel a running prefetch and forget the current motion.
+	 */
+	public synchronized void stop()
+	{
+		++generation;
+		velocity = null;
+	}
+
+	private void prefetch()
+	{
+		final ViewerState state;
+		final double[] transform;
+		final double[] velocity;
+		final long lookAheadNanos;
+		final int numSteps;
+		final FinalDimensions screenInterval;
+		final long generation;
+		synchronized ( this )
+		{
+			taskPending = false;
+			if ( this.velocity == null )
+				return;
+			state = this.state;
+			transform = this.transform;
+			velocity = this.velocity.clone();
+			lookAheadNanos = this.lookAheadNanos;
+			numSteps = this.numSteps;
+			screenInterval = new FinalDimensions( screenWidth, screenHeight );
+			generation = this.generation;
+		}
+
+		final AffineTransform3D predicted = new AffineTransform3D();
+		final double[] p = new double[ transform.length ];
+		for ( int step = 1; step <= numSteps; ++step )
+		{
+			final double dt = ( double ) lookAheadNanos * step / numSteps;
+			for ( int i = 0; i < p.length; ++i )
+				p[ i ] = transform[ i ] + velocity[ i ] * dt;
+			predicted.set( p );
+			for ( final SourceAndConverter< ? > source : state.getVisibleAndPresentSources() )
+			{
+				if ( generation != this.generation )
+					return;
+				prefetch( state, getRenderedSource( source ), predicted, screenInterval );
+			}
+		}
+	}
+
+	private void prefetchPath( final ViewerState state, final List< AffineTransform3D > path, final int screenWidth, final int screenHeight, final double screenScale, final long generation )
+	{
+		final int n = path.size();
+		final FinalDimensions screenInterval = new FinalDimensions( screenWidth, screenHeight );
+		for ( final SourceAndConverter< ? > source : state.getVisibleAndPresentSources() )
+		{
+			if ( generation != this.generation )
+				return;
+			prefetch( state, getRenderedSource( source ), path.get( n - 1 ), screenInterval );
+		}
+
+		final AffineTransform3D scale = new AffineTransform3D();
+		scale.set( screenScale, 0, 0 );
+		scale.set( screenScale, 1, 1 );
+		scale.set( 0.5 * screenScale - 0.5, 0, 3 );
+		scale.set( 0.5 * screenScale - 0.5, 1, 3 );
+		final FinalDimensions scaledInterval = new FinalDimensions(
+				( long ) Math.ceil( screenScale * screenWidth ),
+				( long ) Math.ceil( screenScale * screenHeight ) );
+		for ( int i = 0; i < n - 1; ++i )
+		{
+			final AffineTransform3D screenTransform = path.get( i ).copy();
+			screenTransform.preConcatenate( scale );
+			for ( final SourceAndConverter< ? > source : state.getVisibleAndPresentSources() )
+			{
+				if ( generation != this.generation )
+					return;
+				prefetch( state, getRenderedSource( source ), screenTransform, scaledInterval );
+			}
+		}
+	}
+
+	private static void prefetch( final ViewerState state, final Source< ? > source, final AffineTransform3D screenTransform, final FinalDimensions screenInterval )
+	{
+		final int timepoint = state.getCurrentTimepoint();
+		final int level = MipmapTransforms.getBestMipMapLevel( screenTransform, source, timepoint );
+		final int priority = source.getNumMipmapLevels() - 1 - level;
+		final CacheHints hints = new CacheHints( LoadingStrategy.VOLATILE, priority, false );
+		ProjectorFactory.prefetch( state, source, screenTransform, level, hints, screenInterval );
+	}
+
+	private Source< ? > getRenderedSource( final SourceAndConverter< ? > source )
+	{
+		if ( useVolatileIfAvailable && source.asVolatile() != null )
+			return source.asVolatile().getSpimSource();
+		return source.getSpimSource();
+	}
+
+	private static double dot( final double[] a, final double[] b )
+	{
+		double sum = 0;
+		for ( int i = 0; i < a.length; ++i )
+			sum += a[ i ] * b[ i ];
+		return sum;
+	}
+}
@@ -28,8 +28,15 @@
  */
 package bdv.viewer.render;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
 import net.imglib2.Interval;
@@ -40,9 +47,12 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.util.Intervals;
 
+import org.scijava.listeners.Listeners;
+
 import bdv.cache.CacheControl;
-import bdv.util.MovingAverage;
+import bdv.cache.SharedQueue;
 import bdv.viewer.RequestRepaint;
+import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.ViewerState;
 import bdv.viewer.render.ScreenScales.IntervalRenderData;
@@ -73,8 +83,11 @@ import bdv.viewer.render.ScreenScales.ScreenScale;
  * <p>
  * The renderer tries to maintain a per-frame rendering time close to
  * {@code targetRenderNanos} nanoseconds. The current highest screen scale is
- * chosen to match this time based on per-output-pixel time measured in previous
- * frames.
+ * chosen to match this time based on the rendering costs of the visible sources
+ * and the IO time measured in previous frames (see {@link FrameTimeController}).
+ * Optionally, the {@link #setIoTimeBudget IO time budget} and the
+ * {@link #setMaxNumHierarchyLevels number of rendered mipmap levels} are
+ * {@link #setAdaptiveFrameTime adapted} as well.
  * <p>
  * The renderer uses multiple threads (if desired).
  * <p>
@@ -87,6 +100,15 @@ import bdv.viewer.render.ScreenScales.ScreenScale;
  * <p>
  * Rendering timing is tied to a {@link CacheControl} control for IO budgeting,
  * etc.
+ * <p>
+ * If only the viewer transform changed since the last completely rendered
+ * full-resolution frame ({@link #requestRepaintForTransformChange()}), the
+ * previous frame is reprojected to the new transform. For in-plane
+ * translations by whole pixels, it is shifted and only the newly exposed
+ * strips are rendered (using interval rendering). For other in-plane
+ * transformations, it is warped as a preview which is shown until the first
+ * (coarsest) pass of the new frame has been rendered. The new frame is then
+ * rendered coarse-to-fine as usual.
  *
  * @author Tobias Pietzsch
  */
@@ -114,8 +136,28 @@ public class MultiResolutionRenderer
 	 */
 	private final CacheControl cacheControl;
 
-	// TODO: should be settable
-	private final long[] iobudget = new long[] { 100l * 1000000l,  10l * 1000000l };
+	/**
+	 * Triggers repainting when cells arrive that are needed to complete the
+	 * current (incomplete) frame.
+	 */
+	private final CellArrivalMonitor cellArrivalMonitor;
+
+	/**
+	 * Listeners that are notified after each completed rendering pass.
+	 */
+	private final Listeners.List< RenderStatisticsListener > renderStatisticsListeners = new Listeners.SynchronizedList<>();
+
+	/**
+	 * Mipmap levels rendered by the current projector, for each visible
+	 * source on screen.
+	 */
+	private int[] currentMipmapLevels = new int[ 0 ];
+
+	/**
+	 * {@link CellArrivalMonitor#getNumLoadedCells()} when the last
+	 * {@link RenderStatistics} were reported.
+	 */
+	private long reportedNumLoadedCells;
 
 	/**
 	 * Maintains current sizes and transforms at every screen scale level.
@@ -129,10 +171,16 @@ public class MultiResolutionRenderer
 	private final RenderStorage renderStorage;
 
 	/**
-	 * Estimate of the time it takes to render one screen pixel from one source,
-	 * in nanoseconds.
+	 * Spatial index over the bounding boxes of sources, to find the visible
+	 * sources on screen when there are very many sources.
 	 */
-	private final MovingAverage renderNanosPerPixelAndSource;
+	private final SourceBoundsIndex sourceBoundsIndex = new SourceBoundsIndex();
+
+	/**
+	 * Estimates rendering and IO time, and chooses screen scale, IO time
+	 * budget, and number of rendered mipmap levels accordingly.
+	 */
+	private final FrameTimeController frameTimeController;
 
 	/**
 	 * Currently active projector, used to re-paint the display. It maps the
@@ -194,12 +242,143 @@ public class MultiResolutionRenderer
 	 */
 	private int requestedScreenScaleIndex;
 
+	/**
+	 * Whether visible sources may be rendered at different screen scales,
+	 * chosen by their estimated rendering cost.
+	 */
+	private boolean perSourceScreenScales = false;
+
+	/**
+	 * The screen scale index of each visible source, for the first rendering
+	 * pass of a new full frame. {@code null} if all sources are rendered at
+	 * {@link #requestedScreenScaleIndex}.
+	 */
+	private int[] requestedSourceScreenScaleIndices;
+
+	/**
+	 * Whether the current projector renders some sources at a coarser screen
+	 * scale than the frame. Then, the next pass creates a projector that
+	 * renders all sources at the same screen scale.
+	 */
+	private boolean projectorDownsamplesSources;
+
+	/**
+	 * If {@code >= 0}, a transform animation is running, and full frames are
+	 * rendered at this fixed screen scale index, without refinement.
+	 */
+	private int animationScreenScaleIndex = -1;
+
+	/**
+	 * The (x,y) screen coordinates around which cells within each mipmap
+	 * level are prefetched first, or {@code null} for the center of the
+	 * screen.
+	 */
+	private volatile double[] prefetchFocus;
+
 	/**
 	 * Whether a full frame repaint was {@link #requestRepaint() requested}.
 	 * Supersedes {@link #newIntervalRequest}.
 	 */
 	private boolean newFrameRequest;
 
+	/**
+	 * Whether the pending full frame repaint was only
+	 * {@link #requestRepaintForTransformChange() requested} because the
+	 * viewer transform changed. In this case, the previous frame may be
+	 * reprojected.
+	 */
+	private boolean transformOnlyRequest;
+
+	/**
+	 * Whether the pending full frame repaint was only
+	 * {@link #requestRepaintForConverterChange() requested} because
+	 * converters changed. In this case, the raw values of the previous frame
+	 * may be re-converted.
+	 */
+	private boolean converterOnlyRequest;
+
+	/**
+	 * Whether the pending full frame repaint was only
+	 * {@link #requestRepaintForVisibilityChange() requested} because the
+	 * visibility of sources changed. In this case, complete render images of
+	 * individual sources may be re-used.
+	 */
+	private boolean visibilityOnlyRequest;
+
+	/*
+	 *
+	 * === SOURCE IMAGE REUSE ===
+	 *
+	 */
+
+	/**
+	 * Sources whose render images in {@link #renderStorage} are complete at
+	 * screen scale 0, for the viewer transform, timepoint, and converters of
+	 * the current frame. This is cleared by every repaint request, except
+	 * {@link #requestRepaintForVisibilityChange()}.
+	 */
+	private final Set< SourceAndConverter< ? > > completeSourceImages = new HashSet<>();
+
+	/**
+	 * Whether the {@link #projector} renders all visible sources into their
+	 * render images in {@link #renderStorage}, for a full frame at screen
+	 * scale 0.
+	 */
+	private boolean projectorFillsSourceImages;
+
+	/*
+	 *
+	 * === RAW VALUE CACHE ===
+	 *
+	 */
+
+	/**
+	 * Whether the {@link #projector} records raw values of a full frame at
+	 * screen scale 0 in {@link #renderStorage}.
+	 */
+	private boolean projectorRecordsRawValues;
+
+	/**
+	 * Whether {@link #renderStorage} holds the raw values of a complete frame
+	 * at screen scale 0, which can be re-converted after a converter change.
+	 */
+	private boolean rawValuesCached;
+
+	/**
+	 * Viewer transform of the frame whose raw values are recorded.
+	 */
+	private final AffineTransform3D rawValuesTransform = new AffineTransform3D();
+
+	/**
+	 * Timepoint of the frame whose raw values are recorded.
+	 */
+	private int rawValuesTimepoint;
+
+	/**
+	 * Visible sources of the frame whose raw values are recorded.
+	 */
+	private final List< SourceAndConverter< ? > > rawValuesSources = new ArrayList<>();
+
+	/*
+	 *
+	 * === REPROJECTION ===
+	 *
+	 */
+
+	/**
+	 * If there are more than this many {@link #reprojectionIntervals}, they
+	 * are merged into one.
+	 */
+	private static final int MAX_REPROJECTION_INTERVALS = 4;
+
+	/**
+	 * Regions (in screen coordinates) of the {@link #currentRenderResult}
+	 * that still have to be rendered, after the previous frame was shifted to
+	 * a new viewer transform. These are requested for interval rendering one
+	 * after another.
+	 */
+	private final ArrayDeque< Interval > reprojectionIntervals = new ArrayDeque<>();
+
 	/*
 	 *
 	 * === INTERVAL RENDERING ===
@@ -290,14 +469,16 @@ public class MultiResolutionRenderer
 		screenScales = new ScreenScales( screenScaleFactors, targetRenderNanos );
 		renderStorage = new RenderStorage();
 
-		renderNanosPerPixelAndSource = new MovingAverage( 3 );
-		renderNanosPerPixelAndSource.init( 500 );
+		frameTimeController = new FrameTimeController( screenScales );
 
 		requestedScreenScaleIndex = screenScales.size() - 1;
 		renderingMayBeCancelled = false;
 		this.cacheControl = cacheControl;
 		newFrameRequest = false;
 
+		cellArrivalMonitor = new CellArrivalMonitor( painterThread );
+		cacheControl.addCellLoadListener( cellArrivalMonitor );
+
 		intervalResult = display.createRenderResult();
 
 		projectorFactory = new ProjectorFactory(
@@ -317,9 +498,91 @@ public class MultiResolutionRenderer
 		if ( renderingMayBeCancelled && projector != null )
 			projector.cancel();
 		newFrameRequest = true;
+		transformOnlyRequest = false;
+		converterOnlyRequest = false;
+		visibilityOnlyRequest = false;
 		painterThread.requestRepaint();
 	}
 
+	/**
+	 * Request a repaint of the display after the viewer transform was
+	 * changed. This is like {@link #requestRepaint()}, but if nothing else
+	 * changed since the last frame, the previous frame may be reprojected to
+	 * the new transform, instead of rendering from scratch.
+	 */
+	public synchronized void requestRepaintForTransformChange()
+	{
+		final boolean transformOnly = !newFrameRequest || transformOnlyRequest;
+		requestRepaint();
+		transformOnlyRequest = transformOnly;
+	}
+
+	/**
+	 * Request a repaint of the display after the converter of a source was
+	 * changed (e.g., its display range or color). This is like
+	 * {@link #requestRepaint()}, but if nothing else changed since the last
+	 * complete frame, and raw values are {@link #setCacheRawValues cached},
+	 * the raw values of that frame are re-converted, instead of rendering
+	 * from scratch.
+	 */
+	public synchronized void requestRepaintForConverterChange()
+	{
+		final boolean converterOnly = !newFrameRequest || converterOnlyRequest;
+		requestRepaint();
+		converterOnlyRequest = converterOnly;
+	}
+
+	/**
+	 * Request a repaint of the display after the visibility of sources was
+	 * changed (e.g., a source was toggled, or the display mode or current
+	 * group changed). This is like {@link #requestRepaint()}, but if nothing
+	 * else changed since the last frame, complete render images of sources
+	 * that remain visible (or were visible before) are re-used, and only the
+	 * remaining sources are rendered.
+	 */
+	public synchronized void requestRepaintForVisibilityChange()
+	{
+		final boolean visibilityOnly = !newFrameRequest || visibilityOnlyRequest;
+		requestRepaint();
+		visibilityOnlyRequest = visibilityOnly;
+	}
+
+	/**
+	 * Request a repaint of the display after sources were added to or removed
+	 * from the viewer state. This must be called after the viewer state was
+	 * modified.
+	 */
+	public synchronized void requestRepaintForSourcesChange()
+	{
+		sourceBoundsIndex.sourcesChanged();
+		requestRepaint();
+	}
+
+	/**
+	 * Request a repaint of the display after the source transforms of
+	 * {@code sources} were changed.
+	 *
+	 * @param sources
+	 *            the sources (as returned by
+	 *            {@link SourceAndConverter#getSpimSource()}) whose transforms
+	 *            changed
+	 */
+	public synchronized void requestRepaintForSourceTransformChange( final Collection< ? extends Source< ? > > sources )
+	{
+		sourceBoundsIndex.sourceTransformsChanged( sources );
+		requestRepaint();
+	}
+
+	/**
+	 * Request a repaint of the display after the source transforms of any
+	 * sources were changed.
+	 */
+	public synchronized void requestRepaintForSourceTransformChange()
+	{
+		sourceBoundsIndex.invalidate();
+		requestRepaint();
+	}
+
 	/**
 	 * Request a repaint of the given {@code interval} of the display from the
 	 * painter thread. The painter thread will trigger a {@link #paint} as soon
@@ -340,6 +603,9 @@ public class MultiResolutionRenderer
 			 * request a new full frame.
 			 */
 			newFrameRequest = true;
+			transformOnlyRequest = false;
+			converterOnlyRequest = false;
+			visibilityOnlyRequest = false;
 		}
 		else
 		{
@@ -351,6 +617,150 @@ public class MultiResolutionRenderer
 		painterThread.requestRepaint();
 	}
 
+	/**
+	 * Listeners that are notified with {@link RenderStatistics} after each
+	 * completed (that is, not cancelled) rendering pass. Listeners are called
+	 * on the painter thread.
+	 */
+	public Listeners< RenderStatisticsListener > renderStatisticsListeners()
+	{
+		return renderStatisticsListeners;
+	}
+
+	/**
+	 * Render volatile sources as the maximum intensity projection of a slab of
+	 * the given {@code thickness} around the screen plane, sampled at
+	 * {@code numSamples} depths, and request a repaint.
+	 *
+	 * @param thickness
+	 *     thickness of the slab in global coordinates. Slab projection is
+	 *     disabled if {@code thickness <= 0} or {@code numSamples < 2}.
+	 * @param numSamples
+	 *     number of samples through the slab.
+	 */
+	public synchronized void setMaxProjectionSlab( final double thickness, final int numSamples )
+	{
+		projectorFactory.setMaxProjectionSlab( thickness, numSamples );
+		requestRepaint();
+	}
+
+	/**
+	 * Set whether the raw (unconverted) values of rendered frames are
+	 * cached, such that frames can be re-converted after a
+	 * {@link #requestRepaintForConverterChange() converter change}. This
+	 * requires one additional {@code float} per screen pixel and visible
+	 * source. Raw values are only cached for sources with volatile
+	 * {@code RealType} values that are rendered as slices.
+	 */
+	public synchronized void setCacheRawValues( final boolean cache )
+	{
+		projectorFactory.setRecordRawValues( cache );
+		if ( !cache )
+			rawValuesCached = false;
+	}
+
+	/**
+	 * Set whether multiple visible sources are composited as a mosaic with a
+	 * {@link MosaicProjector}, and request a repaint. In this mode, sources
+	 * are rendered directly into the screen image, without intermediate
+	 * per-source images.
+	 */
+	public synchronized void setMosaicCompositing( final boolean mosaic )
+	{
+		projectorFactory.setMosaicCompositing( mosaic );
+		requestRepaint();
+	}
+
+	/**
+	 * Set the maximum IO time budget for rendering, in nanoseconds. Element
+	 * {@code i} is the time that rendering may wait for data of priority
+	 * {@code i} to be loaded (where 0 is the highest priority, that is, the
+	 * coarsest mipmap level for {@link DefaultMipmapOrdering}). The default is
+	 * {@code {100ms, 10ms}}.
+	 */
+	public synchronized void setIoTimeBudget( final long[] budget )
+	{
+		frameTimeController.setIoTimeBudget( budget );
+	}
+
+	/**
+	 * Set whether the IO time budget and the number of rendered mipmap levels
+	 * are adapted, such that frames are rendered within the target rendering
+	 * time. If enabled, the IO time budget is limited to the time that is
+	 * left after rendering, and fewer mipmap levels are rendered while frames
+	 * are too slow because of IO.
+	 */
+	public synchronized void setAdaptiveFrameTime( final boolean adaptive )
+	{
+		frameTimeController.setAdaptive( adaptive );
+	}
+
+	/**
+	 * Set the maximum number of mipmap levels to render per source (see
+	 * {@link ProjectorFactory#setMaxNumHierarchyLevels(int)}), and request a
+	 * repaint. If {@code n <= 0}, the number is not limited.
+	 */
+	public synchronized void setMaxNumHierarchyLevels( final int n )
+	{
+		frameTimeController.setMaxNumHierarchyLevels( n );
+		requestRepaint();
+	}
+
+	/**
+	 * Set whether visible sources may be rendered at different screen scales,
+	 * and request a repaint. If enabled, the first rendering pass of a new
+	 * frame renders sources that are expensive to render at a coarser screen
+	 * scale than cheap sources, and upsamples them for accumulation.
+	 * Following passes render all sources at the same screen scale.
+	 */
+	public synchronized void setPerSourceScreenScales( final boolean perSource )
+	{
+		perSourceScreenScales = perSource;
+		requestRepaint();
+	}
+
+	/**
+	 * Set the point around which cells within each mipmap level are
+	 * prefetched first, such that data around this point appears first. This
+	 * does not request a repaint, and may be called from any thread (for
+	 * example, on every mouse move).
+	 *
+	 * @param focus
+	 *            (x,y) screen coordinates, or {@code null} for the center of
+	 *            the screen.
+	 */
+	public void setPrefetchFocus( final double[] focus )
+	{
+		prefetchFocus = focus == null ? null : new double[] { focus[ 0 ], focus[ 1 ] };
+	}
+
+	/**
+	 * Called when a transform animation starts. Until {@link #endAnimation()},
+	 * frames are rendered at a fixed screen scale, the one that is suggested
+	 * for the current frame (but not full resolution, if there are coarser
+	 * screen scales). Frames are not refined to finer screen scales, because
+	 * they are replaced by the next animation frame anyway.
+	 *
+	 * @return the scale factor of the screen scale used during the animation.
+	 */
+	public synchronized double startAnimation()
+	{
+		final int coarsest = screenScales.size() - 1;
+		animationScreenScaleIndex = Math.min( coarsest, Math.max( 1, frameTimeController.suggestScreenScale() ) );
+		requestRepaint();
+		return screenScales.get( animationScreenScaleIndex ).scale();
+	}
+
+	/**
+	 * Called when a transform animation ends. Requests a repaint, which is
+	 * refined to full resolution as usual.
+	 */
+	public synchronized void endAnimation()
+	{
+		animationScreenScaleIndex = -1;
+		requestRepaint();
+	}
+
 	/**
 	 * DON'T USE THIS.
 	 * <p>
@@ -361,10 +771,16 @@ public class MultiResolutionRenderer
 	 */
 	public void kill()
 	{
+		cacheControl.removeCellLoadListener( cellArrivalMonitor );
 		projector = null;
+		reprojectionIntervals.clear();
 		currentViewerState = null;
 		currentRenderResult = null;
+		rawValuesCached = false;
+		rawValuesSources.clear();
+		completeSourceImages.clear();
 		currentVisibleSourcesOnScreen.clear();
+		sourceBoundsIndex.invalidate();
 		renderStorage.clear();
 	}
 
@@ -383,24 +799,30 @@ public class MultiResolutionRenderer
 		final boolean newInterval;
 		final boolean prepareNextFrame;
 		final boolean createProjector;
+		final boolean reproject;
+		boolean reconvert;
+		final boolean reuseSourceImages;
+		Interval pendingInterval = null;
 		synchronized ( this )
 		{
 			final boolean resized = screenScales.checkResize( screenW, screenH );
 
 			newFrame = newFrameRequest || resized;
+			reproject = newFrame && !resized && transformOnlyRequest
+					&& requestedScreenScaleIndex < 0 && currentRenderResult != null;
+			reconvert = newFrame && !resized && converterOnlyRequest && rawValuesCached;
+			reuseSourceImages = newFrame && !resized && visibilityOnlyRequest;
 			if ( newFrame )
 			{
 				intervalMode = false;
-				screenScales.clearRequestedIntervals();
+				pendingInterval = screenScales.clearRequestedIntervals();
 			}
 
 			newInterval = newIntervalRequest && !newFrame;
 			if ( newInterval )
 			{
 				intervalMode = true;
-				final int numSources = currentVisibleSourcesOnScreen.size();
-				final double renderNanosPerPixel = renderNanosPerPixelAndSource.getAverage() * numSources;
-				requestedIntervalScaleIndex = screenScales.suggestIntervalScreenScale( renderNanosPerPixel, currentScreenScaleIndex );
+				requestedIntervalScaleIndex = frameTimeController.suggestIntervalScreenScale( currentScreenScaleIndex );
 			}
 
 			prepareNextFrame = newFrame || newInterval;
@@ -413,9 +835,12 @@ public class MultiResolutionRenderer
 					intervalRenderData = screenScales.pullIntervalRenderData( requestedIntervalScaleIndex, currentScreenScaleIndex );
 			}
 			else
-				createProjector = newFrame || ( requestedScreenScaleIndex != currentScreenScaleIndex );
+				createProjector = newFrame || ( requestedScreenScaleIndex != currentScreenScaleIndex ) || projectorDownsamplesSources;
 
 			newFrameRequest = false;
+			transformOnlyRequest = false;
+			converterOnlyRequest = false;
+			visibilityOnlyRequest = false;
 			newIntervalRequest = false;
 		}
 
@@ -424,11 +849,55 @@ public class MultiResolutionRenderer
 
 		if ( newFrame )
 		{
+			final long sourcesVersion = sourceBoundsIndex.getSourcesVersion();
 			currentViewerState = viewerState.snapshot();
-			VisibilityUtils.computeVisibleSourcesOnScreen( currentViewerState, screenScales.get( 0 ), currentVisibleSourcesOnScreen );
-			final int numSources = currentVisibleSourcesOnScreen.size();
-			final double renderNanosPerPixel = renderNanosPerPixelAndSource.getAverage() * numSources;
-			requestedScreenScaleIndex = screenScales.suggestScreenScale( renderNanosPerPixel );
+			VisibilityUtils.computeVisibleSourcesOnScreen( currentViewerState, screenScales.get( 0 ), sourceBoundsIndex, sourcesVersion, currentVisibleSourcesOnScreen );
+			frameTimeController.setFrame( currentVisibleSourcesOnScreen, currentViewerState.getInterpolation() );
+			requestedScreenScaleIndex = frameTimeController.suggestScreenScale();
+			requestedSourceScreenScaleIndices = null;
+			if ( animationScreenScaleIndex >= 0 )
+				requestedScreenScaleIndex = animationScreenScaleIndex;
+			else if ( perSourceScreenScales && currentVisibleSourcesOnScreen.size() > 1 )
+				suggestSourceScreenScales();
+
+			// If only converters changed, re-convert the raw values of the
+			// previous complete frame, directly at full resolution.
+			reconvert = reconvert && isRawValuesFrame( currentViewerState, currentVisibleSourcesOnScreen );
+			if ( reconvert )
+			{
+				requestedScreenScaleIndex = 0;
+				requestedSourceScreenScaleIndices = null;
+			}
+
+			// If only the visibility of sources changed, re-use the complete
+			// render images of sources. Render directly at full resolution,
+			// because the re-used images are at full resolution.
+			if ( !reuseSourceImages )
+				completeSourceImages.clear();
+			else if ( !Collections.disjoint( currentVisibleSourcesOnScreen, completeSourceImages ) )
+			{
+				requestedScreenScaleIndex = 0;
+				requestedSourceScreenScaleIndices = null;
+			}
+			final Set< SourceAndConverter< ? > > retainedSourceImages = new HashSet<>( completeSourceImages );
+			retainedSourceImages.addAll( currentVisibleSourcesOnScreen );
+			renderStorage.retainRenderImages( retainedSourceImages );
+
+			if ( reproject && shiftPreviousFrame( pendingInterval ) )
+				return true;
+
+			synchronized ( this )
+			{
+				// Show the warped frame as a preview until the (coarsest,
+				// non-cancellable) first pass of the new frame is rendered.
+				if ( reproject
+						&& animationScreenScaleIndex < 0
+						&& requestedScreenScaleIndex > 0
+						&& pendingInterval == null
+						&& reprojectionIntervals.isEmpty() )
+					warpPreviousFrame();
+				reprojectionIntervals.clear();
+			}
 		}
 
 		if ( !intervalMode && requestedScreenScaleIndex < 0 )
@@ -436,10 +905,15 @@ public class MultiResolutionRenderer
 
 		return intervalMode
 				? paintInterval( createProjector )
-				: paintFullFrame( createProjector );
+				: paintFullFrame( createProjector, reconvert );
 	}
 
-	private boolean paintFullFrame( final boolean createProjector )
+	/**
+	 * @param reconvert
+	 *     whether to create a projector that re-converts the cached raw values
+	 *     of the previous frame (only if {@code createProjector}).
+	 */
+	private boolean paintFullFrame( final boolean createProjector, final boolean reconvert )
 	{
 		// the projector that paints to the screenImage.
 		final VolatileProjector p;
@@ -462,42 +936,76 @@ public class MultiResolutionRenderer
 				currentViewerState.getViewerTransform( renderResult.getViewerTransform() );
 
 				renderStorage.checkRenewData( screenScales.get( 0 ).width(), screenScales.get( 0 ).height(), currentVisibleSourcesOnScreen.size() );
-				projector = createProjector( currentViewerState, currentVisibleSourcesOnScreen, requestedScreenScaleIndex, renderResult.getTargetImage(), 0, 0 );
-				requestNewFrameIfIncomplete = projectorFactory.requestNewFrameIfIncomplete();
+				if ( reconvert )
+					projector = createRawValueProjector( renderResult.getTargetImage() );
+				else
+				{
+					projector = createProjector( currentViewerState, currentVisibleSourcesOnScreen, requestedScreenScaleIndex, requestedSourceScreenScaleIndices, renderResult.getTargetImage(), 0, 0 );
+					requestedSourceScreenScaleIndices = null;
+					requestNewFrameIfIncomplete = projectorFactory.requestNewFrameIfIncomplete();
+				}
 			}
 			p = projector;
 		}
 
 		// try rendering
+		final long iotime = CacheIoTiming.getIoStatistics().getIoNanoTime();
 		final boolean success = p.map( createProjector );
 		final long rendertime = p.getLastFrameRenderNanoTime();
+		final long ioNanos = CacheIoTiming.getIoStatistics().getIoNanoTime() - iotime;
 
+		final RenderStatistics statistics;
 		synchronized ( this )
 		{
 			// if rendering was not cancelled...
 			if ( success )
 			{
 				currentScreenScaleIndex = requestedScreenScaleIndex;
+				final ScreenScale screenScale = screenScales.get( currentScreenScaleIndex );
+				statistics = createStatistics( false, createProjector, currentScreenScaleIndex, screenScale.scale(),
+						screenScale.width(), screenScale.height(), rendertime, ioNanos, p );
 				if ( createProjector )
 				{
 					renderResult.setUpdated();
 					( ( RenderTarget ) display ).setRenderResult( renderResult );
 					currentRenderResult = renderResult;
-					recordRenderTime( renderResult, rendertime );
+					recordRenderTime( renderResult, rendertime, ioNanos );
 				}
 				else
 					currentRenderResult.setUpdated();
 
+				if ( projectorRecordsRawValues && p.isValid() && currentScreenScaleIndex == 0 )
+					rawValuesCached = true;
+				if ( projectorFillsSourceImages && p.isValid() && currentScreenScaleIndex == 0 )
+					completeSourceImages.addAll( currentVisibleSourcesOnScreen );
+
 				if ( !p.isValid() && requestNewFrameIfIncomplete )
 					requestRepaint();
+				else if ( projectorDownsamplesSources )
+				{
+					// render all sources at the current screen scale
+					requestedScreenScaleIndex = currentScreenScaleIndex;
+					painterThread.requestRepaint();
+				}
 				else if ( p.isValid() && currentScreenScaleIndex == 0 )
 					// indicate that rendering is complete
 					requestedScreenScaleIndex = -1;
+				else if ( currentScreenScaleIndex == animationScreenScaleIndex )
+				{
+					// don't refine during animation, until the next frame
+					if ( p.isValid() )
+						requestedScreenScaleIndex = -1;
+					else
+						iterateRepaint( currentScreenScaleIndex );
+				}
 				else
 					iterateRepaint( Math.max( 0, currentScreenScaleIndex - 1 ) );
 			}
+			else
+				statistics = null;
 		}
 
+		notifyRenderStatisticsListeners( statistics );
 		return success;
 	}
 
@@ -512,25 +1020,30 @@ public class MultiResolutionRenderer
 			{
 				intervalResult.init( intervalRenderData.width(), intervalRenderData.height() );
 				intervalResult.setScaleFactor( intervalRenderData.scale() );
-				projector = createProjector( currentViewerState, currentVisibleSourcesOnScreen, requestedIntervalScaleIndex, intervalResult.getTargetImage(), intervalRenderData.offsetX(), intervalRenderData.offsetY() );
+				projector = createProjector( currentViewerState, currentVisibleSourcesOnScreen, requestedIntervalScaleIndex, null, intervalResult.getTargetImage(), intervalRenderData.offsetX(), intervalRenderData.offsetY() );
 			}
 			p = projector;
 		}
 
 		// try rendering
+		final long iotime = CacheIoTiming.getIoStatistics().getIoNanoTime();
 		final boolean success = p.map( createProjector );
 		final long rendertime = p.getLastFrameRenderNanoTime();
+		final long ioNanos = CacheIoTiming.getIoStatistics().getIoNanoTime() - iotime;
 
+		final RenderStatistics statistics;
 		synchronized ( this )
 		{
 			// if rendering was not cancelled...
 			if ( success )
 			{
 				currentIntervalScaleIndex = requestedIntervalScaleIndex;
+				statistics = createStatistics( true, createProjector, currentIntervalScaleIndex, intervalRenderData.scale(),
+						intervalRenderData.width(), intervalRenderData.height(), rendertime, ioNanos, p );
 				currentRenderResult.patch( intervalResult, intervalRenderData.targetInterval(), intervalRenderData.tx(), intervalRenderData.ty() );
 
 				if ( createProjector )
-					recordRenderTime( intervalResult, rendertime );
+					recordRenderTime( intervalResult, rendertime, ioNanos );
 
 				if ( currentIntervalScaleIndex > currentScreenScaleIndex )
 					iterateRepaintInterval( currentIntervalScaleIndex - 1 );
@@ -545,24 +1058,223 @@ public class MultiResolutionRenderer
 							++currentScreenScaleIndex;
 						painterThread.requestRepaint();
 					}
+					else
+						requestNextReprojectionInterval();
 				}
 				else
 					iterateRepaintInterval( currentIntervalScaleIndex );
 			}
 			// if rendering was cancelled...
 			else
+			{
 				intervalRenderData.reRequest();
+				statistics = null;
+			}
 		}
 
+		notifyRenderStatisticsListeners( statistics );
 		return success;
 	}
 
-	private void recordRenderTime( final RenderResult result, final long renderNanos )
+	/**
+	 * Collect {@link RenderStatistics} for a completed rendering pass of
+	 * projector {@code p}.
+	 */
+	private RenderStatistics createStatistics(
+			final boolean interval,
+			final boolean newProjector,
+			final int screenScaleIndex,
+			final double screenScale,
+			final int width,
+			final int height,
+			final long renderNanos,
+			final long ioNanos,
+			final VolatileProjector p )
+	{
+		final long numLoadedCells;
+		if ( cacheControl.reportsCellLoads() )
+		{
+			final long n = cellArrivalMonitor.getNumLoadedCells();
+			numLoadedCells = n - reportedNumLoadedCells;
+			reportedNumLoadedCells = n;
+		}
+		else
+			numLoadedCells = -1;
+
+		final Set< SharedQueue > queues = Collections.newSetFromMap( new IdentityHashMap<>() );
+		cacheControl.collectSharedQueues( queues );
+		int queueDepth = queues.isEmpty() ? -1 : 0;
+		for ( final SharedQueue queue : queues )
+			queueDepth += queue.getQueueDepth();
+
+		return new RenderStatistics(
+				System.nanoTime(),
+				interval,
+				newProjector,
+				screenScaleIndex,
+				screenScale,
+				width,
+				height,
+				renderNanos,
+				ioNanos,
+				currentMipmapLevels.length,
+				currentMipmapLevels,
+				p.getNumInvalidPixels(),
+				p.isValid(),
+				numLoadedCells,
+				queueDepth );
+	}
+
+	private void notifyRenderStatisticsListeners( final RenderStatistics statistics )
+	{
+		if ( statistics != null )
+			renderStatisticsListeners.list.forEach( l -> l.frameRendered( statistics ) );
+	}
+
+	/**
+	 * Whether {@code result} was rendered at the full resolution screen scale
+	 * and has the current screen size.
+	 */
+	private boolean isFullResolution( final RenderResult result )
+	{
+		final ScreenScale screenScale = screenScales.get( 0 );
+		return result.getScaleFactor() == screenScale.scale()
+				&& result.getTargetImage().dimension( 0 ) == screenScale.width()
+				&& result.getTargetImage().dimension( 1 ) == screenScale.height();
+	}
+
+	/**
+	 * If the {@link #currentViewerState} differs from the (completely
+	 * rendered) {@link #currentRenderResult} by an in-plane translation of
+	 * whole pixels, shift the {@code currentRenderResult} to the new viewer
+	 * transform and display it. The newly exposed strips, and previously
+	 * requested intervals which were not rendered yet, are queued in
+	 * {@link #reprojectionIntervals} for interval rendering.
+	 *
+	 * @param pendingInterval
+	 *     requested interval (in screen coordinates) that was not rendered at
+	 *     full resolution yet, or {@code null}.
+	 *
+	 * @return {@code true} if the previous frame was shifted.
+	 */
+	private synchronized boolean shiftPreviousFrame( final Interval pendingInterval )
+	{
+		final RenderResult previous = currentRenderResult;
+		if ( !isFullResolution( previous ) )
+			return false;
+
+		final ScreenScale screenScale = screenScales.get( 0 );
+		final AffineTransform3D viewerTransform = currentViewerState.getViewerTransform();
+		final AffineTransform3D delta = FrameReprojection.getDelta( previous.getViewerTransform(), viewerTransform, screenScale.scaleTransform() );
+		final int[] shift = FrameReprojection.getIntegerTranslation( delta );
+		final int w = screenScale.width();
+		final int h = screenScale.height();
+		if ( shift == null || Math.abs( shift[ 0 ] ) >= w || Math.abs( shift[ 1 ] ) >= h )
+			return false;
+
+		final RenderResult result = display.getReusableRenderResult();
+		result.init( w, h );
+		result.setScaleFactor( screenScale.scale() );
+		if ( !FrameReprojection.shift( previous, result, shift[ 0 ], shift[ 1 ] ) )
+			return false;
+		result.getViewerTransform().set( viewerTransform );
+
+		final List< Interval > unrendered = new ArrayList<>( reprojectionIntervals );
+		if ( pendingInterval != null )
+			unrendered.add( pendingInterval );
+		reprojectionIntervals.clear();
+
+		final double scale = screenScale.scale();
+		final long minX = ( long ) Math.floor( shift[ 0 ] / scale );
+		final long maxX = ( long ) Math.ceil( shift[ 0 ] / scale );
+		final long minY = ( long ) Math.floor( shift[ 1 ] / scale );
+		final long maxY = ( long ) Math.ceil( shift[ 1 ] / scale );
+		for ( final Interval interval : unrendered )
+			addReprojectionInterval( Intervals.createMinMax(
+					interval.min( 0 ) + minX, interval.min( 1 ) + minY,
+					interval.max( 0 ) + maxX, interval.max( 1 ) + maxY ) );
+
+		final List< Interval > exposed = new ArrayList<>();
+		FrameReprojection.addExposedStrips( w, h, shift[ 0 ], shift[ 1 ], exposed );
+		for ( final Interval interval : exposed )
+			addReprojectionInterval( FrameReprojection.targetToScreen( interval, scale ) );
+
+		if ( reprojectionIntervals.size() > MAX_REPROJECTION_INTERVALS )
+		{
+			Interval union = reprojectionIntervals.poll();
+			while ( !reprojectionIntervals.isEmpty() )
+				union = Intervals.union( union, reprojectionIntervals.poll() );
+			reprojectionIntervals.add( union );
+		}
+
+		result.setUpdated();
+		( ( RenderTarget ) display ).setRenderResult( result );
+		currentRenderResult = result;
+		currentScreenScaleIndex = 0;
+		requestedScreenScaleIndex = -1;
+		requestNextReprojectionInterval();
+		return true;
+	}
+
+	/**
+	 * If the {@link #currentViewerState} differs from the (completely
+	 * rendered) {@link #currentRenderResult} by an in-plane transformation,
+	 * warp the {@code currentRenderResult} to the new viewer transform and
+	 * display it.
+	 *
+	 * @return {@code true} if the previous frame was warped.
+	 */
+	private synchronized boolean warpPreviousFrame()
 	{
-		final int numSources = currentVisibleSourcesOnScreen.size();
-		final int numRenderPixels = ( int ) Intervals.numElements( result.getTargetImage() ) * numSources;
-		if ( numRenderPixels >= 4096 )
-			renderNanosPerPixelAndSource.add( renderNanos / ( double ) numRenderPixels );
+		final RenderResult previous = currentRenderResult;
+		if ( !isFullResolution( previous ) )
+			return false;
+
+		final ScreenScale screenScale = screenScales.get( 0 );
+		final AffineTransform3D viewerTransform = currentViewerState.getViewerTransform();
+		final AffineTransform3D delta = FrameReprojection.getDelta( previous.getViewerTransform(), viewerTransform, screenScale.scaleTransform() );
+		if ( !FrameReprojection.isInPlane( delta ) )
+			return false;
+
+		final RenderResult result = display.getReusableRenderResult();
+		result.init( screenScale.width(), screenScale.height() );
+		result.setScaleFactor( screenScale.scale() );
+		if ( !FrameReprojection.warp( previous, result, delta ) )
+			return false;
+		result.getViewerTransform().set( viewerTransform );
+
+		result.setUpdated();
+		( ( RenderTarget ) display ).setRenderResult( result );
+		currentRenderResult = result;
+		return true;
+	}
+
+	private void addReprojectionInterval( final Interval interval )
+	{
+		final Interval clipped = screenScales.clipToScreen( interval );
+		if ( !Intervals.isEmpty( clipped ) )
+			reprojectionIntervals.add( clipped );
+	}
+
+	/**
+	 * Request interval rendering of the next of the
+	 * {@link #reprojectionIntervals}, if any.
+	 */
+	private void requestNextReprojectionInterval()
+	{
+		final Interval interval = reprojectionIntervals.poll();
+		if ( interval != null )
+		{
+			screenScales.requestInterval( interval );
+			newIntervalRequest = true;
+			painterThread.requestRepaint();
+		}
+	}
+
+	private void recordRenderTime( final RenderResult result, final long renderNanos, final long ioNanos )
+	{
+		final long numPixels = Intervals.numElements( result.getTargetImage() );
+		frameTimeController.recordRenderTime( numPixels, renderNanos, ioNanos, projectorFactory.getNumHierarchyLevels() );
 	}
 
 	/**
@@ -573,9 +1285,9 @@ public class MultiResolutionRenderer
 	 */
 	private void iterateRepaint( final int screenScaleIndex )
 	{
-		if ( screenScaleIndex == currentScreenScaleIndex )
-			usleep();
 		requestedScreenScaleIndex = screenScaleIndex;
+		if ( screenScaleIndex == currentScreenScaleIndex && waitForData() )
+			return;
 		painterThread.requestRepaint();
 	}
 
@@ -587,15 +1299,38 @@ public class MultiResolutionRenderer
 	 */
 	private void iterateRepaintInterval( final int intervalScaleIndex )
 	{
+		requestedIntervalScaleIndex = intervalScaleIndex;
 		if ( intervalScaleIndex == currentIntervalScaleIndex )
 		{
 			intervalRenderData.reRequest();
-			usleep();
+			if ( waitForData() )
+				return;
 		}
-		requestedIntervalScaleIndex = intervalScaleIndex;
 		painterThread.requestRepaint();
 	}
 
+	/**
+	 * Called before repeating an incomplete rendering pass at the same screen
+	 * scale.
+	 * <p>
+	 * If the cache reports loaded cells, and all data rendered by the current
+	 * projector comes from reported cells, the {@link #cellArrivalMonitor}
+	 * decides whether to repaint immediately or to wait for the next relevant
+	 * cell (at most for a poll interval).
+	 * <p>
+	 * Otherwise, {@link #usleep() wait for 1ms} and repaint.
+	 *
+	 * @return {@code true} if repainting will be triggered by the
+	 * {@link #cellArrivalMonitor}, i.e., no repaint should be requested now.
+	 */
+	private boolean waitForData()
+	{
+		if ( cacheControl.reportsCellLoads() && cellArrivalMonitor.hasFootprints() )
+			return cellArrivalMonitor.waitForCells();
+		usleep();
+		return false;
+	}
+
 	/**
 	 * Wait for 1ms so that fetcher threads get a chance to do work.
 	 */
@@ -612,10 +1347,29 @@ public class MultiResolutionRenderer
 		}
 	}
 
+	/**
+	 * Suggest the screen scale of each visible source for the first rendering
+	 * pass of the new frame, and render the frame at the finest of these.
+	 */
+	private void suggestSourceScreenScales()
+	{
+		final int[] indices = frameTimeController.suggestSourceScreenScales();
+		final int min = Arrays.stream( indices ).min().getAsInt();
+		final int max = Arrays.stream( indices ).max().getAsInt();
+		requestedScreenScaleIndex = min;
+		requestedSourceScreenScaleIndices = max > min ? indices : null;
+	}
+
+	/**
+	 * @param sourceScreenScaleIndices
+	 *     the screen scale index of each visible source, or {@code null} if
+	 *     all sources are rendered at {@code screenScaleIndex}.
+	 */
 	private VolatileProjector createProjector(
 			final ViewerState viewerState,
 			final List< SourceAndConverter< ? > > visibleSourcesOnScreen,
 			final int screenScaleIndex,
+			final int[] sourceScreenScaleIndices,
 			final RandomAccessibleInterval< ARGBType > screenImage,
 			final int offsetX,
 			final int offsetY )
@@ -625,13 +1379,90 @@ public class MultiResolutionRenderer
 		screenTransform.preConcatenate( screenScaleTransform );
 		screenTransform.translate( -offsetX, -offsetY, 0 );
 
+		final boolean fullFrame = screenScaleIndex == 0 && offsetX == 0 && offsetY == 0
+				&& screenImage.dimension( 0 ) == screenScales.get( 0 ).width()
+				&& screenImage.dimension( 1 ) == screenScales.get( 0 ).height();
+
+		// the new projector overwrites the render images of all sources that
+		// are not re-used
+		final Set< SourceAndConverter< ? > > reusableSources = new HashSet<>();
+		for ( final SourceAndConverter< ? > source : visibleSourcesOnScreen )
+		{
+			if ( fullFrame && completeSourceImages.contains( source ) )
+				reusableSources.add( source );
+			else
+				completeSourceImages.remove( source );
+		}
+
+		double[] sourceScales = null;
+		if ( sourceScreenScaleIndices != null )
+		{
+			final double scale = screenScales.get( screenScaleIndex ).scale();
+			sourceScales = new double[ sourceScreenScaleIndices.length ];
+			for ( int i = 0; i < sourceScales.length; ++i )
+				sourceScales[ i ] = screenScales.get( sourceScreenScaleIndices[ i ] ).scale() / scale;
+		}
+
+		final double[] focus = prefetchFocus;
+		if ( focus != null )
+		{
+			final double[] globalFocus = new double[ 3 ];
+			viewerState.getViewerTransform().applyInverse( globalFocus, new double[] { focus[ 0 ], focus[ 1 ], 0 } );
+			projectorFactory.setPrefetchFocus( globalFocus );
+		}
+		else
+			projectorFactory.setPrefetchFocus( null );
+
+		projectorFactory.setMaxNumHierarchyLevels( frameTimeController.getMaxNumHierarchyLevels() );
 		final VolatileProjector projector = projectorFactory.createProjector(
 				viewerState,
 				visibleSourcesOnScreen,
 				screenImage,
 				screenTransform,
-				renderStorage );
-		CacheIoTiming.getIoTimeBudget().reset( iobudget );
+				renderStorage,
+				reusableSources,
+				sourceScales );
+		projectorDownsamplesSources = projectorFactory.isSourcesDownsampled();
+		frameTimeController.setPassScreenScales( screenScaleIndex, projectorDownsamplesSources ? sourceScreenScaleIndices : null );
+		projectorFillsSourceImages = fullFrame && projectorFactory.isSourceImagesRendered();
+		cellArrivalMonitor.setFootprints( projectorFactory.getCellFootprints(), screenImage );
+		currentMipmapLevels = projectorFactory.getRenderedMipmapLevels();
+		CacheIoTiming.getIoTimeBudget().reset( frameTimeController.getIoTimeBudget( Intervals.numElements( screenImage ) ) );
+
+		// the new projector overwrites the raw values in renderStorage
+		rawValuesCached = false;
+		projectorRecordsRawValues = fullFrame && projectorFactory.isRawValuesRecorded();
+		if ( projectorRecordsRawValues )
+		{
+			viewerState.getViewerTransform( rawValuesTransform );
+			rawValuesTimepoint = viewerState.getCurrentTimepoint();
+			rawValuesSources.clear();
+			rawValuesSources.addAll( visibleSourcesOnScreen );
+		}
+
 		return projector;
 	}
+
+	/**
+	 * Create a projector that re-converts the cached raw values of the
+	 * previous frame with the current converters.
+	 */
+	private VolatileProjector createRawValueProjector( final RandomAccessibleInterval< ARGBType > screenImage )
+	{
+		projectorRecordsRawValues = true;
+		projectorFillsSourceImages = currentVisibleSourcesOnScreen.size() > 1;
+		projectorDownsamplesSources = false;
+		return projectorFactory.createRawValueProjector( currentVisibleSourcesOnScreen, screenImage, renderStorage );
+	}
+
+	/**
+	 * Whether the cached raw values were recorded for the given viewer
+	 * transform, timepoint, and visible sources.
+	 */
+	private boolean isRawValuesFrame( final ViewerState viewerState, final List< SourceAndConverter< ? > > visibleSourcesOnScreen )
+	{
+		return viewerState.getCurrentTimepoint() == rawValuesTimepoint
+				&& Arrays.equals( viewerState.getViewerTransform().getRowPackedCopy(), rawValuesTransform.getRowPackedCopy() )
+				&& visibleSourcesOnScreen.equals( rawValuesSources );
+	}
 }
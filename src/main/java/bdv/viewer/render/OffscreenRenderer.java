@@ -0,0 +1,272 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+
+import net.imglib2.FinalDimensions;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+import bdv.util.MipmapTransforms;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+import bdv.viewer.render.ScreenScales.ScreenScale;
+
+/**
+ * Renders {@link ViewerState}s to ARGB images of a fixed size, without any
+ * display. This is intended for batch rendering (movies, figures, quality
+ * control) where every frame must be complete.
+ * <p>
+ * Sources are rendered from their non-volatile versions, that is, data is
+ * loaded through the sources' caches with blocking loads, and every rendered
+ * frame shows data at the best resolution level for the output size.
+ * Rendering is parallelized over the threads of the rendering executor.
+ * <p>
+ * {@link #renderAll} renders a sequence of states. While one frame is
+ * rendered, the cells needed for the next frame are enqueued for loading by
+ * the fetcher threads of the volatile versions of the sources (if
+ * available), such that IO for the next frame overlaps with rendering of the
+ * current frame.
+ * <p>
+ * The viewer transform of the rendered {@code ViewerState}s maps global
+ * coordinates to output image coordinates. (When rendering the state of a
+ * viewer window with a different size, the transform must be adapted
+ * accordingly.)
+ */
+public class OffscreenRenderer
+{
+	/**
+	 * Receives rendered frames from {@link #renderAll}.
+	 */
+	@FunctionalInterface
+	public interface FrameConsumer
+	{
+		/**
+		 * @param frame
+		 *     index of the frame.
+		 * @param argb
+		 *     rendered ARGB pixels, row by row. The array is owned by the
+		 *     consumer.
+		 */
+		void accept( int frame, int[] argb ) throws IOException;
+	}
+
+	private final int width;
+
+	private final int height;
+
+	private final ScreenScale screenScale;
+
+	private final FinalDimensions screenSize;
+
+	private final ProjectorFactory projectorFactory;
+
+	private final RenderStorage renderStorage;
+
+	private final List< SourceAndConverter< ? > > visibleSourcesOnScreen;
+
+	/**
+	 * The rendering executor, if it was created by this renderer (and should
+	 * be shut down by {@link #shutdown()}). Otherwise {@code null}.
+	 */
+	private final ExecutorService ownExecutorService;
+
+	/**
+	 * Create a renderer that uses a new fixed thread pool with
+	 * {@code numRenderingThreads} threads, and the default accumulation of
+	 * sources. Call {@link #shutdown()} to stop the threads when done.
+	 *
+	 * @param width
+	 *     width of rendered images.
+	 * @param height
+	 *     height of rendered images.
+	 * @param numRenderingThreads
+	 *     how many threads to use for rendering.
+	 */
+	public OffscreenRenderer( final int width, final int height, final int numRenderingThreads )
+	{
+		this( width, height, numRenderingThreads, null, AccumulateProjectorARGB.factory );
+	}
+
+	/**
+	 * @param width
+	 *     width of rendered images.
+	 * @param height
+	 *     height of rendered images.
+	 * @param numRenderingThreads
+	 *     how many threads to use for rendering.
+	 * @param renderingExecutorService
+	 *     if non-null, this is used for rendering. Otherwise, a fixed thread
+	 *     pool with {@code numRenderingThreads} is created, which is stopped by
+	 *     {@link #shutdown()}.
+	 * @param accumulateProjectorFactory
+	 *     can be used to customize how sources are combined.
+	 */
+	public OffscreenRenderer(
+			final int width,
+			final int height,
+			final int numRenderingThreads,
+			final ExecutorService renderingExecutorService,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory )
+	{
+		this.width = width;
+		this.height = height;
+		final ScreenScales screenScales = new ScreenScales( new double[] { 1 }, 0 );
+		screenScales.checkResize( width, height );
+		screenScale = screenScales.get( 0 );
+		screenSize = new FinalDimensions( width, height );
+
+		ownExecutorService = ( renderingExecutorService == null && numRenderingThreads > 1 )
+				? Executors.newFixedThreadPool( numRenderingThreads )
+				: null;
+		final ExecutorService executorService = renderingExecutorService != null
+				? renderingExecutorService
+				: ownExecutorService;
+
+		projectorFactory = new ProjectorFactory( numRenderingThreads, executorService, false, accumulateProjectorFactory );
+		renderStorage = new RenderStorage();
+		visibleSourcesOnScreen = new ArrayList<>();
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Render {@code viewerState}.
+	 *
+	 * @return rendered ARGB pixels, row by row.
+	 */
+	public int[] render( final ViewerState viewerState )
+	{
+		final int[] argb = new int[ width * height ];
+		render( viewerState, argb );
+		return argb;
+	}
+
+	/**
+	 * Render {@code viewerState} into {@code argb}.
+	 *
+	 * @param argb
+	 *     array of size at least {@code width * height}, to store ARGB pixels
+	 *     row by row.
+	 */
+	public synchronized void render( final ViewerState viewerState, final int[] argb )
+	{
+		VisibilityUtils.computeVisibleSourcesOnScreen( viewerState, screenScale, visibleSourcesOnScreen );
+		renderStorage.checkRenewData( width, height, visibleSourcesOnScreen.size() );
+		renderStorage.retainRenderImages( visibleSourcesOnScreen );
+		final VolatileProjector projector = projectorFactory.createProjector(
+				viewerState,
+				visibleSourcesOnScreen,
+				ArrayImgs.argbs( argb, width, height ),
+				viewerState.getViewerTransform(),
+				renderStorage );
+		projector.map();
+	}
+
+	/**
+	 * Enqueue the cells that are needed to render {@code viewerState} for
+	 * loading by the fetcher threads. This only has an effect for sources
+	 * that have a volatile version backed by a cache. It returns immediately.
+	 */
+	public void prefetch( final ViewerState viewerState )
+	{
+		final List< SourceAndConverter< ? > > sources = new ArrayList<>();
+		VisibilityUtils.computeVisibleSourcesOnScreen( viewerState, screenScale, sources );
+		final AffineTransform3D screenTransform = viewerState.getViewerTransform();
+		final int timepoint = viewerState.getCurrentTimepoint();
+		for ( final SourceAndConverter< ? > source : sources )
+		{
+			final SourceAndConverter< ? > volatileSource = source.asVolatile();
+			if ( volatileSource == null )
+				continue;
+			final int level = MipmapTransforms.getBestMipMapLevel( screenTransform, volatileSource.getSpimSource(), timepoint );
+			ProjectorFactory.prefetch( viewerState, volatileSource.getSpimSource(), screenTransform, level, null, screenSize );
+		}
+	}
+
+	/**
+	 * Render a sequence of {@code numFrames} states. The cells of frame
+	 * {@code i+1} are {@link #prefetch(ViewerState) prefetched} before frame
+	 * {@code i} is rendered.
+	 *
+	 * @param numFrames
+	 *     number of frames to render.
+	 * @param frames
+	 *     provides the {@code ViewerState} for each frame index. Each index is
+	 *     requested exactly once, in order.
+	 * @param consumer
+	 *     receives the rendered frames, in order, on the calling thread.
+	 */
+	public void renderAll( final int numFrames, final IntFunction< ? extends ViewerState > frames, final FrameConsumer consumer ) throws IOException
+	{
+		ViewerState next = numFrames > 0 ? frames.apply( 0 ) : null;
+		for ( int i = 0; i < numFrames; ++i )
+		{
+			final ViewerState current = next;
+			next = i + 1 < numFrames ? frames.apply( i + 1 ) : null;
+			if ( next != null )
+				prefetch( next );
+			consumer.accept( i, render( current ) );
+		}
+	}
+
+	/**
+	 * Render a list of states.
+	 *
+	 * @see #renderAll(int, IntFunction, FrameConsumer)
+	 */
+	public void renderAll( final List< ? extends ViewerState > states, final FrameConsumer consumer ) throws IOException
+	{
+		renderAll( states.size(), states::get, consumer );
+	}
+
+	/**
+	 * Stop the rendering threads, if they were created by this renderer.
+	 */
+	public void shutdown()
+	{
+		if ( ownExecutorService != null )
+			ownExecutorService.shutdown();
+	}
+}
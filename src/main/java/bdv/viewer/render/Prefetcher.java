@@ -28,17 +28,40 @@
  */
 package bdv.viewer.render;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import net.imglib2.Dimensions;
 import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealPoint;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.img.cell.CellImg;
 import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import bdv.img.cache.VolatileCachedCellImg;
 import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
 
+/**
+ * Accesses the cells of a {@link CellImg} that will be needed for rendering to
+ * the screen, such that missing cells are enqueued for loading.
+ * <p>
+ * {@link CacheHints} only carry the priority of a mipmap level. Within one
+ * priority, the fetch queue loads cells in the order they were enqueued. Cells
+ * are therefore accessed in order of increasing distance of their center from
+ * a focus point on the screen (by default the center of the screen), so that
+ * the region the user is looking at is loaded first. If cells are enqueued to
+ * the front of the queue, they are accessed in reverse order.
+ */
 public class Prefetcher
 {
 	/**
-	 * Access cells that will be needed for rendering to the screen.
+	 * Access cells that will be needed for rendering to the screen, starting
+	 * with the cells closest to the center of the screen.
 	 *
 	 * @param sourceToScreen
 	 *            source-to-screen transform
@@ -55,7 +78,140 @@ public class Prefetcher
 	 */
 	public static void fetchCells( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval,  final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess )
 	{
-		new Prefetcher().scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
+		new Prefetcher().scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, null, false, true );
+	}
+
+	/**
+	 * If the {@code mipmapIndex} level of {@code source} is a
+	 * {@link VolatileCachedCellImg}, enqueue the cells that are needed to
+	 * render {@code screenInterval} with the given {@code screenTransform}
+	 * for loading. If {@code cacheHints == null}, cells are enqueued with
+	 * {@link LoadingStrategy#VOLATILE} and the default priority of the image.
+	 * The cache hints of the image are not changed, so this may be called
+	 * concurrently to rendering. Cells closest to the center of
+	 * {@code screenInterval} are enqueued first.
+	 *
+	 * @return the number of cells that were accessed.
+	 */
+	public static int fetchCells(
+			final int timepoint,
+			final Interpolation interpolation,
+			final Source< ? > source,
+			final AffineTransform3D screenTransform,
+			final int mipmapIndex,
+			final CacheHints cacheHints,
+			final Dimensions screenInterval )
+	{
+		return fetchCells( timepoint, interpolation, source, screenTransform, mipmapIndex, cacheHints, screenInterval, null );
+	}
+
+	/**
+	 * Like
+	 * {@link #fetchCells(int, Interpolation, Source, AffineTransform3D, int, CacheHints, Dimensions)},
+	 * but enqueue the cells closest to {@code focus} first.
+	 *
+	 * @param focus
+	 *            the (x,y) screen coordinates around which cells are
+	 *            enqueued first, or {@code null} for the center of
+	 *            {@code screenInterval}.
+	 * @return the number of cells that were accessed.
+	 */
+	public static int fetchCells(
+			final int timepoint,
+			final Interpolation interpolation,
+			final Source< ? > source,
+			final AffineTransform3D screenTransform,
+			final int mipmapIndex,
+			final CacheHints cacheHints,
+			final Dimensions screenInterval,
+			final double[] focus )
+	{
+		return scan( timepoint, interpolation, source, screenTransform, mipmapIndex, cacheHints, screenInterval, focus, true );
+	}
+
+	/**
+	 * Estimate the memory (in bytes) taken by the cells that
+	 * {@link #fetchCells(int, Interpolation, Source, AffineTransform3D, int, CacheHints, Dimensions)}
+	 * would access, without accessing them.
+	 *
+	 * @return estimated size of the cells in bytes, or {@code -1} if the
+	 *         {@code mipmapIndex} level of {@code source} is not a
+	 *         {@link VolatileCachedCellImg}.
+	 */
+	public static long estimateCellBytes(
+			final int timepoint,
+			final Interpolation interpolation,
+			final Source< ? > source,
+			final AffineTransform3D screenTransform,
+			final int mipmapIndex,
+			final Dimensions screenInterval )
+	{
+		final RandomAccessibleInterval< ? > img = source.getSource( timepoint, mipmapIndex );
+		if ( !( img instanceof VolatileCachedCellImg ) )
+			return -1;
+
+		final VolatileCachedCellImg< ?, ? > cellImg = ( VolatileCachedCellImg< ?, ? > ) img;
+		final int[] cellDimensions = new int[ 3 ];
+		cellImg.getCellGrid().cellDimensions( cellDimensions );
+		final NativeType< ? > type = cellImg.createLinkedType();
+		final double bytesPerPixel = type.getEntitiesPerPixel().getRatio() * bytesPerEntity( type );
+		final double bytesPerCell = bytesPerPixel * cellDimensions[ 0 ] * cellDimensions[ 1 ] * cellDimensions[ 2 ];
+		final int numCells = scan( timepoint, interpolation, source, screenTransform, mipmapIndex, null, screenInterval, null, false );
+		return ( long ) Math.ceil( numCells * bytesPerCell );
+	}
+
+	private static int scan(
+			final int timepoint,
+			final Interpolation interpolation,
+			final Source< ? > source,
+			final AffineTransform3D screenTransform,
+			final int mipmapIndex,
+			final CacheHints cacheHints,
+			final Dimensions screenInterval,
+			final double[] focus,
+			final boolean fetch )
+	{
+		final RandomAccessibleInterval< ? > img = source.getSource( timepoint, mipmapIndex );
+		if ( !( img instanceof VolatileCachedCellImg ) )
+			return 0;
+
+		final VolatileCachedCellImg< ?, ? > cellImg = ( VolatileCachedCellImg< ?, ? > ) img;
+
+		CacheHints hints = cacheHints;
+		if ( hints == null )
+		{
+			final CacheHints d = cellImg.getDefaultCacheHints();
+			hints = new CacheHints( LoadingStrategy.VOLATILE, d.getQueuePriority(), false );
+		}
+		final int[] cellDimensions = new int[ 3 ];
+		cellImg.getCellGrid().cellDimensions( cellDimensions );
+		final long[] dimensions = new long[ 3 ];
+		cellImg.dimensions( dimensions );
+		final RandomAccess< ? > cellsRandomAccess = cellImg.getCells( hints ).randomAccess();
+
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		source.getSourceTransform( timepoint, mipmapIndex, sourceToScreen );
+		sourceToScreen.preConcatenate( screenTransform );
+
+		return new Prefetcher().scan( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess, focus, hints.isEnqueuToFront(), fetch );
+	}
+
+	private static int bytesPerEntity( final NativeType< ? > type )
+	{
+		switch ( type.getNativeTypeFactory().getPrimitiveType() )
+		{
+		case SHORT:
+		case CHAR:
+			return 2;
+		case INT:
+		case FLOAT:
+			return 4;
+		case LONG:
+		case DOUBLE:
+			return 8;
+		default:
+			return 1;
+		}
 	}
 
 	private Prefetcher()
@@ -81,6 +237,29 @@ public class Prefetcher
 
 	private static final double eps = 0.0000001;
 
+	/**
+	 * A cell that is needed for rendering, and the squared screen distance of
+	 * its center from the focus point.
+	 */
+	private static final class NeededCell
+	{
+		final int x;
+
+		final int y;
+
+		final int z;
+
+		final double distance;
+
+		NeededCell( final int x, final int y, final int z, final double distance )
+		{
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.distance = distance;
+		}
+	}
+
 	/**
 	 * Access cells that will be needed for rendering to the screen.
 	 *
@@ -96,9 +275,21 @@ public class Prefetcher
 	 *            the interpolation method
 	 * @param cellsRandomAccess
 	 *            access to the source cells
+	 * @param focus
+	 *            the (x,y) screen coordinates around which cells are
+	 *            accessed first, or {@code null} for the center of
+	 *            {@code screenInterval}
+	 * @param reverse
+	 *            whether to access the cells closest to {@code focus} last
+	 *            (because they are enqueued to the front of the queue)
+	 * @param fetch
+	 *            whether to access the cells, or only count them
+	 * @return the number of cells that are needed
 	 */
-	private void scan( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval, final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess )
+	private int scan( final AffineTransform3D sourceToScreen, final int[] cellDimensions, final long[] dimensions, final Dimensions screenInterval, final Interpolation interpolation, final RandomAccess< ? > cellsRandomAccess, final double[] focus, final boolean reverse, final boolean fetch )
 	{
+		int numCells = 0;
+		final List< NeededCell > neededCells = new ArrayList<>();
 		final RealPoint pSource = new RealPoint( 3 );
 		final RealPoint pScreen = new RealPoint( 3 );
 		final int[] minCell = new int[ 3 ];
@@ -139,6 +330,16 @@ public class Prefetcher
 		checkProtoCell( cellDimensions, sourceToScreen, interpolation );
 		getXStep( cellDimensions, sourceToScreen );
 
+		// screen offset of the cell center from the cell min corner
+		final RealPoint c0 = new RealPoint( 3 );
+		final RealPoint c1 = new RealPoint( 3 );
+		sourceToScreen.apply( new RealPoint( 3 ), c0 );
+		sourceToScreen.apply( new RealPoint( 0.5 * cellDimensions[ 0 ], 0.5 * cellDimensions[ 1 ], 0.5 * cellDimensions[ 2 ] ), c1 );
+		final double centerX = c1.getDoublePosition( 0 ) - c0.getDoublePosition( 0 );
+		final double centerY = c1.getDoublePosition( 1 ) - c0.getDoublePosition( 1 );
+		final double focusX = focus == null ? 0.5 * w : focus[ 0 ];
+		final double focusY = focus == null ? 0.5 * h : focus[ 1 ];
+
 		pSource.setPosition( ( minCell[ 2 ] - 1 ) * cellDimensions[ 2 ], 2 );
 		for ( cellsRandomAccess.setPosition( minCell[ 2 ], 2 ); cellsRandomAccess.getIntPosition( 2 ) <= maxCell[ 2 ]; cellsRandomAccess.fwd( 2 ) )
 		{
@@ -191,12 +392,35 @@ public class Prefetcher
 							( y + offsetPos[ 1 ] >= 0 ) &&
 							( y + offsetNeg[ 1 ] < h ) )
 					{
-						cellsRandomAccess.get();
+						if ( fetch )
+						{
+							final double dx = x + centerX - focusX;
+							final double dy = y + centerY - focusY;
+							neededCells.add( new NeededCell(
+									cellsRandomAccess.getIntPosition( 0 ),
+									cellsRandomAccess.getIntPosition( 1 ),
+									cellsRandomAccess.getIntPosition( 2 ),
+									dx * dx + dy * dy ) );
+						}
+						++numCells;
 					}
 					pSource.move( cellDimensions[ 0 ], 0 );
 				}
 			}
 		}
+
+		neededCells.sort( Comparator.comparingDouble( c -> c.distance ) );
+		if ( reverse )
+			Collections.reverse( neededCells );
+		for ( final NeededCell c : neededCells )
+		{
+			cellsRandomAccess.setPosition( c.x, 0 );
+			cellsRandomAccess.setPosition( c.y, 1 );
+			cellsRandomAccess.setPosition( c.z, 2 );
+			cellsRandomAccess.get();
+		}
+
+		return numCells;
 	}
 
 	/**
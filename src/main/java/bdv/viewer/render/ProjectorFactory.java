@@ -28,21 +28,31 @@
  */
 package bdv.viewer.render;
 
+import gnu.trove.list.array.TIntArrayList;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
 import net.imglib2.Dimensions;
-import net.imglib2.RandomAccess;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealInterval;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.Volatile;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.converter.Converter;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.Type;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
 
 import bdv.img.cache.VolatileCachedCellImg;
 import bdv.util.MipmapTransforms;
@@ -112,6 +122,80 @@ class ProjectorFactory
 	// TODO: should be settable
 	private final boolean prefetchCells = true;
 
+	/**
+	 * Footprints of the rendered resolution levels of volatile sources of the
+	 * last {@link #createProjector created} projector. {@code null} if some
+	 * rendered level is not a {@link VolatileCachedCellImg}.
+	 */
+	private List< CellArrivalMonitor.Footprint > cellFootprints;
+
+	/**
+	 * For each source of the last {@link #createProjector created} projector,
+	 * the mipmap level that is rendered first.
+	 */
+	private final TIntArrayList renderedMipmapLevels = new TIntArrayList();
+
+	/**
+	 * Thickness (in global coordinates) of the slab around the screen plane
+	 * that is rendered as a maximum intensity projection. Slab projection is
+	 * disabled if {@code slabThickness <= 0}.
+	 */
+	private double slabThickness = 0;
+
+	/**
+	 * Number of samples through the slab (along the viewing direction).
+	 */
+	private int numSlabSamples = 1;
+
+	/**
+	 * Whether projectors should record the raw values of rendered pixels in
+	 * {@link RenderStorage#getRawValueArray}, if possible.
+	 */
+	private boolean recordRawValues = false;
+
+	/**
+	 * Whether all source projectors of the last {@link #createProjector
+	 * created} projector record raw values.
+	 */
+	private boolean rawValuesRecorded;
+
+	/**
+	 * Whether multiple visible sources should be rendered with a
+	 * {@link MosaicProjector}, if possible.
+	 */
+	private boolean mosaicCompositing = false;
+
+	/**
+	 * Whether the last {@link #createProjector created} projector renders
+	 * sources to the render images of {@link RenderStorage}.
+	 */
+	private boolean sourceImagesRendered;
+
+	/**
+	 * Whether the last {@link #createProjector created} projector renders
+	 * some sources at a coarser resolution than the screen image.
+	 */
+	private boolean sourcesDownsampled;
+
+	/**
+	 * Maximum number of mipmap levels to render per source. If
+	 * {@code maxNumHierarchyLevels <= 0}, all levels suggested by the
+	 * {@link MipmapOrdering} are rendered.
+	 */
+	private int maxNumHierarchyLevels = 0;
+
+	/**
+	 * The maximum number of mipmap levels rendered for any source by the last
+	 * {@link #createProjector created} projector.
+	 */
+	private int numHierarchyLevels;
+
+	/**
+	 * Global coordinates of the point around which cells are prefetched
+	 * first, or {@code null} to prefetch around the center of the screen.
+	 */
+	private double[] prefetchFocus;
+
 	/**
 	 * @param numRenderingThreads
 	 *     How many threads to use for rendering.
@@ -136,6 +220,113 @@ class ProjectorFactory
 		this.accumulateProjectorFactory = accumulateProjectorFactory;
 	}
 
+	/**
+	 * Render volatile sources with a {@link SlabMaxProjector}, that is, as the
+	 * maximum intensity projection of a slab of the given {@code thickness}
+	 * around the screen plane, sampled at {@code numSamples} depths.
+	 * Non-volatile sources and sources whose values are not {@link RealType}s
+	 * are rendered as slices.
+	 *
+	 * @param thickness
+	 *     thickness of the slab in global coordinates. Slab projection is
+	 *     disabled if {@code thickness <= 0} or {@code numSamples < 2}.
+	 * @param numSamples
+	 *     number of samples through the slab.
+	 */
+	public void setMaxProjectionSlab( final double thickness, final int numSamples )
+	{
+		slabThickness = thickness;
+		numSlabSamples = numSamples;
+	}
+
+	/**
+	 * Set whether projectors should record the raw (unconverted) values of
+	 * rendered pixels, such that frames can be re-converted with
+	 * {@link #createRawValueProjector} after a converter change.
+	 */
+	public void setRecordRawValues( final boolean record )
+	{
+		recordRawValues = record;
+	}
+
+	/**
+	 * Set whether multiple visible sources should be composited as a mosaic
+	 * with a {@link MosaicProjector}, instead of accumulating per-source
+	 * render images. This is only possible if all visible sources are
+	 * volatile, and slab projection is disabled. Otherwise, sources are
+	 * accumulated as usual.
+	 */
+	public void setMosaicCompositing( final boolean mosaic )
+	{
+		mosaicCompositing = mosaic;
+	}
+
+	/**
+	 * Set the point (in global coordinates) around which cells within each
+	 * mipmap level are prefetched first, or {@code null} to prefetch around
+	 * the center of the screen.
+	 */
+	public void setPrefetchFocus( final double[] focus )
+	{
+		prefetchFocus = focus == null ? null : focus.clone();
+	}
+
+	/**
+	 * Whether the last {@link #createProjector created} projector renders
+	 * (or re-uses) the render images of visible sources in
+	 * {@link RenderStorage}.
+	 */
+	public boolean isSourceImagesRendered()
+	{
+		return sourceImagesRendered;
+	}
+
+	/**
+	 * Whether the last {@link #createProjector created} projector renders
+	 * some sources at a coarser resolution than the screen image, and
+	 * upsamples them for accumulation.
+	 */
+	public boolean isSourcesDownsampled()
+	{
+		return sourcesDownsampled;
+	}
+
+	/**
+	 * Set the maximum number of mipmap levels to render per source. If more
+	 * levels are suggested by the {@link MipmapOrdering}, intermediate levels
+	 * are skipped: the first {@code n-1} levels (in render order) and the
+	 * coarsest level are rendered. This reduces the number of passes over
+	 * pixels for which data is missing, and the number of blocking loads.
+	 *
+	 * @param n
+	 *     maximum number of levels. If {@code n <= 0}, all levels are rendered.
+	 *     Otherwise, at least two levels are rendered.
+	 */
+	public void setMaxNumHierarchyLevels( final int n )
+	{
+		maxNumHierarchyLevels = n;
+	}
+
+	/**
+	 * Get the maximum number of mipmap levels rendered for any source by the
+	 * last {@link #createProjector created} projector.
+	 */
+	public int getNumHierarchyLevels()
+	{
+		return numHierarchyLevels;
+	}
+
+	/**
+	 * Whether all source projectors of the last {@link #createProjector
+	 * created} projector record raw values. This is only possible for sources
+	 * that are rendered with a {@link VolatileHierarchyProjector} and have
+	 * {@code RealType} values.
+	 */
+	public boolean isRawValuesRecorded()
+	{
+		return rawValuesRecorded;
+	}
+
 	/**
 	 * Create a projector for rendering the specified {@code ViewerState} to the
 	 * specified {@code screenImage}, with the current visible sources (visible
@@ -150,6 +341,54 @@ class ProjectorFactory
 			final RandomAccessibleInterval< ARGBType > screenImage,
 			final AffineTransform3D screenTransform,
 			final RenderStorage renderStorage )
+	{
+		return createProjector( viewerState, visibleSourcesOnScreen, screenImage, screenTransform, renderStorage, Collections.emptySet() );
+	}
+
+	/**
+	 * Create a projector like
+	 * {@link #createProjector(ViewerState, List, RandomAccessibleInterval, AffineTransform3D, RenderStorage)},
+	 * but re-use the render images in {@code renderStorage} of the
+	 * {@code reusableSources}, instead of rendering these sources again. The
+	 * render images of the {@code reusableSources} must be complete, and must
+	 * have been rendered for the same {@code screenTransform}, timepoint, and
+	 * converters.
+	 */
+	public VolatileProjector createProjector(
+			final ViewerState viewerState,
+			final List< SourceAndConverter< ? > > visibleSourcesOnScreen,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final AffineTransform3D screenTransform,
+			final RenderStorage renderStorage,
+			final Set< SourceAndConverter< ? > > reusableSources )
+	{
+		return createProjector( viewerState, visibleSourcesOnScreen, screenImage, screenTransform, renderStorage, reusableSources, null );
+	}
+
+	/**
+	 * Create a projector like
+	 * {@link #createProjector(ViewerState, List, RandomAccessibleInterval, AffineTransform3D, RenderStorage, Set)},
+	 * but render each visible source at its own resolution.
+	 * {@code sourceScales[i]} is the scale factor from {@code screenImage}
+	 * coordinates to the image that the {@code i}th visible source is
+	 * rendered to. Sources with {@code sourceScales[i] < 1} are rendered to a
+	 * coarser image, which is upsampled (nearest neighbor) to the source
+	 * render image before accumulation. Per-source scales only apply if the
+	 * sources are accumulated, that is, if more than one source is visible
+	 * and sources are not composited as a mosaic.
+	 *
+	 * @param sourceScales
+	 *     scale factor (at most 1) for each visible source, or {@code null}
+	 *     to render all sources at the resolution of {@code screenImage}.
+	 */
+	public VolatileProjector createProjector(
+			final ViewerState viewerState,
+			final List< SourceAndConverter< ? > > visibleSourcesOnScreen,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final AffineTransform3D screenTransform,
+			final RenderStorage renderStorage,
+			final Set< SourceAndConverter< ? > > reusableSources,
+			final double[] sourceScales )
 	{
 		/*
 		 * This shouldn't be necessary, with
@@ -157,6 +396,12 @@ class ProjectorFactory
 		 */
 //		CacheIoTiming.getIoTimeBudget().clear(); // clear time budget such that prefetching doesn't wait for loading blocks.
 		newFrameRequest = false;
+		cellFootprints = new ArrayList<>();
+		renderedMipmapLevels.clear();
+		numHierarchyLevels = 0;
+		rawValuesRecorded = recordRawValues;
+		sourceImagesRendered = false;
+		sourcesDownsampled = false;
 
 		final int width = ( int ) screenImage.dimension( 0 );
 		final int height = ( int ) screenImage.dimension( 1 );
@@ -164,22 +409,39 @@ class ProjectorFactory
 		VolatileProjector projector;
 		if ( visibleSourcesOnScreen.isEmpty() )
 			projector = new EmptyProjector<>( screenImage );
-		else if ( visibleSourcesOnScreen.size() == 1 )
+		else if ( visibleSourcesOnScreen.size() == 1 && !reusableSources.contains( visibleSourcesOnScreen.get( 0 ) ) )
 		{
 			final byte[] maskArray = renderStorage.getMaskArray( 0 );
-			projector = createSingleSourceProjector( viewerState, visibleSourcesOnScreen.get( 0 ), screenImage, screenTransform, maskArray );
+			final float[] rawValues = recordRawValues ? renderStorage.getRawValueArray( 0 ) : null;
+			projector = createSingleSourceProjector( viewerState, visibleSourcesOnScreen.get( 0 ), screenImage, screenTransform, maskArray, rawValues );
 		}
+		else if ( isMosaicPossible( visibleSourcesOnScreen ) )
+			projector = createMosaicProjector( viewerState, visibleSourcesOnScreen, screenImage, screenTransform, renderStorage.getMaskArray( 0 ) );
 		else
 		{
+			sourceImagesRendered = true;
 			final ArrayList< VolatileProjector > sourceProjectors = new ArrayList<>();
 			final ArrayList< RandomAccessibleInterval< ARGBType > > sourceImages = new ArrayList<>();
 			int j = 0;
 			for ( final SourceAndConverter< ? > source : visibleSourcesOnScreen )
 			{
-				final RandomAccessibleInterval< ARGBType > renderImage = renderStorage.getRenderImage( width, height, j );
-				final byte[] maskArray = renderStorage.getMaskArray( j );
+				final RandomAccessibleInterval< ARGBType > renderImage = renderStorage.getRenderImage( width, height, source );
+				final VolatileProjector p;
+				if ( reusableSources.contains( source ) )
+				{
+					p = new ReusedImageProjector();
+					renderedMipmapLevels.add( -1 );
+					rawValuesRecorded = false;
+				}
+				else if ( sourceScales != null && sourceScales[ j ] < 1 )
+					p = createDownsampledProjector( viewerState, source, renderImage, screenTransform, sourceScales[ j ], renderStorage, j );
+				else
+				{
+					final byte[] maskArray = renderStorage.getMaskArray( j );
+					final float[] rawValues = recordRawValues ? renderStorage.getRawValueArray( j ) : null;
+					p = createSingleSourceProjector( viewerState, source, renderImage, screenTransform, maskArray, rawValues );
+				}
 				++j;
-				final VolatileProjector p = createSingleSourceProjector( viewerState, source, renderImage, screenTransform, maskArray );
 				sourceProjectors.add( p );
 				sourceImages.add( renderImage );
 			}
@@ -189,29 +451,83 @@ class ProjectorFactory
 		return projector;
 	}
 
+	/**
+	 * Create a projector that renders {@code source} at {@code scale} times
+	 * the resolution of {@code renderImage}, and upsamples the result to
+	 * {@code renderImage}.
+	 */
+	private VolatileProjector createDownsampledProjector(
+			final ViewerState viewerState,
+			final SourceAndConverter< ? > source,
+			final RandomAccessibleInterval< ARGBType > renderImage,
+			final AffineTransform3D screenTransform,
+			final double scale,
+			final RenderStorage renderStorage,
+			final int index )
+	{
+		final int w = ( int ) Math.ceil( scale * renderImage.dimension( 0 ) );
+		final int h = ( int ) Math.ceil( scale * renderImage.dimension( 1 ) );
+		final RandomAccessibleInterval< ARGBType > image = renderStorage.getDownsampledRenderImage( w, h, index );
+
+		// place pixel centers like ScreenScales does
+		final AffineTransform3D downsample = new AffineTransform3D();
+		downsample.set( scale, 0, 0 );
+		downsample.set( scale, 1, 1 );
+		downsample.set( 0.5 * scale - 0.5, 0, 3 );
+		downsample.set( 0.5 * scale - 0.5, 1, 3 );
+		final AffineTransform3D sourceScreenTransform = screenTransform.copy();
+		sourceScreenTransform.preConcatenate( downsample );
+
+		final VolatileProjector p = createSingleSourceProjector( viewerState, source, image, sourceScreenTransform, renderStorage.getMaskArray( index ), null );
+
+		// the render image is not complete at full resolution, and cell
+		// footprints of the coarse image are not in screen image coordinates
+		sourcesDownsampled = true;
+		sourceImagesRendered = false;
+		rawValuesRecorded = false;
+		cellFootprints = null;
+
+		return new UpsamplingProjector( p, image, renderImage, scale );
+	}
+
 	private < T > VolatileProjector createSingleSourceProjector(
 			final ViewerState viewerState,
 			final SourceAndConverter< T > source,
 			final RandomAccessibleInterval< ARGBType > screenImage,
 			final AffineTransform3D screenTransform,
-			final byte[] maskArray )
+			final byte[] maskArray,
+			final float[] rawValues )
+	{
+		final SourceAndConverter< ? extends Volatile< ? > > vsource = getVolatileSource( source );
+		if ( vsource != null )
+			return createSingleSourceVolatileProjector( viewerState, vsource, screenImage, screenTransform, maskArray, rawValues );
+
+		rawValuesRecorded = false;
+		final int bestLevel = getBestMipMapLevel( viewerState, source, screenTransform );
+		renderedMipmapLevels.add( bestLevel );
+		return new SimpleVolatileProjector<>(
+				getTransformedSource( viewerState, source.getSpimSource(), screenTransform, bestLevel, null, false ),
+				source.getConverter(), screenImage, numRenderingThreads, renderingExecutorService );
+	}
+
+	/**
+	 * Get the volatile version of {@code source} that should be rendered, or
+	 * {@code null} if {@code source} should be rendered non-volatile.
+	 */
+	private SourceAndConverter< ? extends Volatile< ? > > getVolatileSource( final SourceAndConverter< ? > source )
 	{
 		if ( useVolatileIfAvailable )
 		{
 			if ( source.asVolatile() != null )
-				return createSingleSourceVolatileProjector( viewerState, source.asVolatile(), screenImage, screenTransform, maskArray );
+				return source.asVolatile();
 			else if ( source.getSpimSource().getType() instanceof Volatile )
 			{
 				@SuppressWarnings( "unchecked" )
 				final SourceAndConverter< ? extends Volatile< ? > > vsource = ( SourceAndConverter< ? extends Volatile< ? > > ) source;
-				return createSingleSourceVolatileProjector( viewerState, vsource, screenImage, screenTransform, maskArray );
+				return vsource;
 			}
 		}
-
-		final int bestLevel = getBestMipMapLevel( viewerState, source, screenTransform );
-		return new SimpleVolatileProjector<>(
-				getTransformedSource( viewerState, source.getSpimSource(), screenTransform, bestLevel, null ),
-				source.getConverter(), screenImage, numRenderingThreads, renderingExecutorService );
+		return null;
 	}
 
 	private < T extends Volatile< ? > > VolatileProjector createSingleSourceVolatileProjector(
@@ -219,10 +535,45 @@ class ProjectorFactory
 			final SourceAndConverter< T > source,
 			final RandomAccessibleInterval< ARGBType > screenImage,
 			final AffineTransform3D screenTransform,
-			final byte[] maskArray )
+			final byte[] maskArray,
+			final float[] rawValues )
 	{
-		final ArrayList< RandomAccessible< T > > renderList = new ArrayList<>();
 		final Source< T > spimSource = source.getSpimSource();
+		final boolean realTyped = spimSource.getType() instanceof Type && spimSource.getType().get() instanceof RealType;
+		if ( slabThickness > 0 && numSlabSamples > 1 && realTyped )
+		{
+			rawValuesRecorded = false;
+			return createSingleSourceSlabProjector( viewerState, source, screenImage, screenTransform, maskArray );
+		}
+
+		final List< RandomAccessible< T > > renderList = createRenderList( viewerState, spimSource, screenImage, screenTransform );
+		final Converter< T, ARGBType > converter = source.getConverter();
+		final HierarchyLineMapper< T, ARGBType > lineMapper = HierarchyLineMapper.create(
+				spimSource.getType().getClass(),
+				converter.getClass(),
+				renderList.get( 0 ).randomAccess().getClass() );
+
+		final VolatileHierarchyProjector< T, ARGBType > projector = new VolatileHierarchyProjector<>( renderList, converter, lineMapper, screenImage, maskArray, numRenderingThreads, renderingExecutorService );
+		if ( rawValues != null && realTyped )
+			projector.setRawValueArray( rawValues );
+		else
+			rawValuesRecorded = false;
+		return projector;
+	}
+
+	/**
+	 * Get the resolution levels of {@code spimSource} that should be
+	 * rendered, transformed to screen coordinates, in render order (starting
+	 * with the optimal level). Cells needed for rendering
+	 * {@code screenImage} are prefetched.
+	 */
+	private < T extends Volatile< ? > > List< RandomAccessible< T > > createRenderList(
+			final ViewerState viewerState,
+			final Source< T > spimSource,
+			final Dimensions screenImage,
+			final AffineTransform3D screenTransform )
+	{
+		final ArrayList< RandomAccessible< T > > renderList = new ArrayList<>();
 		final int t = viewerState.getCurrentTimepoint();
 
 		final MipmapOrdering ordering = spimSource instanceof MipmapOrdering ?
@@ -230,6 +581,214 @@ class ProjectorFactory
 
 		final MipmapOrdering.MipmapHints hints = ordering.getMipmapHints( screenTransform, t, previousTimepoint );
 		final List< MipmapOrdering.Level > levels = hints.getLevels();
+		limitNumLevels( levels );
+
+		if ( prefetchCells )
+		{
+			levels.sort( MipmapOrdering.prefetchOrderComparator );
+			for ( final MipmapOrdering.Level l : levels )
+			{
+				final CacheHints cacheHints = l.getPrefetchCacheHints();
+				if ( cacheHints == null || cacheHints.getLoadingStrategy() != LoadingStrategy.DONTLOAD )
+					prefetch( viewerState, spimSource, screenTransform, l.getMipmapLevel(), cacheHints, screenImage, getScreenFocus( screenTransform ) );
+			}
+		}
+
+		levels.sort( MipmapOrdering.renderOrderComparator );
+		renderedMipmapLevels.add( levels.get( 0 ).getMipmapLevel() );
+		for ( final MipmapOrdering.Level l : levels )
+			renderList.add( getTransformedSource( viewerState, spimSource, screenTransform, l.getMipmapLevel(), l.getRenderCacheHints(), true ) );
+
+		if ( hints.renewHintsAfterPaintingOnce() )
+			newFrameRequest = true;
+
+		return renderList;
+	}
+
+	/**
+	 * If there are more than {@link #maxNumHierarchyLevels} {@code levels},
+	 * remove intermediate levels (in render order), keeping the coarsest.
+	 * This is the same strategy that {@link DefaultMipmapOrdering} uses when
+	 * moving between timepoints.
+	 */
+	private void limitNumLevels( final List< MipmapOrdering.Level > levels )
+	{
+		levels.sort( MipmapOrdering.renderOrderComparator );
+		final int n = levels.size();
+		if ( maxNumHierarchyLevels > 0 && n > maxNumHierarchyLevels )
+			levels.subList( Math.max( 1, maxNumHierarchyLevels - 1 ), n - 1 ).clear();
+		numHierarchyLevels = Math.max( numHierarchyLevels, levels.size() );
+	}
+
+	/**
+	 * Whether the {@code visibleSourcesOnScreen} should be rendered with a
+	 * {@link MosaicProjector}.
+	 */
+	private boolean isMosaicPossible( final List< SourceAndConverter< ? > > visibleSourcesOnScreen )
+	{
+		if ( !mosaicCompositing || ( slabThickness > 0 && numSlabSamples > 1 ) )
+			return false;
+		for ( final SourceAndConverter< ? > source : visibleSourcesOnScreen )
+			if ( getVolatileSource( source ) == null )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Create a {@link MosaicProjector} that renders the
+	 * {@code visibleSourcesOnScreen} directly to {@code screenImage}, using a
+	 * single {@code maskArray}. Where sources overlap, the last source is
+	 * shown.
+	 */
+	private VolatileProjector createMosaicProjector(
+			final ViewerState viewerState,
+			final List< SourceAndConverter< ? > > visibleSourcesOnScreen,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final AffineTransform3D screenTransform,
+			final byte[] maskArray )
+	{
+		rawValuesRecorded = false;
+		final List< MosaicProjector.Piece< ? > > pieces = new ArrayList<>();
+		for ( final SourceAndConverter< ? > source : visibleSourcesOnScreen )
+			pieces.add( createMosaicPiece( viewerState, getVolatileSource( source ), screenImage, screenTransform ) );
+		return new MosaicProjector( pieces, screenImage, maskArray, numRenderingThreads, renderingExecutorService );
+	}
+
+	private < T extends Volatile< ? > > MosaicProjector.Piece< T > createMosaicPiece(
+			final ViewerState viewerState,
+			final SourceAndConverter< T > source,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final AffineTransform3D screenTransform )
+	{
+		final Source< T > spimSource = source.getSpimSource();
+		final List< RandomAccessible< T > > renderList = createRenderList( viewerState, spimSource, screenImage, screenTransform );
+		final Converter< T, ARGBType > converter = source.getConverter();
+		final HierarchyLineMapper< T, ARGBType > lineMapper = HierarchyLineMapper.create(
+				spimSource.getType().getClass(),
+				converter.getClass(),
+				renderList.get( 0 ).randomAccess().getClass() );
+
+		// the footprint of the source is computed from its full resolution
+		// bounding box, expanded by half a voxel
+		final int t = viewerState.getCurrentTimepoint();
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		spimSource.getSourceTransform( t, 0, sourceToScreen );
+		sourceToScreen.preConcatenate( screenTransform );
+		RealInterval bounds = null;
+		if ( spimSource.doBoundingBoxCulling() )
+		{
+			final Interval interval = spimSource.getSource( t, 0 );
+			final double[] min = new double[ 3 ];
+			final double[] max = new double[ 3 ];
+			for ( int d = 0; d < 3; ++d )
+			{
+				min[ d ] = interval.realMin( d ) - 0.5;
+				max[ d ] = interval.realMax( d ) + 0.5;
+			}
+			bounds = new FinalRealInterval( min, max );
+		}
+
+		return new MosaicProjector.Piece<>( renderList, converter, lineMapper, sourceToScreen, bounds );
+	}
+
+	/**
+	 * Create a projector that re-converts the raw values recorded by the last
+	 * {@link #createProjector created} projector, with the current converters
+	 * of the {@code visibleSourcesOnScreen}. This must only be used if
+	 * {@link #isRawValuesRecorded()}, and the {@code visibleSourcesOnScreen},
+	 * {@code screenImage}, and {@code renderStorage} are the same that were
+	 * used to create the last projector.
+	 */
+	public VolatileProjector createRawValueProjector(
+			final List< SourceAndConverter< ? > > visibleSourcesOnScreen,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final RenderStorage renderStorage )
+	{
+		final int width = ( int ) screenImage.dimension( 0 );
+		final int height = ( int ) screenImage.dimension( 1 );
+
+		if ( visibleSourcesOnScreen.isEmpty() )
+			return new EmptyProjector<>( screenImage );
+		else if ( visibleSourcesOnScreen.size() == 1 )
+			return createSingleSourceRawValueProjector( visibleSourcesOnScreen.get( 0 ), screenImage, renderStorage.getMaskArray( 0 ), renderStorage.getRawValueArray( 0 ) );
+
+		final ArrayList< VolatileProjector > sourceProjectors = new ArrayList<>();
+		final ArrayList< RandomAccessibleInterval< ARGBType > > sourceImages = new ArrayList<>();
+		int j = 0;
+		for ( final SourceAndConverter< ? > source : visibleSourcesOnScreen )
+		{
+			final RandomAccessibleInterval< ARGBType > renderImage = renderStorage.getRenderImage( width, height, source );
+			sourceProjectors.add( createSingleSourceRawValueProjector( source, renderImage, renderStorage.getMaskArray( j ), renderStorage.getRawValueArray( j ) ) );
+			sourceImages.add( renderImage );
+			++j;
+		}
+		return accumulateProjectorFactory.createProjector( sourceProjectors, visibleSourcesOnScreen, sourceImages, screenImage, numRenderingThreads, renderingExecutorService );
+	}
+
+	private VolatileProjector createSingleSourceRawValueProjector(
+			final SourceAndConverter< ? > source,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final byte[] maskArray,
+			final float[] rawValues )
+	{
+		if ( source.asVolatile() != null )
+			return createRawValueProjector( source.asVolatile(), screenImage, maskArray, rawValues );
+		@SuppressWarnings( "unchecked" )
+		final SourceAndConverter< ? extends Volatile< ? > > vsource = ( SourceAndConverter< ? extends Volatile< ? > > ) source;
+		return createRawValueProjector( vsource, screenImage, maskArray, rawValues );
+	}
+
+	private < T extends Volatile< ? > > VolatileProjector createRawValueProjector(
+			final SourceAndConverter< T > source,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final byte[] maskArray,
+			final float[] rawValues )
+	{
+		final Type< ? > type = ( Type< ? > ) source.getSpimSource().getType();
+		@SuppressWarnings( "unchecked" )
+		final Supplier< T > variableFactory = () -> ( T ) type.createVariable();
+		return new RawValueProjector<>( source.getConverter(), variableFactory, screenImage, maskArray, rawValues, numRenderingThreads, renderingExecutorService );
+	}
+
+	/**
+	 * Create a {@link SlabMaxProjector} for {@code source}. The mipmap levels
+	 * are chosen for the coarser of the screen pixel size and the spacing of
+	 * samples through the slab, such that thick slabs with few samples are
+	 * rendered from correspondingly coarse data.
+	 */
+	private < T extends Volatile< ? > > VolatileProjector createSingleSourceSlabProjector(
+			final ViewerState viewerState,
+			final SourceAndConverter< T > source,
+			final RandomAccessibleInterval< ARGBType > screenImage,
+			final AffineTransform3D screenTransform,
+			final byte[] maskArray )
+	{
+		final Source< T > spimSource = source.getSpimSource();
+		final int t = viewerState.getCurrentTimepoint();
+
+		// screen pixels per global unit, and screen z units per global unit
+		final double pixelsPerUnit = Math.sqrt( squaredRowNorm( screenTransform, 0 ) );
+		final double zPerUnit = Math.sqrt( squaredRowNorm( screenTransform, 2 ) );
+
+		final double sampleSpacing = slabThickness / ( numSlabSamples - 1 );
+		final AffineTransform3D levelTransform = screenTransform.copy();
+		levelTransform.scale( 1.0 / Math.max( 1, sampleSpacing * pixelsPerUnit ) );
+
+		final List< AffineTransform3D > sampleTransforms = new ArrayList<>();
+		for ( int i = 0; i < numSlabSamples; ++i )
+		{
+			final double depth = slabThickness * ( ( double ) i / ( numSlabSamples - 1 ) - 0.5 );
+			final AffineTransform3D sampleTransform = screenTransform.copy();
+			sampleTransform.set( sampleTransform.get( 2, 3 ) - depth * zPerUnit, 2, 3 );
+			sampleTransforms.add( sampleTransform );
+		}
+
+		final MipmapOrdering ordering = spimSource instanceof MipmapOrdering ?
+				( MipmapOrdering ) spimSource : new DefaultMipmapOrdering( spimSource );
+
+		final MipmapOrdering.MipmapHints hints = ordering.getMipmapHints( levelTransform, t, previousTimepoint );
+		final List< MipmapOrdering.Level > levels = hints.getLevels();
+		limitNumLevels( levels );
 
 		if ( prefetchCells )
 		{
@@ -238,18 +797,62 @@ class ProjectorFactory
 			{
 				final CacheHints cacheHints = l.getPrefetchCacheHints();
 				if ( cacheHints == null || cacheHints.getLoadingStrategy() != LoadingStrategy.DONTLOAD )
-					prefetch( viewerState, spimSource, screenTransform, l.getMipmapLevel(), cacheHints, screenImage );
+					for ( final AffineTransform3D sampleTransform : sampleTransforms )
+						prefetch( viewerState, spimSource, sampleTransform, l.getMipmapLevel(), cacheHints, screenImage, getScreenFocus( sampleTransform ) );
 			}
 		}
 
 		levels.sort( MipmapOrdering.renderOrderComparator );
+		renderedMipmapLevels.add( levels.get( 0 ).getMipmapLevel() );
+		final List< List< RandomAccessible< T > > > renderList = new ArrayList<>();
 		for ( final MipmapOrdering.Level l : levels )
-			renderList.add( getTransformedSource( viewerState, spimSource, screenTransform, l.getMipmapLevel(), l.getRenderCacheHints() ) );
+		{
+			final List< RandomAccessible< T > > samples = new ArrayList<>();
+			for ( final AffineTransform3D sampleTransform : sampleTransforms )
+				samples.add( getTransformedSource( viewerState, spimSource, sampleTransform, l.getMipmapLevel(), l.getRenderCacheHints(), true ) );
+			renderList.add( samples );
+		}
 
 		if ( hints.renewHintsAfterPaintingOnce() )
 			newFrameRequest = true;
 
-		return new VolatileHierarchyProjector<>( renderList, source.getConverter(), screenImage, maskArray, numRenderingThreads, renderingExecutorService );
+		final Type< ? > type = ( Type< ? > ) spimSource.getType();
+		@SuppressWarnings( "unchecked" )
+		final Supplier< T > variableFactory = () -> ( T ) type.createVariable();
+
+		return new SlabMaxProjector<>( renderList, source.getConverter(), variableFactory, screenImage, maskArray, numRenderingThreads, renderingExecutorService );
+	}
+
+	private static double squaredRowNorm( final AffineTransform3D transform, final int row )
+	{
+		double sum = 0;
+		for ( int c = 0; c < 3; ++c )
+			sum += transform.get( row, c ) * transform.get( row, c );
+		return sum;
+	}
+
+	/**
+	 * Get the footprints of the rendered resolution levels of volatile sources
+	 * of the last {@link #createProjector created} projector.
+	 *
+	 * @return list of footprints, or {@code null} if some rendered level is not
+	 * backed by a {@link VolatileCachedCellImg}, such that arrival of its data
+	 * cannot be monitored.
+	 */
+	public List< CellArrivalMonitor.Footprint > getCellFootprints()
+	{
+		return cellFootprints;
+	}
+
+	/**
+	 * Get the mipmap levels that are rendered first (that is, the levels shown
+	 * when data is complete) for each source of the last
+	 * {@link #createProjector created} projector, in the order of the visible
+	 * sources.
+	 */
+	public int[] getRenderedMipmapLevels()
+	{
+		return renderedMipmapLevels.toArray();
 	}
 
 	/**
@@ -269,12 +872,21 @@ class ProjectorFactory
 		return MipmapTransforms.getBestMipMapLevel( screenTransform, source.getSpimSource(), viewerState.getCurrentTimepoint() );
 	}
 
-	private static < T > RandomAccessible< T > getTransformedSource(
+	/**
+	 * Get the {@code mipmapIndex} level of {@code source}, transformed to
+	 * screen coordinates.
+	 *
+	 * @param trackCellFootprints
+	 *     whether to record the {@link #getCellFootprints() footprint} of the
+	 *     level.
+	 */
+	private < T > RandomAccessible< T > getTransformedSource(
 			final ViewerState viewerState,
 			final Source< T > source,
 			final AffineTransform3D screenTransform,
 			final int mipmapIndex,
-			final CacheHints cacheHints )
+			final CacheHints cacheHints,
+			final boolean trackCellFootprints )
 	{
 		final int timepoint = viewerState.getCurrentTimepoint();
 
@@ -283,16 +895,35 @@ class ProjectorFactory
 			( ( VolatileCachedCellImg< ?, ? > ) img ).setCacheHints( cacheHints );
 
 		final Interpolation interpolation = viewerState.getInterpolation();
-		final RealRandomAccessible< T > ipimg = source.getInterpolatedSource( timepoint, mipmapIndex, interpolation );
 
 		final AffineTransform3D sourceToScreen = new AffineTransform3D();
 		source.getSourceTransform( timepoint, mipmapIndex, sourceToScreen );
 		sourceToScreen.preConcatenate( screenTransform );
 
+		if ( trackCellFootprints && cellFootprints != null )
+		{
+			if ( img instanceof VolatileCachedCellImg )
+				cellFootprints.add( new CellArrivalMonitor.Footprint( ( ( VolatileCachedCellImg< ?, ? > ) img ).getCellGrid(), sourceToScreen ) );
+			else
+				cellFootprints = null;
+		}
+
+		final RandomAccessible< T > sampler = AffineVolatileCellSampler.create( source, img, interpolation, sourceToScreen );
+		if ( sampler != null )
+			return sampler;
+
+		final RealRandomAccessible< T > ipimg = source.getInterpolatedSource( timepoint, mipmapIndex, interpolation );
 		return RealViews.affine( ipimg, sourceToScreen );
 	}
 
-	private static < T > void prefetch(
+	/**
+	 * If the {@code mipmapIndex} level of {@code source} is a
+	 * {@link VolatileCachedCellImg}, enqueue the cells that are needed to
+	 * render {@code screenInterval} with the given {@code screenTransform}
+	 * for loading. See
+	 * {@link Prefetcher#fetchCells(int, Interpolation, Source, AffineTransform3D, int, CacheHints, Dimensions)}.
+	 */
+	static < T > void prefetch(
 			final ViewerState viewerState,
 			final Source< T > source,
 			final AffineTransform3D screenTransform,
@@ -300,33 +931,55 @@ class ProjectorFactory
 			final CacheHints prefetchCacheHints,
 			final Dimensions screenInterval )
 	{
-		final int timepoint = viewerState.getCurrentTimepoint();
-		final RandomAccessibleInterval< T > img = source.getSource( timepoint, mipmapIndex );
-		if ( img instanceof VolatileCachedCellImg )
-		{
-			final VolatileCachedCellImg< ?, ? > cellImg = ( VolatileCachedCellImg< ?, ? > ) img;
-
-			CacheHints hints = prefetchCacheHints;
-			if ( hints == null )
-			{
-				final CacheHints d = cellImg.getDefaultCacheHints();
-				hints = new CacheHints( LoadingStrategy.VOLATILE, d.getQueuePriority(), false );
-			}
-			cellImg.setCacheHints( hints );
-			final int[] cellDimensions = new int[ 3 ];
-			cellImg.getCellGrid().cellDimensions( cellDimensions );
-			final long[] dimensions = new long[ 3 ];
-			cellImg.dimensions( dimensions );
-			final RandomAccess< ? > cellsRandomAccess = cellImg.getCells().randomAccess();
+		prefetch( viewerState.getCurrentTimepoint(), viewerState.getInterpolation(), source, screenTransform, mipmapIndex, prefetchCacheHints, screenInterval );
+	}
 
-			final Interpolation interpolation = viewerState.getInterpolation();
+	/**
+	 * Like {@link #prefetch(ViewerState, Source, AffineTransform3D, int, CacheHints, Dimensions)},
+	 * but enqueue the cells closest to the given (x,y) screen coordinates
+	 * {@code focus} first.
+	 */
+	static < T > void prefetch(
+			final ViewerState viewerState,
+			final Source< T > source,
+			final AffineTransform3D screenTransform,
+			final int mipmapIndex,
+			final CacheHints prefetchCacheHints,
+			final Dimensions screenInterval,
+			final double[] focus )
+	{
+		Prefetcher.fetchCells( viewerState.getCurrentTimepoint(), viewerState.getInterpolation(), source, screenTransform, mipmapIndex, prefetchCacheHints, screenInterval, focus );
+	}
 
-			final AffineTransform3D sourceToScreen = new AffineTransform3D();
-			source.getSourceTransform( timepoint, mipmapIndex, sourceToScreen );
-			sourceToScreen.preConcatenate( screenTransform );
+	/**
+	 * Get the screen coordinates of {@link #prefetchFocus} under
+	 * {@code screenTransform}, or {@code null} if no focus is set.
+	 */
+	private double[] getScreenFocus( final AffineTransform3D screenTransform )
+	{
+		final double[] focus = prefetchFocus;
+		if ( focus == null )
+			return null;
+		final double[] screenFocus = new double[ 3 ];
+		screenTransform.apply( focus, screenFocus );
+		return screenFocus;
+	}
 
-			Prefetcher.fetchCells( sourceToScreen, cellDimensions, dimensions, screenInterval, interpolation, cellsRandomAccess );
-		}
+	/**
+	 * Like {@link #prefetch(ViewerState, Source, AffineTransform3D, int, CacheHints, Dimensions)},
+	 * but for the given {@code timepoint} and {@code interpolation} instead of
+	 * those of a {@code ViewerState}.
+	 */
+	static < T > void prefetch(
+			final int timepoint,
+			final Interpolation interpolation,
+			final Source< T > source,
+			final AffineTransform3D screenTransform,
+			final int mipmapIndex,
+			final CacheHints prefetchCacheHints,
+			final Dimensions screenInterval )
+	{
+		Prefetcher.fetchCells( timepoint, interpolation, source, screenTransform, mipmapIndex, prefetchCacheHints, screenInterval );
 	}
 
 	public boolean requestNewFrameIfIncomplete()
@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.StopWatch;
+
+/**
+ * {@link VolatileProjector} that converts raw values, which were recorded by a
+ * {@link VolatileHierarchyProjector} in a previous rendering pass, to the
+ * target. This is used to re-render a complete frame after only the converter
+ * changed (e.g., the display range or color of a source), without re-sampling
+ * the source.
+ * <p>
+ * Pixels with mask value {@code Byte.MAX_VALUE} were never written by the
+ * previous pass and are cleared. All other pixels are converted from their
+ * raw value. The value type of {@code A} must be a {@link RealType}.
+ */
+public class RawValueProjector< A extends Volatile< ? > > implements TiledProjector
+{
+	private final Converter< ? super A, ARGBType > converter;
+
+	/**
+	 * Creates variables of the source pixel type, to hold raw values for
+	 * conversion.
+	 */
+	private final Supplier< ? extends A > variableFactory;
+
+	private final RandomAccessibleInterval< ARGBType > target;
+
+	/**
+	 * The underlying {@code int[]} array of {@link #target}, if it is a
+	 * standard {@code ArrayImg<ARGBType>}. Otherwise {@code null}.
+	 */
+	private final int[] targetData;
+
+	private final byte[] mask;
+
+	private final float[] rawValues;
+
+	private final int numThreads;
+
+	private final ExecutorService executorService;
+
+	private volatile boolean valid = false;
+
+	private long lastFrameRenderNanoTime = -1;
+
+	private final AtomicBoolean canceled = new AtomicBoolean();
+
+	/**
+	 * @param converter
+	 *     converts raw values to ARGB.
+	 * @param variableFactory
+	 *     creates variables of the source pixel type.
+	 * @param target
+	 *     the target image.
+	 * @param maskArray
+	 *     mask recorded by the previous rendering pass.
+	 * @param rawValues
+	 *     raw values recorded by the previous rendering pass.
+	 * @param numThreads
+	 *     how many threads to use for rendering.
+	 * @param executorService
+	 *     used for rendering, may be {@code null}.
+	 */
+	public RawValueProjector(
+			final Converter< ? super A, ARGBType > converter,
+			final Supplier< ? extends A > variableFactory,
+			final RandomAccessibleInterval< ARGBType > target,
+			final byte[] maskArray,
+			final float[] rawValues,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		this.converter = converter;
+		this.variableFactory = variableFactory;
+		this.target = target;
+		targetData = ProjectorUtils.getARGBArrayImgData( target );
+		mask = maskArray;
+		this.rawValues = rawValues;
+		this.numThreads = numThreads;
+		this.executorService = executorService;
+	}
+
+	@Override
+	public void cancel()
+	{
+		canceled.set( true );
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		if ( canceled.get() )
+			return false;
+
+		final StopWatch stopWatch = StopWatch.createAndStart();
+		beginPass();
+		TileScheduler.forEachTile( ( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ), numThreads, executorService,
+				( startX, startY, endX, endY ) -> mapTile( startX, startY, endX, endY, clearUntouchedTargetPixels ) );
+		if ( !endPass() )
+			return false;
+		lastFrameRenderNanoTime = stopWatch.nanoTime();
+
+		return !canceled.get();
+	}
+
+	@Override
+	public void beginPass()
+	{
+		valid = false;
+	}
+
+	@Override
+	public void mapTile( final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels )
+	{
+		final int width = ( int ) target.dimension( 0 );
+		final A variable = variableFactory.get();
+		final RealType< ? > value = ( RealType< ? > ) variable.get();
+		variable.setValid( true );
+		final ARGBType argb = new ARGBType();
+		final RandomAccess< ARGBType > targetRandomAccess = targetData == null ? target.randomAccess( target ) : null;
+
+		for ( int y = startY; y < endY; ++y )
+		{
+			if ( canceled.get() )
+				return;
+
+			if ( targetRandomAccess != null )
+			{
+				targetRandomAccess.setPosition( target.min( 0 ) + startX, 0 );
+				targetRandomAccess.setPosition( target.min( 1 ) + y, 1 );
+			}
+			final int end = y * width + endX;
+			for ( int i = y * width + startX; i < end; ++i )
+			{
+				final int color;
+				if ( mask[ i ] == Byte.MAX_VALUE )
+				{
+					if ( !clearUntouchedTargetPixels )
+					{
+						if ( targetRandomAccess != null )
+							targetRandomAccess.fwd( 0 );
+						continue;
+					}
+					color = 0;
+				}
+				else
+				{
+					value.setReal( rawValues[ i ] );
+					converter.convert( variable, argb );
+					color = argb.get();
+				}
+
+				if ( targetData != null )
+					targetData[ i ] = color;
+				else
+				{
+					targetRandomAccess.get().set( color );
+					targetRandomAccess.fwd( 0 );
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean endPass()
+	{
+		if ( canceled.get() )
+			return false;
+
+		valid = true;
+		return true;
+	}
+}
@@ -0,0 +1,279 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of one rendering pass of the {@link MultiResolutionRenderer}.
+ * <p>
+ * A rendering pass either renders a full frame at some screen scale, or
+ * re-renders an interval of the current frame (see
+ * {@link MultiResolutionRenderer#requestRepaint(net.imglib2.Interval)}).
+ * Passes that were cancelled are not reported.
+ */
+public final class RenderStatistics
+{
+	private final long timestamp;
+
+	private final boolean interval;
+
+	private final boolean newProjector;
+
+	private final int screenScaleIndex;
+
+	private final double screenScale;
+
+	private final int width;
+
+	private final int height;
+
+	private final long renderNanos;
+
+	private final long ioNanos;
+
+	private final int numSources;
+
+	private final int[] mipmapLevels;
+
+	private final long numInvalidPixels;
+
+	private final boolean complete;
+
+	private final long numLoadedCells;
+
+	private final int queueDepth;
+
+	public RenderStatistics(
+			final long timestamp,
+			final boolean interval,
+			final boolean newProjector,
+			final int screenScaleIndex,
+			final double screenScale,
+			final int width,
+			final int height,
+			final long renderNanos,
+			final long ioNanos,
+			final int numSources,
+			final int[] mipmapLevels,
+			final long numInvalidPixels,
+			final boolean complete,
+			final long numLoadedCells )
+	{
+		this( timestamp, interval, newProjector, screenScaleIndex, screenScale, width, height,
+				renderNanos, ioNanos, numSources, mipmapLevels, numInvalidPixels, complete, numLoadedCells, -1 );
+	}
+
+	public RenderStatistics(
+			final long timestamp,
+			final boolean interval,
+			final boolean newProjector,
+			final int screenScaleIndex,
+			final double screenScale,
+			final int width,
+			final int height,
+			final long renderNanos,
+			final long ioNanos,
+			final int numSources,
+			final int[] mipmapLevels,
+			final long numInvalidPixels,
+			final boolean complete,
+			final long numLoadedCells,
+			final int queueDepth )
+	{
+		this.timestamp = timestamp;
+		this.interval = interval;
+		this.newProjector = newProjector;
+		this.screenScaleIndex = screenScaleIndex;
+		this.screenScale = screenScale;
+		this.width = width;
+		this.height = height;
+		this.renderNanos = renderNanos;
+		this.ioNanos = ioNanos;
+		this.numSources = numSources;
+		this.mipmapLevels = mipmapLevels.clone();
+		this.numInvalidPixels = numInvalidPixels;
+		this.complete = complete;
+		this.numLoadedCells = numLoadedCells;
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * @return {@link System#nanoTime()} at the end of the rendering pass.
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	/**
+	 * @return {@code true} if only an interval of the current frame was
+	 * rendered, {@code false} if a full frame was rendered.
+	 */
+	public boolean isInterval()
+	{
+		return interval;
+	}
+
+	/**
+	 * @return {@code true} if a new projector was created for this pass,
+	 * {@code false} if an incomplete previous pass was repeated to fill in
+	 * missing data.
+	 */
+	public boolean isNewProjector()
+	{
+		return newProjector;
+	}
+
+	/**
+	 * @return index of the screen scale that was rendered ({@code 0} is full
+	 * resolution).
+	 */
+	public int getScreenScaleIndex()
+	{
+		return screenScaleIndex;
+	}
+
+	/**
+	 * @return the screen scale factor that was rendered.
+	 */
+	public double getScreenScale()
+	{
+		return screenScale;
+	}
+
+	/**
+	 * @return width of the rendered image.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * @return height of the rendered image.
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * @return time needed for rendering, excluding time spent in blocking IO,
+	 * in nano-seconds.
+	 */
+	public long getRenderNanos()
+	{
+		return renderNanos;
+	}
+
+	/**
+	 * @return time spent in blocking IO by the painter thread, in
+	 * nano-seconds.
+	 */
+	public long getIoNanos()
+	{
+		return ioNanos;
+	}
+
+	/**
+	 * @return number of visible sources on screen that were rendered.
+	 */
+	public int getNumSources()
+	{
+		return numSources;
+	}
+
+	/**
+	 * @return for each rendered source, the mipmap level that is rendered
+	 * first, i.e., the level that is shown when data is complete. {@code -1}
+	 * for sources whose render image was re-used from a previous frame.
+	 */
+	public int[] getMipmapLevels()
+	{
+		return mipmapLevels.clone();
+	}
+
+	/**
+	 * @return number of pixels that were not rendered from valid data at the
+	 * optimal resolution level, summed over sources, or {@code -1} if
+	 * unknown.
+	 */
+	public long getNumInvalidPixels()
+	{
+		return numInvalidPixels;
+	}
+
+	/**
+	 * @return {@code true} if all pixels were rendered from valid data at the
+	 * optimal resolution level.
+	 */
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+	/**
+	 * @return number of cells loaded into the cache since the previous
+	 * rendering pass was reported, or {@code -1} if the cache does not report
+	 * loaded cells.
+	 */
+	public long getNumLoadedCells()
+	{
+		return numLoadedCells;
+	}
+
+	/**
+	 * @return estimated number of cell requests waiting in the
+	 * {@link bdv.cache.SharedQueue}s of the cache at the end of the rendering
+	 * pass, or {@code -1} if the cache does not use a {@code SharedQueue}.
+	 */
+	public int getQueueDepth()
+	{
+		return queueDepth;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "RenderStatistics{" +
+				( interval ? "interval" : "frame" ) +
+				", screenScaleIndex=" + screenScaleIndex +
+				", size=" + width + "x" + height +
+				", renderNanos=" + renderNanos +
+				", ioNanos=" + ioNanos +
+				", numSources=" + numSources +
+				", mipmapLevels=" + Arrays.toString( mipmapLevels ) +
+				", numInvalidPixels=" + numInvalidPixels +
+				", complete=" + complete +
+				", numLoadedCells=" + numLoadedCells +
+				", queueDepth=" + queueDepth +
+				"}";
+	}
+}
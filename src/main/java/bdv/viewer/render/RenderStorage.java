@@ -29,13 +29,18 @@
 package bdv.viewer.render;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.type.numeric.ARGBType;
 
+import bdv.viewer.SourceAndConverter;
+
 /**
- * Maintains {@code byte[]} and {@code int[]} arrays for mask and intermediate images needed for rendering.
+ * Maintains {@code byte[]}, {@code int[]}, and {@code float[]} arrays for mask, intermediate images, and raw values needed for rendering.
  * <p>
  * Call {@link #checkRenewData} to update number and size of arrays when number of visible sources or screen size changes.
  */
@@ -43,50 +48,126 @@ class RenderStorage
 {
 	/**
 	 * Storage for mask images of {@link VolatileHierarchyProjector}. One array
-	 * per visible source.
+	 * per visible source, allocated on demand by {@link #getMaskArray}. (A
+	 * {@link MosaicProjector} renders all sources with a single mask.)
 	 */
 	private final List< byte[] > renderMaskArrays = new ArrayList<>();
 
 	/**
 	 * Storage for render images of {@link VolatileHierarchyProjector}.
 	 * Used to render an individual source before combining to final target image.
-	 * One array per visible source, if more than one source is visible.
-	 * (If exactly one source is visible, it is rendered directly to the target image.)
+	 * One array per source, allocated on demand by {@link #getRenderImage}.
+	 * (If exactly one source is visible, it is usually rendered directly to the target image.)
+	 * Arrays are kept per source (instead of per visible source index), such
+	 * that complete render images of sources can be re-used when only the
+	 * visibility or order of sources changes. Arrays of sources that are not
+	 * visible anymore are removed by {@link #retainRenderImages}.
+	 */
+	private final Map< SourceAndConverter< ? >, int[] > renderImageArrays = new HashMap<>();
+
+	/**
+	 * Storage for raw (unconverted) values recorded by
+	 * {@link VolatileHierarchyProjector}. One array per visible source,
+	 * allocated on demand by {@link #getRawValueArray}.
+	 */
+	private final List< float[] > rawValueArrays = new ArrayList<>();
+
+	/**
+	 * Storage for render images of sources that are rendered at a coarser
+	 * resolution than the target image, before upsampling to their render
+	 * image. One array per visible source, allocated on demand by
+	 * {@link #getDownsampledRenderImage}.
 	 */
-	private final List< int[] > renderImageArrays = new ArrayList<>();
+	private final List< int[] > downsampledImageArrays = new ArrayList<>();
+
+	/**
+	 * Number of elements of each array.
+	 */
+	private int size;
 
 	public void checkRenewData( final int screenW, final int screenH, final int numVisibleSources )
 	{
-		final int size = screenW * screenH;
-		final int currentSize = renderMaskArrays.isEmpty() ? 0 : renderMaskArrays.get( 0 ).length;
-		if  ( size != currentSize )
+		if  ( screenW * screenH != size )
+		{
 			clear();
+			size = screenW * screenH;
+		}
 
 		while ( renderMaskArrays.size() > numVisibleSources )
 			renderMaskArrays.remove( renderMaskArrays.size() - 1 );
-		while ( renderMaskArrays.size() < numVisibleSources )
-			renderMaskArrays.add( new byte[ size ] );
-
-		final int numRenderImages = numVisibleSources > 1 ? numVisibleSources : 0;
-		while ( renderImageArrays.size() > numRenderImages )
-			renderImageArrays.remove( renderImageArrays.size() - 1 );
-		while ( renderImageArrays.size() < numRenderImages )
-			renderImageArrays.add( new int[ size ] );
+
+		while ( rawValueArrays.size() > numVisibleSources )
+			rawValueArrays.remove( rawValueArrays.size() - 1 );
+
+		while ( downsampledImageArrays.size() > numVisibleSources )
+			downsampledImageArrays.remove( downsampledImageArrays.size() - 1 );
 	}
 
 	public byte[] getMaskArray( final int index )
 	{
-		return renderMaskArrays.get( index );
+		while ( renderMaskArrays.size() <= index )
+			renderMaskArrays.add( null );
+		byte[] mask = renderMaskArrays.get( index );
+		if ( mask == null || mask.length != size )
+		{
+			mask = new byte[ size ];
+			renderMaskArrays.set( index, mask );
+		}
+		return mask;
 	}
 
-	public RandomAccessibleInterval< ARGBType > getRenderImage( final int width, final int height, final int index )
+	public float[] getRawValueArray( final int index )
+	{
+		while ( rawValueArrays.size() <= index )
+			rawValueArrays.add( null );
+		float[] rawValues = rawValueArrays.get( index );
+		if ( rawValues == null || rawValues.length != size )
+		{
+			rawValues = new float[ size ];
+			rawValueArrays.set( index, rawValues );
+		}
+		return rawValues;
+	}
+
+	public RandomAccessibleInterval< ARGBType > getRenderImage( final int width, final int height, final SourceAndConverter< ? > source )
+	{
+		final int[] data = renderImageArrays.computeIfAbsent( source, s -> new int[ size ] );
+		return ArrayImgs.argbs( data, width, height );
+	}
+
+	/**
+	 * Get an image of {@code width * height} pixels (at most the screen size)
+	 * for rendering the visible source with the given {@code index} at a
+	 * coarser resolution.
+	 */
+	public RandomAccessibleInterval< ARGBType > getDownsampledRenderImage( final int width, final int height, final int index )
+	{
+		while ( downsampledImageArrays.size() <= index )
+			downsampledImageArrays.add( null );
+		int[] data = downsampledImageArrays.get( index );
+		if ( data == null || data.length != size )
+		{
+			data = new int[ size ];
+			downsampledImageArrays.set( index, data );
+		}
+		return ArrayImgs.argbs( data, width, height );
+	}
+
+	/**
+	 * Remove the render images of all sources that are not contained in
+	 * {@code sources}.
+	 */
+	public void retainRenderImages( final Collection< ? extends SourceAndConverter< ? > > sources )
 	{
-		return ArrayImgs.argbs( renderImageArrays.get( index ), width, height );
+		renderImageArrays.keySet().retainAll( sources );
 	}
 
 	public void clear()
 	{
+		size = 0;
 		renderMaskArrays.clear();
 		renderImageArrays.clear();
+		rawValueArrays.clear();
+		downsampledImageArrays.clear();
 	}
 }
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+/**
+ * A {@link TiledProjector} for a source render image that is already
+ * complete, because it was re-used from a previous frame. It is always
+ * {@link #isValid() valid} and never writes to its image, such that
+ * {@link AccumulateProjectorARGB} only accumulates the existing image.
+ */
+class ReusedImageProjector implements TiledProjector
+{
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		return true;
+	}
+
+	@Override
+	public void cancel()
+	{}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return 0;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return true;
+	}
+
+	@Override
+	public long getNumInvalidPixels()
+	{
+		return 0;
+	}
+
+	@Override
+	public void beginPass()
+	{}
+
+	@Override
+	public void mapTile( final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels )
+	{}
+
+	@Override
+	public boolean endPass()
+	{
+		return true;
+	}
+}
@@ -107,11 +107,29 @@ class ScreenScales
 		return screenScales.size();
 	}
 
-	public int suggestScreenScale( final double renderNanosPerPixel )
+	/**
+	 * @return the target rendering time in nanoseconds.
+	 */
+	public double getTargetRenderNanos()
+	{
+		return targetRenderNanos;
+	}
+
+	/**
+	 * Suggest the finest screen scale at which a full frame can be rendered
+	 * within the target rendering time.
+	 *
+	 * @param renderNanosPerPixel
+	 *     estimated time to render one screen pixel (of all sources).
+	 * @param ioNanos
+	 *     estimated time that rendering waits for data to be loaded. This does
+	 *     not depend on the screen scale.
+	 */
+	public int suggestScreenScale( final double renderNanosPerPixel, final double ioNanos )
 	{
 		for ( int i = 0; i < screenScales.size() - 1; i++ )
 		{
-			final double renderTime = screenScales.get( i ).estimateRenderNanos( renderNanosPerPixel );
+			final double renderTime = screenScales.get( i ).estimateRenderNanos( renderNanosPerPixel ) + ioNanos;
 			if ( renderTime <= targetRenderNanos )
 				return i;
 		}
@@ -153,9 +171,20 @@ class ScreenScales
 		screenScales.forEach( s -> s.requestInterval( screenInterval ) );
 	}
 
-	public void clearRequestedIntervals()
+	/**
+	 * Clear requested intervals at all screen scales.
+	 *
+	 * @return the requested interval at the finest screen scale (in screen
+	 * coordinates), that is, the union of all requested intervals that have
+	 * not been rendered at full resolution yet. {@code null} if there is no
+	 * such interval.
+	 */
+	public Interval clearRequestedIntervals()
 	{
-		screenScales.forEach( ScreenScale::pullScreenInterval );
+		final Interval finest = screenScales.get( 0 ).pullScreenInterval();
+		for ( int i = 1; i < screenScales.size(); ++i )
+			screenScales.get( i ).pullScreenInterval();
+		return finest;
 	}
 
 	public IntervalRenderData pullIntervalRenderData( final int intervalScaleIndex, final int targetScaleIndex )
@@ -28,11 +28,7 @@
  */
 package bdv.viewer.render;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
@@ -60,7 +56,7 @@ import net.imglib2.util.StopWatch;
  * @author Tobias Pietzsch
  * @author Stephan Saalfeld
  */
-public class SimpleVolatileProjector< A, B > implements VolatileProjector
+public class SimpleVolatileProjector< A, B > implements TiledProjector
 {
 	/**
 	 * A converter from the source pixel type to the target pixel type.
@@ -171,77 +167,66 @@ public class SimpleVolatileProjector< A, B > implements VolatileProjector
 
 		final StopWatch stopWatch = StopWatch.createAndStart();
 
-		final int targetHeight = ( int ) target.dimension( 1 );
-		final int numTasks = numThreads <= 1 ? 1 : Math.min( numThreads * 10, targetHeight );
-		final double taskHeight = ( double ) targetHeight / numTasks;
-		final int[] taskStartHeights = new int[ numTasks + 1 ];
-		for ( int i = 0; i < numTasks; ++i )
-			taskStartHeights[ i ] = ( int ) ( i * taskHeight );
-		taskStartHeights[ numTasks ] = targetHeight;
-
-		final boolean createExecutor = ( executorService == null );
-		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
-
-		final List< Callable< Void > > tasks = new ArrayList<>( numTasks );
-		for( int i = 0; i < numTasks; ++i )
-			tasks.add( createMapTask( taskStartHeights[ i ], taskStartHeights[ i + 1 ] ) );
-		try
-		{
-			ex.invokeAll( tasks );
-		}
-		catch ( final InterruptedException e )
-		{
-			Thread.currentThread().interrupt();
-		}
-
-		if ( createExecutor )
-			ex.shutdown();
+		TileScheduler.forEachTile( ( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ), numThreads, executorService,
+				( startX, startY, endX, endY ) -> mapTile( startX, startY, endX, endY, false ) );
 
 		lastFrameRenderNanoTime = stopWatch.nanoTime();
 
-		final boolean success = !canceled.get();
-		valid |= success;
-		return success;
+		return endPass();
 	}
 
-	/**
-	 * @return a {@code Callable} that runs {@code map(startHeight, endHeight)}
-	 */
-	private Callable< Void > createMapTask( final int startHeight, final int endHeight )
+	@Override
+	public void beginPass()
+	{
+	}
+
+	@Override
+	public boolean endPass()
 	{
-		return Executors.callable( () -> map( startHeight, endHeight ), null );
+		final boolean success = !canceled.get();
+		valid |= success;
+		return success;
 	}
 
 	/**
-	 * Copy lines from {@code y = startHeight} up to {@code endHeight}
-	 * (exclusive) from source to target. Check after
-	 * each line whether rendering was {@link #cancel() canceled}.
+	 * Copy the tile from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive) from source to target. Check after each line whether
+	 * rendering was {@link #cancel() canceled}.
 	 *
-	 * @param startHeight
+	 * @param startX
+	 *     start of column range to copy (relative to target min coordinate)
+	 * @param startY
 	 *     start of line range to copy (relative to target min coordinate)
-	 * @param endHeight
+	 * @param endX
+	 *     end (exclusive) of column range to copy (relative to target min
+	 *     coordinate)
+	 * @param endY
 	 *     end (exclusive) of line range to copy (relative to target min
 	 *     coordinate)
+	 * @param clearUntouchedTargetPixels
+	 *     ignored, all target pixels of the tile are written.
 	 */
-	private void map( final int startHeight, final int endHeight )
+	@Override
+	public void mapTile( final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels )
 	{
 		if ( canceled.get() )
 			return;
 
 		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
 		final RandomAccess< A > sourceRandomAccess = source.randomAccess( sourceInterval );
-		final int width = ( int ) target.dimension( 0 );
 		final long[] smin = Intervals.minAsLongArray( sourceInterval );
 
-		final int targetMin = ( int ) target.min( 1 );
-		for ( int y = startHeight; y < endHeight; ++y )
+		final int targetMinX = ( int ) target.min( 0 );
+		final int targetMinY = ( int ) target.min( 1 );
+		for ( int y = startY; y < endY; ++y )
 		{
 			if ( canceled.get() )
 				return;
-			smin[ 1 ] = y + targetMin;
+			smin[ 0 ] = startX + targetMinX;
+			smin[ 1 ] = y + targetMinY;
 			sourceRandomAccess.setPosition( smin );
 			targetRandomAccess.setPosition( smin );
-			for ( int x = 0; x < width; ++x )
+			for ( int x = startX; x < endX; ++x )
 			{
 				converter.convert( sourceRandomAccess.get(), targetRandomAccess.get() );
 				sourceRandomAccess.fwd( 0 );
@@ -0,0 +1,525 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.StopWatch;
+
+import bdv.viewer.render.TileScheduler.GridCell;
+import bdv.viewer.render.TileScheduler.GridCellPart;
+
+/**
+ * {@link VolatileProjector} that renders the maximum intensity projection of a
+ * slab around the {@code z=0} plane of the screen.
+ * <p>
+ * Every sample of the slab is a separate source, transformed such that the
+ * sampled depth maps to {@code z=0}. For each resolution level, the samples of
+ * a pixel are folded into their maximum value, which is then converted to ARGB.
+ * The value type of the {@link Volatile} sources must be a {@link RealType}.
+ * <p>
+ * Like {@link VolatileHierarchyProjector}, resolution levels are tried
+ * successively, starting from the optimal level {@code 0}, and the best level
+ * that provided valid values for all samples of a pixel is recorded in a mask.
+ * Pixels for which only some samples are valid show the maximum of the valid
+ * samples, until a level with all samples valid is found.
+ */
+public class SlabMaxProjector< A extends Volatile< ? > > implements TiledProjector
+{
+	/**
+	 * Mask value of pixels that were never written.
+	 */
+	private static final byte UNTOUCHED = Byte.MAX_VALUE;
+
+	/**
+	 * Mask value of pixels that show the maximum of only some valid samples.
+	 */
+	private static final byte PARTIAL = Byte.MAX_VALUE - 1;
+
+	/**
+	 * A converter from the source pixel type to ARGB.
+	 */
+	private final Converter< ? super A, ARGBType > converter;
+
+	/**
+	 * Creates variables of the source pixel type, to hold maximum values for
+	 * conversion.
+	 */
+	private final Supplier< ? extends A > variableFactory;
+
+	/**
+	 * The target interval.
+	 */
+	private final RandomAccessibleInterval< ARGBType > target;
+
+	/**
+	 * The underlying {@code int[]} array of {@link #target}, if it is a
+	 * standard {@code ArrayImg<ARGBType>}. Otherwise {@code null}.
+	 */
+	private final int[] targetData;
+
+	/**
+	 * For each resolution level (starting with the optimal resolution at
+	 * index 0), the list of slab samples.
+	 */
+	private final List< List< RandomAccessible< A > > > sources;
+
+	/**
+	 * Number of samples through the slab.
+	 */
+	private final int numSamples;
+
+	/**
+	 * Records, for every target pixel, the best (smallest index) resolution
+	 * level that has provided valid values for all samples. {@link #PARTIAL}
+	 * for pixels that show the maximum of some valid samples, and
+	 * {@link #UNTOUCHED} for pixels that were never written.
+	 */
+	private final byte[] mask;
+
+	/**
+	 * Incremented by {@link #clearMask()}, to invalidate the {@link #mask} of
+	 * all tiles without touching the mask array.
+	 */
+	private int generation;
+
+	/**
+	 * Rendering state for every tile of the {@link TileScheduler} grid, in
+	 * row-major order.
+	 */
+	private final TileState[] tiles;
+
+	/**
+	 * Source interval which will be used for rendering. This is the 2D target
+	 * interval expanded to source dimensionality (usually 3D) with
+	 * {@code min=max=0} in the additional dimensions.
+	 */
+	private final FinalInterval sourceInterval;
+
+	private final int numThreads;
+
+	private final ExecutorService executorService;
+
+	/**
+	 * {@code true} iff all target pixels were rendered with valid data from the
+	 * optimal resolution level (level {@code 0}).
+	 */
+	private volatile boolean valid = false;
+
+	/**
+	 * Number of target pixels that were not filled from valid data at the
+	 * optimal resolution level in the last rendering pass.
+	 */
+	private volatile long numInvalidPixels;
+
+	/**
+	 * Collects the number of levels that have to be re-rendered in the next
+	 * pass.
+	 */
+	private final AtomicInteger nextNumInvalidLevels = new AtomicInteger();
+
+	/**
+	 * Collects the number of invalid pixels over all tiles rendered in the
+	 * current pass.
+	 */
+	private final AtomicLong nextNumInvalidPixels = new AtomicLong();
+
+	/**
+	 * Time needed for rendering the last frame, in nano-seconds.
+	 */
+	private long lastFrameRenderNanoTime;
+
+	private final AtomicBoolean canceled = new AtomicBoolean();
+
+	/**
+	 * @param sources
+	 *     for each resolution level (starting with the optimal resolution),
+	 *     the list of slab samples. All levels must have the same number of
+	 *     samples.
+	 * @param converter
+	 *     converts the maximum value to ARGB.
+	 * @param variableFactory
+	 *     creates variables of the source pixel type.
+	 * @param target
+	 *     the target image.
+	 * @param maskArray
+	 *     array to store the mask, with at least as many elements as
+	 *     {@code target}.
+	 * @param numThreads
+	 *     how many threads to use for rendering.
+	 * @param executorService
+	 *     used for rendering, may be {@code null}.
+	 */
+	public SlabMaxProjector(
+			final List< ? extends List< ? extends RandomAccessible< A > > > sources,
+			final Converter< ? super A, ARGBType > converter,
+			final Supplier< ? extends A > variableFactory,
+			final RandomAccessibleInterval< ARGBType > target,
+			final byte[] maskArray,
+			final int numThreads,
+			final ExecutorService executorService )
+	{
+		this.converter = converter;
+		this.variableFactory = variableFactory;
+		this.target = target;
+		targetData = ProjectorUtils.getARGBArrayImgData( target );
+		this.sources = new ArrayList<>();
+		for ( final List< ? extends RandomAccessible< A > > samples : sources )
+			this.sources.add( new ArrayList<>( samples ) );
+		numSamples = this.sources.get( 0 ).size();
+		mask = maskArray;
+
+		final int n = Math.max( 2, this.sources.get( 0 ).get( 0 ).numDimensions() );
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		min[ 0 ] = target.min( 0 );
+		max[ 0 ] = target.max( 0 );
+		min[ 1 ] = target.min( 1 );
+		max[ 1 ] = target.max( 1 );
+		sourceInterval = new FinalInterval( min, max );
+
+		this.numThreads = numThreads;
+		this.executorService = executorService;
+
+		tiles = TileScheduler.createGridCells( ( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ), TileState[]::new, TileState::new );
+
+		lastFrameRenderNanoTime = -1;
+		numInvalidPixels = target.dimension( 0 ) * target.dimension( 1 );
+		clearMask();
+	}
+
+	@Override
+	public void cancel()
+	{
+		canceled.set( true );
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	@Override
+	public long getNumInvalidPixels()
+	{
+		return numInvalidPixels;
+	}
+
+	/**
+	 * Mark all pixels as not written yet. This only increments the
+	 * {@link #generation}. The mask of each tile is cleared when the tile is
+	 * rendered next.
+	 */
+	public void clearMask()
+	{
+		++generation;
+	}
+
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		if ( canceled.get() )
+			return false;
+
+		final StopWatch stopWatch = StopWatch.createAndStart();
+		beginPass();
+		TileScheduler.forEachTile( ( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ), numThreads, executorService,
+				( startX, startY, endX, endY ) -> mapTile( startX, startY, endX, endY, clearUntouchedTargetPixels ) );
+		if ( !endPass() )
+			return false;
+		lastFrameRenderNanoTime = stopWatch.nanoTime();
+
+		return !canceled.get();
+	}
+
+	@Override
+	public void beginPass()
+	{
+		valid = false;
+		nextNumInvalidLevels.set( 0 );
+		nextNumInvalidPixels.set( 0 );
+	}
+
+	/**
+	 * Render the tile from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive). The tile is split along the {@link TileScheduler} grid with
+	 * {@link TileScheduler#DEFAULT_TILE_SIZE}. Parts that cover a whole grid
+	 * cell only re-render the levels that were invalid in the previous pass.
+	 * Other parts try all levels.
+	 */
+	@Override
+	public void mapTile( final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels )
+	{
+		TileScheduler.forEachGridCell( startX, startY, endX, endY,
+				( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ),
+				tiles, generation, this::clearMask,
+				( tile, part ) -> {
+					if ( canceled.get() )
+						return false;
+					if ( part.isWholeCell() )
+					{
+						if ( tile.numInvalidLevels == 0 )
+							return true;
+						final int resolutionLevel = mapLevels( tile.numInvalidLevels, part.x0, part.y0, part.x1, part.y1, clearUntouchedTargetPixels );
+						if ( resolutionLevel < 0 )
+							return false;
+						tile.numInvalidLevels = resolutionLevel;
+					}
+					else
+					{
+						final int resolutionLevel = mapLevels( sources.size(), part.x0, part.y0, part.x1, part.y1, clearUntouchedTargetPixels );
+						if ( resolutionLevel < 0 )
+							return false;
+						tile.numInvalidLevels = Math.max( tile.numInvalidLevels, resolutionLevel );
+					}
+					return true;
+				} );
+	}
+
+	/**
+	 * Set the mask of the grid cell of {@code part} to {@link #UNTOUCHED}
+	 * and reset the rendering state of {@code tile}. This is done when the
+	 * tile is first rendered after {@link #clearMask()}.
+	 */
+	private void clearMask( final TileState tile, final GridCellPart part )
+	{
+		final int width = ( int ) target.dimension( 0 );
+		for ( int y = part.cellY; y < part.cellEndY; ++y )
+			Arrays.fill( mask, y * width + part.cellX, y * width + part.cellEndX, UNTOUCHED );
+		tile.numInvalidLevels = sources.size();
+	}
+
+	/**
+	 * Render the part from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive) of one grid cell, trying resolution levels up to
+	 * {@code numLevels} (exclusive).
+	 *
+	 * @return the number of levels that have to be re-rendered in the next
+	 * pass, or {@code -1} if rendering was canceled.
+	 */
+	private int mapLevels( final int numLevels, final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels )
+	{
+		final int width = ( int ) target.dimension( 0 );
+		final double[] lineMax = new double[ endX - startX ];
+		final int[] lineNumValid = new int[ endX - startX ];
+		final A variable = variableFactory.get();
+		final ARGBType argb = new ARGBType();
+		final RandomAccess< ARGBType > targetRandomAccess = targetData == null ? target.randomAccess( target ) : null;
+
+		int resolutionLevel;
+		for ( resolutionLevel = 0; resolutionLevel < numLevels; ++resolutionLevel )
+		{
+			final int numInvalid = map( resolutionLevel, startX, startY, endX, endY, lineMax, lineNumValid, variable, argb, targetRandomAccess );
+			if ( canceled.get() )
+				return -1;
+			if ( numInvalid == 0 )
+				break;
+		}
+		nextNumInvalidLevels.accumulateAndGet( resolutionLevel, Math::max );
+
+		long numTileInvalid = 0;
+		for ( int y = startY; y < endY; ++y )
+		{
+			for ( int i = y * width + startX; i < y * width + endX; ++i )
+			{
+				if ( mask[ i ] != 0 )
+					++numTileInvalid;
+				if ( clearUntouchedTargetPixels && mask[ i ] == UNTOUCHED )
+					setTarget( i, 0, targetRandomAccess );
+			}
+		}
+		nextNumInvalidPixels.addAndGet( numTileInvalid );
+		return resolutionLevel;
+	}
+
+	@Override
+	public boolean endPass()
+	{
+		if ( canceled.get() )
+			return false;
+
+		valid = nextNumInvalidLevels.get() == 0;
+		numInvalidPixels = nextNumInvalidPixels.get();
+		return true;
+	}
+
+	/**
+	 * Fold the slab samples of resolution level {@code resolutionIndex} into
+	 * the tile from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive). Only pixels with {@code mask > resolutionIndex} are
+	 * visited. Lines without such pixels are skipped.
+	 *
+	 * @return the number of pixels in the tile that could not be filled from
+	 * valid samples at {@code resolutionIndex} or a previous pass.
+	 */
+	private int map(
+			final int resolutionIndex,
+			final int startX,
+			final int startY,
+			final int endX,
+			final int endY,
+			final double[] lineMax,
+			final int[] lineNumValid,
+			final A variable,
+			final ARGBType argb,
+			final RandomAccess< ARGBType > targetRandomAccess )
+	{
+		final List< RandomAccessible< A > > samples = sources.get( resolutionIndex );
+		final List< RandomAccess< A > > sampleAccesses = new ArrayList<>( numSamples );
+		for ( final RandomAccessible< A > sample : samples )
+			sampleAccesses.add( sample.randomAccess( sourceInterval ) );
+
+		final int width = ( int ) target.dimension( 0 );
+		final int length = endX - startX;
+		final long[] pos = new long[ sourceInterval.numDimensions() ];
+		final byte level = ( byte ) resolutionIndex;
+		int numInvalid = 0;
+
+		for ( int y = startY; y < endY; ++y )
+		{
+			if ( canceled.get() )
+				break;
+
+			final int offset = y * width + startX;
+			if ( !hasMaskGreaterThan( offset, length, level ) )
+				continue;
+
+			Arrays.fill( lineMax, Double.NEGATIVE_INFINITY );
+			Arrays.fill( lineNumValid, 0 );
+			pos[ 0 ] = startX + target.min( 0 );
+			pos[ 1 ] = y + target.min( 1 );
+			for ( final RandomAccess< A > access : sampleAccesses )
+			{
+				access.setPosition( pos );
+				for ( int x = 0; x < length; ++x )
+				{
+					final A value = access.get();
+					if ( value.isValid() )
+					{
+						final double v = ( ( RealType< ? > ) value.get() ).getRealDouble();
+						if ( v > lineMax[ x ] )
+							lineMax[ x ] = v;
+						++lineNumValid[ x ];
+					}
+					access.fwd( 0 );
+				}
+			}
+
+			for ( int x = 0; x < length; ++x )
+			{
+				final int i = offset + x;
+				final byte m = mask[ i ];
+				if ( m <= level )
+					continue;
+				if ( lineNumValid[ x ] == numSamples )
+				{
+					mask[ i ] = level;
+					setTarget( i, convert( lineMax[ x ], variable, argb ), targetRandomAccess );
+				}
+				else
+				{
+					++numInvalid;
+					if ( lineNumValid[ x ] > 0 && m >= PARTIAL )
+					{
+						mask[ i ] = PARTIAL;
+						setTarget( i, convert( lineMax[ x ], variable, argb ), targetRandomAccess );
+					}
+				}
+			}
+		}
+
+		return numInvalid;
+	}
+
+	private boolean hasMaskGreaterThan( final int offset, final int length, final byte level )
+	{
+		for ( int i = offset; i < offset + length; ++i )
+			if ( mask[ i ] > level )
+				return true;
+		return false;
+	}
+
+	private int convert( final double value, final A variable, final ARGBType argb )
+	{
+		( ( RealType< ? > ) variable.get() ).setReal( value );
+		variable.setValid( true );
+		converter.convert( variable, argb );
+		return argb.get();
+	}
+
+	/**
+	 * Set the target pixel at mask index {@code i} to {@code value}.
+	 */
+	private void setTarget( final int i, final int value, final RandomAccess< ARGBType > targetRandomAccess )
+	{
+		if ( targetData != null )
+			targetData[ i ] = value;
+		else
+		{
+			final int width = ( int ) target.dimension( 0 );
+			final int y = i / width;
+			targetRandomAccess.setPosition( target.min( 0 ) + i - y * width, 0 );
+			targetRandomAccess.setPosition( target.min( 1 ) + y, 1 );
+			targetRandomAccess.get().set( value );
+		}
+	}
+
+	/**
+	 * Rendering state of one screen tile.
+	 */
+	private static final class TileState extends GridCell
+	{
+		/**
+		 * How many levels (starting from level {@code 0}) have to be
+		 * re-rendered for this tile in the next pass.
+		 */
+		int numInvalidLevels;
+	}
+}
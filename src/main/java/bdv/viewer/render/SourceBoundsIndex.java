@@ -0,0 +1,584 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import net.imglib2.Interval;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+
+/**
+ * A bounding volume hierarchy over the bounding boxes (in global coordinates)
+ * of sources, to find the sources that may intersect the screen without
+ * transforming the bounding box of every source.
+ * <p>
+ * One hierarchy is maintained per timepoint, for the few most recently used
+ * timepoints. Sources that are added after a hierarchy was built are kept in
+ * a list of pending sources, which are always returned as candidates. Sources
+ * that are removed are only marked as removed. When the number of pending and
+ * removed sources exceeds a fraction of the indexed sources, the hierarchy is
+ * rebuilt.
+ * <p>
+ * The index does not poll the viewer state or the sources. The list of
+ * sources is only compared to the indexed sources if {@link #sourcesChanged()}
+ * was called since the last query. The bounds of sources are only recomputed
+ * if they are reported by {@link #sourceTransformsChanged(Collection)}, and
+ * only the nodes containing them are refit.
+ */
+class SourceBoundsIndex
+{
+	/**
+	 * The index should only be used if there are at least this many sources.
+	 * For fewer sources, testing every source is fast enough.
+	 */
+	static final int MIN_NUM_SOURCES = 256;
+
+	/**
+	 * Maximum number of sources per leaf of the hierarchy.
+	 */
+	private static final int LEAF_SIZE = 4;
+
+	/**
+	 * Maximum number of timepoints for which hierarchies are kept.
+	 */
+	private static final int MAX_NUM_TIMEPOINTS = 4;
+
+	private final Map< Integer, Hierarchy > hierarchies = new LinkedHashMap< Integer, Hierarchy >( 16, 0.75f, true )
+	{
+		@Override
+		protected boolean removeEldestEntry( final Map.Entry< Integer, Hierarchy > eldest )
+		{
+			return size() > MAX_NUM_TIMEPOINTS;
+		}
+	};
+
+	/**
+	 * Incremented by {@link #sourcesChanged()}.
+	 */
+	private final AtomicLong sourcesVersion = new AtomicLong();
+
+	/**
+	 * Discard all hierarchies. They are rebuilt when they are used next.
+	 */
+	public synchronized void invalidate()
+	{
+		hierarchies.clear();
+	}
+
+	/**
+	 * Notify the index that sources were added to or removed from the viewer
+	 * state. This must be called after the viewer state was modified.
+	 */
+	public void sourcesChanged()
+	{
+		sourcesVersion.incrementAndGet();
+	}
+
+	/**
+	 * Get the number of {@link #sourcesChanged()} notifications so far. This
+	 * must be read <em>before</em> taking the snapshot of the viewer state
+	 * that is passed to {@link #getCandidates}. Then a modification that
+	 * happens concurrently with taking the snapshot is picked up by the next
+	 * query, at the latest.
+	 */
+	public long getSourcesVersion()
+	{
+		return sourcesVersion.get();
+	}
+
+	/**
+	 * Notify the index that the source transforms of {@code sources} were
+	 * changed. Their bounds are recomputed in the next query.
+	 *
+	 * @param sources
+	 *     the sources (as returned by {@link SourceAndConverter#getSpimSource()})
+	 *     whose transforms changed
+	 */
+	public synchronized void sourceTransformsChanged( final Collection< ? extends Source< ? > > sources )
+	{
+		for ( final Hierarchy hierarchy : hierarchies.values() )
+			hierarchy.dirty.addAll( sources );
+	}
+
+	/**
+	 * Find the {@code sources} that may intersect the screen at
+	 * {@code timepoint}. The returned candidates are a superset of the
+	 * sources whose bounding box intersects the screen, in no particular
+	 * order. Candidates include sources that are not present at
+	 * {@code timepoint}, and sources that don't do bounding box culling.
+	 *
+	 * @param sources
+	 *     all sources of the viewer state
+	 * @param sourcesVersion
+	 *     the {@link #getSourcesVersion() sources version} when the viewer
+	 *     state was taken
+	 * @param timepoint
+	 *     the current timepoint
+	 * @param globalToScreen
+	 *     transforms global coordinates to screen coordinates
+	 * @param width
+	 *     width of the screen
+	 * @param height
+	 *     height of the screen
+	 * @param candidates
+	 *     candidate sources are stored here
+	 */
+	public synchronized void getCandidates(
+			final List< SourceAndConverter< ? > > sources,
+			final long sourcesVersion,
+			final int timepoint,
+			final AffineTransform3D globalToScreen,
+			final int width,
+			final int height,
+			final List< SourceAndConverter< ? > > candidates )
+	{
+		candidates.clear();
+		Hierarchy hierarchy = hierarchies.get( timepoint );
+		if ( hierarchy == null || !hierarchy.sync( sources, sourcesVersion ) || !hierarchy.refit() )
+		{
+			hierarchy = new Hierarchy( sources, sourcesVersion, timepoint );
+			hierarchies.put( timepoint, hierarchy );
+		}
+		hierarchy.query( globalToScreen, width, height, candidates );
+	}
+
+	private static final class Hierarchy
+	{
+		private final int timepoint;
+
+		/**
+		 * Indexed sources, in the order of the leaves of the hierarchy.
+		 */
+		private final SourceAndConverter< ? >[] entries;
+
+		/**
+		 * Bounding boxes of {@link #entries}, as (minX, minY, minZ, maxX,
+		 * maxY, maxZ) per entry.
+		 */
+		private final double[] entryBounds;
+
+		/**
+		 * For each entry, the index of the next entry with the same spim
+		 * source ({@code -1} if there is none).
+		 */
+		private final int[] entryNext;
+
+		/**
+		 * Maps spim sources to the index of the first entry with that spim
+		 * source.
+		 */
+		private final Map< Source< ? >, Integer > entryIndices = new HashMap<>();
+
+		/**
+		 * For each entry, the index of the leaf node containing it.
+		 */
+		private final int[] entryLeaf;
+
+		/**
+		 * Bounding boxes of nodes, as (minX, minY, minZ, maxX, maxY, maxZ)
+		 * per node. Node {@code 0} is the root. Children always have larger
+		 * indices than their parent.
+		 */
+		private double[] nodeBounds;
+
+		/**
+		 * For leaf nodes, the index of the first entry. For inner nodes, the
+		 * index of the left child.
+		 */
+		private int[] nodeFirst;
+
+		/**
+		 * For leaf nodes, the number of entries. For inner nodes, {@code -1}
+		 * minus the index of the right child.
+		 */
+		private int[] nodeCount;
+
+		/**
+		 * The index of the parent of each node ({@code -1} for the root).
+		 */
+		private int[] nodeParent;
+
+		private int numNodes;
+
+		/**
+		 * All indexed sources, including removed ones.
+		 */
+		private final Set< SourceAndConverter< ? > > indexed = new HashSet<>();
+
+		/**
+		 * Sources that are not indexed, because they don't do bounding box
+		 * culling, or are not present at {@link #timepoint}.
+		 */
+		private final Set< SourceAndConverter< ? > > unbounded = new LinkedHashSet<>();
+
+		/**
+		 * Sources that were added after the hierarchy was built.
+		 */
+		private final Set< SourceAndConverter< ? > > pending = new LinkedHashSet<>();
+
+		/**
+		 * Indexed sources that were removed from the viewer state.
+		 */
+		private final Set< SourceAndConverter< ? > > removed = new HashSet<>();
+
+		/**
+		 * Spim sources whose transforms changed since the last
+		 * {@link #refit}.
+		 */
+		private final Set< Source< ? > > dirty = new HashSet<>();
+
+		/**
+		 * The sources version of the last {@link #sync}.
+		 */
+		private long syncedVersion;
+
+		Hierarchy( final List< SourceAndConverter< ? > > sources, final long sourcesVersion, final int timepoint )
+		{
+			this.timepoint = timepoint;
+
+			final List< SourceAndConverter< ? > > bounded = new ArrayList<>();
+			final List< double[] > bounds = new ArrayList<>();
+			for ( final SourceAndConverter< ? > source : sources )
+			{
+				final double[] b = computeBounds( source.getSpimSource(), timepoint );
+				if ( b == null )
+					unbounded.add( source );
+				else
+				{
+					bounded.add( source );
+					bounds.add( b );
+				}
+			}
+
+			final int n = bounded.size();
+			final Integer[] order = new Integer[ n ];
+			Arrays.setAll( order, i -> i );
+			final double[] centers = new double[ 3 * n ];
+			for ( int i = 0; i < n; ++i )
+				for ( int d = 0; d < 3; ++d )
+					centers[ 3 * i + d ] = 0.5 * ( bounds.get( i )[ d ] + bounds.get( i )[ d + 3 ] );
+
+			final int maxNumNodes = 2 * ( n / LEAF_SIZE + 1 );
+			nodeBounds = new double[ 6 * maxNumNodes ];
+			nodeFirst = new int[ maxNumNodes ];
+			nodeCount = new int[ maxNumNodes ];
+			nodeParent = new int[ maxNumNodes ];
+			numNodes = 0;
+			if ( n > 0 )
+				build( order, centers, bounds, 0, n, -1 );
+
+			entries = new SourceAndConverter< ? >[ n ];
+			entryBounds = new double[ 6 * n ];
+			entryNext = new int[ n ];
+			entryLeaf = new int[ n ];
+			for ( int i = n - 1; i >= 0; --i )
+			{
+				entries[ i ] = bounded.get( order[ i ] );
+				System.arraycopy( bounds.get( order[ i ] ), 0, entryBounds, 6 * i, 6 );
+				final Integer next = entryIndices.put( entries[ i ].getSpimSource(), i );
+				entryNext[ i ] = next == null ? -1 : next;
+			}
+			for ( int node = 0; node < numNodes; ++node )
+			{
+				final int count = nodeCount[ node ];
+				for ( int i = nodeFirst[ node ]; i < nodeFirst[ node ] + count; ++i )
+					entryLeaf[ i ] = node;
+			}
+			indexed.addAll( bounded );
+			syncedVersion = sourcesVersion;
+		}
+
+		/**
+		 * Build the subtree for entries {@code order[from]} to
+		 * {@code order[to - 1]}, splitting at the median along the axis with
+		 * the largest extent of entry centers.
+		 *
+		 * @return index of the root node of the subtree
+		 */
+		private int build( final Integer[] order, final double[] centers, final List< double[] > bounds, final int from, final int to, final int parent )
+		{
+			final int node = numNodes++;
+			nodeParent[ node ] = parent;
+			final int o = 6 * node;
+			Arrays.fill( nodeBounds, o, o + 3, Double.POSITIVE_INFINITY );
+			Arrays.fill( nodeBounds, o + 3, o + 6, Double.NEGATIVE_INFINITY );
+			final double[] cmin = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+			final double[] cmax = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+			for ( int i = from; i < to; ++i )
+			{
+				final double[] b = bounds.get( order[ i ] );
+				for ( int d = 0; d < 3; ++d )
+				{
+					nodeBounds[ o + d ] = Math.min( nodeBounds[ o + d ], b[ d ] );
+					nodeBounds[ o + d + 3 ] = Math.max( nodeBounds[ o + d + 3 ], b[ d + 3 ] );
+					final double c = centers[ 3 * order[ i ] + d ];
+					cmin[ d ] = Math.min( cmin[ d ], c );
+					cmax[ d ] = Math.max( cmax[ d ], c );
+				}
+			}
+
+			if ( to - from <= LEAF_SIZE )
+			{
+				nodeFirst[ node ] = from;
+				nodeCount[ node ] = to - from;
+				return node;
+			}
+
+			int axis = 0;
+			for ( int d = 1; d < 3; ++d )
+				if ( cmax[ d ] - cmin[ d ] > cmax[ axis ] - cmin[ axis ] )
+					axis = d;
+			final int a = axis;
+			Arrays.sort( order, from, to, Comparator.comparingDouble( i -> centers[ 3 * i + a ] ) );
+
+			final int mid = ( from + to ) / 2;
+			nodeFirst[ node ] = build( order, centers, bounds, from, mid, node );
+			nodeCount[ node ] = -1 - build( order, centers, bounds, mid, to, node );
+			return node;
+		}
+
+		/**
+		 * Recompute the bounds of the entries whose spim sources are
+		 * {@link #dirty}, and refit the nodes containing them.
+		 *
+		 * @return {@code false} if the hierarchy should be rebuilt, because
+		 * a changed source is no longer bounded.
+		 */
+		boolean refit()
+		{
+			if ( dirty.isEmpty() )
+				return true;
+
+			final boolean[] changedNodes = new boolean[ numNodes ];
+			for ( final Source< ? > source : dirty )
+			{
+				final Integer first = entryIndices.get( source );
+				if ( first == null )
+					continue;
+				final double[] b = computeBounds( source, timepoint );
+				if ( b == null )
+					return false;
+				for ( int i = first; i >= 0; i = entryNext[ i ] )
+				{
+					System.arraycopy( b, 0, entryBounds, 6 * i, 6 );
+					changedNodes[ entryLeaf[ i ] ] = true;
+				}
+			}
+			dirty.clear();
+
+			// children have larger indices than their parents, so
+			// visiting nodes in reverse order refits children first
+			for ( int node = numNodes - 1; node >= 0; --node )
+			{
+				if ( !changedNodes[ node ] )
+					continue;
+				final int o = 6 * node;
+				Arrays.fill( nodeBounds, o, o + 3, Double.POSITIVE_INFINITY );
+				Arrays.fill( nodeBounds, o + 3, o + 6, Double.NEGATIVE_INFINITY );
+				final int count = nodeCount[ node ];
+				if ( count >= 0 )
+					for ( int i = nodeFirst[ node ]; i < nodeFirst[ node ] + count; ++i )
+						union( entryBounds, 6 * i, nodeBounds, o );
+				else
+				{
+					union( nodeBounds, 6 * nodeFirst[ node ], nodeBounds, o );
+					union( nodeBounds, 6 * ( -1 - count ), nodeBounds, o );
+				}
+				if ( node > 0 )
+					changedNodes[ nodeParent[ node ] ] = true;
+			}
+			return true;
+		}
+
+		/**
+		 * Update pending and removed sources for the current list of
+		 * {@code sources}, if sources were added or removed since the last
+		 * sync.
+		 *
+		 * @return {@code false} if the hierarchy should be rebuilt.
+		 */
+		boolean sync( final List< SourceAndConverter< ? > > sources, final long sourcesVersion )
+		{
+			if ( sourcesVersion == syncedVersion )
+				return true;
+
+			final Set< SourceAndConverter< ? > > current = new HashSet<>( sources );
+			for ( final SourceAndConverter< ? > source : indexed )
+			{
+				if ( current.contains( source ) )
+					removed.remove( source );
+				else
+					removed.add( source );
+			}
+			unbounded.retainAll( current );
+			pending.retainAll( current );
+			for ( final SourceAndConverter< ? > source : sources )
+				if ( !indexed.contains( source ) && !unbounded.contains( source ) )
+					pending.add( source );
+			syncedVersion = sourcesVersion;
+
+			return removed.size() + pending.size() <= Math.max( 16, indexed.size() / 8 );
+		}
+
+		void query( final AffineTransform3D globalToScreen, final int width, final int height, final List< SourceAndConverter< ? > > candidates )
+		{
+			candidates.addAll( unbounded );
+			candidates.addAll( pending );
+			if ( numNodes == 0 )
+				return;
+
+			final double[] corner = new double[ 3 ];
+			final int[] stack = new int[ 64 ];
+			int stackSize = 0;
+			stack[ stackSize++ ] = 0;
+			while ( stackSize > 0 )
+			{
+				final int node = stack[ --stackSize ];
+				if ( !intersectsScreen( nodeBounds, 6 * node, globalToScreen, width, height, corner ) )
+					continue;
+				final int count = nodeCount[ node ];
+				if ( count >= 0 )
+				{
+					final int first = nodeFirst[ node ];
+					for ( int i = first; i < first + count; ++i )
+						if ( !removed.contains( entries[ i ] )
+								&& intersectsScreen( entryBounds, 6 * i, globalToScreen, width, height, corner ) )
+							candidates.add( entries[ i ] );
+				}
+				else
+				{
+					stack[ stackSize++ ] = nodeFirst[ node ];
+					stack[ stackSize++ ] = -1 - count;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute the bounding box in global coordinates of {@code source} at
+	 * {@code timepoint}, enclosing the full resolution and the coarsest
+	 * resolution level, each expanded by one voxel.
+	 *
+	 * @return bounding box as (minX, minY, minZ, maxX, maxY, maxZ), or
+	 * {@code null} if the source is not present at {@code timepoint} or does
+	 * not do bounding box culling.
+	 */
+	private static double[] computeBounds( final Source< ? > source, final int timepoint )
+	{
+		if ( !source.doBoundingBoxCulling() || !source.isPresent( timepoint ) )
+			return null;
+
+		final double[] bounds = {
+				Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		final AffineTransform3D sourceToGlobal = new AffineTransform3D();
+		final double[] box = new double[ 6 ];
+		final double[] corner = new double[ 3 ];
+		for ( final int level : new int[] { 0, source.getNumMipmapLevels() - 1 } )
+		{
+			source.getSourceTransform( timepoint, level, sourceToGlobal );
+			final Interval interval = source.getSource( timepoint, level );
+			for ( int d = 0; d < 3; ++d )
+			{
+				box[ d ] = interval.realMin( d ) - 1.0;
+				box[ d + 3 ] = interval.realMax( d ) + 1.0;
+			}
+			for ( int c = 0; c < 8; ++c )
+			{
+				for ( int d = 0; d < 3; ++d )
+					corner[ d ] = box[ ( ( c >> d ) & 1 ) == 0 ? d : d + 3 ];
+				sourceToGlobal.apply( corner, corner );
+				for ( int d = 0; d < 3; ++d )
+				{
+					bounds[ d ] = Math.min( bounds[ d ], corner[ d ] );
+					bounds[ d + 3 ] = Math.max( bounds[ d + 3 ], corner[ d ] );
+				}
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * Expand the box at {@code targetOffset} in {@code target} to include the
+	 * box at {@code offset} in {@code bounds}.
+	 */
+	private static void union( final double[] bounds, final int offset, final double[] target, final int targetOffset )
+	{
+		for ( int d = 0; d < 3; ++d )
+		{
+			target[ targetOffset + d ] = Math.min( target[ targetOffset + d ], bounds[ offset + d ] );
+			target[ targetOffset + d + 3 ] = Math.max( target[ targetOffset + d + 3 ], bounds[ offset + d + 3 ] );
+		}
+	}
+
+	/**
+	 * Check whether the box at {@code offset} in {@code bounds}, transformed
+	 * to screen coordinates, intersects the screen area in the {@code z=0}
+	 * plane.
+	 */
+	private static boolean intersectsScreen(
+			final double[] bounds,
+			final int offset,
+			final AffineTransform3D globalToScreen,
+			final int width,
+			final int height,
+			final double[] corner )
+	{
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+		for ( int c = 0; c < 8; ++c )
+		{
+			for ( int d = 0; d < 3; ++d )
+				corner[ d ] = bounds[ offset + ( ( ( c >> d ) & 1 ) == 0 ? d : d + 3 ) ];
+			globalToScreen.apply( corner, corner );
+			minX = Math.min( minX, corner[ 0 ] );
+			maxX = Math.max( maxX, corner[ 0 ] );
+			minY = Math.min( minY, corner[ 1 ] );
+			maxY = Math.max( maxY, corner[ 1 ] );
+			minZ = Math.min( minZ, corner[ 2 ] );
+			maxZ = Math.max( maxZ, corner[ 2 ] );
+		}
+		return maxX >= 0 && minX <= width - 1
+				&& maxY >= 0 && minY <= height - 1
+				&& maxZ >= 0 && minZ <= 0;
+	}
+}
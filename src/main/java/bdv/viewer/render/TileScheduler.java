@@ -0,0 +1,430 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Splits a 2D target image into square screen tiles and runs a
+ * {@link TileTask} on every tile, using multiple threads.
+ * <p>
+ * Tiles are ordered along a Z-order (Morton) curve, such that tiles that are
+ * close in the ordering are also close on the screen. The ordered tiles are
+ * split into one contiguous range per worker. Each worker processes its own
+ * range front-to-back. When a worker runs out of tiles, it steals tiles from
+ * the back of the range of the worker with the most remaining tiles. This
+ * way, neighbouring pixels (which likely hit the same source cells) are mostly
+ * rendered by the same thread, while the load is still balanced.
+ */
+class TileScheduler
+{
+	/**
+	 * Default width and height of screen tiles.
+	 */
+	static final int DEFAULT_TILE_SIZE = 64;
+
+	/**
+	 * Task that is run for every tile.
+	 */
+	@FunctionalInterface
+	interface TileTask
+	{
+		/**
+		 * Process the tile from {@code (startX, startY)} up to
+		 * {@code (endX, endY)} (exclusive).
+		 */
+		void run( int startX, int startY, int endX, int endY );
+	}
+
+	/**
+	 * Rendering state of one cell of the {@link #DEFAULT_TILE_SIZE} grid.
+	 * Projectors that keep per-cell state extend this, see
+	 * {@link #forEachGridCell}.
+	 */
+	static class GridCell
+	{
+		/**
+		 * The generation that the state of this cell was initialized for.
+		 */
+		int generation = -1;
+	}
+
+	/**
+	 * The part of a grid cell that is covered by a tile.
+	 */
+	static final class GridCellPart
+	{
+		/**
+		 * The grid cell, from {@code (cellX, cellY)} up to
+		 * {@code (cellEndX, cellEndY)} (exclusive).
+		 */
+		int cellX, cellY, cellEndX, cellEndY;
+
+		/**
+		 * The part of the cell, from {@code (x0, y0)} up to {@code (x1, y1)}
+		 * (exclusive).
+		 */
+		int x0, y0, x1, y1;
+
+		/**
+		 * Whether the part covers the whole cell.
+		 */
+		boolean isWholeCell()
+		{
+			return x0 == cellX && y0 == cellY && x1 == cellEndX && y1 == cellEndY;
+		}
+	}
+
+	/**
+	 * Task that is run for every grid cell part of a tile.
+	 */
+	@FunctionalInterface
+	interface GridCellTask< C extends GridCell >
+	{
+		/**
+		 * Process {@code part} of {@code cell}.
+		 *
+		 * @return {@code false} if the remaining cells should be skipped
+		 * (for example, because rendering was canceled).
+		 */
+		boolean run( C cell, GridCellPart part );
+	}
+
+	/**
+	 * Run {@code task} for all tiles of a {@code width * height} image, using
+	 * {@link #DEFAULT_TILE_SIZE} tiles.
+	 *
+	 * @param width
+	 *     width of the image to tile
+	 * @param height
+	 *     height of the image to tile
+	 * @param numThreads
+	 *     how many workers to use
+	 * @param executorService
+	 *     {@link ExecutorService} to run workers. May be {@code null}, in which
+	 *     case a temporary thread pool is created.
+	 * @param task
+	 *     the task to run for every tile
+	 */
+	static void forEachTile(
+			final int width,
+			final int height,
+			final int numThreads,
+			final ExecutorService executorService,
+			final TileTask task )
+	{
+		new TileScheduler( width, height, DEFAULT_TILE_SIZE, numThreads ).run( executorService, task );
+	}
+
+	/**
+	 * Create the state for every cell of the {@link #DEFAULT_TILE_SIZE} grid
+	 * of a {@code width * height} image, in row-major order.
+	 */
+	static < C extends GridCell > C[] createGridCells( final int width, final int height, final IntFunction< C[] > createArray, final Supplier< C > createCell )
+	{
+		final int tileSize = DEFAULT_TILE_SIZE;
+		final int numTilesX = ( width + tileSize - 1 ) / tileSize;
+		final int numTilesY = ( height + tileSize - 1 ) / tileSize;
+		final C[] cells = createArray.apply( numTilesX * numTilesY );
+		Arrays.setAll( cells, i -> createCell.get() );
+		return cells;
+	}
+
+	/**
+	 * Split the tile from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive) along the {@link #DEFAULT_TILE_SIZE} grid of a
+	 * {@code width * height} image, and run {@code task} for every part.
+	 * <p>
+	 * Tiles that are not aligned with the grid may cover parts of grid cells,
+	 * and non-overlapping parts of the same grid cell may be rendered
+	 * concurrently. Therefore, {@code init} and {@code task} are run while
+	 * holding the lock of the cell. If the {@link GridCell#generation} of a
+	 * cell is not {@code generation}, {@code init} is run first (with the
+	 * part, to provide the cell bounds), and the cell generation is updated.
+	 *
+	 * @param cells
+	 *     the state of every grid cell, as created by {@link #createGridCells}
+	 * @param generation
+	 *     the current generation of cell states
+	 * @param init
+	 *     initializes the state of a cell for the current generation
+	 * @param task
+	 *     processes a part of a cell
+	 */
+	static < C extends GridCell > void forEachGridCell(
+			final int startX,
+			final int startY,
+			final int endX,
+			final int endY,
+			final int width,
+			final int height,
+			final C[] cells,
+			final int generation,
+			final BiConsumer< C, GridCellPart > init,
+			final GridCellTask< C > task )
+	{
+		final int tileSize = DEFAULT_TILE_SIZE;
+		final int numTilesX = ( width + tileSize - 1 ) / tileSize;
+		final GridCellPart part = new GridCellPart();
+		for ( int cellY = startY / tileSize * tileSize; cellY < endY; cellY += tileSize )
+		{
+			for ( int cellX = startX / tileSize * tileSize; cellX < endX; cellX += tileSize )
+			{
+				part.cellX = cellX;
+				part.cellY = cellY;
+				part.cellEndX = Math.min( cellX + tileSize, width );
+				part.cellEndY = Math.min( cellY + tileSize, height );
+				part.x0 = Math.max( startX, cellX );
+				part.y0 = Math.max( startY, cellY );
+				part.x1 = Math.min( endX, part.cellEndX );
+				part.y1 = Math.min( endY, part.cellEndY );
+				final C cell = cells[ ( cellY / tileSize ) * numTilesX + cellX / tileSize ];
+				synchronized ( cell )
+				{
+					if ( cell.generation != generation )
+					{
+						init.accept( cell, part );
+						cell.generation = generation;
+					}
+					if ( !task.run( cell, part ) )
+						return;
+				}
+			}
+		}
+	}
+
+	private final int width;
+
+	private final int height;
+
+	private final int tileSize;
+
+	/**
+	 * Tile grid x coordinates, in Z-order.
+	 */
+	private final int[] tileX;
+
+	/**
+	 * Tile grid y coordinates, in Z-order.
+	 */
+	private final int[] tileY;
+
+	/**
+	 * Remaining range of tiles for each worker. {@code head} (inclusive) is
+	 * stored in the upper 32 bits, {@code tail} (exclusive) is stored in the
+	 * lower 32 bits. The owner takes tiles from the head, other workers steal
+	 * from the tail.
+	 */
+	private final AtomicLong[] ranges;
+
+	TileScheduler( final int width, final int height, final int tileSize, final int numThreads )
+	{
+		this.width = width;
+		this.height = height;
+		this.tileSize = tileSize;
+
+		final int numTilesX = ( width + tileSize - 1 ) / tileSize;
+		final int numTilesY = ( height + tileSize - 1 ) / tileSize;
+		final int numTiles = numTilesX * numTilesY;
+
+		final long[] keys = new long[ numTiles ];
+		for ( int y = 0; y < numTilesY; ++y )
+			for ( int x = 0; x < numTilesX; ++x )
+			{
+				final int i = y * numTilesX + x;
+				keys[ i ] = ( interleave( x, y ) << 32 ) | i;
+			}
+		Arrays.sort( keys );
+		tileX = new int[ numTiles ];
+		tileY = new int[ numTiles ];
+		for ( int j = 0; j < numTiles; ++j )
+		{
+			final int i = ( int ) keys[ j ];
+			tileX[ j ] = i % numTilesX;
+			tileY[ j ] = i / numTilesX;
+		}
+
+		final int numWorkers = Math.max( 1, Math.min( numThreads, numTiles ) );
+		ranges = new AtomicLong[ numWorkers ];
+		for ( int w = 0; w < numWorkers; ++w )
+		{
+			final int head = ( int ) ( ( long ) w * numTiles / numWorkers );
+			final int tail = ( int ) ( ( long ) ( w + 1 ) * numTiles / numWorkers );
+			ranges[ w ] = new AtomicLong( range( head, tail ) );
+		}
+	}
+
+	/**
+	 * Run {@code task} for all tiles. Blocks until all tiles are done.
+	 */
+	void run( final ExecutorService executorService, final TileTask task )
+	{
+		final int numWorkers = ranges.length;
+		if ( numWorkers == 1 )
+		{
+			work( 0, task );
+			return;
+		}
+
+		final boolean createExecutor = ( executorService == null );
+		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numWorkers ) : executorService;
+		final List< Callable< Void > > workers = new ArrayList<>( numWorkers );
+		for ( int w = 0; w < numWorkers; ++w )
+		{
+			final int worker = w;
+			workers.add( Executors.callable( () -> work( worker, task ), null ) );
+		}
+		try
+		{
+			ex.invokeAll( workers );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			if ( createExecutor )
+				ex.shutdown();
+		}
+	}
+
+	private void work( final int worker, final TileTask task )
+	{
+		int tile;
+		while ( ( tile = takeOwn( worker ) ) >= 0 || ( tile = steal() ) >= 0 )
+		{
+			final int startX = tileX[ tile ] * tileSize;
+			final int startY = tileY[ tile ] * tileSize;
+			final int endX = Math.min( startX + tileSize, width );
+			final int endY = Math.min( startY + tileSize, height );
+			task.run( startX, startY, endX, endY );
+		}
+	}
+
+	/**
+	 * Take the next tile from the head of the range of {@code worker}.
+	 *
+	 * @return tile index, or {@code -1} if the range is empty.
+	 */
+	private int takeOwn( final int worker )
+	{
+		final AtomicLong r = ranges[ worker ];
+		while ( true )
+		{
+			final long range = r.get();
+			final int head = head( range );
+			final int tail = tail( range );
+			if ( head >= tail )
+				return -1;
+			if ( r.compareAndSet( range, range( head + 1, tail ) ) )
+				return head;
+		}
+	}
+
+	/**
+	 * Steal a tile from the tail of the range of the worker with the most
+	 * remaining tiles.
+	 *
+	 * @return tile index, or {@code -1} if all ranges are empty.
+	 */
+	private int steal()
+	{
+		while ( true )
+		{
+			int victim = -1;
+			int victimSize = 0;
+			for ( int w = 0; w < ranges.length; ++w )
+			{
+				final long range = ranges[ w ].get();
+				final int size = tail( range ) - head( range );
+				if ( size > victimSize )
+				{
+					victim = w;
+					victimSize = size;
+				}
+			}
+			if ( victim < 0 )
+				return -1;
+
+			final AtomicLong r = ranges[ victim ];
+			final long range = r.get();
+			final int head = head( range );
+			final int tail = tail( range );
+			if ( head < tail && r.compareAndSet( range, range( head, tail - 1 ) ) )
+				return tail - 1;
+		}
+	}
+
+	private static long range( final int head, final int tail )
+	{
+		return ( ( long ) head << 32 ) | ( tail & 0xffffffffL );
+	}
+
+	private static int head( final long range )
+	{
+		return ( int ) ( range >>> 32 );
+	}
+
+	private static int tail( final long range )
+	{
+		return ( int ) range;
+	}
+
+	/**
+	 * Compute the Z-order (Morton) code of tile grid coordinates {@code (x,y)}
+	 * by interleaving their bits.
+	 */
+	static long interleave( final int x, final int y )
+	{
+		return spread( x ) | ( spread( y ) << 1 );
+	}
+
+	/**
+	 * Spread the lower 16 bits of {@code v} to the even bits of the result.
+	 */
+	private static long spread( final int v )
+	{
+		long x = v & 0xffffL;
+		x = ( x | ( x << 8 ) ) & 0x00ff00ffL;
+		x = ( x | ( x << 4 ) ) & 0x0f0f0f0fL;
+		x = ( x | ( x << 2 ) ) & 0x33333333L;
+		x = ( x | ( x << 1 ) ) & 0x55555555L;
+		return x;
+	}
+}
@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+/**
+ * A {@link VolatileProjector} that can render its target image in independent
+ * rectangular tiles. This allows to schedule rendering of several projectors
+ * together. For example, {@link AccumulateProjectorARGB} renders all sources
+ * for one tile and accumulates the tile immediately, while the source images
+ * of that tile are still in cache.
+ * <p>
+ * A rendering pass consists of {@link #beginPass()}, followed by
+ * {@link #mapTile} for each tile of the target image (possibly concurrently
+ * from multiple threads), followed by {@link #endPass()}. Tiles of one pass
+ * must not overlap. Usually, tiles are the tiles of the {@link TileScheduler}
+ * grid, as used by {@link TileScheduler#forEachTile}. Implementations may
+ * keep per-tile state across passes for these, but must also handle
+ * arbitrary tiles.
+ */
+interface TiledProjector extends VolatileProjector
+{
+	/**
+	 * Prepare a new rendering pass.
+	 */
+	void beginPass();
+
+	/**
+	 * Render the tile from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive) of the target image. Coordinates are relative to the target
+	 * min coordinate. Returns early if rendering was {@link #cancel()
+	 * canceled}.
+	 *
+	 * @param clearUntouchedTargetPixels
+	 *     whether target pixels of the tile that were never written should be
+	 *     cleared.
+	 */
+	void mapTile( int startX, int startY, int endX, int endY, boolean clearUntouchedTargetPixels );
+
+	/**
+	 * Finish the current rendering pass. Updates the {@link #isValid() valid}
+	 * state, after all tiles have been rendered.
+	 *
+	 * @return true if the rendering pass was completed. false if rendering was
+	 * canceled.
+	 */
+	boolean endPass();
+}
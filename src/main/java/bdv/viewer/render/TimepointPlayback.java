@@ -0,0 +1,387 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import net.imglib2.Dimensions;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import org.scijava.listeners.Listeners;
+
+import bdv.util.MipmapTransforms;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+
+/**
+ * Plays back the timepoints of a {@link ViewerState} at a target frame rate.
+ * <p>
+ * The timepoint is advanced by a timer, independent of rendering. If a tick
+ * is late, timepoints are skipped (dropped frames) instead of slowing down
+ * playback. After each step, a window of upcoming timepoints (in playback
+ * direction) is prefetched: for each visible source, the cells of the
+ * coarsest mipmap level and of the best mipmap level for the current viewer
+ * transform.
+ * <p>
+ * To detect whether loading keeps up with playback, add this to the
+ * {@link MultiResolutionRenderer#renderStatisticsListeners() render
+ * statistics listeners}. Frames that are not rendered completely (from valid
+ * data at the optimal resolution) before the next timepoint is shown are
+ * counted as incomplete. If most of the recent frames are incomplete,
+ * {@link #ioLimitListeners()} are notified.
+ */
+public class TimepointPlayback implements RenderStatisticsListener
+{
+	/**
+	 * Notified when playback becomes (or stops being) limited by loading
+	 * data.
+	 */
+	@FunctionalInterface
+	public interface IoLimitListener
+	{
+		void ioLimitChanged( boolean ioLimited );
+	}
+
+	/**
+	 * Number of recent frames that are considered to decide whether playback
+	 * is IO limited.
+	 */
+	private static final int NUM_RECENT_FRAMES = 10;
+
+	private final ViewerState state;
+
+	private final Supplier< ? extends Dimensions > screenSize;
+
+	private final boolean useVolatileIfAvailable;
+
+	private final Listeners.List< IoLimitListener > ioLimitListeners = new Listeners.SynchronizedList<>();
+
+	/**
+	 * Number of upcoming timepoints to prefetch.
+	 */
+	private int prefetchWindow = 5;
+
+	/**
+	 * Whether to continue at the first timepoint after the last (or vice
+	 * versa), instead of stopping.
+	 */
+	private volatile boolean loop = true;
+
+	private ScheduledExecutorService timer;
+
+	private double framesPerSecond;
+
+	/**
+	 * {@code 1} for forward, {@code -1} for backward playback.
+	 */
+	private int direction;
+
+	private long startNanos;
+
+	/**
+	 * Index (since start) of the current frame.
+	 */
+	private long frame;
+
+	/**
+	 * Whether the current frame has been rendered completely.
+	 */
+	private volatile boolean frameComplete;
+
+	private long numFrames;
+
+	private long numDroppedFrames;
+
+	private long numIncompleteFrames;
+
+	/**
+	 * Ring buffer of whether recent frames were incomplete.
+	 */
+	private final boolean[] recentIncomplete = new boolean[ NUM_RECENT_FRAMES ];
+
+	private boolean ioLimited;
+
+	/**
+	 * @param state
+	 *     the state to play back.
+	 * @param screenSize
+	 *     provides the current size of the screen, for prefetching.
+	 * @param useVolatileIfAvailable
+	 *     whether volatile versions of sources are rendered if available.
+	 */
+	public TimepointPlayback( final ViewerState state, final Supplier< ? extends Dimensions > screenSize, final boolean useVolatileIfAvailable )
+	{
+		this.state = state;
+		this.screenSize = screenSize;
+		this.useVolatileIfAvailable = useVolatileIfAvailable;
+	}
+
+	/**
+	 * {@code IoLimitListener}s can be added/removed here. They are notified
+	 * from the playback thread.
+	 */
+	public Listeners< IoLimitListener > ioLimitListeners()
+	{
+		return ioLimitListeners;
+	}
+
+	/**
+	 * Set the number of upcoming timepoints to prefetch.
+	 */
+	public synchronized void setPrefetchWindow( final int numTimepoints )
+	{
+		prefetchWindow = Math.max( 0, numTimepoints );
+	}
+
+	/**
+	 * Set whether playback continues at the first timepoint after the last
+	 * (or at the last before the first, when playing backward). Otherwise,
+	 * playback stops at the end.
+	 */
+	public synchronized void setLoop( final boolean loop )
+	{
+		this.loop = loop;
+	}
+
+	/**
+	 * Start playback from the current timepoint.
+	 *
+	 * @param framesPerSecond
+	 *     target frame rate, that is, timepoints per second.
+	 * @param forward
+	 *     whether to play forward or backward.
+	 */
+	public synchronized void start( final double framesPerSecond, final boolean forward )
+	{
+		if ( !( framesPerSecond > 0 ) )
+			throw new IllegalArgumentException( "framesPerSecond must be > 0" );
+
+		stop();
+		this.framesPerSecond = framesPerSecond;
+		direction = forward ? 1 : -1;
+		startNanos = System.nanoTime();
+		frame = 0;
+		frameComplete = false;
+		numFrames = 0;
+		numDroppedFrames = 0;
+		numIncompleteFrames = 0;
+		for ( int i = 0; i < NUM_RECENT_FRAMES; ++i )
+			recentIncomplete[ i ] = false;
+		setIoLimited( false );
+
+		timer = Executors.newSingleThreadScheduledExecutor( r -> {
+			final Thread t = new Thread( r, "bdv-timepoint-playback" );
+			t.setDaemon( true );
+			return t;
+		} );
+		final int t = state.getCurrentTimepoint();
+		timer.execute( () -> prefetch( t ) );
+		final long period = ( long ) ( 1e9 / framesPerSecond );
+		timer.scheduleAtFixedRate( this::tick, period, period, TimeUnit.NANOSECONDS );
+	}
+
+	/**
+	 * Stop playback.
+	 */
+	public synchronized void stop()
+	{
+		if ( timer != null )
+		{
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	public synchronized boolean isPlaying()
+	{
+		return timer != null;
+	}
+
+	/**
+	 * Get the number of timepoints that were shown since playback started.
+	 */
+	public synchronized long getNumFrames()
+	{
+		return numFrames;
+	}
+
+	/**
+	 * Get the number of timepoints that were skipped since playback started,
+	 * because the timer was late.
+	 */
+	public synchronized long getNumDroppedFrames()
+	{
+		return numDroppedFrames;
+	}
+
+	/**
+	 * Get the number of timepoints that were shown since playback started,
+	 * but not rendered completely before the next timepoint was shown.
+	 */
+	public synchronized long getNumIncompleteFrames()
+	{
+		return numIncompleteFrames;
+	}
+
+	/**
+	 * Whether most of the recently shown timepoints were not rendered
+	 * completely, that is, loading data does not keep up with playback.
+	 */
+	public synchronized boolean isIoLimited()
+	{
+		return ioLimited;
+	}
+
+	@Override
+	public void frameRendered( final RenderStatistics statistics )
+	{
+		if ( statistics.isComplete() && !statistics.isInterval() )
+			frameComplete = true;
+	}
+
+	private void tick()
+	{
+		final int t;
+		synchronized ( this )
+		{
+			if ( timer == null )
+				return;
+
+			final long elapsed = System.nanoTime() - startNanos;
+			final long nextFrame = ( long ) ( elapsed * framesPerSecond / 1e9 );
+			final long step = nextFrame - frame;
+			if ( step <= 0 )
+				return;
+
+			// account for the frame that is currently shown
+			final boolean incomplete = !frameComplete;
+			recentIncomplete[ ( int ) ( numFrames % NUM_RECENT_FRAMES ) ] = incomplete;
+			if ( incomplete )
+				++numIncompleteFrames;
+			int numRecentIncomplete = 0;
+			for ( final boolean b : recentIncomplete )
+				if ( b )
+					++numRecentIncomplete;
+			setIoLimited( 2 * numRecentIncomplete > NUM_RECENT_FRAMES );
+
+			t = getTimepoint( state.getCurrentTimepoint(), ( int ) step * direction );
+			if ( t < 0 )
+			{
+				stop();
+				return;
+			}
+
+			numDroppedFrames += step - 1;
+			++numFrames;
+			frame = nextFrame;
+			frameComplete = false;
+		}
+		state.setCurrentTimepoint( t );
+		prefetch( t );
+	}
+
+	/**
+	 * Get the timepoint {@code offset} timepoints after {@code t}, or
+	 * {@code -1} if that is beyond the last (or before the first) timepoint
+	 * and playback does not loop.
+	 */
+	private int getTimepoint( final int t, final int offset )
+	{
+		final int n = state.getNumTimepoints();
+		final int next = t + offset;
+		if ( next >= 0 && next < n )
+			return next;
+		return loop && n > 0 ? Math.floorMod( next, n ) : -1;
+	}
+
+	private void setIoLimited( final boolean limited )
+	{
+		if ( ioLimited != limited )
+		{
+			ioLimited = limited;
+			ioLimitListeners.list.forEach( l -> l.ioLimitChanged( limited ) );
+		}
+	}
+
+	/**
+	 * Prefetch the {@link #prefetchWindow} timepoints after {@code t} (in
+	 * playback direction), nearest first.
+	 */
+	private void prefetch( final int t )
+	{
+		final ViewerState snapshot = state.snapshot();
+		final AffineTransform3D screenTransform = snapshot.getViewerTransform();
+		final Interpolation interpolation = snapshot.getInterpolation();
+		final Dimensions screen = screenSize.get();
+		final int window;
+		final int direction;
+		synchronized ( this )
+		{
+			window = prefetchWindow;
+			direction = this.direction;
+		}
+		for ( int i = 1; i <= window; ++i )
+		{
+			final int timepoint = getTimepoint( t, i * direction );
+			if ( timepoint < 0 || timepoint == t )
+				break;
+			for ( final SourceAndConverter< ? > source : snapshot.getVisibleAndPresentSources() )
+			{
+				if ( Thread.currentThread().isInterrupted() )
+					return;
+				prefetch( timepoint, interpolation, getRenderedSource( source ), screenTransform, screen );
+			}
+		}
+	}
+
+	private static void prefetch( final int timepoint, final Interpolation interpolation, final Source< ? > source, final AffineTransform3D screenTransform, final Dimensions screen )
+	{
+		if ( !source.isPresent( timepoint ) )
+			return;
+		final int coarsest = source.getNumMipmapLevels() - 1;
+		final int best = MipmapTransforms.getBestMipMapLevel( screenTransform, source, timepoint );
+		ProjectorFactory.prefetch( timepoint, interpolation, source, screenTransform, coarsest, new CacheHints( LoadingStrategy.VOLATILE, 0, false ), screen );
+		if ( best != coarsest )
+			ProjectorFactory.prefetch( timepoint, interpolation, source, screenTransform, best, new CacheHints( LoadingStrategy.VOLATILE, coarsest - best, false ), screen );
+	}
+
+	private Source< ? > getRenderedSource( final SourceAndConverter< ? > source )
+	{
+		if ( useVolatileIfAvailable && source.asVolatile() != null )
+			return source.asVolatile().getSpimSource();
+		return source.getSpimSource();
+	}
+}
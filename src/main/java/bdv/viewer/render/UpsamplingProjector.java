@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.util.StopWatch;
+
+/**
+ * A {@link VolatileProjector} that renders a source into an image that is
+ * coarser than its target image, and upsamples the result (nearest neighbor)
+ * to the target image. This is used to render expensive sources at a coarser
+ * screen scale than the other sources of a frame, before accumulating the
+ * source images.
+ * <p>
+ * The coarse image covers the same screen area as the target image, with
+ * pixel centers placed like the target images of {@link ScreenScales}.
+ */
+class UpsamplingProjector implements VolatileProjector
+{
+	/**
+	 * Renders the coarse image.
+	 */
+	private final VolatileProjector projector;
+
+	private final int[] source;
+
+	private final int sourceWidth;
+
+	private final int sourceHeight;
+
+	private final int[] target;
+
+	private final int targetWidth;
+
+	private final int targetHeight;
+
+	/**
+	 * For each target x, the x coordinate of the nearest coarse pixel.
+	 */
+	private final int[] sourceX;
+
+	/**
+	 * For each target y, the y coordinate of the nearest coarse pixel.
+	 */
+	private final int[] sourceY;
+
+	private long lastFrameRenderNanoTime;
+
+	/**
+	 * @param projector
+	 *     renders {@code source}
+	 * @param source
+	 *     coarse image, must be an {@code ArrayImg<ARGBType>}
+	 * @param target
+	 *     target image, must be an {@code ArrayImg<ARGBType>}
+	 * @param scale
+	 *     scale factor from target to {@code source} coordinates
+	 */
+	UpsamplingProjector(
+			final VolatileProjector projector,
+			final RandomAccessibleInterval< ARGBType > source,
+			final RandomAccessibleInterval< ARGBType > target,
+			final double scale )
+	{
+		this.projector = projector;
+		this.source = ProjectorUtils.getARGBArrayImgData( source );
+		this.target = ProjectorUtils.getARGBArrayImgData( target );
+		if ( this.source == null || this.target == null )
+			throw new IllegalArgumentException( "source and target must be ArrayImg<ARGBType>" );
+		sourceWidth = ( int ) source.dimension( 0 );
+		sourceHeight = ( int ) source.dimension( 1 );
+		targetWidth = ( int ) target.dimension( 0 );
+		targetHeight = ( int ) target.dimension( 1 );
+		sourceX = nearest( targetWidth, sourceWidth, scale );
+		sourceY = nearest( targetHeight, sourceHeight, scale );
+		lastFrameRenderNanoTime = -1;
+	}
+
+	private static int[] nearest( final int targetSize, final int sourceSize, final double scale )
+	{
+		final int[] nearest = new int[ targetSize ];
+		for ( int x = 0; x < targetSize; ++x )
+			nearest[ x ] = Math.min( sourceSize - 1, ( int ) ( scale * ( x + 0.5 ) ) );
+		return nearest;
+	}
+
+	@Override
+	public boolean map( final boolean clearUntouchedTargetPixels )
+	{
+		final StopWatch stopWatch = StopWatch.createAndStart();
+		if ( !projector.map( clearUntouchedTargetPixels ) )
+			return false;
+
+		int o = 0;
+		for ( int y = 0; y < targetHeight; ++y )
+		{
+			final int sourceRow = sourceY[ y ] * sourceWidth;
+			for ( int x = 0; x < targetWidth; ++x )
+				target[ o++ ] = source[ sourceRow + sourceX[ x ] ];
+		}
+
+		lastFrameRenderNanoTime = stopWatch.nanoTime();
+		return true;
+	}
+
+	@Override
+	public void cancel()
+	{
+		projector.cancel();
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return projector.isValid();
+	}
+
+	@Override
+	public long getNumInvalidPixels()
+	{
+		final long n = projector.getNumInvalidPixels();
+		if ( n <= 0 )
+			return n;
+		// each coarse pixel covers about this many target pixels
+		final double ratio = ( double ) targetWidth * targetHeight / ( ( double ) sourceWidth * sourceHeight );
+		return ( long ) Math.ceil( n * ratio );
+	}
+}
@@ -33,6 +33,7 @@ import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.ViewerState;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import net.imglib2.FinalRealInterval;
@@ -65,56 +66,117 @@ class VisibilityUtils
 	{
 		result.clear();
 
-		final int screenMinX = 0;
-		final int screenMinY = 0;
-		final int screenMaxX = screenScale.width() - 1;
-		final int screenMaxY = screenScale.height() - 1;
-
 		final AffineTransform3D screenTransform = viewerState.getViewerTransform();
 		screenTransform.preConcatenate( screenScale.scaleTransform() );
 
-		final AffineTransform3D sourceToScreen = new AffineTransform3D();
-		final double[] sourceMin = new double[ 3 ];
-		final double[] sourceMax = new double[ 3 ];
-
 		final Set< SourceAndConverter< ? > > sources = viewerState.getVisibleAndPresentSources();
 		final int t = viewerState.getCurrentTimepoint();
 		final double expand = viewerState.getInterpolation() == Interpolation.NEARESTNEIGHBOR ? 0.5 : 1.0;
 
 		for ( final SourceAndConverter< ? > source : sources )
-		{
-			if( !source.getSpimSource().doBoundingBoxCulling() )
-			{
+			if ( isOnScreen( source.getSpimSource(), t, screenTransform, screenScale, expand ) )
 				result.add( source );
-				continue;
-			}
-
-			final Source< ? > spimSource = source.getSpimSource();
-			final int level = MipmapTransforms.getBestMipMapLevel( screenTransform, spimSource, t );
-			spimSource.getSourceTransform( t, level, sourceToScreen );
-			sourceToScreen.preConcatenate( screenTransform );
-
-			final Interval interval = spimSource.getSource( t, level );
-			for ( int d = 0; d < 3; d++ )
-			{
-				sourceMin[ d ] = interval.realMin( d ) - expand;
-				sourceMax[ d ] = interval.realMax( d ) + expand;
-			}
-			final FinalRealInterval bb = sourceToScreen.estimateBounds( new FinalRealInterval( sourceMin, sourceMax ) );
-
-			if ( bb.realMax( 0 ) >= screenMinX
-					&& bb.realMin( 0 ) <= screenMaxX
-					&& bb.realMax( 1 ) >= screenMinY
-					&& bb.realMin( 1 ) <= screenMaxY
-					&& bb.realMax( 2 ) >= 0
-					&& bb.realMin( 2 ) <= 0 )
-			{
-				result.add( source );
-			}
+
+		result.sort( viewerState.sourceOrder() );
+	}
+
+	/**
+	 * Compute a list of sources are currently visible on screen, like
+	 * {@link #computeVisibleSourcesOnScreen(ViewerState, ScreenScales.ScreenScale, List)},
+	 * but only test the sources that are found by the given {@code index}.
+	 * The {@code index} is only used if the {@code ViewerState} has at least
+	 * {@link SourceBoundsIndex#MIN_NUM_SOURCES} sources.
+	 *
+	 * @param viewerState
+	 * 		specifies sources, transform, and current timepoint
+	 * @param screenScale
+	 * 		specifies screen size and scale transform
+	 * @param index
+	 * 		spatial index over the bounding boxes of sources
+	 * @param sourcesVersion
+	 * 		the {@link SourceBoundsIndex#getSourcesVersion() sources version}
+	 * 		of the {@code index} when {@code viewerState} was taken
+	 * @param result
+	 * 		list of currently visible sources is stored here
+	 */
+	static void computeVisibleSourcesOnScreen(
+			final ViewerState viewerState,
+			final ScreenScales.ScreenScale screenScale,
+			final SourceBoundsIndex index,
+			final long sourcesVersion,
+			final List< SourceAndConverter< ? > > result )
+	{
+		final List< SourceAndConverter< ? > > sources = viewerState.getSources();
+		if ( sources.size() < SourceBoundsIndex.MIN_NUM_SOURCES )
+		{
+			computeVisibleSourcesOnScreen( viewerState, screenScale, result );
+			return;
 		}
 
+		final AffineTransform3D screenTransform = viewerState.getViewerTransform();
+		screenTransform.preConcatenate( screenScale.scaleTransform() );
+
+		final int t = viewerState.getCurrentTimepoint();
+		final double expand = viewerState.getInterpolation() == Interpolation.NEARESTNEIGHBOR ? 0.5 : 1.0;
+
+		final List< SourceAndConverter< ? > > candidates = new ArrayList<>();
+		index.getCandidates( sources, sourcesVersion, t, screenTransform, screenScale.width(), screenScale.height(), candidates );
+
+		result.clear();
+		for ( final SourceAndConverter< ? > source : candidates )
+			if ( viewerState.isSourceVisibleAndPresent( source )
+					&& isOnScreen( source.getSpimSource(), t, screenTransform, screenScale, expand ) )
+				result.add( source );
+
 		result.sort( viewerState.sourceOrder() );
 	}
+
+	/**
+	 * Check whether the bounding box of {@code spimSource} at timepoint
+	 * {@code t}, transformed to screen coordinates, overlaps the screen area
+	 * in the {@code z=0} plane. Sources that don't do bounding box culling are
+	 * always on screen.
+	 *
+	 * @param expand
+	 * 		how much the source bounding box is expanded (in voxels)
+	 */
+	private static boolean isOnScreen(
+			final Source< ? > spimSource,
+			final int t,
+			final AffineTransform3D screenTransform,
+			final ScreenScales.ScreenScale screenScale,
+			final double expand )
+	{
+		if ( !spimSource.doBoundingBoxCulling() )
+			return true;
+
+		final int screenMinX = 0;
+		final int screenMinY = 0;
+		final int screenMaxX = screenScale.width() - 1;
+		final int screenMaxY = screenScale.height() - 1;
+
+		final int level = MipmapTransforms.getBestMipMapLevel( screenTransform, spimSource, t );
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		spimSource.getSourceTransform( t, level, sourceToScreen );
+		sourceToScreen.preConcatenate( screenTransform );
+
+		final double[] sourceMin = new double[ 3 ];
+		final double[] sourceMax = new double[ 3 ];
+		final Interval interval = spimSource.getSource( t, level );
+		for ( int d = 0; d < 3; d++ )
+		{
+			sourceMin[ d ] = interval.realMin( d ) - expand;
+			sourceMax[ d ] = interval.realMax( d ) + expand;
+		}
+		final FinalRealInterval bb = sourceToScreen.estimateBounds( new FinalRealInterval( sourceMin, sourceMax ) );
+
+		return bb.realMax( 0 ) >= screenMinX
+				&& bb.realMin( 0 ) <= screenMaxX
+				&& bb.realMax( 1 ) >= screenMinY
+				&& bb.realMin( 1 ) <= screenMaxY
+				&& bb.realMax( 2 ) >= 0
+				&& bb.realMin( 2 ) <= 0;
+	}
 	// TODO: Eventually, for thousands of sources, this could be moved to ViewerState,
 	//  in order to avoid creating a new intermediate HashSet for every
 	//  viewerState.getVisibleAndPresentSources().
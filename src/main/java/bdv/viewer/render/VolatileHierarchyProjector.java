@@ -31,11 +31,10 @@ package bdv.viewer.render;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
@@ -47,7 +46,9 @@ import net.imglib2.converter.Converter;
 import net.imglib2.type.operators.SetZero;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.StopWatch;
-import net.imglib2.view.Views;
+
+import bdv.viewer.render.TileScheduler.GridCell;
+import bdv.viewer.render.TileScheduler.GridCellPart;
 
 /**
  * {@link VolatileProjector} for a hierarchy of {@link Volatile} inputs.  After each
@@ -57,19 +58,30 @@ import net.imglib2.view.Views;
  * @author Stephan Saalfeld
  * @author Tobias Pietzsch
  */
-public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZero > implements VolatileProjector
+public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZero > implements TiledProjector
 {
 	/**
 	 * A converter from the source pixel type to the target pixel type.
 	 */
 	private final Converter< ? super A, B > converter;
 
+	/**
+	 * Copies lines of pixels from a source resolution level to the target.
+	 */
+	private final HierarchyLineMapper< A, B > lineMapper;
+
 	/**
 	 * The target interval. Pixels of the target interval should be set by
 	 * {@link #map}
 	 */
 	private final RandomAccessibleInterval< B > target;
 
+	/**
+	 * The underlying {@code int[]} array of {@link #target}, if it is a
+	 * standard {@code ArrayImg<ARGBType>}. Otherwise {@code null}.
+	 */
+	private final int[] targetData;
+
 	/**
 	 * List of source resolutions starting with the optimal resolution at index
 	 * 0. During each {@link #map(boolean)}, for every pixel, resolution levels
@@ -82,9 +94,32 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 	 * resolution level that has provided a valid value. Only better (lower
 	 * index) resolutions are re-tried in successive {@link #map(boolean)}
 	 * calls.
+	 * <p>
+	 * The mask of a tile is only valid if the {@link GridCell#generation} of
+	 * the tile matches {@link #generation}. Otherwise, it is cleared before
+	 * the tile is rendered.
 	 */
 	private final byte[] mask;
 
+	/**
+	 * If non-null, the raw (unconverted) value of every target pixel is
+	 * recorded here, when the pixel is written. See
+	 * {@link #setRawValueArray(float[])}.
+	 */
+	private float[] rawValues;
+
+	/**
+	 * Incremented by {@link #clearMask()}, to invalidate the {@link #mask} of
+	 * all tiles without touching the mask array.
+	 */
+	private int generation;
+
+	/**
+	 * Rendering state for every tile of the {@link TileScheduler} grid, in
+	 * row-major order.
+	 */
+	private final TileState[] tiles;
+
 	/**
 	 * {@code true} iff all target pixels were rendered with valid data from the
 	 * optimal resolution level (level {@code 0}).
@@ -93,7 +128,8 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 
 	/**
 	 * How many levels (starting from level {@code 0}) have to be re-rendered in
-	 * the next rendering pass, i.e., {@code map()} call.
+	 * the next rendering pass, i.e., {@code map()} call, or
+	 * {@link #beginPass()} ... {@link #endPass()} sequence.
 	 */
 	private int numInvalidLevels;
 
@@ -126,10 +162,23 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 	private long lastFrameIoNanoTime; // TODO move to derived implementation for local sources only
 
 	/**
-	 * temporary variable to store the number of invalid pixels in the current
-	 * rendering pass.
+	 * Collects the number of levels that have to be re-rendered in the next
+	 * pass, while tiles are rendered in the current pass. This is the maximum
+	 * over all tiles.
+	 */
+	private final AtomicInteger nextNumInvalidLevels = new AtomicInteger();
+
+	/**
+	 * Number of target pixels that were not filled from valid data at the
+	 * optimal resolution level in the last rendering pass.
+	 */
+	private volatile long numInvalidPixels;
+
+	/**
+	 * Collects the number of invalid pixels over all tiles rendered in the
+	 * current pass.
 	 */
-	private final AtomicInteger numInvalidPixels = new AtomicInteger();
+	private final AtomicLong nextNumInvalidPixels = new AtomicLong();
 
 	/**
 	 * Flag to indicate that someone is trying to {@link #cancel()} rendering.
@@ -153,9 +202,29 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 			final byte[] maskArray,
 			final int numThreads,
 			final ExecutorService executorService )
+	{
+		this( sources, converter, HierarchyLineMapper.create( null, converter.getClass(), null ), target, maskArray, numThreads, executorService );
+	}
+
+	/**
+	 * Create a projector that uses the specified {@code lineMapper} for the
+	 * inner loop. Typically, this is a {@link HierarchyLineMapper#create
+	 * specialized} instance for the source type, converter, and source
+	 * {@code RandomAccess} class.
+	 */
+	public VolatileHierarchyProjector(
+			final List< ? extends RandomAccessible< A > > sources,
+			final Converter< ? super A, B > converter,
+			final HierarchyLineMapper< A, B > lineMapper,
+			final RandomAccessibleInterval< B > target,
+			final byte[] maskArray,
+			final int numThreads,
+			final ExecutorService executorService )
 	{
 		this.converter = converter;
+		this.lineMapper = lineMapper;
 		this.target = target;
+		targetData = ProjectorUtils.getARGBArrayImgData( target );
 		this.sources = new ArrayList<>( sources );
 		numInvalidLevels = sources.size();
 		mask = maskArray;
@@ -172,7 +241,10 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 		this.numThreads = numThreads;
 		this.executorService = executorService;
 
+		tiles = TileScheduler.createGridCells( ( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ), TileState[]::new, TileState::new );
+
 		lastFrameRenderNanoTime = -1;
+		numInvalidPixels = target.dimension( 0 ) * target.dimension( 1 );
 		clearMask();
 	}
 
@@ -199,36 +271,99 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 		return valid;
 	}
 
+	@Override
+	public long getNumInvalidPixels()
+	{
+		return numInvalidPixels;
+	}
+
+	/**
+	 * Record the raw (unconverted) value of every written target pixel in
+	 * {@code rawValues}, at the same index as in the mask. This allows to
+	 * re-convert the rendered image (e.g., with a {@link RawValueProjector})
+	 * without re-sampling the sources. The value type of the sources must be
+	 * a {@code RealType}.
+	 *
+	 * @param rawValues
+	 *     array with at least as many elements as the target, or {@code null}
+	 *     to stop recording.
+	 */
+	public void setRawValueArray( final float[] rawValues )
+	{
+		this.rawValues = rawValues;
+	}
+
 	/**
-	 * Set all pixels in target to 100% transparent zero, and mask to all
-	 * Integer.MAX_VALUE.
+	 * Mark all pixels as not written yet, that is, set mask to all
+	 * {@code Byte.MAX_VALUE}. This only increments the {@link #generation}.
+	 * The mask of each tile is cleared when the tile is rendered next.
 	 */
 	public void clearMask()
 	{
-		final int size = ( int ) Intervals.numElements( target );
-		Arrays.fill( mask, 0, size, Byte.MAX_VALUE );
+		++generation;
 		numInvalidLevels = sources.size();
 	}
 
 	/**
-	 * Clear target pixels that were never written.
+	 * Set the mask of the grid cell of {@code part} to all
+	 * {@code Byte.MAX_VALUE} and reset the rendering state of {@code tile}.
+	 * This is done when the tile is first rendered after {@link #clearMask()}.
 	 */
-	private void clearUntouchedTargetPixels()
+	private void clearMask( final TileState tile, final GridCellPart part )
 	{
-		final int[] data = ProjectorUtils.getARGBArrayImgData( target );
-		if ( data != null )
+		final int width = ( int ) target.dimension( 0 );
+		for ( int y = part.cellY; y < part.cellEndY; ++y )
+			Arrays.fill( mask, y * width + part.cellX, y * width + part.cellEndX, Byte.MAX_VALUE );
+		tile.numInvalidLevels = sources.size();
+		tile.dense = true;
+	}
+
+	/**
+	 * Clear target pixels of the invalid runs of {@code tile} that were never
+	 * written.
+	 */
+	private void clearUntouchedTargetPixels( final TileState tile )
+	{
+		clearUntouchedTargetPixels( tile.runs, tile.numRuns );
+	}
+
+	/**
+	 * Clear target pixels of the given {@code runs} that were never written.
+	 * {@code runs} are stored as consecutive pairs of (mask index, length).
+	 */
+	private void clearUntouchedTargetPixels( final int[] runs, final int numRuns )
+	{
+		if ( targetData != null )
 		{
-			final int size = ( int ) Intervals.numElements( target );
-			for ( int i = 0; i < size; ++i )
-				if ( mask[ i ] == Byte.MAX_VALUE )
-					data[ i ] = 0;
+			for ( int r = 0; r < numRuns; ++r )
+			{
+				final int offset = runs[ 2 * r ];
+				final int end = offset + runs[ 2 * r + 1 ];
+				for ( int i = offset; i < end; ++i )
+					if ( mask[ i ] == Byte.MAX_VALUE )
+						targetData[ i ] = 0;
+			}
 		}
 		else
 		{
-			int i = 0;
-			for ( final B t : Views.flatIterable( target ) )
-				if ( mask[ i++ ] == Byte.MAX_VALUE )
-					t.setZero();
+			final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
+			final int width = ( int ) target.dimension( 0 );
+			final long[] pos = new long[ 2 ];
+			for ( int r = 0; r < numRuns; ++r )
+			{
+				final int offset = runs[ 2 * r ];
+				final int end = offset + runs[ 2 * r + 1 ];
+				final int y = offset / width;
+				pos[ 0 ] = target.min( 0 ) + offset - y * width;
+				pos[ 1 ] = target.min( 1 ) + y;
+				targetRandomAccess.setPosition( pos );
+				for ( int i = offset; i < end; ++i )
+				{
+					if ( mask[ i ] == Byte.MAX_VALUE )
+						targetRandomAccess.get().setZero();
+					targetRandomAccess.fwd( 0 );
+				}
+			}
 		}
 	}
 
@@ -238,61 +373,20 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 		if ( canceled.get() )
 			return false;
 
-		valid = false;
-
 		final StopWatch stopWatch = StopWatch.createAndStart();
 		final IoStatistics iostat = CacheIoTiming.getIoStatistics();
 		final long startTimeIo = iostat.getIoNanoTime();
 		final long startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
 
+		final int targetWidth = ( int ) target.dimension( 0 );
 		final int targetHeight = ( int ) target.dimension( 1 );
-		final int numTasks = numThreads <= 1 ? 1 : Math.min( numThreads * 10, targetHeight );
-		final double taskHeight = ( double ) targetHeight / numTasks;
-		final int[] taskStartHeights = new int[ numTasks + 1 ];
-		for ( int i = 0; i < numTasks; ++i )
-			taskStartHeights[ i ] = ( int ) ( i * taskHeight );
-		taskStartHeights[ numTasks ] = targetHeight;
-
-		final boolean createExecutor = ( executorService == null );
-		final ExecutorService ex = createExecutor ? Executors.newFixedThreadPool( numThreads ) : executorService;
-		try
-		{
-			/*
-			 * After the for loop, resolutionLevel is the highest (coarsest)
-			 * resolution for which all pixels could be filled from valid data. This
-			 * means that in the next pass, i.e., map() call, levels up to
-			 * resolutionLevel have to be re-rendered.
-			 */
-			int resolutionLevel;
-			for ( resolutionLevel = 0; resolutionLevel < numInvalidLevels; ++resolutionLevel )
-			{
-				final List< Callable< Void > > tasks = new ArrayList<>( numTasks );
-				for ( int i = 0; i < numTasks; ++i )
-					tasks.add( createMapTask( ( byte ) resolutionLevel, taskStartHeights[ i ], taskStartHeights[ i + 1 ] ) );
-				numInvalidPixels.set( 0 );
-				try
-				{
-					ex.invokeAll( tasks );
-				}
-				catch ( final InterruptedException e )
-				{
-					Thread.currentThread().interrupt();
-				}
-				if ( canceled.get() )
-					return false;
-				if ( numInvalidPixels.get() == 0 )
-					// if this pass was all valid
-					numInvalidLevels = resolutionLevel;
-			}
-		}
-		finally
-		{
-			if ( createExecutor )
-				ex.shutdown();
-		}
 
-		if ( clearUntouchedTargetPixels && !canceled.get() )
-			clearUntouchedTargetPixels();
+		beginPass();
+		TileScheduler.forEachTile( targetWidth, targetHeight, numThreads, executorService,
+				( startX, startY, endX, endY ) -> mapTile( startX, startY, endX, endY, clearUntouchedTargetPixels ) );
+
+		if ( !endPass() )
+			return false;
 
 		final long lastFrameTime = stopWatch.nanoTime();
 		lastFrameIoNanoTime = iostat.getIoNanoTime() - startTimeIo;
@@ -300,22 +394,192 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 //		System.out.println( "lastFrameTime = " + lastFrameTime / 1000000 );
 //		System.out.println( "lastFrameRenderNanoTime = " + lastFrameRenderNanoTime / 1000000 );
 
-		valid = numInvalidLevels == 0;
-
 		return !canceled.get();
 	}
 
+	@Override
+	public void beginPass()
+	{
+		valid = false;
+		nextNumInvalidLevels.set( 0 );
+		nextNumInvalidPixels.set( 0 );
+	}
+
+	/**
+	 * Render the tile from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive). Resolution levels are tried successively, starting from the
+	 * optimal level {@code 0}, until all pixels of the tile have been filled
+	 * from valid data (or until all {@link TileState#numInvalidLevels} of the
+	 * tile have been tried). The number of levels that will have to be
+	 * re-rendered in the next pass is recorded in {@link #nextNumInvalidLevels}.
+	 * <p>
+	 * The first pass after {@link #clearMask()} visits all pixels of the tile.
+	 * Subsequent passes only visit the runs of pixels that have not been
+	 * filled from level {@code 0} yet.
+	 * <p>
+	 * The tile is split along the {@link TileScheduler} grid with
+	 * {@link TileScheduler#DEFAULT_TILE_SIZE}. Only parts that cover a whole
+	 * grid cell use the recorded runs. Other parts are rendered densely.
+	 */
+	@Override
+	public void mapTile( final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels )
+	{
+		TileScheduler.forEachGridCell( startX, startY, endX, endY,
+				( int ) target.dimension( 0 ), ( int ) target.dimension( 1 ),
+				tiles, generation, this::clearMask,
+				( tile, part ) -> {
+					if ( canceled.get() )
+						return false;
+					if ( part.isWholeCell() )
+						mapGridTile( tile, part.x0, part.y0, part.x1, part.y1, clearUntouchedTargetPixels );
+					else
+						mapPartialTile( tile, part.x0, part.y0, part.x1, part.y1, clearUntouchedTargetPixels );
+					return true;
+				} );
+	}
+
+	/**
+	 * Render {@code tile}, which covers a whole cell of the
+	 * {@link TileScheduler} grid, from {@code (startX, startY)} up to
+	 * {@code (endX, endY)} (exclusive).
+	 */
+	private void mapGridTile( final TileState tile, final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels )
+	{
+		if ( tile.numInvalidLevels == 0 )
+			return;
+
+		/*
+		 * After the for loop, resolutionLevel is the highest (coarsest)
+		 * resolution for which all pixels of the tile could be filled from
+		 * valid data. This means that in the next pass, levels up to
+		 * resolutionLevel have to be re-rendered.
+		 */
+		int resolutionLevel;
+		for ( resolutionLevel = 0; resolutionLevel < tile.numInvalidLevels; ++resolutionLevel )
+		{
+			final int numInvalidPixels = tile.dense
+					? map( ( byte ) resolutionLevel, startX, startY, endX, endY )
+					: map( ( byte ) resolutionLevel, tile );
+			if ( canceled.get() )
+				return;
+			if ( numInvalidPixels == 0 )
+				// if this pass was all valid
+				break;
+		}
+		tile.numInvalidLevels = resolutionLevel;
+		nextNumInvalidLevels.accumulateAndGet( resolutionLevel, Math::max );
+
+		collectInvalidRuns( tile, startX, startY, endX, endY );
+		nextNumInvalidPixels.addAndGet( tile.numInvalidPixels );
+		if ( clearUntouchedTargetPixels )
+			clearUntouchedTargetPixels( tile );
+	}
+
+	/**
+	 * Render the part from {@code (startX, startY)} up to {@code (endX, endY)}
+	 * (exclusive) of the grid cell of {@code tile}. All pixels of the part are
+	 * visited. The recorded runs of {@code tile} are not valid afterwards, so
+	 * the next pass over the whole cell visits all its pixels again.
+	 */
+	private void mapPartialTile( final TileState tile, final int startX, final int startY, final int endX, final int endY, final boolean clearUntouchedTargetPixels )
+	{
+		final int numLevels = sources.size();
+		int resolutionLevel;
+		for ( resolutionLevel = 0; resolutionLevel < numLevels; ++resolutionLevel )
+		{
+			final int numInvalidPixels = map( ( byte ) resolutionLevel, startX, startY, endX, endY );
+			if ( canceled.get() )
+				return;
+			if ( numInvalidPixels == 0 )
+				break;
+		}
+		tile.numInvalidLevels = Math.max( tile.numInvalidLevels, resolutionLevel );
+		tile.dense = true;
+		nextNumInvalidLevels.accumulateAndGet( resolutionLevel, Math::max );
+
+		final int width = ( int ) target.dimension( 0 );
+		final int numRows = endY - startY;
+		final int[] rows = new int[ 2 * numRows ];
+		int numInvalidPixels = 0;
+		for ( int y = startY; y < endY; ++y )
+		{
+			final int offset = y * width;
+			rows[ 2 * ( y - startY ) ] = offset + startX;
+			rows[ 2 * ( y - startY ) + 1 ] = endX - startX;
+			for ( int i = offset + startX; i < offset + endX; ++i )
+				if ( mask[ i ] != 0 )
+					++numInvalidPixels;
+		}
+		nextNumInvalidPixels.addAndGet( numInvalidPixels );
+		if ( clearUntouchedTargetPixels )
+			clearUntouchedTargetPixels( rows, numRows );
+	}
+
 	/**
-	 * @return a {@code Callable} that runs
-	 * {@code map(resolutionIndex, startHeight, endHeight)}
+	 * Replace the invalid runs of {@code tile} by the runs of pixels that
+	 * still have {@code mask > 0}. If the tile was rendered densely, all
+	 * pixels of the tile are scanned. Otherwise, only the previous runs are
+	 * scanned.
 	 */
-	private Callable< Void > createMapTask( final byte resolutionIndex, final int startHeight, final int endHeight )
+	private void collectInvalidRuns( final TileState tile, final int startX, final int startY, final int endX, final int endY )
 	{
-		return Executors.callable( () -> map( resolutionIndex, startHeight, endHeight ), null );
+		final int[] previousRuns = tile.runs;
+		final int numPreviousRuns = tile.numRuns;
+		final boolean dense = tile.dense;
+		tile.swapRuns();
+
+		if ( tile.numInvalidLevels == 0 )
+			return;
+
+		if ( dense )
+		{
+			final int width = ( int ) target.dimension( 0 );
+			for ( int y = startY; y < endY; ++y )
+				addInvalidRuns( tile, y * width + startX, y * width + endX );
+		}
+		else
+		{
+			for ( int r = 0; r < numPreviousRuns; ++r )
+			{
+				final int offset = previousRuns[ 2 * r ];
+				addInvalidRuns( tile, offset, offset + previousRuns[ 2 * r + 1 ] );
+			}
+		}
 	}
 
 	/**
-	 * Copy lines from {@code y = startHeight} up to {@code endHeight}
+	 * Add runs of pixels with {@code mask > 0} in the mask index range
+	 * {@code [from, to)} to {@code tile}.
+	 */
+	private void addInvalidRuns( final TileState tile, final int from, final int to )
+	{
+		int i = from;
+		while ( i < to )
+		{
+			while ( i < to && mask[ i ] == 0 )
+				++i;
+			final int runStart = i;
+			while ( i < to && mask[ i ] != 0 )
+				++i;
+			if ( i > runStart )
+				tile.addRun( runStart, i - runStart );
+		}
+	}
+
+	@Override
+	public boolean endPass()
+	{
+		if ( canceled.get() )
+			return false;
+
+		numInvalidLevels = nextNumInvalidLevels.get();
+		valid = numInvalidLevels == 0;
+		numInvalidPixels = nextNumInvalidPixels.get();
+		return true;
+	}
+
+	/**
+	 * Copy the tile from {@code (startX, startY)} up to {@code (endX, endY)}
 	 * (exclusive) from source {@code resolutionIndex} to target. Check after
 	 * each line whether rendering was {@link #cancel() canceled}.
 	 * <p>
@@ -328,52 +592,145 @@ public class VolatileHierarchyProjector< A extends Volatile< ? >, B extends SetZ
 	 *
 	 * @param resolutionIndex
 	 *     index of source resolution level
-	 * @param startHeight
+	 * @param startX
+	 *     start of column range to copy (relative to target min coordinate)
+	 * @param startY
 	 *     start of line range to copy (relative to target min coordinate)
-	 * @param endHeight
+	 * @param endX
+	 *     end (exclusive) of column range to copy (relative to target min
+	 *     coordinate)
+	 * @param endY
 	 *     end (exclusive) of line range to copy (relative to target min
 	 *     coordinate)
+	 *
+	 * @return the number of invalid pixels in the tile, i.e., pixels that
+	 * could not be filled from {@code resolutionIndex} or a previous pass.
 	 */
-	private void map( final byte resolutionIndex, final int startHeight, final int endHeight )
+	private int map( final byte resolutionIndex, final int startX, final int startY, final int endX, final int endY )
 	{
-		if ( canceled.get() )
-			return;
+		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
+		final RandomAccess< A > sourceRandomAccess = sources.get( resolutionIndex ).randomAccess( sourceInterval );
+		final int width = ( int ) target.dimension( 0 );
+		final long[] smin = Intervals.minAsLongArray( sourceInterval );
+		int myNumInvalidPixels = 0;
+
+		final int targetMinX = ( int ) target.min( 0 );
+		final int targetMinY = ( int ) target.min( 1 );
+		for ( int y = startY; y < endY; ++y )
+		{
+			if ( canceled.get() )
+				break;
 
+			smin[ 0 ] = startX + targetMinX;
+			smin[ 1 ] = y + targetMinY;
+			sourceRandomAccess.setPosition( smin );
+			targetRandomAccess.setPosition( smin );
+			myNumInvalidPixels += rawValues == null
+					? lineMapper.mapLine( sourceRandomAccess, targetRandomAccess, converter, mask, y * width + startX, endX - startX, resolutionIndex )
+					: lineMapper.mapLine( sourceRandomAccess, targetRandomAccess, converter, mask, rawValues, y * width + startX, endX - startX, resolutionIndex );
+		}
+
+		return myNumInvalidPixels;
+	}
+
+	/**
+	 * Copy the invalid runs of {@code tile} from source
+	 * {@code resolutionIndex} to target. Check after each run whether
+	 * rendering was {@link #cancel() canceled}.
+	 *
+	 * @return the number of invalid pixels in the runs, i.e., pixels that
+	 * could not be filled from {@code resolutionIndex} or a previous pass.
+	 *
+	 * @see #map(byte, int, int, int, int)
+	 */
+	private int map( final byte resolutionIndex, final TileState tile )
+	{
 		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
 		final RandomAccess< A > sourceRandomAccess = sources.get( resolutionIndex ).randomAccess( sourceInterval );
 		final int width = ( int ) target.dimension( 0 );
 		final long[] smin = Intervals.minAsLongArray( sourceInterval );
 		int myNumInvalidPixels = 0;
 
-		final int targetMin = ( int ) target.min( 1 );
-		for ( int y = startHeight; y < endHeight; ++y )
+		final int targetMinX = ( int ) target.min( 0 );
+		final int targetMinY = ( int ) target.min( 1 );
+		final int[] runs = tile.runs;
+		for ( int r = 0; r < tile.numRuns; ++r )
 		{
 			if ( canceled.get() )
-				return;
+				break;
 
-			smin[ 1 ] = y + targetMin;
+			final int offset = runs[ 2 * r ];
+			final int y = offset / width;
+			smin[ 0 ] = offset - y * width + targetMinX;
+			smin[ 1 ] = y + targetMinY;
 			sourceRandomAccess.setPosition( smin );
 			targetRandomAccess.setPosition( smin );
-			final int mi = y * width;
-			for ( int x = 0; x < width; ++x )
-			{
-				if ( mask[ mi + x ] > resolutionIndex )
-				{
-					final A a = sourceRandomAccess.get();
-					final boolean v = a.isValid();
-					if ( v )
-					{
-						converter.convert( a, targetRandomAccess.get() );
-						mask[ mi + x ] = resolutionIndex;
-					}
-					else
-						++myNumInvalidPixels;
-				}
-				sourceRandomAccess.fwd( 0 );
-				targetRandomAccess.fwd( 0 );
-			}
+			myNumInvalidPixels += rawValues == null
+					? lineMapper.mapLine( sourceRandomAccess, targetRandomAccess, converter, mask, offset, runs[ 2 * r + 1 ], resolutionIndex )
+					: lineMapper.mapLine( sourceRandomAccess, targetRandomAccess, converter, mask, rawValues, offset, runs[ 2 * r + 1 ], resolutionIndex );
 		}
 
-		numInvalidPixels.addAndGet( myNumInvalidPixels );
+		return myNumInvalidPixels;
+	}
+
+	/**
+	 * Rendering state of one screen tile.
+	 */
+	private static final class TileState extends GridCell
+	{
+		/**
+		 * How many levels (starting from level {@code 0}) have to be
+		 * re-rendered for this tile in the next pass.
+		 */
+		int numInvalidLevels;
+
+		/**
+		 * Whether all pixels of the tile have to be visited in the next pass,
+		 * instead of only the {@link #runs}.
+		 */
+		boolean dense = true;
+
+		/**
+		 * Runs of pixels with {@code mask > 0}, i.e., pixels that still have
+		 * to be re-rendered. Stored as consecutive pairs of (mask index,
+		 * length).
+		 */
+		int[] runs = new int[ 0 ];
+
+		int numRuns;
+
+		/**
+		 * Total length of all {@link #runs}.
+		 */
+		int numInvalidPixels;
+
+		/**
+		 * Spare array for the next {@link #runs}, to avoid re-allocation.
+		 */
+		private int[] spareRuns = new int[ 0 ];
+
+		/**
+		 * Start a new, empty list of runs. The previous {@link #runs} array
+		 * remains valid until the next {@code swapRuns()}.
+		 */
+		void swapRuns()
+		{
+			final int[] tmp = runs;
+			runs = spareRuns;
+			spareRuns = tmp;
+			numRuns = 0;
+			numInvalidPixels = 0;
+			dense = false;
+		}
+
+		void addRun( final int offset, final int length )
+		{
+			if ( 2 * numRuns + 2 > runs.length )
+				runs = Arrays.copyOf( runs, Math.max( 32, 2 * runs.length ) );
+			runs[ 2 * numRuns ] = offset;
+			runs[ 2 * numRuns + 1 ] = length;
+			++numRuns;
+			numInvalidPixels += length;
+		}
 	}
 }
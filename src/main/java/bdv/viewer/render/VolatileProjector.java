@@ -69,4 +69,17 @@ public interface VolatileProjector
 	 * @return true if all mapped pixels were valid.
 	 */
 	boolean isValid();
+
+	/**
+	 * How many target pixels were not rendered from valid data at the optimal
+	 * resolution level in the last {@link #map()}. Projectors that do not
+	 * count pixels return {@code 0} if they are {@link #isValid() valid} and
+	 * {@code -1} otherwise.
+	 *
+	 * @return number of invalid target pixels, or {@code -1} if unknown.
+	 */
+	default long getNumInvalidPixels()
+	{
+		return isValid() ? 0 : -1;
+	}
 }
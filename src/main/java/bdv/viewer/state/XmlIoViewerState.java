@@ -97,13 +97,23 @@ public class XmlIoViewerState
 	 */
 	public void restoreFromXml( final Element elem, final ViewerState state )
 	{
-		restoreSourcesFromXml( elem.getChild( VIEWERSTATE_SOURCES_TAG ), state.getSources() );
-		restoreSourceGroupsFromXml( elem.getChild( VIEWERSTATE_GROUPS_TAG ), state );
-		state.setDisplayMode( displayModeFromXml( elem.getChild( VIEWERSTATE_DISPLAYMODE_TAG ) ) );
-		state.setInterpolation( interpolationModeFromXml( elem.getChild( VIEWERSTATE_INTERPOLATION_TAG ) ) );
-		state.setCurrentSource( XmlHelpers.getInt( elem, VIEWERSTATE_CURRENTSOURCE_TAG ) );
-		state.setCurrentGroup( XmlHelpers.getInt( elem, VIEWERSTATE_CURRENTGROUP_TAG ) );
-		state.setCurrentTimepoint( XmlHelpers.getInt( elem, VIEWERSTATE_CURRENTTIMEPOINT_TAG ) );
+		// emit one set of ViewerStateChange events, instead of one per source and group
+		final bdv.viewer.ViewerState nstate = state.getState();
+		nstate.beginBatch();
+		try
+		{
+			restoreSourcesFromXml( elem.getChild( VIEWERSTATE_SOURCES_TAG ), state.getSources() );
+			restoreSourceGroupsFromXml( elem.getChild( VIEWERSTATE_GROUPS_TAG ), state );
+			state.setDisplayMode( displayModeFromXml( elem.getChild( VIEWERSTATE_DISPLAYMODE_TAG ) ) );
+			state.setInterpolation( interpolationModeFromXml( elem.getChild( VIEWERSTATE_INTERPOLATION_TAG ) ) );
+			state.setCurrentSource( XmlHelpers.getInt( elem, VIEWERSTATE_CURRENTSOURCE_TAG ) );
+			state.setCurrentGroup( XmlHelpers.getInt( elem, VIEWERSTATE_CURRENTGROUP_TAG ) );
+			state.setCurrentTimepoint( XmlHelpers.getInt( elem, VIEWERSTATE_CURRENTTIMEPOINT_TAG ) );
+		}
+		finally
+		{
+			nstate.endBatch();
+		}
 	}
 
 	protected Element sourcesToXml( final List< SourceState< ? > > sources )
@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+public class SharedQueueTest
+{
+	private static final Callable< ? > request = () -> null;
+
+	@Test
+	public void countEnqueuedAndDequeued() throws InterruptedException
+	{
+		// no fetcher threads, requests are only taken by the test
+		final SharedQueue queue = new SharedQueue( 0, 2 );
+		assertEquals( 0, queue.getQueueDepth() );
+
+		queue.put( request, 0, false );
+		queue.put( request, 1, false );
+		queue.put( request, 1, true );
+		assertEquals( 3, queue.getNumEnqueued() );
+		assertEquals( 3, queue.getQueueDepth() );
+
+		queue.take();
+		assertEquals( 1, queue.getNumDequeued() );
+		assertEquals( 2, queue.getQueueDepth() );
+
+		queue.clear();
+		assertEquals( 0, queue.getQueueDepth() );
+
+		queue.put( request, 0, false );
+		assertEquals( 1, queue.getQueueDepth() );
+		queue.take();
+		assertEquals( 0, queue.getQueueDepth() );
+		assertEquals( 4, queue.getNumEnqueued() );
+		assertEquals( 2, queue.getNumDequeued() );
+	}
+
+	@Test
+	public void collectSharedQueues()
+	{
+		final SharedQueue q1 = new SharedQueue( 0 );
+		final SharedQueue q2 = new SharedQueue( 0 );
+		final CacheControl.CacheControls cacheControls = new CacheControl.CacheControls();
+		cacheControls.addCacheControl( q1 );
+		cacheControls.addCacheControl( q2 );
+		cacheControls.addCacheControl( q1 );
+
+		final Set< SharedQueue > queues = Collections.newSetFromMap( new IdentityHashMap<>() );
+		cacheControls.collectSharedQueues( queues );
+		assertEquals( 2, queues.size() );
+	}
+}
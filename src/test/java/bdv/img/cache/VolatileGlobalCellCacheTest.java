@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.img.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+
+import org.junit.Test;
+
+public class VolatileGlobalCellCacheTest
+{
+	/**
+	 * Cells are loaded concurrently by fetcher threads, while a
+	 * {@code CellLoadListener} reads every reported cell (without loading)
+	 * through the volatile image. Every reported cell must already be valid.
+	 */
+	@Test
+	public void testCellsArePublishedBeforeNotification() throws InterruptedException
+	{
+		final VolatileGlobalCellCache cache = new VolatileGlobalCellCache( 1, 4 );
+		final int[] cellDimensions = { 8, 8, 8 };
+		final CellGrid grid = new CellGrid( new long[] { 64, 64, 64 }, cellDimensions );
+		final SimpleCacheArrayLoader< VolatileByteArray > loader = ( pos, dims ) -> {
+			LockSupport.parkNanos( ThreadLocalRandom.current().nextInt( 100_000 ) );
+			return new VolatileByteArray( dims[ 0 ] * dims[ 1 ] * dims[ 2 ], true );
+		};
+		final VolatileCachedCellImg< VolatileUnsignedByteType, VolatileByteArray > img = cache.createImg(
+				grid, 0, 0, 0, new CacheHints( LoadingStrategy.VOLATILE, 0, false ), loader, new VolatileUnsignedByteType() );
+
+		final int numCells = ( int ) grid.getGridDimensions()[ 0 ] * ( int ) grid.getGridDimensions()[ 1 ] * ( int ) grid.getGridDimensions()[ 2 ];
+		final CountDownLatch reported = new CountDownLatch( numCells );
+		final AtomicInteger numInvalid = new AtomicInteger();
+		final CacheHints dontLoad = new CacheHints( LoadingStrategy.DONTLOAD, 0, false );
+		cache.addCellLoadListener( ( g, cell ) -> {
+			final RandomAccess< Cell< VolatileByteArray > > access = img.getCells( dontLoad ).randomAccess();
+			for ( int d = 0; d < 3; ++d )
+				access.setPosition( cell.min( d ) / cellDimensions[ d ], d );
+			if ( !access.get().getData().isValid() )
+				numInvalid.incrementAndGet();
+			reported.countDown();
+		} );
+
+		// enqueue all cells for loading
+		final Cursor< Cell< VolatileByteArray > > cursor = img.getCells( new CacheHints( LoadingStrategy.VOLATILE, 0, false ) ).cursor();
+		while ( cursor.hasNext() )
+			cursor.next();
+
+		assertTrue( "not all loaded cells were reported", reported.await( 10, TimeUnit.SECONDS ) );
+		assertEquals( "cells were reported before they were valid", 0, numInvalid.get() );
+	}
+}
@@ -0,0 +1,192 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bdv.tools.MovieFrameWriter.Compression;
+
+public class MovieFrameWriterTest
+{
+	private static final int WIDTH = 37;
+
+	private static final int HEIGHT = 23;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTripFastRGB() throws IOException
+	{
+		assertRoundTrip( Compression.FAST, BufferedImage.TYPE_INT_RGB );
+	}
+
+	@Test
+	public void testRoundTripFastARGB() throws IOException
+	{
+		assertRoundTrip( Compression.FAST, BufferedImage.TYPE_INT_ARGB );
+	}
+
+	@Test
+	public void testRoundTripNoneRGB() throws IOException
+	{
+		assertRoundTrip( Compression.NONE, BufferedImage.TYPE_INT_RGB );
+	}
+
+	@Test
+	public void testRoundTripNoneARGB() throws IOException
+	{
+		assertRoundTrip( Compression.NONE, BufferedImage.TYPE_INT_ARGB );
+	}
+
+	/**
+	 * A frame that cannot be written makes {@code close()} fail.
+	 */
+	@Test( expected = IOException.class )
+	public void testFailureThrownByClose() throws IOException
+	{
+		final MovieFrameWriter writer = new MovieFrameWriter( Compression.FAST, 2 );
+		writer.write( createImage( BufferedImage.TYPE_INT_RGB ), null, unwritableFile() );
+		writer.close();
+	}
+
+	/**
+	 * A frame that cannot be written makes a later {@code write()} fail. With
+	 * one pending frame, the third {@code write()} can only start after the
+	 * first frame failed, so the second or the third {@code write()} fails.
+	 */
+	@Test
+	public void testFailureThrownByWrite() throws IOException
+	{
+		final MovieFrameWriter writer = new MovieFrameWriter( Compression.FAST, 1, 1 );
+		final BufferedImage image = createImage( BufferedImage.TYPE_INT_RGB );
+		int numWritten = 0;
+		try
+		{
+			writer.write( image, null, unwritableFile() );
+			++numWritten;
+			writer.write( image, null, folder.newFile( "frame1.png" ) );
+			++numWritten;
+			writer.write( image, null, folder.newFile( "frame2.png" ) );
+			++numWritten;
+		}
+		catch ( final IOException e )
+		{
+			// expected
+		}
+		assertTrue( numWritten == 1 || numWritten == 2 );
+
+		boolean failed = false;
+		try
+		{
+			writer.close();
+		}
+		catch ( final IOException e )
+		{
+			failed = true;
+		}
+		assertTrue( failed );
+	}
+
+	/**
+	 * An exception thrown by the overlay is reported as {@code IOException}
+	 * by {@code close()}.
+	 */
+	@Test
+	public void testOverlayFailureThrownByClose() throws IOException
+	{
+		final MovieFrameWriter writer = new MovieFrameWriter( Compression.NONE, 2 );
+		final IllegalStateException cause = new IllegalStateException();
+		writer.write( createImage( BufferedImage.TYPE_INT_RGB ), g -> {
+			throw cause;
+		}, folder.newFile( "frame.png" ) );
+		IOException exception = null;
+		try
+		{
+			writer.close();
+		}
+		catch ( final IOException e )
+		{
+			exception = e;
+		}
+		assertTrue( exception != null );
+		assertTrue( exception.getCause() == cause );
+	}
+
+	private void assertRoundTrip( final Compression compression, final int imageType ) throws IOException
+	{
+		final BufferedImage image = createImage( imageType );
+		final File file = folder.newFile( compression + "-" + imageType + ".png" );
+		MovieFrameWriter.writePng( image, file, compression );
+
+		final BufferedImage read = ImageIO.read( file );
+		assertEquals( WIDTH, read.getWidth() );
+		assertEquals( HEIGHT, read.getHeight() );
+		assertEquals( image.getColorModel().hasAlpha(), read.getColorModel().hasAlpha() );
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+				assertEquals( "pixel (" + x + ", " + y + ")", image.getRGB( x, y ), read.getRGB( x, y ) );
+	}
+
+	/**
+	 * An image where every channel (including alpha, if the image has one)
+	 * varies between pixels.
+	 */
+	private static BufferedImage createImage( final int imageType )
+	{
+		final BufferedImage image = new BufferedImage( WIDTH, HEIGHT, imageType );
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+			{
+				final int a = ( 255 - 7 * x - 3 * y ) & 0xff;
+				final int r = ( 11 * x ) & 0xff;
+				final int g = ( 13 * y ) & 0xff;
+				final int b = ( 5 * x + 17 * y ) & 0xff;
+				image.setRGB( x, y, ( a << 24 ) | ( r << 16 ) | ( g << 8 ) | b );
+			}
+		return image;
+	}
+
+	/**
+	 * A file in a directory that does not exist.
+	 */
+	private File unwritableFile()
+	{
+		return new File( new File( folder.getRoot(), "missing" ), "frame.png" );
+	}
+}
@@ -34,6 +34,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.IntPredicate;
 import mpicbg.spim.data.sequence.VoxelDimensions;
@@ -53,6 +54,7 @@ import static bdv.viewer.ViewerStateChange.DISPLAY_MODE_CHANGED;
 import static bdv.viewer.ViewerStateChange.INTERPOLATION_CHANGED;
 import static bdv.viewer.ViewerStateChange.NUM_GROUPS_CHANGED;
 import static bdv.viewer.ViewerStateChange.NUM_SOURCES_CHANGED;
+import static bdv.viewer.ViewerStateChange.SOURCE_ACTIVITY_CHANGED;
 import static bdv.viewer.ViewerStateChange.VISIBILITY_CHANGED;
 
 public class BasicViewerStateTest
@@ -172,6 +174,88 @@ public class BasicViewerStateTest
 		Assert.assertFalse( state.containsGroup( g1 ) );
 	}
 
+	@Test
+	public void snapshotCopyOnWrite()
+	{
+		final BasicViewerState state = new BasicViewerState();
+		final SourceAndConverter< ? > s0 = createSource();
+		final SourceAndConverter< ? > s1 = createSource();
+		final SourceGroup g = new SourceGroup();
+
+		state.addSource( s0 );
+		state.addGroup( g );
+		state.addSourceToGroup( s0, g );
+		final List< SourceAndConverter< ? > > sources = state.getSources();
+		final Set< SourceAndConverter< ? > > sourcesInGroup = state.getSourcesInGroup( g );
+
+		final ViewerState snapshot = state.snapshot();
+		state.addSource( s1 );
+		state.setSourceActive( s1, true );
+		state.addSourceToGroup( s1, g );
+		state.setGroupName( g, "g" );
+
+		Assert.assertEquals( snapshot.getSources(), Collections.singletonList( s0 ) );
+		Assert.assertTrue( snapshot.getActiveSources().isEmpty() );
+		Assert.assertEquals( snapshot.getSourcesInGroup( g ), Collections.singleton( s0 ) );
+		Assert.assertNull( snapshot.getGroupName( g ) );
+		Assert.assertEquals( snapshot.getSources().indexOf( s1 ), -1 );
+
+		// views obtained before the snapshot still reflect changes
+		Assert.assertEquals( sources, Arrays.asList( s0, s1 ) );
+		Assert.assertEquals( sourcesInGroup, new HashSet<>( Arrays.asList( s0, s1 ) ) );
+		Assert.assertEquals( state.getSources().indexOf( s1 ), 1 );
+	}
+
+	@Test
+	public void synchronizedSnapshotInvalidation()
+	{
+		final SynchronizedViewerState state = new SynchronizedViewerState( new BasicViewerState() );
+		state.setNumTimepoints( 10 );
+		final ViewerState snapshot = state.snapshot();
+		Assert.assertSame( snapshot, state.snapshot() );
+
+		// modifications of the wrapped state (without locking) invalidate the cached snapshot
+		state.getWrappedState().setCurrentTimepoint( 3 );
+		Assert.assertEquals( 0, snapshot.getCurrentTimepoint() );
+		Assert.assertEquals( 3, state.snapshot().getCurrentTimepoint() );
+		Assert.assertEquals( 3, state.getCurrentTimepoint() );
+	}
+
+	@Test
+	public void synchronizedSnapshotConcurrentModification() throws InterruptedException
+	{
+		final int numTimepoints = 1000;
+		for ( int round = 0; round < 20; ++round )
+		{
+			final SynchronizedViewerState state = new SynchronizedViewerState( new BasicViewerState() );
+			state.setNumTimepoints( numTimepoints );
+
+			// readers take (and cache) snapshots, while the wrapped state is
+			// modified without holding the lock
+			final AtomicBoolean stop = new AtomicBoolean();
+			final List< Thread > readers = new ArrayList<>();
+			for ( int i = 0; i < 3; ++i )
+			{
+				final Thread reader = new Thread( () -> {
+					while ( !stop.get() )
+						state.snapshot();
+				} );
+				readers.add( reader );
+				reader.start();
+			}
+			final ViewerState wrapped = state.getWrappedState();
+			for ( int t = 1; t < numTimepoints; ++t )
+				wrapped.setCurrentTimepoint( t );
+			stop.set( true );
+			for ( final Thread reader : readers )
+				reader.join();
+
+			// a snapshot taken before the last modification must not stay cached
+			Assert.assertEquals( numTimepoints - 1, state.snapshot().getCurrentTimepoint() );
+			Assert.assertEquals( numTimepoints - 1, state.getCurrentTimepoint() );
+		}
+	}
+
 	@Test
 	public void addSourceEvents()
 	{
@@ -268,6 +352,47 @@ public class BasicViewerStateTest
 		Assert.assertTrue( r.allReceivedExclusively() );
 	}
 
+	@Test
+	public void batchEvents()
+	{
+		final BasicViewerState state = new BasicViewerState();
+
+		final AtomicInteger numSingleEvents = new AtomicInteger();
+		final List< Set< ViewerStateChange > > batches = new ArrayList<>();
+		state.changeListeners().add( new ViewerStateChangeListener()
+		{
+			@Override
+			public void viewerStateChanged( final ViewerStateChange change )
+			{
+				numSingleEvents.incrementAndGet();
+			}
+
+			@Override
+			public void viewerStateChanged( final Set< ViewerStateChange > changes )
+			{
+				batches.add( changes );
+			}
+		} );
+
+		state.beginBatch();
+		state.beginBatch();
+		for ( int i = 0; i < 10; ++i )
+		{
+			final SourceAndConverter< ? > s = createSource();
+			state.addSource( s );
+			state.setSourceActive( s, true );
+		}
+		state.endBatch();
+		Assert.assertTrue( batches.isEmpty() );
+		state.setDisplayMode( FUSED );
+		state.endBatch();
+
+		Assert.assertEquals( 0, numSingleEvents.get() );
+		Assert.assertEquals( 1, batches.size() );
+		Assert.assertEquals( new ArrayList<>( batches.get( 0 ) ), Arrays.asList(
+				NUM_SOURCES_CHANGED, CURRENT_SOURCE_CHANGED, SOURCE_ACTIVITY_CHANGED, DISPLAY_MODE_CHANGED, VISIBILITY_CHANGED ) );
+	}
+
 	// -- helpers --
 
 	static class ReceiveEvents implements ViewerStateChangeListener
@@ -0,0 +1,273 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.function.LongPredicate;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.interpolation.InterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.ClampingNLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.volatiles.AbstractVolatileRealType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import bdv.img.cache.VolatileCachedCellImg;
+import bdv.viewer.Interpolation;
+
+/**
+ * Compares {@link AffineVolatileCellSampler} with
+ * {@code RealViews.affine} of the interpolated image, extended by a valid
+ * zero value, which is what {@code AbstractSpimSource} renders.
+ */
+public class AffineVolatileCellSamplerTest
+{
+	private static final long[] DIMENSIONS = { 30, 25, 20 };
+
+	/**
+	 * Cell size that does not divide the image size, so that border cells are
+	 * truncated.
+	 */
+	private static final int[] CELL_DIMENSIONS = { 8, 7, 6 };
+
+	/**
+	 * Screen area to compare. This covers the whole image and some
+	 * background around it.
+	 */
+	private static final int SCREEN_MIN = -20;
+
+	private static final int SCREEN_MAX = 80;
+
+	/**
+	 * {@link ClampingNLinearInterpolatorFactory} rounds each of the eight
+	 * weighted values to the integer type before summing them up, while
+	 * {@link AffineVolatileCellSampler} only rounds the sum.
+	 */
+	private static final double NLINEAR_TOLERANCE = 4;
+
+	/**
+	 * Cells with these flat indices are invalid (not loaded yet).
+	 */
+	private static final LongPredicate INVALID_CELLS = i -> i % 7 == 3;
+
+	@Test
+	public void testUnsignedShortNearestNeighbor()
+	{
+		compare( createShortImg(), new VolatileUnsignedShortType(), Interpolation.NEARESTNEIGHBOR );
+	}
+
+	@Test
+	public void testUnsignedShortNLinear()
+	{
+		compare( createShortImg(), new VolatileUnsignedShortType(), Interpolation.NLINEAR );
+	}
+
+	@Test
+	public void testUnsignedByteNearestNeighbor()
+	{
+		compare( createByteImg(), new VolatileUnsignedByteType(), Interpolation.NEARESTNEIGHBOR );
+	}
+
+	@Test
+	public void testUnsignedByteNLinear()
+	{
+		compare( createByteImg(), new VolatileUnsignedByteType(), Interpolation.NLINEAR );
+	}
+
+	private static < T extends AbstractVolatileRealType< ?, T > > void compare(
+			final RandomAccessibleInterval< T > img,
+			final T type,
+			final Interpolation interpolation )
+	{
+		final T zero = type.createVariable();
+		zero.setZero();
+		zero.setValid( true );
+		final InterpolatorFactory< T, RandomAccessible< T > > factory = interpolation == Interpolation.NLINEAR
+				? new ClampingNLinearInterpolatorFactory<>()
+				: new NearestNeighborInterpolatorFactory<>();
+		final double tolerance = interpolation == Interpolation.NLINEAR ? NLINEAR_TOLERANCE : 0;
+
+		final Random random = new Random( 42 );
+		int numInvalid = 0;
+		int numValid = 0;
+		int numBackground = 0;
+		for ( int i = 0; i < 10; ++i )
+		{
+			final AffineTransform3D sourceToScreen = randomSourceToScreen( random );
+			final RandomAccessible< T > expected = RealViews.affine(
+					Views.interpolate( Views.extendValue( img, zero ), factory ),
+					sourceToScreen );
+			final RandomAccessible< T > actual = AffineVolatileCellSampler.create( img, type, interpolation, sourceToScreen );
+			assertNotNull( actual );
+
+			final RandomAccess< T > ea = expected.randomAccess();
+			final RandomAccess< T > aa = actual.randomAccess();
+			for ( int z = -1; z <= 1; ++z )
+			{
+				for ( int y = SCREEN_MIN; y <= SCREEN_MAX; ++y )
+				{
+					// step along lines, as the projectors do
+					ea.setPosition( new long[] { SCREEN_MIN, y, z } );
+					aa.setPosition( new long[] { SCREEN_MIN, y, z } );
+					for ( int x = SCREEN_MIN; x <= SCREEN_MAX; ++x )
+					{
+						final T e = ea.get();
+						final T a = aa.get();
+						final String where = "at screen (" + x + ", " + y + ", " + z + "), transform " + i;
+						assertEquals( "validity " + where, e.isValid(), a.isValid() );
+						assertEquals( "value " + where, e.getRealDouble(), a.getRealDouble(), tolerance );
+						if ( !e.isValid() )
+							++numInvalid;
+						else if ( e.getRealDouble() == 0 )
+							++numBackground;
+						else
+							++numValid;
+						ea.fwd( 0 );
+						aa.fwd( 0 );
+					}
+				}
+			}
+		}
+
+		// make sure that all cases were actually tested
+		assertTrue( numInvalid > 0 );
+		assertTrue( numValid > 0 );
+		assertTrue( numBackground > 0 );
+	}
+
+	@Test
+	public void testNotApplicable()
+	{
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		final VolatileCachedCellImg< VolatileUnsignedShortType, VolatileShortArray > img = createShortImg();
+		assertNotNull( AffineVolatileCellSampler.create( img, new VolatileUnsignedShortType(), Interpolation.NLINEAR, sourceToScreen ) );
+		// only cached cell images are sampled directly
+		assertNull( AffineVolatileCellSampler.create( Views.interval( img, img ), new VolatileUnsignedShortType(), Interpolation.NLINEAR, sourceToScreen ) );
+	}
+
+	/**
+	 * Rotate and scale about the image center, and move the image center to
+	 * the center of the compared screen area.
+	 */
+	private static AffineTransform3D randomSourceToScreen( final Random random )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.translate( -0.5 * DIMENSIONS[ 0 ], -0.5 * DIMENSIONS[ 1 ], -0.5 * DIMENSIONS[ 2 ] );
+		final AffineTransform3D scale = new AffineTransform3D();
+		scale.set(
+				0.7 + 1.5 * random.nextDouble(), 0, 0, 0,
+				0, 0.7 + 1.5 * random.nextDouble(), 0, 0,
+				0, 0, 0.7 + 1.5 * random.nextDouble(), 0 );
+		transform.preConcatenate( scale );
+		transform.rotate( 0, 2 * Math.PI * random.nextDouble() );
+		transform.rotate( 1, 2 * Math.PI * random.nextDouble() );
+		transform.rotate( 2, 2 * Math.PI * random.nextDouble() );
+		final double center = 0.5 * ( SCREEN_MIN + SCREEN_MAX );
+		transform.translate( center + random.nextDouble(), center + random.nextDouble(), random.nextDouble() - 0.5 );
+		return transform;
+	}
+
+	private static int value( final long x, final long y, final long z )
+	{
+		// never zero, to distinguish image and background
+		return ( int ) ( 1 + ( x * 1009 + y * 2003 + z * 3001 ) % 65000 );
+	}
+
+	@SuppressWarnings( "deprecation" )
+	private static VolatileCachedCellImg< VolatileUnsignedShortType, VolatileShortArray > createShortImg()
+	{
+		final CellGrid grid = new CellGrid( DIMENSIONS, CELL_DIMENSIONS );
+		final Cell< VolatileShortArray >[] cells = AffineVolatileCellSamplerTest.< short[], VolatileShortArray >createCells( grid, ( min, dims ) -> {
+			final short[] data = new short[ dims[ 0 ] * dims[ 1 ] * dims[ 2 ] ];
+			for ( int z = 0, i = 0; z < dims[ 2 ]; ++z )
+				for ( int y = 0; y < dims[ 1 ]; ++y )
+					for ( int x = 0; x < dims[ 0 ]; ++x )
+						data[ i++ ] = ( short ) value( min[ 0 ] + x, min[ 1 ] + y, min[ 2 ] + z );
+			return data;
+		}, VolatileShortArray::new );
+		return new VolatileCachedCellImg<>( grid, new VolatileUnsignedShortType(), new CacheHints( LoadingStrategy.VOLATILE, 0, false ), ( index, hints ) -> cells[ ( int ) index ] );
+	}
+
+	@SuppressWarnings( "deprecation" )
+	private static VolatileCachedCellImg< VolatileUnsignedByteType, VolatileByteArray > createByteImg()
+	{
+		final CellGrid grid = new CellGrid( DIMENSIONS, CELL_DIMENSIONS );
+		final Cell< VolatileByteArray >[] cells = AffineVolatileCellSamplerTest.< byte[], VolatileByteArray >createCells( grid, ( min, dims ) -> {
+			final byte[] data = new byte[ dims[ 0 ] * dims[ 1 ] * dims[ 2 ] ];
+			for ( int z = 0, i = 0; z < dims[ 2 ]; ++z )
+				for ( int y = 0; y < dims[ 1 ]; ++y )
+					for ( int x = 0; x < dims[ 0 ]; ++x )
+						data[ i++ ] = ( byte ) ( 1 + value( min[ 0 ] + x, min[ 1 ] + y, min[ 2 ] + z ) % 255 );
+			return data;
+		}, VolatileByteArray::new );
+		return new VolatileCachedCellImg<>( grid, new VolatileUnsignedByteType(), new CacheHints( LoadingStrategy.VOLATILE, 0, false ), ( index, hints ) -> cells[ ( int ) index ] );
+	}
+
+	interface DataFactory< D >
+	{
+		D create( long[] min, int[] dims );
+	}
+
+	interface AccessFactory< D, A >
+	{
+		A create( D data, boolean isValid );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static < D, A > Cell< A >[] createCells( final CellGrid grid, final DataFactory< D > data, final AccessFactory< D, A > access )
+	{
+		final int numCells = ( int ) grid.getGridDimensions()[ 0 ] * ( int ) grid.getGridDimensions()[ 1 ] * ( int ) grid.getGridDimensions()[ 2 ];
+		final Cell< A >[] cells = new Cell[ numCells ];
+		for ( int i = 0; i < numCells; ++i )
+		{
+			final long[] min = new long[ 3 ];
+			final int[] dims = new int[ 3 ];
+			grid.getCellDimensions( i, min, dims );
+			cells[ i ] = new Cell<>( dims, min, access.create( data.create( min, dims ), !INVALID_CELLS.test( i ) ) );
+		}
+		return cells;
+	}
+}
@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import org.junit.Test;
+
+public class CellArrivalMonitorTest
+{
+	private final CellGrid grid = new CellGrid( new long[] { 64, 64, 64 }, new int[] { 32, 32, 32 } );
+
+	private final Interval screen = new FinalInterval( 64, 64 );
+
+	private final Interval cell = new FinalInterval( new long[] { 0, 0, 0 }, new long[] { 31, 31, 31 } );
+
+	/**
+	 * A loader thread publishes a cell and reports it, while the renderer
+	 * repeatedly renders until it sees the cell. With a poll interval that
+	 * is much longer than the test timeout, the renderer can only finish if
+	 * no arrival is missed.
+	 */
+	@Test
+	public void testNoMissedArrival() throws InterruptedException
+	{
+		final Semaphore repaint = new Semaphore( 0 );
+		final CellArrivalMonitor monitor = new CellArrivalMonitor( repaint::release, 60_000 );
+
+		for ( int i = 0; i < 1000; ++i )
+		{
+			monitor.setFootprints( Collections.singletonList( new CellArrivalMonitor.Footprint( grid, new AffineTransform3D() ) ), screen );
+			repaint.drainPermits();
+
+			final AtomicBoolean valid = new AtomicBoolean();
+			final Thread loader = new Thread( () -> {
+				LockSupport.parkNanos( ThreadLocalRandom.current().nextInt( 50_000 ) );
+				valid.set( true );
+				monitor.cellLoaded( grid, cell );
+			} );
+			loader.start();
+
+			// rendering passes, until the cell is seen as valid
+			while ( !valid.get() )
+			{
+				LockSupport.parkNanos( ThreadLocalRandom.current().nextInt( 20_000 ) );
+				if ( valid.get() )
+					break;
+				if ( monitor.waitForCells() )
+					assertTrue( "missed cell arrival (iteration " + i + ")", repaint.tryAcquire( 5, TimeUnit.SECONDS ) );
+			}
+			loader.join();
+		}
+	}
+
+	/**
+	 * If no relevant cell arrives, a waiting renderer is woken up after the
+	 * poll interval.
+	 */
+	@Test
+	public void testPollInterval() throws InterruptedException
+	{
+		final Semaphore repaint = new Semaphore( 0 );
+		final CellArrivalMonitor monitor = new CellArrivalMonitor( repaint::release, 10 );
+		monitor.setFootprints( Collections.singletonList( new CellArrivalMonitor.Footprint( grid, new AffineTransform3D() ) ), screen );
+
+		assertTrue( monitor.waitForCells() );
+		assertTrue( "no repaint after poll interval", repaint.tryAcquire( 5, TimeUnit.SECONDS ) );
+	}
+
+	/**
+	 * Cells that do not overlap the screen do not wake up the renderer.
+	 */
+	@Test
+	public void testIrrelevantCell() throws InterruptedException
+	{
+		final Semaphore repaint = new Semaphore( 0 );
+		final CellArrivalMonitor monitor = new CellArrivalMonitor( repaint::release, 60_000 );
+		monitor.setFootprints( Collections.singletonList( new CellArrivalMonitor.Footprint( grid, new AffineTransform3D() ) ), screen );
+
+		assertTrue( monitor.waitForCells() );
+		monitor.cellLoaded( grid, new FinalInterval( new long[] { 0, 0, 32 }, new long[] { 31, 31, 63 } ) );
+		monitor.cellLoaded( new CellGrid( new long[] { 64, 64, 64 }, new int[] { 32, 32, 32 } ), cell );
+		assertFalse( repaint.tryAcquire( 100, TimeUnit.MILLISECONDS ) );
+	}
+}
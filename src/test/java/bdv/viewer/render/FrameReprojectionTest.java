@@ -0,0 +1,258 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.Intervals;
+import org.junit.Test;
+
+import bdv.viewer.render.awt.BufferedImageRenderResult;
+
+public class FrameReprojectionTest
+{
+	private static final int WIDTH = 40;
+
+	private static final int HEIGHT = 30;
+
+	@Test
+	public void testDelta()
+	{
+		final AffineTransform3D scaleTransform = scaleTransform( 0.5 );
+		final AffineTransform3D previous = new AffineTransform3D();
+		previous.rotate( 2, 0.3 );
+		previous.translate( 7, 11, 0 );
+
+		// panning by (10, -6) screen pixels is a shift by (5, -3) pixels at scale 0.5
+		final AffineTransform3D panned = previous.copy();
+		panned.translate( 10, -6, 0 );
+		final AffineTransform3D delta = FrameReprojection.getDelta( previous, panned, scaleTransform );
+		assertTrue( FrameReprojection.isInPlane( delta ) );
+		assertArrayEquals( new int[] { 5, -3 }, FrameReprojection.getIntegerTranslation( delta ) );
+
+		// panning by an odd number of screen pixels is not a whole-pixel shift at scale 0.5
+		final AffineTransform3D halfPanned = previous.copy();
+		halfPanned.translate( 3, 0, 0 );
+		assertNull( FrameReprojection.getIntegerTranslation( FrameReprojection.getDelta( previous, halfPanned, scaleTransform ) ) );
+
+		// rotation about the view axis is in-plane, but not a shift
+		final AffineTransform3D rotated = previous.copy();
+		rotated.rotate( 2, 0.1 );
+		final AffineTransform3D rotatedDelta = FrameReprojection.getDelta( previous, rotated, scaleTransform );
+		assertTrue( FrameReprojection.isInPlane( rotatedDelta ) );
+		assertNull( FrameReprojection.getIntegerTranslation( rotatedDelta ) );
+
+		// zooming is in-plane, but not a shift
+		final AffineTransform3D zoomed = previous.copy();
+		zoomed.scale( 1.5 );
+		assertTrue( FrameReprojection.isInPlane( FrameReprojection.getDelta( previous, zoomed, scaleTransform ) ) );
+
+		// moving along the view axis, or rotating out of plane, is not in-plane
+		final AffineTransform3D moved = previous.copy();
+		moved.translate( 0, 0, 1 );
+		assertFalse( FrameReprojection.isInPlane( FrameReprojection.getDelta( previous, moved, scaleTransform ) ) );
+		final AffineTransform3D tilted = previous.copy();
+		tilted.rotate( 0, 0.1 );
+		assertFalse( FrameReprojection.isInPlane( FrameReprojection.getDelta( previous, tilted, scaleTransform ) ) );
+	}
+
+	@Test
+	public void testShift()
+	{
+		final BufferedImageRenderResult source = createSource();
+		final int[] src = data( source );
+		for ( final int[] shift : shifts() )
+		{
+			final int dx = shift[ 0 ];
+			final int dy = shift[ 1 ];
+			final BufferedImageRenderResult target = createTarget();
+			assertTrue( FrameReprojection.shift( source, target, dx, dy ) );
+			final int[] dst = data( target );
+			for ( int y = 0; y < HEIGHT; ++y )
+			{
+				for ( int x = 0; x < WIDTH; ++x )
+				{
+					final int sx = x - dx;
+					final int sy = y - dy;
+					final int expected = isInside( sx, sy ) ? src[ sy * WIDTH + sx ] : 0;
+					assertEquals( expected, dst[ y * WIDTH + x ] );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testWarp()
+	{
+		final BufferedImageRenderResult source = createSource();
+		final int[] src = data( source );
+
+		// a whole-pixel translation warps like a shift
+		final AffineTransform3D translation = new AffineTransform3D();
+		translation.translate( 3, -2, 0 );
+		final BufferedImageRenderResult shifted = createTarget();
+		final BufferedImageRenderResult warped = createTarget();
+		FrameReprojection.shift( source, shifted, 3, -2 );
+		assertTrue( FrameReprojection.warp( source, warped, translation ) );
+		assertArrayEquals( data( shifted ), data( warped ) );
+
+		// rotation by 90 degrees about pixel (cx, cy) moves (x, y) to (cx + cy - y, cy - cx + x)
+		final int cx = 20;
+		final int cy = 15;
+		final AffineTransform3D rotation = new AffineTransform3D();
+		rotation.translate( -cx, -cy, 0 );
+		rotation.rotate( 2, Math.PI / 2 );
+		rotation.translate( cx, cy, 0 );
+		final BufferedImageRenderResult rotated = createTarget();
+		assertTrue( FrameReprojection.warp( source, rotated, rotation ) );
+		final int[] dst = data( rotated );
+		for ( int y = 0; y < HEIGHT; ++y )
+		{
+			for ( int x = 0; x < WIDTH; ++x )
+			{
+				final int tx = cx + cy - y;
+				final int ty = cy - cx + x;
+				if ( isInside( tx, ty ) )
+					assertEquals( src[ y * WIDTH + x ], dst[ ty * WIDTH + tx ] );
+			}
+		}
+		// corners of the target are not covered by the rotated source
+		assertEquals( 0, dst[ 0 ] );
+		assertEquals( 0, dst[ WIDTH * HEIGHT - 1 ] );
+
+		// zooming by 2 about the origin maps source pixel (x, y) to (2x, 2y)
+		final AffineTransform3D zoom = new AffineTransform3D();
+		zoom.scale( 2 );
+		final BufferedImageRenderResult zoomed = createTarget();
+		assertTrue( FrameReprojection.warp( source, zoomed, zoom ) );
+		final int[] zdst = data( zoomed );
+		for ( int y = 0; 2 * y < HEIGHT; ++y )
+			for ( int x = 0; 2 * x < WIDTH; ++x )
+				assertEquals( src[ y * WIDTH + x ], zdst[ 2 * y * WIDTH + 2 * x ] );
+	}
+
+	@Test
+	public void testExposedStrips()
+	{
+		for ( final int[] shift : shifts() )
+		{
+			final int dx = shift[ 0 ];
+			final int dy = shift[ 1 ];
+			final List< Interval > strips = new ArrayList<>();
+			FrameReprojection.addExposedStrips( WIDTH, HEIGHT, dx, dy, strips );
+			if ( dx == 0 && dy == 0 )
+				assertTrue( strips.isEmpty() );
+
+			// every pixel is either covered by the shifted frame, or exposed
+			for ( int y = 0; y < HEIGHT; ++y )
+			{
+				for ( int x = 0; x < WIDTH; ++x )
+				{
+					final boolean covered = isInside( x - dx, y - dy );
+					boolean exposed = false;
+					for ( final Interval strip : strips )
+						exposed |= Intervals.contains( strip, new Point( x, y ) );
+					assertTrue( covered != exposed );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testTargetToScreen()
+	{
+		// at scale 0.5, target pixel x covers screen pixels 2x and 2x+1
+		final Interval screen = FrameReprojection.targetToScreen( Intervals.createMinMax( 1, 2, 3, 2 ), 0.5 );
+		assertEquals( 2, screen.min( 0 ) );
+		assertEquals( 4, screen.min( 1 ) );
+		assertEquals( 7, screen.max( 0 ) );
+		assertEquals( 5, screen.max( 1 ) );
+
+		// at scale 1, nothing changes
+		final Interval same = FrameReprojection.targetToScreen( Intervals.createMinMax( 3, 5, 10, 12 ), 1.0 );
+		assertArrayEquals( new long[] { 3, 5 }, Intervals.minAsLongArray( same ) );
+		assertArrayEquals( new long[] { 10, 12 }, Intervals.maxAsLongArray( same ) );
+	}
+
+	private static int[][] shifts()
+	{
+		return new int[][] {
+				{ 0, 0 }, { 5, 0 }, { -5, 0 }, { 0, 7 }, { 0, -7 },
+				{ 3, 4 }, { -3, 4 }, { 3, -4 }, { -3, -4 },
+				{ WIDTH - 1, 0 }, { 0, 1 - HEIGHT } };
+	}
+
+	private static boolean isInside( final int x, final int y )
+	{
+		return x >= 0 && x < WIDTH && y >= 0 && y < HEIGHT;
+	}
+
+	private static AffineTransform3D scaleTransform( final double scale )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set( scale, 0, 0 );
+		transform.set( scale, 1, 1 );
+		transform.set( 0.5 * scale - 0.5, 0, 3 );
+		transform.set( 0.5 * scale - 0.5, 1, 3 );
+		return transform;
+	}
+
+	/**
+	 * Create a frame where every pixel has a distinct non-zero value.
+	 */
+	private static BufferedImageRenderResult createSource()
+	{
+		final BufferedImageRenderResult source = createTarget();
+		final int[] src = data( source );
+		for ( int i = 0; i < src.length; ++i )
+			src[ i ] = i + 1;
+		return source;
+	}
+
+	private static BufferedImageRenderResult createTarget()
+	{
+		final BufferedImageRenderResult result = new BufferedImageRenderResult();
+		result.init( WIDTH, HEIGHT );
+		return result;
+	}
+
+	private static int[] data( final BufferedImageRenderResult result )
+	{
+		return ProjectorUtils.getARGBArrayImgData( result.getTargetImage() );
+	}
+}
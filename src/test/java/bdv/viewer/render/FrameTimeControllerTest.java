@@ -0,0 +1,274 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import net.imglib2.Interval;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.util.RealRandomAccessibleSource;
+import bdv.viewer.Interpolation;
+import bdv.viewer.SourceAndConverter;
+
+public class FrameTimeControllerTest
+{
+	private static final double TARGET_RENDER_NANOS = 30_000_000;
+
+	private static final int NUM_PIXELS = 1000 * 1000;
+
+	private static final double EPSILON = 0.01;
+
+	private static final List< SourceAndConverter< ? > > U8 = Collections.singletonList( source( new UnsignedByteType() ) );
+
+	private static final List< SourceAndConverter< ? > > FLOAT = Collections.singletonList( source( new FloatType() ) );
+
+	private static final List< SourceAndConverter< ? > > U8_FLOAT = Arrays.asList( U8.get( 0 ), FLOAT.get( 0 ) );
+
+	private FrameTimeController controller;
+
+	@Before
+	public void setUp()
+	{
+		final ScreenScales screenScales = new ScreenScales( new double[] { 1, 0.5, 0.25 }, TARGET_RENDER_NANOS );
+		screenScales.checkResize( 1000, 1000 );
+		controller = new FrameTimeController( screenScales );
+	}
+
+	@Test
+	public void testLearnCost()
+	{
+		controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+		for ( int i = 0; i < 50; ++i )
+			controller.recordRenderTime( NUM_PIXELS, 20 * NUM_PIXELS, 0, 1 );
+		assertEquals( 20, controller.getRenderNanosPerPixel(), EPSILON );
+
+		// costs are learned separately for each interpolation method
+		controller.setFrame( U8, Interpolation.NLINEAR );
+		assertEquals( 500, controller.getRenderNanosPerPixel(), EPSILON );
+	}
+
+	@Test
+	public void testLearnCostsOfMixedTypes()
+	{
+		learnU8AndFloat();
+
+		controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+		assertEquals( 10, controller.getRenderNanosPerPixel(), EPSILON );
+		controller.setFrame( FLOAT, Interpolation.NEARESTNEIGHBOR );
+		assertEquals( 40, controller.getRenderNanosPerPixel(), EPSILON );
+		controller.setFrame( U8_FLOAT, Interpolation.NEARESTNEIGHBOR );
+		assertEquals( 50, controller.getRenderNanosPerPixel(), EPSILON );
+
+		// a new type starts with the mean cost of the known types
+		controller.setFrame( Collections.singletonList( source( new UnsignedShortType() ) ), Interpolation.NEARESTNEIGHBOR );
+		assertEquals( 25, controller.getRenderNanosPerPixel(), EPSILON );
+	}
+
+	@Test
+	public void testLearnCostsWithSourceScreenScales()
+	{
+		// float is rendered at half resolution, i.e., for a quarter of the
+		// pixels. Its cost is learned slowly, because of the small weight.
+		for ( int i = 0; i < 1000; ++i )
+		{
+			controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+			controller.recordRenderTime( NUM_PIXELS, 10L * NUM_PIXELS, 0, 1 );
+			controller.setFrame( U8_FLOAT, Interpolation.NEARESTNEIGHBOR );
+			controller.setPassScreenScales( 0, new int[] { 0, 1 } );
+			controller.recordRenderTime( NUM_PIXELS, 20L * NUM_PIXELS, 0, 1 );
+		}
+		controller.setFrame( FLOAT, Interpolation.NEARESTNEIGHBOR );
+		assertEquals( 40, controller.getRenderNanosPerPixel(), EPSILON );
+	}
+
+	@Test
+	public void testSmallPassesAreIgnored()
+	{
+		controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+		controller.recordRenderTime( 1000, 1_000_000_000L, 1_000_000_000L, 1 );
+		assertEquals( 500, controller.getRenderNanosPerPixel(), EPSILON );
+		assertEquals( 0, controller.getIoStallNanos(), EPSILON );
+	}
+
+	@Test
+	public void testSuggestScreenScale()
+	{
+		controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+		for ( int i = 0; i < 50; ++i )
+			controller.recordRenderTime( NUM_PIXELS, 20L * NUM_PIXELS, 0, 1 );
+		assertEquals( 0, controller.suggestScreenScale() );
+
+		for ( int i = 0; i < 50; ++i )
+			controller.recordRenderTime( NUM_PIXELS, 50L * NUM_PIXELS, 0, 1 );
+		assertEquals( 1, controller.suggestScreenScale() );
+
+		// IO stall does not depend on the screen scale
+		for ( int i = 0; i < 50; ++i )
+			controller.recordRenderTime( NUM_PIXELS, 20L * NUM_PIXELS + 27_000_000L, 27_000_000L, 1 );
+		assertEquals( 20, controller.getRenderNanosPerPixel(), EPSILON );
+		assertEquals( 27_000_000, controller.getIoStallNanos(), EPSILON );
+		assertEquals( 2, controller.suggestScreenScale() );
+	}
+
+	@Test
+	public void testIoStallIsLimitedByBudget()
+	{
+		controller.setIoTimeBudget( new long[] { 5_000_000L } );
+		controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+		for ( int i = 0; i < 5; ++i )
+			// IO time is summed over threads and may exceed the rendering time
+			controller.recordRenderTime( NUM_PIXELS, 20_000_000L, 80_000_000L, 1 );
+		assertEquals( 5_000_000, controller.getIoStallNanos(), EPSILON );
+	}
+
+	@Test
+	public void testSuggestSourceScreenScales()
+	{
+		learnU8AndFloat();
+		controller.setFrame( U8_FLOAT, Interpolation.NEARESTNEIGHBOR );
+		// 10ms + 40ms at full resolution, 10ms + 10ms with float at half resolution
+		assertArrayEquals( new int[] { 0, 1 }, controller.suggestSourceScreenScales() );
+	}
+
+	@Test
+	public void testIoTimeBudget()
+	{
+		final long[] budget = new long[] { 100_000_000L, 10_000_000L };
+		controller.setIoTimeBudget( budget );
+		controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+		for ( int i = 0; i < 50; ++i )
+			controller.recordRenderTime( NUM_PIXELS, 22L * NUM_PIXELS, 0, 1 );
+		assertArrayEquals( budget, controller.getIoTimeBudget( NUM_PIXELS ) );
+
+		// adaptive: limited to the time left after rendering
+		controller.setAdaptive( true );
+		assertArrayEquals( new long[] { 8_000_000L, 8_000_000L }, roundToMillis( controller.getIoTimeBudget( NUM_PIXELS ) ) );
+		assertArrayEquals( new long[] { 0, 0 }, controller.getIoTimeBudget( 2 * NUM_PIXELS ) );
+	}
+
+	@Test
+	public void testAdaptNumHierarchyLevels()
+	{
+		controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+
+		// not adaptive: the number of levels is not changed
+		controller.setMaxNumHierarchyLevels( 0 );
+		controller.recordRenderTime( NUM_PIXELS, 60_000_000L, 50_000_000L, 5 );
+		assertEquals( 0, controller.getMaxNumHierarchyLevels() );
+
+		// slow because of IO: render fewer levels, but at least 2
+		controller.setAdaptive( true );
+		controller.recordRenderTime( NUM_PIXELS, 60_000_000L, 50_000_000L, 5 );
+		assertEquals( 4, controller.getMaxNumHierarchyLevels() );
+		controller.recordRenderTime( NUM_PIXELS, 60_000_000L, 50_000_000L, 4 );
+		assertEquals( 3, controller.getMaxNumHierarchyLevels() );
+		controller.recordRenderTime( NUM_PIXELS, 60_000_000L, 50_000_000L, 3 );
+		assertEquals( 2, controller.getMaxNumHierarchyLevels() );
+		controller.recordRenderTime( NUM_PIXELS, 60_000_000L, 50_000_000L, 2 );
+		assertEquals( 2, controller.getMaxNumHierarchyLevels() );
+
+		// slow, but not because of IO: keep the number of levels
+		controller.recordRenderTime( NUM_PIXELS, 60_000_000L, 0, 2 );
+		assertEquals( 2, controller.getMaxNumHierarchyLevels() );
+
+		// fast: render more levels again
+		controller.recordRenderTime( NUM_PIXELS, 10_000_000L, 0, 2 );
+		assertEquals( 3, controller.getMaxNumHierarchyLevels() );
+
+		// fast, and the limit was not reached: remove the limit
+		controller.recordRenderTime( NUM_PIXELS, 10_000_000L, 0, 1 );
+		assertEquals( 0, controller.getMaxNumHierarchyLevels() );
+	}
+
+	@Test
+	public void testAdaptNumHierarchyLevelsUpToMax()
+	{
+		controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+		controller.setMaxNumHierarchyLevels( 3 );
+		controller.setAdaptive( true );
+
+		controller.recordRenderTime( NUM_PIXELS, 60_000_000L, 50_000_000L, 3 );
+		assertEquals( 2, controller.getMaxNumHierarchyLevels() );
+		controller.recordRenderTime( NUM_PIXELS, 10_000_000L, 0, 2 );
+		assertEquals( 3, controller.getMaxNumHierarchyLevels() );
+		controller.recordRenderTime( NUM_PIXELS, 10_000_000L, 0, 3 );
+		assertEquals( 3, controller.getMaxNumHierarchyLevels() );
+	}
+
+	/**
+	 * Learn costs of 10ns per pixel for {@code UnsignedByteType} and 40ns per
+	 * pixel for {@code FloatType} sources, from frames with either or both.
+	 */
+	private void learnU8AndFloat()
+	{
+		for ( int i = 0; i < 100; ++i )
+		{
+			controller.setFrame( U8, Interpolation.NEARESTNEIGHBOR );
+			controller.recordRenderTime( NUM_PIXELS, 10L * NUM_PIXELS, 0, 1 );
+			controller.setFrame( FLOAT, Interpolation.NEARESTNEIGHBOR );
+			controller.recordRenderTime( NUM_PIXELS, 40L * NUM_PIXELS, 0, 1 );
+			controller.setFrame( U8_FLOAT, Interpolation.NEARESTNEIGHBOR );
+			controller.recordRenderTime( NUM_PIXELS, 50L * NUM_PIXELS, 0, 1 );
+		}
+	}
+
+	private static long[] roundToMillis( final long[] nanos )
+	{
+		final long[] rounded = new long[ nanos.length ];
+		for ( int i = 0; i < nanos.length; ++i )
+			rounded[ i ] = Math.round( nanos[ i ] / 1e6 ) * 1_000_000L;
+		return rounded;
+	}
+
+	/**
+	 * Create a source with the given pixel type. Only the type is used by
+	 * {@link FrameTimeController}.
+	 */
+	private static < T extends Type< T > > SourceAndConverter< T > source( final T type )
+	{
+		return new SourceAndConverter<>( new RealRandomAccessibleSource< T >( null, type, "source" )
+		{
+			@Override
+			public Interval getInterval( final int t, final int level )
+			{
+				return null;
+			}
+		}, null );
+	}
+}
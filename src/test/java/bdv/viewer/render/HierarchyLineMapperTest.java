@@ -0,0 +1,227 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.Converters;
+import net.imglib2.display.RealARGBColorConverter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.volatiles.AbstractVolatileRealType;
+import net.imglib2.type.volatiles.VolatileFloatType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+/**
+ * Checks that {@link HierarchyLineMapper} instances for different (type,
+ * converter, access) keys give the same result as the loop that
+ * {@link VolatileHierarchyProjector} used before.
+ */
+public class HierarchyLineMapperTest
+{
+	private static final int WIDTH = 97;
+
+	private static final int HEIGHT = 13;
+
+	@Test
+	public void testUnsignedByte()
+	{
+		test( ArrayImgs.unsignedBytes( WIDTH, HEIGHT ), new VolatileUnsignedByteType(), 255 );
+	}
+
+	@Test
+	public void testUnsignedShort()
+	{
+		test( ArrayImgs.unsignedShorts( WIDTH, HEIGHT ), new VolatileUnsignedShortType(), 4095 );
+	}
+
+	@Test
+	public void testFloat()
+	{
+		test( ArrayImgs.floats( WIDTH, HEIGHT ), new VolatileFloatType(), 1000 );
+	}
+
+	/**
+	 * Specialized instances for different keys are different classes, and
+	 * the shared instance handles all types.
+	 */
+	@Test
+	public void testMixedKeys()
+	{
+		final HierarchyLineMapper< ?, ? > a = HierarchyLineMapper.create( VolatileUnsignedByteType.class, Object.class, Object.class );
+		final HierarchyLineMapper< ?, ? > b = HierarchyLineMapper.create( VolatileFloatType.class, Object.class, Object.class );
+		assertNotSame( a.getClass(), b.getClass() );
+		assertTrue( a.getClass() == HierarchyLineMapper.create( VolatileUnsignedByteType.class, Object.class, Object.class ).getClass() );
+
+		// the same instance works for different types, one after another
+		final HierarchyLineMapper< ?, ? > shared = HierarchyLineMapper.create( null, null, null );
+		test( ArrayImgs.unsignedBytes( WIDTH, HEIGHT ), new VolatileUnsignedByteType(), 255, shared );
+		test( ArrayImgs.floats( WIDTH, HEIGHT ), new VolatileFloatType(), 1000, shared );
+		test( ArrayImgs.unsignedShorts( WIDTH, HEIGHT ), new VolatileUnsignedShortType(), 4095, shared );
+	}
+
+	private static < T extends RealType< T >, V extends AbstractVolatileRealType< T, V > > void test(
+			final RandomAccessibleInterval< T > img,
+			final V type,
+			final double max )
+	{
+		final RandomAccessible< V > source = createSource( img, type, max );
+		final Converter< V, ARGBType > converter = RealARGBColorConverter.create( type, 0, max );
+		test( img, type, max, HierarchyLineMapper.create( type.getClass(), converter.getClass(), source.randomAccess().getClass() ) );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static < T extends RealType< T >, V extends AbstractVolatileRealType< T, V > > void test(
+			final RandomAccessibleInterval< T > img,
+			final V type,
+			final double max,
+			final HierarchyLineMapper< ?, ? > mapper )
+	{
+		final RandomAccessible< V > source = createSource( img, type, max );
+		final Converter< V, ARGBType > converter = RealARGBColorConverter.create( type, 0, max );
+		final HierarchyLineMapper< V, ARGBType > lineMapper = ( HierarchyLineMapper< V, ARGBType > ) mapper;
+
+		final Random random = new Random( 7 );
+		final byte[] initialMask = new byte[ WIDTH * HEIGHT ];
+		for ( int i = 0; i < initialMask.length; ++i )
+			initialMask[ i ] = ( byte ) ( random.nextInt( 4 ) == 0 ? Byte.MAX_VALUE : random.nextInt( 4 ) );
+
+		for ( final boolean recordRawValues : new boolean[] { false, true } )
+		{
+			for ( byte resolutionIndex = 0; resolutionIndex < 3; ++resolutionIndex )
+			{
+				final byte[] expectedMask = initialMask.clone();
+				final byte[] actualMask = initialMask.clone();
+				final float[] expectedRaw = new float[ WIDTH * HEIGHT ];
+				final float[] actualRaw = new float[ WIDTH * HEIGHT ];
+				final ArrayImg< ARGBType, IntArray > expectedTarget = ArrayImgs.argbs( WIDTH, HEIGHT );
+				final ArrayImg< ARGBType, IntArray > actualTarget = ArrayImgs.argbs( WIDTH, HEIGHT );
+
+				final RandomAccess< V > sa = source.randomAccess();
+				final RandomAccess< ARGBType > ta = actualTarget.randomAccess();
+				final RandomAccess< V > esa = source.randomAccess();
+				final RandomAccess< ARGBType > eta = expectedTarget.randomAccess();
+				for ( int y = 0; y < HEIGHT; ++y )
+				{
+					// lines of varying length and offset
+					final int startX = y % 5;
+					final int length = WIDTH - startX - y % 3;
+					final int offset = y * WIDTH + startX;
+
+					sa.setPosition( new long[] { startX, y } );
+					ta.setPosition( new long[] { startX, y } );
+					final int actual = recordRawValues
+							? lineMapper.mapLine( sa, ta, converter, actualMask, actualRaw, offset, length, resolutionIndex )
+							: lineMapper.mapLine( sa, ta, converter, actualMask, offset, length, resolutionIndex );
+
+					esa.setPosition( new long[] { startX, y } );
+					eta.setPosition( new long[] { startX, y } );
+					final int expected = mapLineInline( esa, eta, converter, expectedMask, recordRawValues ? expectedRaw : null, offset, length, resolutionIndex );
+
+					assertEquals( expected, actual );
+					assertEquals( esa.getLongPosition( 0 ), sa.getLongPosition( 0 ) );
+					assertEquals( eta.getLongPosition( 0 ), ta.getLongPosition( 0 ) );
+				}
+				assertArrayEquals( expectedMask, actualMask );
+				assertArrayEquals( expectedRaw, actualRaw, 0 );
+				assertArrayEquals( expectedTarget.update( null ).getCurrentStorageArray(), actualTarget.update( null ).getCurrentStorageArray() );
+			}
+		}
+	}
+
+	/**
+	 * The loop that {@link VolatileHierarchyProjector} used before
+	 * {@link HierarchyLineMapper} (with raw value recording, if
+	 * {@code rawValues != null}).
+	 */
+	private static < A extends AbstractVolatileRealType< ?, A > > int mapLineInline(
+			final RandomAccess< A > sourceRandomAccess,
+			final RandomAccess< ARGBType > targetRandomAccess,
+			final Converter< ? super A, ARGBType > converter,
+			final byte[] mask,
+			final float[] rawValues,
+			final int maskOffset,
+			final int length,
+			final byte resolutionIndex )
+	{
+		int myNumInvalidPixels = 0;
+		for ( int i = maskOffset; i < maskOffset + length; ++i )
+		{
+			if ( mask[ i ] > resolutionIndex )
+			{
+				final A a = sourceRandomAccess.get();
+				final boolean v = a.isValid();
+				if ( v )
+				{
+					if ( rawValues != null )
+						rawValues[ i ] = a.getRealFloat();
+					converter.convert( a, targetRandomAccess.get() );
+					mask[ i ] = resolutionIndex;
+				}
+				else
+					++myNumInvalidPixels;
+			}
+			sourceRandomAccess.fwd( 0 );
+			targetRandomAccess.fwd( 0 );
+		}
+		return myNumInvalidPixels;
+	}
+
+	/**
+	 * Fill {@code img} with a pattern and convert it to a volatile source in
+	 * which some pixels are invalid.
+	 */
+	private static < T extends RealType< T >, V extends AbstractVolatileRealType< T, V > > RandomAccessible< V > createSource(
+			final RandomAccessibleInterval< T > img,
+			final V type,
+			final double max )
+	{
+		long i = 0;
+		for ( final T t : Views.iterable( img ) )
+			t.setReal( ( i++ * 31 ) % ( long ) max );
+		return Converters.convert( Views.extendZero( img ), ( in, out ) -> {
+			out.get().set( in );
+			out.setValid( in.getRealDouble() % 7 != 3 );
+		}, type );
+	}
+}
@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.position.FunctionRandomAccessible;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileARGBType;
+import org.junit.Test;
+
+public class MosaicProjectorTest extends TiledProjectorFixture
+{
+	/**
+	 * Both pieces are {@code PIECE_WIDTH x PIECE_HEIGHT} pixels. Piece 0 is at
+	 * the origin, piece 1 is translated by {@code (OFFSET_X, OFFSET_Y)} and
+	 * overlaps piece 0.
+	 */
+	private static final int PIECE_WIDTH = 80;
+
+	private static final int PIECE_HEIGHT = 60;
+
+	private static final int OFFSET_X = 60;
+
+	private static final int OFFSET_Y = 40;
+
+	/**
+	 * Every pixel is rendered from its owner, which is the last piece that
+	 * covers it. Pixels that are not covered are cleared.
+	 */
+	@Test
+	public void testOwnership()
+	{
+		final ArrayImg< ARGBType, IntArray > img = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final MosaicProjector projector = createProjector( img, NUM_THREADS );
+		Arrays.fill( img.update( null ).getCurrentStorageArray(), 0x12345678 );
+
+		assertTrue( projector.map( true ) );
+		assertFalse( projector.isValid() );
+		final int[] data = img.update( null ).getCurrentStorageArray();
+		long expectedNumInvalid = 0;
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+			{
+				final int owner = owner( x, y );
+				if ( owner >= 0 && !isValidAtLevel0( x, y ) )
+					++expectedNumInvalid;
+				assertEquals( "pixel (" + x + ", " + y + ")", expectedValue( x, y ), data[ y * WIDTH + x ] );
+			}
+		assertTrue( expectedNumInvalid > 0 );
+		assertEquals( expectedNumInvalid, projector.getNumInvalidPixels() );
+
+		level0Complete = true;
+		assertTrue( projector.map( false ) );
+		assertTrue( projector.isValid() );
+		assertEquals( 0, projector.getNumInvalidPixels() );
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+				assertEquals( expectedValue( x, y ), data[ y * WIDTH + x ] );
+	}
+
+	/**
+	 * The result does not depend on the number of threads, or on the tiles
+	 * used for rendering.
+	 */
+	@Test
+	public void testDeterministic()
+	{
+		final ArrayImg< ARGBType, IntArray > expectedImg = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final MosaicProjector expected = createProjector( expectedImg, 1 );
+		final ArrayImg< ARGBType, IntArray > threadedImg = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final MosaicProjector threaded = createProjector( threadedImg, NUM_THREADS );
+		final ArrayImg< ARGBType, IntArray > unalignedImg = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final MosaicProjector unaligned = createProjector( unalignedImg, NUM_THREADS );
+
+		for ( final int tileSize : new int[] { 37, 64, 13 } )
+		{
+			expected.clearMask();
+			threaded.clearMask();
+			unaligned.clearMask();
+			level0Complete = false;
+
+			assertTrue( expected.map( true ) );
+			assertTrue( threaded.map( true ) );
+			mapUnaligned( unaligned, tileSize );
+			assertSameState( expected, expectedImg, threaded, threadedImg );
+			assertSameState( expected, expectedImg, unaligned, unalignedImg );
+
+			level0Complete = true;
+			assertTrue( expected.map( false ) );
+			assertTrue( threaded.map( false ) );
+			mapUnaligned( unaligned, tileSize + 7 );
+			assertSameState( expected, expectedImg, threaded, threadedImg );
+			assertSameState( expected, expectedImg, unaligned, unalignedImg );
+			assertTrue( unaligned.isValid() );
+		}
+	}
+
+	private static final int LEVEL1_VALUE = 0xff0000ff;
+
+	private static int level0Value( final int piece, final long x, final long y )
+	{
+		return level0Value( x, y ) | ( piece << 16 );
+	}
+
+	/**
+	 * Index of the piece that owns screen pixel {@code (x,y)}, or {@code -1}.
+	 */
+	private static int owner( final int x, final int y )
+	{
+		if ( x >= OFFSET_X && x < OFFSET_X + PIECE_WIDTH && y >= OFFSET_Y && y < OFFSET_Y + PIECE_HEIGHT )
+			return 1;
+		if ( x < PIECE_WIDTH && y < PIECE_HEIGHT )
+			return 0;
+		return -1;
+	}
+
+	private int expectedValue( final int x, final int y )
+	{
+		final int owner = owner( x, y );
+		if ( owner < 0 )
+			return 0;
+		return level0Complete || isValidAtLevel0( x, y ) ? level0Value( owner, x, y ) : LEVEL1_VALUE | ( owner << 8 );
+	}
+
+	private MosaicProjector createProjector( final ArrayImg< ARGBType, IntArray > target, final int numThreads )
+	{
+		final List< MosaicProjector.Piece< VolatileARGBType > > pieces = Arrays.asList(
+				createPiece( 0, 0, 0 ),
+				createPiece( 1, OFFSET_X, OFFSET_Y ) );
+		return new MosaicProjector( pieces, target, new byte[ WIDTH * HEIGHT ], numThreads, executorService );
+	}
+
+	private MosaicProjector.Piece< VolatileARGBType > createPiece( final int piece, final int offsetX, final int offsetY )
+	{
+		// levels are already transformed to screen coordinates
+		final RandomAccessible< VolatileARGBType > level0 = new FunctionRandomAccessible<>( 3, ( pos, t ) -> {
+			final long x = pos.getLongPosition( 0 );
+			final long y = pos.getLongPosition( 1 );
+			t.get().set( level0Value( piece, x, y ) );
+			t.setValid( level0Complete || isValidAtLevel0( x, y ) );
+		}, VolatileARGBType::new );
+		final RandomAccessible< VolatileARGBType > level1 = new FunctionRandomAccessible<>( 3, ( pos, t ) -> {
+			t.get().set( LEVEL1_VALUE | ( piece << 8 ) );
+			t.setValid( true );
+		}, VolatileARGBType::new );
+		final List< RandomAccessible< VolatileARGBType > > levels = Arrays.asList( level0, level1 );
+		final Converter< VolatileARGBType, ARGBType > converter = ( a, b ) -> b.set( a.get() );
+		final HierarchyLineMapper< VolatileARGBType, ARGBType > lineMapper = HierarchyLineMapper.create(
+				VolatileARGBType.class, converter.getClass(), level0.randomAccess().getClass() );
+
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		sourceToScreen.translate( offsetX, offsetY, 0 );
+		final FinalRealInterval bounds = new FinalRealInterval(
+				new double[] { -0.5, -0.5, -0.5 },
+				new double[] { PIECE_WIDTH - 0.5, PIECE_HEIGHT - 0.5, 0.5 } );
+		return new MosaicProjector.Piece<>( levels, converter, lineMapper, sourceToScreen, bounds );
+	}
+}
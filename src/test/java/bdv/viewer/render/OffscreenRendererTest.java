@@ -0,0 +1,270 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.DisplayMode;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+
+public class OffscreenRendererTest
+{
+	private static final int WIDTH = 50;
+
+	private static final int HEIGHT = 40;
+
+	private static final int NUM_THREADS = 4;
+
+	/**
+	 * The second source is {@code PATCH_WIDTH x PATCH_HEIGHT} pixels, and
+	 * translated by {@code (PATCH_X, PATCH_Y)}.
+	 */
+	private static final int PATCH_WIDTH = 20;
+
+	private static final int PATCH_HEIGHT = 10;
+
+	private static final int PATCH_X = 15;
+
+	private static final int PATCH_Y = 12;
+
+	@Test
+	public void testRenderSingleThreaded()
+	{
+		assertRendersExpected( 1 );
+	}
+
+	@Test
+	public void testRenderMultiThreaded()
+	{
+		assertRendersExpected( NUM_THREADS );
+	}
+
+	/**
+	 * {@code renderAll} requests every frame once, in order, and delivers
+	 * the rendered frames in order.
+	 */
+	@Test
+	public void testRenderAll() throws IOException
+	{
+		final int numFrames = 7;
+		final OffscreenRenderer renderer = new OffscreenRenderer( WIDTH, HEIGHT, NUM_THREADS );
+		try
+		{
+			final List< Integer > requested = new ArrayList<>();
+			final List< Integer > delivered = new ArrayList<>();
+			renderer.renderAll( numFrames, i -> {
+				requested.add( i );
+				return createState( i );
+			}, ( frame, argb ) -> {
+				delivered.add( frame );
+				assertPixels( frame, argb );
+			} );
+
+			final List< Integer > expected = new ArrayList<>();
+			for ( int i = 0; i < numFrames; ++i )
+				expected.add( i );
+			assertEquals( expected, requested );
+			assertEquals( expected, delivered );
+		}
+		finally
+		{
+			renderer.shutdown();
+		}
+	}
+
+	private static void assertRendersExpected( final int numThreads )
+	{
+		final OffscreenRenderer renderer = new OffscreenRenderer( WIDTH, HEIGHT, numThreads );
+		try
+		{
+			assertPixels( 0, renderer.render( createState( 0 ) ) );
+			assertPixels( 3, renderer.render( createState( 3 ) ) );
+		}
+		finally
+		{
+			renderer.shutdown();
+		}
+	}
+
+	/**
+	 * Check the pixels of a frame rendered from {@link #createState
+	 * createState(shift)}. Sources are accumulated by adding their channels.
+	 */
+	private static void assertPixels( final int shift, final int[] argb )
+	{
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+			{
+				final int gx = x + shift;
+				int expected = backgroundValue( gx, y );
+				if ( gx >= PATCH_X && gx < PATCH_X + PATCH_WIDTH && y >= PATCH_Y && y < PATCH_Y + PATCH_HEIGHT )
+					expected += patchValue( gx - PATCH_X, y - PATCH_Y );
+				assertEquals( "pixel (" + x + ", " + y + ")", expected, argb[ y * WIDTH + x ] );
+			}
+	}
+
+	/**
+	 * Red and green channels of the first source are its x and y coordinates.
+	 */
+	private static int backgroundValue( final int x, final int y )
+	{
+		return 0xff000000 | ( x << 16 ) | ( y << 8 );
+	}
+
+	/**
+	 * The blue channel of the second source varies with its x and y
+	 * coordinates. Its alpha is {@code 0}, so that sums do not saturate.
+	 */
+	private static int patchValue( final int x, final int y )
+	{
+		return 1 + x + 10 * y;
+	}
+
+	/**
+	 * A state with both sources, and a viewer transform that shifts the
+	 * sources left by {@code shift} pixels.
+	 */
+	private static ViewerState createState( final int shift )
+	{
+		final ArrayImg< ARGBType, IntArray > background = ArrayImgs.argbs( WIDTH + 10, HEIGHT, 1 );
+		final ArrayImg< ARGBType, IntArray > patch = ArrayImgs.argbs( PATCH_WIDTH, PATCH_HEIGHT, 1 );
+		final int[] data = background.update( null ).getCurrentStorageArray();
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH + 10; ++x )
+				data[ y * ( WIDTH + 10 ) + x ] = backgroundValue( x, y );
+		final int[] patchData = patch.update( null ).getCurrentStorageArray();
+		for ( int y = 0; y < PATCH_HEIGHT; ++y )
+			for ( int x = 0; x < PATCH_WIDTH; ++x )
+				patchData[ y * PATCH_WIDTH + x ] = patchValue( x, y );
+
+		final AffineTransform3D patchTransform = new AffineTransform3D();
+		patchTransform.translate( PATCH_X, PATCH_Y, 0 );
+		final Converter< ARGBType, ARGBType > converter = ( a, b ) -> b.set( a );
+
+		final BasicViewerState state = new BasicViewerState();
+		state.setDisplayMode( DisplayMode.FUSED );
+		state.setInterpolation( Interpolation.NEARESTNEIGHBOR );
+		for ( final Source< ARGBType > source : new ImageSource[] {
+				new ImageSource( background, new AffineTransform3D() ),
+				new ImageSource( patch, patchTransform ) } )
+		{
+			final SourceAndConverter< ARGBType > soc = new SourceAndConverter<>( source, converter );
+			state.addSource( soc );
+			state.setSourceActive( soc, true );
+		}
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerTransform.translate( -shift, 0, 0 );
+		state.setViewerTransform( viewerTransform );
+		return state;
+	}
+
+	/**
+	 * A single-level source showing an ARGB image.
+	 */
+	static class ImageSource implements Source< ARGBType >
+	{
+		private final RandomAccessibleInterval< ARGBType > img;
+
+		private final AffineTransform3D transform;
+
+		ImageSource( final RandomAccessibleInterval< ARGBType > img, final AffineTransform3D transform )
+		{
+			this.img = img;
+			this.transform = transform;
+		}
+
+		@Override
+		public boolean isPresent( final int t )
+		{
+			return true;
+		}
+
+		@Override
+		public RandomAccessibleInterval< ARGBType > getSource( final int t, final int level )
+		{
+			return img;
+		}
+
+		@Override
+		public RealRandomAccessible< ARGBType > getInterpolatedSource( final int t, final int level, final Interpolation method )
+		{
+			return Views.interpolate( Views.extendZero( img ), new NearestNeighborInterpolatorFactory<>() );
+		}
+
+		@Override
+		public void getSourceTransform( final int t, final int level, final AffineTransform3D transform )
+		{
+			transform.set( this.transform );
+		}
+
+		@Override
+		public ARGBType getType()
+		{
+			return new ARGBType();
+		}
+
+		@Override
+		public String getName()
+		{
+			return "image";
+		}
+
+		@Override
+		public VoxelDimensions getVoxelDimensions()
+		{
+			return null;
+		}
+
+		@Override
+		public int getNumMipmapLevels()
+		{
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.position.FunctionRandomAccessible;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import org.junit.Test;
+
+public class SlabMaxProjectorTest extends TiledProjectorFixture
+{
+	private static final int NUM_SAMPLES = 3;
+
+	/**
+	 * Pixels show the maximum over the slab samples of the best level for
+	 * which all samples are valid.
+	 */
+	@Test
+	public void testMaximumOfBestCompleteLevel()
+	{
+		final ArrayImg< ARGBType, IntArray > img = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final SlabMaxProjector< VolatileUnsignedShortType > projector = createProjector( img, true, NUM_THREADS );
+
+		assertTrue( projector.map( true ) );
+		assertFalse( projector.isValid() );
+		long expectedNumInvalid = 0;
+		final int[] data = img.update( null ).getCurrentStorageArray();
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+			{
+				final boolean complete = numValidAtLevel0( x, y ) == NUM_SAMPLES;
+				if ( !complete )
+					++expectedNumInvalid;
+				assertEquals( argb( complete ? level0Max( x, y ) : LEVEL1_MAX ), data[ y * WIDTH + x ] );
+			}
+		assertTrue( expectedNumInvalid > 0 );
+		assertEquals( expectedNumInvalid, projector.getNumInvalidPixels() );
+
+		level0Complete = true;
+		assertTrue( projector.map( false ) );
+		assertTrue( projector.isValid() );
+		assertEquals( 0, projector.getNumInvalidPixels() );
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+				assertEquals( argb( level0Max( x, y ) ), data[ y * WIDTH + x ] );
+	}
+
+	/**
+	 * Without a complete coarser level, pixels show the maximum of the valid
+	 * samples.
+	 */
+	@Test
+	public void testPartialMaximum()
+	{
+		final ArrayImg< ARGBType, IntArray > img = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final SlabMaxProjector< VolatileUnsignedShortType > projector = createProjector( img, false, NUM_THREADS );
+
+		assertTrue( projector.map( true ) );
+		assertFalse( projector.isValid() );
+		final int[] data = img.update( null ).getCurrentStorageArray();
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+			{
+				int max = 0;
+				for ( int s = 0; s < NUM_SAMPLES; ++s )
+					if ( isValidAtLevel0( x, y, s ) )
+						max = Math.max( max, level0Value( x, y, s ) );
+				assertEquals( argb( max ), data[ y * WIDTH + x ] );
+			}
+	}
+
+	/**
+	 * The result does not depend on the number of threads, or on the tiles
+	 * used for rendering.
+	 */
+	@Test
+	public void testDeterministic()
+	{
+		final ArrayImg< ARGBType, IntArray > expectedImg = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final SlabMaxProjector< VolatileUnsignedShortType > expected = createProjector( expectedImg, true, 1 );
+		final ArrayImg< ARGBType, IntArray > threadedImg = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final SlabMaxProjector< VolatileUnsignedShortType > threaded = createProjector( threadedImg, true, NUM_THREADS );
+		final ArrayImg< ARGBType, IntArray > unalignedImg = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final SlabMaxProjector< VolatileUnsignedShortType > unaligned = createProjector( unalignedImg, true, NUM_THREADS );
+
+		for ( final int tileSize : new int[] { 37, 64, 13 } )
+		{
+			expected.clearMask();
+			threaded.clearMask();
+			unaligned.clearMask();
+			level0Complete = false;
+
+			assertTrue( expected.map( true ) );
+			assertTrue( threaded.map( true ) );
+			mapUnaligned( unaligned, tileSize );
+			assertSameState( expected, expectedImg, threaded, threadedImg );
+			assertSameState( expected, expectedImg, unaligned, unalignedImg );
+
+			level0Complete = true;
+			assertTrue( expected.map( false ) );
+			assertTrue( threaded.map( false ) );
+			mapUnaligned( unaligned, tileSize + 7 );
+			assertSameState( expected, expectedImg, threaded, threadedImg );
+			assertSameState( expected, expectedImg, unaligned, unalignedImg );
+			assertTrue( unaligned.isValid() );
+		}
+	}
+
+	private static final int LEVEL1_MAX = 5000 + NUM_SAMPLES - 1;
+
+	private static int argb( final int value )
+	{
+		return 0xff000000 | value;
+	}
+
+	private static int level0Value( final long x, final long y, final int sample )
+	{
+		return ( int ) ( ( x * 7 + y * 13 + sample * 101 ) % 4000 );
+	}
+
+	/**
+	 * The level 0 validity pattern, shifted by one run per sample.
+	 */
+	private static boolean isValidAtLevel0( final long x, final long y, final int sample )
+	{
+		return isValidAtLevel0( x + 5 * sample, y );
+	}
+
+	private int numValidAtLevel0( final long x, final long y )
+	{
+		int n = 0;
+		for ( int s = 0; s < NUM_SAMPLES; ++s )
+			if ( level0Complete || isValidAtLevel0( x, y, s ) )
+				++n;
+		return n;
+	}
+
+	private static int level0Max( final long x, final long y )
+	{
+		int max = 0;
+		for ( int s = 0; s < NUM_SAMPLES; ++s )
+			max = Math.max( max, level0Value( x, y, s ) );
+		return max;
+	}
+
+	/**
+	 * @param withLevel1
+	 *     whether to add a second, always valid, resolution level.
+	 */
+	private SlabMaxProjector< VolatileUnsignedShortType > createProjector(
+			final ArrayImg< ARGBType, IntArray > target,
+			final boolean withLevel1,
+			final int numThreads )
+	{
+		final List< RandomAccessible< VolatileUnsignedShortType > > level0 = new ArrayList<>();
+		final List< RandomAccessible< VolatileUnsignedShortType > > level1 = new ArrayList<>();
+		for ( int s = 0; s < NUM_SAMPLES; ++s )
+		{
+			final int sample = s;
+			level0.add( new FunctionRandomAccessible<>( 2, ( pos, t ) -> {
+				final long x = pos.getLongPosition( 0 );
+				final long y = pos.getLongPosition( 1 );
+				t.get().set( level0Value( x, y, sample ) );
+				t.setValid( level0Complete || isValidAtLevel0( x, y, sample ) );
+			}, VolatileUnsignedShortType::new ) );
+			level1.add( new FunctionRandomAccessible<>( 2, ( pos, t ) -> {
+				t.get().set( 5000 + sample );
+				t.setValid( true );
+			}, VolatileUnsignedShortType::new ) );
+		}
+		final List< List< RandomAccessible< VolatileUnsignedShortType > > > sources = withLevel1
+				? Arrays.asList( level0, level1 )
+				: Arrays.asList( level0 );
+		final Converter< VolatileUnsignedShortType, ARGBType > converter = ( a, b ) -> b.set( argb( a.get().get() ) );
+		return new SlabMaxProjector<>( sources, converter, VolatileUnsignedShortType::new, target,
+				new byte[ WIDTH * HEIGHT ], numThreads, executorService );
+	}
+}
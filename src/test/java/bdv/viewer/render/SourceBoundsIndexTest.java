@@ -0,0 +1,349 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import org.junit.Test;
+
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.DisplayMode;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerState;
+
+public class SourceBoundsIndexTest
+{
+	private static final int NUM_SOURCES = 2 * SourceBoundsIndex.MIN_NUM_SOURCES;
+
+	private static final double WORLD_SIZE = 2000;
+
+	private static final int SCREEN_WIDTH = 400;
+
+	private static final int SCREEN_HEIGHT = 300;
+
+	@Test
+	public void testRandomTransforms()
+	{
+		final Random random = new Random( 1 );
+		final List< MovableSource > sources = new ArrayList<>();
+		final ViewerState state = createState( random, sources );
+		final ScreenScales.ScreenScale screenScale = createScreenScale();
+		final SourceBoundsIndex index = new SourceBoundsIndex();
+
+		for ( int i = 0; i < 50; ++i )
+		{
+			state.setViewerTransform( randomViewerTransform( random ) );
+			assertSameAsBruteForce( state, screenScale, index );
+		}
+	}
+
+	@Test
+	public void testTransformChange()
+	{
+		final Random random = new Random( 2 );
+		final List< MovableSource > sources = new ArrayList<>();
+		final ViewerState state = createState( random, sources );
+		final ScreenScales.ScreenScale screenScale = createScreenScale();
+		final SourceBoundsIndex index = new SourceBoundsIndex();
+
+		final List< AffineTransform3D > viewerTransforms = new ArrayList<>();
+		for ( int i = 0; i < 20; ++i )
+			viewerTransforms.add( randomViewerTransform( random ) );
+
+		for ( int round = 0; round < 10; ++round )
+		{
+			// query before the change, so that the index is built
+			for ( final AffineTransform3D viewerTransform : viewerTransforms )
+			{
+				state.setViewerTransform( viewerTransform );
+				assertSameAsBruteForce( state, screenScale, index );
+			}
+
+			// move a few sources
+			final List< MovableSource > moved = new ArrayList<>();
+			for ( int i = 0; i < 10; ++i )
+			{
+				final MovableSource source = sources.get( random.nextInt( sources.size() ) );
+				source.setTransform( randomSourceTransform( random ) );
+				moved.add( source );
+			}
+			index.sourceTransformsChanged( moved );
+
+			for ( final AffineTransform3D viewerTransform : viewerTransforms )
+			{
+				state.setViewerTransform( viewerTransform );
+				assertSameAsBruteForce( state, screenScale, index );
+			}
+		}
+	}
+
+	@Test
+	public void testMoveSourceOntoScreen()
+	{
+		final Random random = new Random( 3 );
+		final List< MovableSource > sources = new ArrayList<>();
+		final ViewerState state = createState( random, sources );
+		final ScreenScales.ScreenScale screenScale = createScreenScale();
+		final SourceBoundsIndex index = new SourceBoundsIndex();
+
+		// look at an empty region outside of all sources
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerTransform.translate( 0, 0, 10 * WORLD_SIZE );
+		state.setViewerTransform( viewerTransform );
+		final List< SourceAndConverter< ? > > result = new ArrayList<>();
+		VisibilityUtils.computeVisibleSourcesOnScreen( state, screenScale, index, index.getSourcesVersion(), result );
+		assertTrue( result.isEmpty() );
+
+		// move one source into view
+		final MovableSource source = sources.get( random.nextInt( sources.size() ) );
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		sourceTransform.translate( 0.5 * SCREEN_WIDTH, 0.5 * SCREEN_HEIGHT, -10 * WORLD_SIZE );
+		source.setTransform( sourceTransform );
+		index.sourceTransformsChanged( Collections.singleton( source ) );
+
+		VisibilityUtils.computeVisibleSourcesOnScreen( state, screenScale, index, index.getSourcesVersion(), result );
+		assertEquals( 1, result.size() );
+		assertTrue( result.get( 0 ).getSpimSource() == source );
+		assertSameAsBruteForce( state, screenScale, index );
+	}
+
+	@Test
+	public void testAddRemoveSources()
+	{
+		final Random random = new Random( 4 );
+		final List< MovableSource > sources = new ArrayList<>();
+		final ViewerState state = createState( random, sources );
+		final ScreenScales.ScreenScale screenScale = createScreenScale();
+		final SourceBoundsIndex index = new SourceBoundsIndex();
+
+		final List< AffineTransform3D > viewerTransforms = new ArrayList<>();
+		for ( int i = 0; i < 20; ++i )
+			viewerTransforms.add( randomViewerTransform( random ) );
+
+		for ( int round = 0; round < 10; ++round )
+		{
+			for ( final AffineTransform3D viewerTransform : viewerTransforms )
+			{
+				state.setViewerTransform( viewerTransform );
+				assertSameAsBruteForce( state, screenScale, index );
+			}
+
+			// remove a few sources, and add as many (or, in later rounds,
+			// too many to keep them pending)
+			final int numChanged = round < 5 ? 4 : NUM_SOURCES / 4;
+			for ( int i = 0; i < numChanged; ++i )
+				state.removeSource( state.getSources().get( random.nextInt( state.getSources().size() ) ) );
+			for ( int i = 0; i < numChanged; ++i )
+				addSource( random, state, sources );
+			index.sourcesChanged();
+
+			for ( final AffineTransform3D viewerTransform : viewerTransforms )
+			{
+				state.setViewerTransform( viewerTransform );
+				assertSameAsBruteForce( state, screenScale, index );
+			}
+		}
+	}
+
+	@Test
+	public void testSourcesChangedDuringSnapshot()
+	{
+		final Random random = new Random( 5 );
+		final List< MovableSource > sources = new ArrayList<>();
+		final ViewerState state = createState( random, sources );
+		final ScreenScales.ScreenScale screenScale = createScreenScale();
+		final SourceBoundsIndex index = new SourceBoundsIndex();
+		state.setViewerTransform( randomViewerTransform( random ) );
+		assertSameAsBruteForce( state, screenScale, index );
+
+		// a source is added after the sources version was read, but before
+		// the snapshot is queried
+		final long version = index.getSourcesVersion();
+		final ViewerState snapshot = state.snapshot();
+		addSource( random, state, sources );
+		index.sourcesChanged();
+		final List< SourceAndConverter< ? > > result = new ArrayList<>();
+		VisibilityUtils.computeVisibleSourcesOnScreen( snapshot, screenScale, index, version, result );
+
+		// the next query must still see the added source
+		assertSameAsBruteForce( state, screenScale, index );
+	}
+
+	private static void assertSameAsBruteForce(
+			final ViewerState state,
+			final ScreenScales.ScreenScale screenScale,
+			final SourceBoundsIndex index )
+	{
+		final List< SourceAndConverter< ? > > expected = new ArrayList<>();
+		VisibilityUtils.computeVisibleSourcesOnScreen( state, screenScale, expected );
+		final List< SourceAndConverter< ? > > actual = new ArrayList<>();
+		VisibilityUtils.computeVisibleSourcesOnScreen( state, screenScale, index, index.getSourcesVersion(), actual );
+		assertEquals( expected, actual );
+	}
+
+	private static ViewerState createState( final Random random, final List< MovableSource > sources )
+	{
+		final BasicViewerState state = new BasicViewerState();
+		state.setDisplayMode( DisplayMode.FUSED );
+		state.setInterpolation( Interpolation.NLINEAR );
+		for ( int i = 0; i < NUM_SOURCES; ++i )
+			addSource( random, state, sources );
+		return state;
+	}
+
+	private static void addSource( final Random random, final ViewerState state, final List< MovableSource > sources )
+	{
+		final MovableSource source = new MovableSource( randomSourceTransform( random ) );
+		final SourceAndConverter< UnsignedByteType > soc = new SourceAndConverter<>( source, null );
+		sources.add( source );
+		state.addSource( soc );
+		state.setSourceActive( soc, true );
+	}
+
+	private static ScreenScales.ScreenScale createScreenScale()
+	{
+		final ScreenScales.ScreenScale screenScale = new ScreenScales.ScreenScale( 1.0 );
+		screenScale.resize( SCREEN_WIDTH, SCREEN_HEIGHT );
+		return screenScale;
+	}
+
+	/**
+	 * A random rotation about the center of the world, mapping the center of
+	 * the world to the center of the screen.
+	 */
+	private static AffineTransform3D randomViewerTransform( final Random random )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.translate( -0.5 * WORLD_SIZE, -0.5 * WORLD_SIZE, -0.5 * WORLD_SIZE );
+		transform.rotate( 0, 2 * Math.PI * random.nextDouble() );
+		transform.rotate( 1, 2 * Math.PI * random.nextDouble() );
+		transform.rotate( 2, 2 * Math.PI * random.nextDouble() );
+		transform.scale( 0.2 + random.nextDouble() );
+		transform.translate( 0.5 * SCREEN_WIDTH, 0.5 * SCREEN_HEIGHT, 200 * ( random.nextDouble() - 0.5 ) );
+		return transform;
+	}
+
+	/**
+	 * A random anisotropic scaling and rotation, placing the source somewhere
+	 * in the world.
+	 */
+	private static AffineTransform3D randomSourceTransform( final Random random )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				1 + 20 * random.nextDouble(), 0, 0, 0,
+				0, 1 + 20 * random.nextDouble(), 0, 0,
+				0, 0, 1 + 20 * random.nextDouble(), 0 );
+		transform.rotate( 0, 2 * Math.PI * random.nextDouble() );
+		transform.rotate( 2, 2 * Math.PI * random.nextDouble() );
+		transform.translate( WORLD_SIZE * random.nextDouble(), WORLD_SIZE * random.nextDouble(), WORLD_SIZE * random.nextDouble() );
+		return transform;
+	}
+
+	/**
+	 * A source with an 8x8x8 image and a source transform that can be changed.
+	 */
+	static class MovableSource implements Source< UnsignedByteType >
+	{
+		private final RandomAccessibleInterval< UnsignedByteType > img = ArrayImgs.unsignedBytes( 8, 8, 8 );
+
+		private final AffineTransform3D transform = new AffineTransform3D();
+
+		MovableSource( final AffineTransform3D transform )
+		{
+			setTransform( transform );
+		}
+
+		synchronized void setTransform( final AffineTransform3D transform )
+		{
+			this.transform.set( transform );
+		}
+
+		@Override
+		public boolean isPresent( final int t )
+		{
+			return true;
+		}
+
+		@Override
+		public RandomAccessibleInterval< UnsignedByteType > getSource( final int t, final int level )
+		{
+			return img;
+		}
+
+		@Override
+		public RealRandomAccessible< UnsignedByteType > getInterpolatedSource( final int t, final int level, final Interpolation method )
+		{
+			return null;
+		}
+
+		@Override
+		public synchronized void getSourceTransform( final int t, final int level, final AffineTransform3D transform )
+		{
+			transform.set( this.transform );
+		}
+
+		@Override
+		public UnsignedByteType getType()
+		{
+			return new UnsignedByteType();
+		}
+
+		@Override
+		public String getName()
+		{
+			return "movable";
+		}
+
+		@Override
+		public VoxelDimensions getVoxelDimensions()
+		{
+			return null;
+		}
+
+		@Override
+		public int getNumMipmapLevels()
+		{
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class TileSchedulerTest
+{
+	@Test
+	public void interleave()
+	{
+		assertEquals( 0, TileScheduler.interleave( 0, 0 ) );
+		assertEquals( 1, TileScheduler.interleave( 1, 0 ) );
+		assertEquals( 2, TileScheduler.interleave( 0, 1 ) );
+		assertEquals( 3, TileScheduler.interleave( 1, 1 ) );
+		assertEquals( 4, TileScheduler.interleave( 2, 0 ) );
+		assertEquals( 0b101010, TileScheduler.interleave( 0, 7 ) );
+		assertEquals( 0xffffffffL, TileScheduler.interleave( 0xffff, 0xffff ) );
+	}
+
+	@Test
+	public void singleThreadVisitsTilesInMortonOrder()
+	{
+		final int tileSize = 10;
+		final List< int[] > tiles = new ArrayList<>();
+		new TileScheduler( 95, 42, tileSize, 1 ).run( null,
+				( startX, startY, endX, endY ) -> tiles.add( new int[] { startX, startY, endX, endY } ) );
+
+		assertEquals( 10 * 5, tiles.size() );
+		long previous = -1;
+		for ( final int[] tile : tiles )
+		{
+			final long key = TileScheduler.interleave( tile[ 0 ] / tileSize, tile[ 1 ] / tileSize );
+			assertTrue( key > previous );
+			previous = key;
+			assertEquals( Math.min( tile[ 0 ] + tileSize, 95 ), tile[ 2 ] );
+			assertEquals( Math.min( tile[ 1 ] + tileSize, 42 ), tile[ 3 ] );
+		}
+	}
+
+	@Test
+	public void everyPixelVisitedOnceUnderContention()
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+		try
+		{
+			final Random random = new Random( 1 );
+			for ( int trial = 0; trial < 20; ++trial )
+			{
+				final int width = 1 + random.nextInt( 300 );
+				final int height = 1 + random.nextInt( 300 );
+				final int tileSize = 1 + random.nextInt( 16 );
+				final int numThreads = 1 + random.nextInt( 12 );
+				assertEveryPixelVisitedOnce( width, height, tileSize, numThreads, executor );
+				assertEveryPixelVisitedOnce( width, height, tileSize, numThreads, null );
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void idleWorkersStealTiles()
+	{
+		// The first tile of worker 0 blocks until all other tiles are done,
+		// which only happens if worker 1 steals the rest of worker 0's range.
+		final int numTiles = 8 * 8;
+		final CountDownLatch otherTilesDone = new CountDownLatch( numTiles - 1 );
+		final AtomicInteger numCompleted = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+		try
+		{
+			new TileScheduler( 8 * 16, 8 * 16, 16, 2 ).run( executor, ( startX, startY, endX, endY ) -> {
+				if ( startX == 0 && startY == 0 )
+				{
+					try
+					{
+						if ( otherTilesDone.await( 10, TimeUnit.SECONDS ) )
+							numCompleted.incrementAndGet();
+					}
+					catch ( final InterruptedException e )
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+				else
+				{
+					numCompleted.incrementAndGet();
+					otherTilesDone.countDown();
+				}
+			} );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		assertEquals( numTiles, numCompleted.get() );
+	}
+
+	@Test
+	public void emptyImage()
+	{
+		final AtomicInteger numTiles = new AtomicInteger();
+		new TileScheduler( 0, 100, 16, 4 ).run( null, ( startX, startY, endX, endY ) -> numTiles.incrementAndGet() );
+		new TileScheduler( 100, 0, 16, 4 ).run( null, ( startX, startY, endX, endY ) -> numTiles.incrementAndGet() );
+		assertEquals( 0, numTiles.get() );
+	}
+
+	private static void assertEveryPixelVisitedOnce(
+			final int width,
+			final int height,
+			final int tileSize,
+			final int numThreads,
+			final ExecutorService executor )
+	{
+		final AtomicIntegerArray visits = new AtomicIntegerArray( width * height );
+		final AtomicInteger numBadTiles = new AtomicInteger();
+		new TileScheduler( width, height, tileSize, numThreads ).run( executor, ( startX, startY, endX, endY ) -> {
+			// NB: exceptions thrown by workers are not propagated, so record bad tiles instead of asserting here
+			if ( startX < 0 || startY < 0 || endX > width || endY > height
+					|| startX >= endX || startY >= endY
+					|| endX - startX > tileSize || endY - startY > tileSize )
+			{
+				numBadTiles.incrementAndGet();
+				return;
+			}
+			for ( int y = startY; y < endY; ++y )
+				for ( int x = startX; x < endX; ++x )
+					visits.incrementAndGet( y * width + x );
+			// uneven work per tile, so that workers steal from each other
+			if ( ( startX / tileSize + startY / tileSize ) % 3 == 0 )
+				Thread.yield();
+		} );
+		assertEquals( 0, numBadTiles.get() );
+		for ( int i = 0; i < visits.length(); ++i )
+			assertEquals( "pixel " + i + " of " + width + "x" + height + " (tile size " + tileSize + ", " + numThreads + " threads)", 1, visits.get( i ) );
+	}
+}
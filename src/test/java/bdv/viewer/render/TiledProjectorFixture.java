@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Common fixture for tests of {@link TiledProjector} implementations. Sets up
+ * a rendering {@link ExecutorService}, defines which level 0 pixels are
+ * valid, and renders passes with tiles that are not aligned to the
+ * {@link TileScheduler} grid.
+ */
+abstract class TiledProjectorFixture
+{
+	static final int WIDTH = 150;
+
+	static final int HEIGHT = 100;
+
+	static final int NUM_THREADS = 4;
+
+	ExecutorService executorService;
+
+	/**
+	 * Whether all pixels of level 0 are valid. Otherwise, only the pixels
+	 * for which {@link #isValidAtLevel0} is {@code true} are.
+	 */
+	volatile boolean level0Complete;
+
+	@Before
+	public void setUp()
+	{
+		executorService = Executors.newFixedThreadPool( NUM_THREADS );
+		level0Complete = false;
+	}
+
+	@After
+	public void tearDown()
+	{
+		executorService.shutdown();
+	}
+
+	/**
+	 * A value that is different for every pixel.
+	 */
+	static int level0Value( final long x, final long y )
+	{
+		return 0xff000000 | ( int ) ( y * WIDTH + x );
+	}
+
+	/**
+	 * Whether pixel {@code (x,y)} of level 0 is valid, if level 0 is not
+	 * complete. Invalid pixels form short runs in every row.
+	 */
+	static boolean isValidAtLevel0( final long x, final long y )
+	{
+		return ( x / 5 + y / 3 ) % 4 != 0;
+	}
+
+	/**
+	 * Render one pass with tiles of the given size, concurrently.
+	 */
+	void mapUnaligned( final TiledProjector projector, final int tileSize )
+	{
+		projector.beginPass();
+		new TileScheduler( WIDTH, HEIGHT, tileSize, NUM_THREADS ).run( executorService,
+				( startX, startY, endX, endY ) -> projector.mapTile( startX, startY, endX, endY, true ) );
+		assertTrue( projector.endPass() );
+	}
+
+	static void assertSameState(
+			final VolatileProjector expected,
+			final ArrayImg< ARGBType, IntArray > expectedImg,
+			final VolatileProjector actual,
+			final ArrayImg< ARGBType, IntArray > actualImg )
+	{
+		assertArrayEquals( expectedImg.update( null ).getCurrentStorageArray(), actualImg.update( null ).getCurrentStorageArray() );
+		assertEquals( expected.isValid(), actual.isValid() );
+		assertEquals( expected.getNumInvalidPixels(), actual.getNumInvalidPixels() );
+	}
+}
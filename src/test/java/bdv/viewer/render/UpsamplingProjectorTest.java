@@ -0,0 +1,194 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.view.Views;
+import org.junit.Test;
+
+public class UpsamplingProjectorTest
+{
+	/**
+	 * Fills the coarse image with its pixel indices, and reports the
+	 * configured state.
+	 */
+	private static class CoarseProjector implements VolatileProjector
+	{
+		private final int[] data;
+
+		boolean mapResult = true;
+
+		boolean valid = true;
+
+		long numInvalidPixels = 0;
+
+		boolean canceled = false;
+
+		CoarseProjector( final ArrayImg< ARGBType, IntArray > img )
+		{
+			data = img.update( null ).getCurrentStorageArray();
+		}
+
+		@Override
+		public boolean map( final boolean clearUntouchedTargetPixels )
+		{
+			for ( int i = 0; i < data.length; ++i )
+				data[ i ] = i;
+			return mapResult;
+		}
+
+		@Override
+		public void cancel()
+		{
+			canceled = true;
+		}
+
+		@Override
+		public long getLastFrameRenderNanoTime()
+		{
+			return 0;
+		}
+
+		@Override
+		public boolean isValid()
+		{
+			return valid;
+		}
+
+		@Override
+		public long getNumInvalidPixels()
+		{
+			return numInvalidPixels;
+		}
+	}
+
+	@Test
+	public void testHalfScale()
+	{
+		final ArrayImg< ARGBType, IntArray > source = ArrayImgs.argbs( 3, 2 );
+		final ArrayImg< ARGBType, IntArray > target = ArrayImgs.argbs( 6, 4 );
+		final UpsamplingProjector projector = new UpsamplingProjector( new CoarseProjector( source ), source, target, 0.5 );
+
+		assertTrue( projector.map() );
+		assertArrayEquals( new int[] {
+				0, 0, 1, 1, 2, 2,
+				0, 0, 1, 1, 2, 2,
+				3, 3, 4, 4, 5, 5,
+				3, 3, 4, 4, 5, 5
+		}, target.update( null ).getCurrentStorageArray() );
+	}
+
+	/**
+	 * Every target pixel takes the value of the coarse pixel that contains the
+	 * target pixel center. Coarse pixels are placed like the screen images of
+	 * {@link ScreenScales}.
+	 */
+	@Test
+	public void testNearestCoarsePixel()
+	{
+		for ( final int factor : new int[] { 1, 2, 3, 4 } )
+		{
+			final double scale = 1.0 / factor;
+			final int targetWidth = 37;
+			final int targetHeight = 23;
+			final int sourceWidth = ( int ) Math.ceil( targetWidth * scale );
+			final int sourceHeight = ( int ) Math.ceil( targetHeight * scale );
+			final ArrayImg< ARGBType, IntArray > source = ArrayImgs.argbs( sourceWidth, sourceHeight );
+			final ArrayImg< ARGBType, IntArray > target = ArrayImgs.argbs( targetWidth, targetHeight );
+			final UpsamplingProjector projector = new UpsamplingProjector( new CoarseProjector( source ), source, target, scale );
+
+			assertTrue( projector.map() );
+			final int[] data = target.update( null ).getCurrentStorageArray();
+			for ( int y = 0; y < targetHeight; ++y )
+				for ( int x = 0; x < targetWidth; ++x )
+				{
+					// coarse pixel i covers target pixels [i * factor, (i + 1) * factor)
+					final int expected = ( y / factor ) * sourceWidth + x / factor;
+					assertEquals( expected, data[ y * targetWidth + x ] );
+				}
+		}
+	}
+
+	@Test
+	public void testForwardsState()
+	{
+		final ArrayImg< ARGBType, IntArray > source = ArrayImgs.argbs( 5, 3 );
+		final ArrayImg< ARGBType, IntArray > target = ArrayImgs.argbs( 10, 6 );
+		final CoarseProjector coarse = new CoarseProjector( source );
+		final UpsamplingProjector projector = new UpsamplingProjector( coarse, source, target, 0.5 );
+
+		coarse.valid = false;
+		coarse.numInvalidPixels = 3;
+		assertTrue( projector.map() );
+		assertFalse( projector.isValid() );
+		// every coarse pixel covers 4 target pixels
+		assertEquals( 12, projector.getNumInvalidPixels() );
+
+		coarse.valid = true;
+		coarse.numInvalidPixels = 0;
+		assertTrue( projector.isValid() );
+		assertEquals( 0, projector.getNumInvalidPixels() );
+
+		coarse.numInvalidPixels = -1;
+		assertEquals( -1, projector.getNumInvalidPixels() );
+
+		projector.cancel();
+		assertTrue( coarse.canceled );
+	}
+
+	@Test
+	public void testCanceledMapDoesNotTouchTarget()
+	{
+		final ArrayImg< ARGBType, IntArray > source = ArrayImgs.argbs( 5, 3 );
+		final ArrayImg< ARGBType, IntArray > target = ArrayImgs.argbs( 10, 6 );
+		final CoarseProjector coarse = new CoarseProjector( source );
+		final UpsamplingProjector projector = new UpsamplingProjector( coarse, source, target, 0.5 );
+
+		coarse.mapResult = false;
+		assertFalse( projector.map() );
+		for ( final int value : target.update( null ).getCurrentStorageArray() )
+			assertEquals( 0, value );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testRequiresArrayImg()
+	{
+		final ArrayImg< ARGBType, IntArray > source = ArrayImgs.argbs( 5, 3 );
+		final ArrayImg< ARGBType, IntArray > target = ArrayImgs.argbs( 10, 6 );
+		new UpsamplingProjector( new CoarseProjector( source ), source, Views.translate( target, 1, 1 ), 0.5 );
+	}
+}
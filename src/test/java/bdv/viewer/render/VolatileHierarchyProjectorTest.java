@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * BigDataViewer core classes with minimal dependencies.
+ * %%
+ * Copyright (C) 2012 - 2022 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.viewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.position.FunctionRandomAccessible;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.volatiles.VolatileARGBType;
+import org.junit.Test;
+
+public class VolatileHierarchyProjectorTest extends TiledProjectorFixture
+{
+	/**
+	 * Rendering a pass with tiles that are not aligned to the screen tile grid
+	 * must give the same result as rendering with the grid tiles.
+	 */
+	@Test
+	public void testUnalignedTiles()
+	{
+		final ArrayImg< ARGBType, IntArray > expectedImg = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final ArrayImg< ARGBType, IntArray > actualImg = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final VolatileHierarchyProjector< VolatileARGBType, ARGBType > expected = createProjector( expectedImg );
+		final VolatileHierarchyProjector< VolatileARGBType, ARGBType > actual = createProjector( actualImg );
+
+		for ( final int tileSize : new int[] { 37, 64, 100, 13 } )
+		{
+			expected.clearMask();
+			actual.clearMask();
+			level0Complete = false;
+
+			assertTrue( expected.map( true ) );
+			mapUnaligned( actual, tileSize );
+			assertSameState( expected, expectedImg, actual, actualImg );
+			assertFalse( actual.isValid() );
+
+			// a refinement pass mixing grid tiles and unaligned tiles
+			level0Complete = true;
+			assertTrue( expected.map( false ) );
+			mapUnaligned( actual, tileSize + 7 );
+			assertSameState( expected, expectedImg, actual, actualImg );
+			assertTrue( actual.isValid() );
+			assertEquals( 0, actual.getNumInvalidPixels() );
+
+			// after that, grid tiles render densely where needed
+			assertTrue( actual.map( false ) );
+			assertSameState( expected, expectedImg, actual, actualImg );
+		}
+	}
+
+	/**
+	 * The mask of a tile is only reset once per {@link
+	 * VolatileHierarchyProjector#clearMask()}. Pixels filled from level 0 in
+	 * the first pass must not be overwritten from coarser levels later.
+	 */
+	@Test
+	public void testMaskKeptWithinGeneration()
+	{
+		final ArrayImg< ARGBType, IntArray > img = ArrayImgs.argbs( WIDTH, HEIGHT );
+		final VolatileHierarchyProjector< VolatileARGBType, ARGBType > projector = createProjector( img );
+
+		level0Complete = false;
+		assertTrue( projector.map( true ) );
+		final long numInvalidPixels = projector.getNumInvalidPixels();
+		assertTrue( numInvalidPixels > 0 );
+
+		mapUnaligned( projector, 29 );
+		assertEquals( numInvalidPixels, projector.getNumInvalidPixels() );
+		final int[] data = img.update( null ).getCurrentStorageArray();
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+				assertEquals( isValidAtLevel0( x, y ) ? level0Value( x, y ) : LEVEL1_VALUE, data[ y * WIDTH + x ] );
+	}
+
+	private static final int LEVEL1_VALUE = 0xff0000ff;
+
+	private VolatileHierarchyProjector< VolatileARGBType, ARGBType > createProjector( final ArrayImg< ARGBType, IntArray > target )
+	{
+		final RandomAccessible< VolatileARGBType > level0 = new FunctionRandomAccessible<>( 2, ( pos, t ) -> {
+			final long x = pos.getLongPosition( 0 );
+			final long y = pos.getLongPosition( 1 );
+			t.get().set( level0Value( x, y ) );
+			t.setValid( level0Complete || isValidAtLevel0( x, y ) );
+		}, VolatileARGBType::new );
+		final RandomAccessible< VolatileARGBType > level1 = new FunctionRandomAccessible<>( 2, ( pos, t ) -> {
+			t.get().set( LEVEL1_VALUE );
+			t.setValid( true );
+		}, VolatileARGBType::new );
+		final List< RandomAccessible< VolatileARGBType > > sources = Arrays.asList( level0, level1 );
+		final Converter< VolatileARGBType, ARGBType > converter = ( a, b ) -> b.set( a.get() );
+		return new VolatileHierarchyProjector<>( sources, converter, target, NUM_THREADS, executorService );
+	}
+}